@@ -0,0 +1,27 @@
+package com.example.miniarmcontroller;
+
+/**
+ * 与机械臂之间的字节通道。同一时间只有一个写操作在途，写完成和收到的数据通过 Callback 回调。
+ * GattTransport 为BLE实现；LoopbackArmTransport 在进程内模拟固件，可在普通JVM上运行。
+ */
+public interface ArmTransport {
+
+    interface Callback {
+        // 上一次 write 已完成
+        void onWriteComplete(boolean success);
+
+        // 收到机械臂的一次通知（一行文本回复或二进制帧）
+        void onDataReceived(byte[] data);
+    }
+
+    void setCallback(Callback callback);
+
+    // 链路是否就绪、可以写入
+    boolean isReady();
+
+    // 单次写入可携带的最大字节数
+    int getMaxPayload();
+
+    // 发出一次写入，data在返回后即可被复用；返回false表示被拒绝，不会再回调 onWriteComplete
+    boolean write(byte[] data);
+}
@@ -8,12 +8,14 @@ import android.os.Build;
 
 import androidx.core.app.ActivityCompat;
 
-public class BluetoothDeviceInfo {
+public class BluetoothDeviceInfo implements DeviceRegistry.Entry<BluetoothDeviceInfo> {
     private BluetoothDevice device;
     private int rssi;
     private String name;
     private String address;
     private Context context;
+    // 最后一次收到广播的时间（SystemClock.elapsedRealtime）
+    private long lastSeen;
 
     public BluetoothDeviceInfo(BluetoothDevice device, int rssi) {
         this.device = device;
@@ -60,10 +62,21 @@ public class BluetoothDeviceInfo {
         }
     }
 
+    // 复制当前状态，供列表差异计算使用（注册表中的对象会被原地更新）
+    public BluetoothDeviceInfo(BluetoothDeviceInfo other) {
+        this.device = other.device;
+        this.rssi = other.rssi;
+        this.name = other.name;
+        this.address = other.address;
+        this.context = other.context;
+        this.lastSeen = other.lastSeen;
+    }
+
     public BluetoothDevice getDevice() {
         return device;
     }
 
+    @Override
     public int getRssi() {
         return rssi;
     }
@@ -72,6 +85,7 @@ public class BluetoothDeviceInfo {
         return name;
     }
 
+    @Override
     public String getAddress() {
         return address;
     }
@@ -80,6 +94,27 @@ public class BluetoothDeviceInfo {
         return rssi + " dBm";
     }
 
+    @Override
+    public long getLastSeen() {
+        return lastSeen;
+    }
+
+    // 收到同一设备的新广播时原地更新信号强度，返回信号强度是否变化
+    @Override
+    public boolean update(int rssi, long now) {
+        this.lastSeen = now;
+        if (this.rssi == rssi) {
+            return false;
+        }
+        this.rssi = rssi;
+        return true;
+    }
+
+    @Override
+    public BluetoothDeviceInfo copy() {
+        return new BluetoothDeviceInfo(this);
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj) return true;
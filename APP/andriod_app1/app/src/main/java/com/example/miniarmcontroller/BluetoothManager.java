@@ -6,23 +6,39 @@ import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCallback;
 import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
 import android.bluetooth.BluetoothGattService;
 import android.bluetooth.BluetoothProfile;
 import android.bluetooth.le.BluetoothLeScanner;
 import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanFilter;
 import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Looper;
+import android.os.ParcelUuid;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.core.app.ActivityCompat;
 
 import java.util.ArrayList;
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Locale;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Executor;
 
 public class BluetoothManager {
     private static final String TAG = "BluetoothManager";
@@ -34,39 +50,199 @@ public class BluetoothManager {
     private static final String SERVICE_UUID = "b9c7eaa3-f8de-4f40-9ad3-4e7e49bd431a";
     private static final String CHAR_UUID_RX = "d05182d7-e26f-4bfc-8a69-6e3efb177358";
     private static final String CHAR_UUID_TX = "a0c4ca34-247c-4651-86a9-bf61b28b7bff";
+    private static final String CCCD_UUID = "00002902-0000-1000-8000-00805f9b34fb";
+
+    // 解析后的UUID，避免每次收发都调用 UUID.fromString
+    private static final UUID UUID_SERVICE = UUID.fromString(SERVICE_UUID);
+    private static final UUID UUID_RX = UUID.fromString(CHAR_UUID_RX);
+    private static final UUID UUID_TX = UUID.fromString(CHAR_UUID_TX);
+    private static final UUID UUID_CCCD = UUID.fromString(CCCD_UUID);
+
+    // 收发路径上的逐条日志默认关闭，需要时用 adb shell setprop log.tag.BluetoothManager VERBOSE 打开，
+    // 每次连接就绪时重新读取，设置后重新连接即可生效（只在BLE I/O线程读写）
+    private boolean trace = Log.isLoggable(TAG, Log.VERBOSE);
+
+    // 保存上次连接的设备地址
+    private static final String PREFS_NAME = "bluetooth_manager";
+    private static final String PREF_LAST_DEVICE = "last_device_address";
+
+    // 断线重连：先直连并指数退避，多次失败后改为autoConnect后台等待
+    private static final int MAX_DIRECT_ATTEMPTS = 5;
+    private static final long DIRECT_CONNECT_TIMEOUT_MS = 3000;
+    private static final long RECONNECT_BASE_DELAY_MS = 250;
+    private static final long RECONNECT_MAX_DELAY_MS = 8000;
+
+    // 扫描超时
+    private static final long SCAN_TIMEOUT_MS = 10000;
+
+    // 设备列表刷新最小间隔，避免每条广播都刷新界面
+    private static final long DEVICE_LIST_REFRESH_MS = 250;
+    // 超过该时间没有广播的设备从列表移除
+    private static final long DEVICE_STALE_TIMEOUT_MS = 5000;
+
+    // 连接后请求协商到最大MTU
+    private static final int REQUEST_MTU = 517;
+
+    // 最后一条命令发出后保持高优先级连接的时间
+    private static final long DEFAULT_IDLE_TIMEOUT_MS = 2000;
+
+    // 连接间隔单位为1.25ms
+    private static final double CONNECTION_INTERVAL_UNIT_MS = 1.25;
 
     private Context context;
     private BluetoothAdapter bluetoothAdapter;
+    // 扫描器、GATT连接和特征值只在BLE I/O线程读写，公开的扫描/连接/断开方法都转到I/O线程执行
     private BluetoothLeScanner bluetoothLeScanner;
     private BluetoothGatt bluetoothGatt;
     private BluetoothGattCharacteristic rxCharacteristic;
     private BluetoothGattCharacteristic txCharacteristic;
 
-    private boolean isScanning = false;
-    private boolean isConnected = false;
+    private volatile boolean isScanning = false;
+    private volatile boolean isConnected = false;
+
+    // 订阅者：各自注册/注销，并指定回调所在的线程
+    private final ListenerDispatcher<BluetoothManagerListener> listeners = new ListenerDispatcher<>();
+    private final DeviceRegistry<BluetoothDeviceInfo> deviceRegistry = new DeviceRegistry<>();
+
+    // 命令管线：编码、写队列、应答匹配和遥测都在 CommandPipeline 中，经 GattTransport 收发
+    public static final long DEFAULT_COMMAND_TIMEOUT_MS = CommandPipeline.DEFAULT_COMMAND_TIMEOUT_MS;
+    private final GattTransport transport = new GattTransport();
+    private final CommandPipeline pipeline;
+    private final CommandPipeline.Scheduler ioScheduler;
+
+    // 命令日志：每次连接一个文件，保存在应用私有目录，只保留最近的几个
+    private static final String JOURNAL_DIR = "journal";
+    private static final int MAX_JOURNAL_FILES = 10;
+    private CommandJournal journal;
+    private final ListenerDispatcher.Event<BluetoothManagerListener> poseEvent;
+    // 每条回复都要分发，用不捕获变量的方法引用，直接回调的订阅者不产生分配
+    private static final ListenerDispatcher.ArgEvent<BluetoothManagerListener, String> DATA_RECEIVED =
+            BluetoothManagerListener::onDataReceived;
+
+    // 权限检查结果缓存，界面恢复或权限请求返回时失效
+    private volatile boolean permissionsChecked = false;
+    private volatile boolean permissionsGranted = false;
 
-    private BluetoothManagerListener listener;
-    private List<BluetoothDeviceInfo> discoveredDevices;
-    private Handler handler = new Handler(Looper.getMainLooper());
+    // 连接参数：发送命令时切换到高优先级和2M PHY，空闲一段时间后恢复
+    private long idleTimeoutMs = DEFAULT_IDLE_TIMEOUT_MS;
+    private int idlePriority = BluetoothGatt.CONNECTION_PRIORITY_BALANCED;
+    private volatile boolean highPerformance = false;
+    private volatile double connectionIntervalMs = 0;
+    private volatile int connectionLatency = 0;
+    private volatile int txPhy = BluetoothDevice.PHY_LE_1M;
+    private volatile int rxPhy = BluetoothDevice.PHY_LE_1M;
+    private final Runnable idleRunnable = this::enterIdleConnection;
+    private final Runnable markActiveRunnable = this::enterHighPerformance;
+
+    // 断线重连状态
+    private volatile String lastDeviceAddress;
+    private volatile boolean userDisconnected = false;
+    private volatile boolean reconnecting = false;
+    private int reconnectAttempt = 0;
+    private long disconnectTime = 0;
+    private long totalReconnectAttempts = 0;
+    private long reconnectCount = 0;
+    private long lastTimeToReadyMs = 0;
+    private final Runnable reconnectRunnable = this::attemptReconnect;
+    private final Runnable reconnectTimeoutRunnable = this::onReconnectAttemptTimeout;
+    // BLE I/O线程：GATT回调、写队列、扫描结果处理和各种定时器都在这个线程执行，不占用主线程
+    private final HandlerThread ioThread;
+    private final Handler handler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Executor mainExecutor = mainHandler::post;
     private Runnable scanStopRunnable;
 
+    // 过滤扫描：只上报广播了机械臂服务UUID的设备，可选发现第一个即停止并连接
+    private boolean connectOnFirstMatch = false;
+    private long scanReportDelayMs = 0;
+
+    private boolean deviceRefreshPending = false;
+    private final Runnable deviceRefreshRunnable = this::refreshDeviceList;
+
     public interface BluetoothManagerListener {
         void onDeviceFound(BluetoothDeviceInfo device);
         void onScanFinished();
         void onConnectionStateChanged(boolean connected, String deviceAddress);
         void onDataReceived(String data);
         void onError(String error);
+
+        // 连接间隔(ms)/从机延迟/PHY发生变化，便于与命令延迟对照
+        default void onLinkParametersChanged(double intervalMs, int latency, int txPhy, int rxPhy) {}
+
+        // 设备列表有变化（新设备、信号强度变化或设备消失），最多每DEVICE_LIST_REFRESH_MS回调一次
+        default void onDevicesUpdated(List<BluetoothDeviceInfo> devices) {}
+
+        // 断线后正在进行第attempt次重连
+        default void onReconnecting(int attempt) {}
+
+        // 重连成功，timeToReadyMs为从断线到可以发送命令的时间
+        default void onReconnected(int attempts, long timeToReadyMs) {}
+
+        // 收到新的姿态遥测帧，最新一帧可用 poses.latest() 读取
+        default void onPoseUpdated(PoseRingBuffer poses) {}
+
+        // 急停后机械臂已静止，stopToStillMs为从发出急停到收到静止姿态的时间（需要开启遥测）
+        default void onHaltSettled(long stopToStillMs) {}
     }
 
     // 单例模式构造函数 - 私有
     private BluetoothManager(Context context) {
         this.context = context.getApplicationContext(); // 使用ApplicationContext避免内存泄漏
-        this.discoveredDevices = new ArrayList<>();
         this.bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
 
+        this.ioThread = new HandlerThread("ble-io", Process.THREAD_PRIORITY_FOREGROUND);
+        this.ioThread.start();
+        this.handler = new Handler(ioThread.getLooper());
+
+        this.ioScheduler = new CommandPipeline.Scheduler() {
+            @Override
+            public void execute(Runnable task) {
+                if (Looper.myLooper() == ioThread.getLooper()) {
+                    task.run();
+                } else {
+                    handler.post(task);
+                }
+            }
+
+            @Override
+            public void schedule(Runnable task, long delayMs) {
+                handler.postDelayed(task, delayMs);
+            }
+        };
+        this.pipeline = new CommandPipeline(transport, ioScheduler);
+        this.poseEvent = l -> l.onPoseUpdated(pipeline.getPoseBuffer());
+        this.pipeline.setListener(new CommandPipeline.Listener() {
+            @Override
+            public void onReplyReceived(String reply) {
+                if (trace) {
+                    Log.v(TAG, "Received data: " + reply);
+                }
+                listeners.dispatch(DATA_RECEIVED, reply);
+            }
+
+            @Override
+            public void onHandshake(String reply, boolean binary, boolean telemetry) {
+                Log.d(TAG, "Firmware handshake: " + reply + ", binary mode: " + binary + ", telemetry: " + telemetry);
+            }
+
+            @Override
+            public void onPoseUpdated(PoseRingBuffer poses) {
+                dispatch(poseEvent);
+            }
+
+            @Override
+            public void onHaltSettled(long stopToStillMs) {
+                Log.d(TAG, "Halt settled in " + stopToStillMs + " ms");
+                dispatch(l -> l.onHaltSettled(stopToStillMs));
+            }
+        });
+
         if (bluetoothAdapter != null && bluetoothAdapter.isEnabled()) {
             this.bluetoothLeScanner = bluetoothAdapter.getBluetoothLeScanner();
         }
+
+        SharedPreferences prefs = this.context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.lastDeviceAddress = prefs.getString(PREF_LAST_DEVICE, null);
     }
 
     // 获取单例实例
@@ -76,15 +252,28 @@ public class BluetoothManager {
         }
         // 更新context以防Activity切换
         instance.context = context.getApplicationContext();
+        instance.invalidatePermissions();
         return instance;
     }
 
-    public void setListener(BluetoothManagerListener listener) {
-        this.listener = listener;
-        // 如果使用单例，同时更新单例的listener
-        if (instance != null) {
-            instance.listener = listener;
-        }
+    // 注册订阅者，回调在主线程执行
+    public void addListener(BluetoothManagerListener listener) {
+        addListener(listener, mainExecutor);
+    }
+
+    // 注册订阅者，回调在指定的executor执行（高频事件可使用 ListenerDispatcher.DIRECT_EXECUTOR，
+    // 在I/O线程直接回调，不为每条回复/遥测帧创建任务）
+    public void addListener(BluetoothManagerListener listener, Executor executor) {
+        listeners.add(listener, executor);
+    }
+
+    public void removeListener(BluetoothManagerListener listener) {
+        listeners.remove(listener);
+    }
+
+    // 把事件分发给所有订阅者
+    private void dispatch(ListenerDispatcher.Event<BluetoothManagerListener> event) {
+        listeners.dispatch(event);
     }
 
     public boolean isBluetoothEnabled() {
@@ -100,11 +289,24 @@ public class BluetoothManager {
     }
 
     public List<BluetoothDeviceInfo> getDiscoveredDevices() {
-        return new ArrayList<>(discoveredDevices);
+        return deviceRegistry.snapshot();
     }
 
-    // 检查权限
+    // 权限可能已变化（界面恢复、权限请求返回），下次使用时重新检查
+    public void invalidatePermissions() {
+        permissionsChecked = false;
+    }
+
+    // 检查权限（使用缓存结果）
     private boolean hasRequiredPermissions() {
+        if (!permissionsChecked) {
+            permissionsGranted = checkPermissions();
+            permissionsChecked = true;
+        }
+        return permissionsGranted;
+    }
+
+    private boolean checkPermissions() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
             return ActivityCompat.checkSelfPermission(context, Manifest.permission.BLUETOOTH_SCAN) == PackageManager.PERMISSION_GRANTED &&
                     ActivityCompat.checkSelfPermission(context, Manifest.permission.BLUETOOTH_CONNECT) == PackageManager.PERMISSION_GRANTED;
@@ -113,19 +315,50 @@ public class BluetoothManager {
         }
     }
 
-    // 开始扫描BLE设备
+    // 开始扫描BLE设备（不过滤，列出周围所有设备）
     public void startScan() {
+        ioScheduler.execute(() -> {
+            connectOnFirstMatch = false;
+            startScanInternal(null, null);
+        });
+    }
+
+    // 只扫描机械臂：按服务UUID硬件过滤，低延迟模式；connectOnFirstMatch为true时发现后立即停止扫描并连接
+    public void startArmScan(boolean connectOnFirstMatch) {
+        ioScheduler.execute(() -> startArmScanInternal(connectOnFirstMatch));
+    }
+
+    private void startArmScanInternal(boolean connectOnFirstMatch) {
+        this.connectOnFirstMatch = connectOnFirstMatch;
+
+        ScanFilter filter = new ScanFilter.Builder()
+                .setServiceUuid(new ParcelUuid(UUID_SERVICE))
+                .build();
+        ScanSettings settings = new ScanSettings.Builder()
+                .setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY)
+                .setReportDelay(connectOnFirstMatch || !isScanBatchingSupported() ? 0 : scanReportDelayMs)
+                .build();
+        startScanInternal(Collections.singletonList(filter), settings);
+    }
+
+    // 不支持扫描批处理的适配器上，非0的上报间隔会使扫描以 SCAN_FAILED_FEATURE_UNSUPPORTED 失败，此时退回逐条上报
+    private boolean isScanBatchingSupported() {
+        return bluetoothAdapter != null && bluetoothAdapter.isOffloadedScanBatchingSupported();
+    }
+
+    // 批量上报间隔（0为逐条上报），用于长时间扫描时降低回调频率；适配器不支持批处理时忽略
+    public void setScanReportDelay(long reportDelayMs) {
+        ioScheduler.execute(() -> this.scanReportDelayMs = reportDelayMs);
+    }
+
+    private void startScanInternal(List<ScanFilter> filters, ScanSettings settings) {
         if (!isBluetoothEnabled()) {
-            if (listener != null) {
-                listener.onError("Bluetooth not enabled");
-            }
+            dispatch(l -> l.onError("Bluetooth not enabled"));
             return;
         }
 
         if (!hasRequiredPermissions()) {
-            if (listener != null) {
-                listener.onError("Missing required permissions");
-            }
+            dispatch(l -> l.onError("Missing required permissions"));
             return;
         }
 
@@ -139,39 +372,39 @@ public class BluetoothManager {
             bluetoothLeScanner = bluetoothAdapter.getBluetoothLeScanner();
             if (bluetoothLeScanner == null) {
                 Log.e(TAG, "Cannot get BluetoothLeScanner");
-                if (listener != null) {
-                    listener.onError("Cannot initialize Bluetooth scanner");
-                }
+                dispatch(l -> l.onError("Cannot initialize Bluetooth scanner"));
                 return;
             }
         }
 
-        discoveredDevices.clear();
+        deviceRegistry.clear();
+        deviceRegistry.takeDirty();
         isScanning = true;
 
         try {
-            Log.d(TAG, "Starting BLE device scan");
-            bluetoothLeScanner.startScan(scanCallback);
+            Log.d(TAG, "Starting BLE device scan, filtered: " + (filters != null));
+            if (filters != null) {
+                bluetoothLeScanner.startScan(filters, settings, scanCallback);
+            } else {
+                bluetoothLeScanner.startScan(scanCallback);
+            }
 
             // 10秒后自动停止扫描
-            scanStopRunnable = new Runnable() {
-                @Override
-                public void run() {
-                    stopScan();
-                }
-            };
-            handler.postDelayed(scanStopRunnable, 10000);
+            scanStopRunnable = this::stopScanInternal;
+            handler.postDelayed(scanStopRunnable, SCAN_TIMEOUT_MS);
         } catch (Exception e) {
             Log.e(TAG, "Failed to start scan: " + e.getMessage());
             isScanning = false;
-            if (listener != null) {
-                listener.onError("Failed to start scan: " + e.getMessage());
-            }
+            dispatch(l -> l.onError("Failed to start scan: " + e.getMessage()));
         }
     }
 
     // 停止扫描
     public void stopScan() {
+        ioScheduler.execute(this::stopScanInternal);
+    }
+
+    private void stopScanInternal() {
         if (!isScanning) {
             return;
         }
@@ -192,9 +425,37 @@ public class BluetoothManager {
             }
         }
 
-        Log.d(TAG, "Stopped scan, found " + discoveredDevices.size() + " devices");
-        if (listener != null) {
-            listener.onScanFinished();
+        // 扫描结束前把最后的变化推给界面
+        handler.removeCallbacks(deviceRefreshRunnable);
+        deviceRefreshPending = false;
+        if (deviceRegistry.takeDirty()) {
+            List<BluetoothDeviceInfo> devices = deviceRegistry.snapshot();
+            dispatch(l -> l.onDevicesUpdated(devices));
+        }
+
+        Log.d(TAG, "Stopped scan, found " + deviceRegistry.size() + " devices");
+        dispatch(l -> l.onScanFinished());
+    }
+
+    private void scheduleDeviceListRefresh() {
+        if (!deviceRefreshPending && isScanning) {
+            deviceRefreshPending = true;
+            handler.postDelayed(deviceRefreshRunnable, DEVICE_LIST_REFRESH_MS);
+        }
+    }
+
+    // 合并刷新：移除过期设备，有变化时通知界面
+    private void refreshDeviceList() {
+        deviceRefreshPending = false;
+        deviceRegistry.removeStale(SystemClock.elapsedRealtime(), DEVICE_STALE_TIMEOUT_MS);
+        if (deviceRegistry.takeDirty()) {
+            List<BluetoothDeviceInfo> devices = deviceRegistry.snapshot();
+            dispatch(l -> l.onDevicesUpdated(devices));
+        }
+        // 扫描期间持续检查，让停止广播的设备也能被移除
+        if (isScanning && deviceRegistry.size() > 0) {
+            deviceRefreshPending = true;
+            handler.postDelayed(deviceRefreshRunnable, DEVICE_LIST_REFRESH_MS);
         }
     }
 
@@ -202,44 +463,44 @@ public class BluetoothManager {
     private ScanCallback scanCallback = new ScanCallback() {
         @Override
         public void onScanResult(int callbackType, ScanResult result) {
+            // 扫描回调在主线程，转到I/O线程处理
+            handler.post(() -> handleScanResult(result));
+        }
+
+        @Override
+        public void onBatchScanResults(List<ScanResult> results) {
+            handler.post(() -> {
+                for (ScanResult result : results) {
+                    handleScanResult(result);
+                }
+            });
+        }
+
+        private void handleScanResult(ScanResult result) {
             try {
                 BluetoothDevice device = result.getDevice();
                 int rssi = result.getRssi();
+                long now = SystemClock.elapsedRealtime();
 
-                // 获取设备名称（需要权限检查）
-                String deviceName = null;
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
-                    if (ActivityCompat.checkSelfPermission(context, Manifest.permission.BLUETOOTH_CONNECT) == PackageManager.PERMISSION_GRANTED) {
-                        deviceName = device.getName();
-                    }
-                } else {
-                    deviceName = device.getName();
-                }
-
-                // 如果无法获取名称，使用地址作为名称
-                if (deviceName == null || deviceName.isEmpty()) {
-                    deviceName = "Unknown Device";
-                }
+                // 已知设备只原地更新信号强度
+                if (!deviceRegistry.update(device.getAddress(), rssi, now)) {
+                    BluetoothDeviceInfo deviceInfo = new BluetoothDeviceInfo(device, rssi, context);
+                    deviceRegistry.add(deviceInfo, now);
+                    Log.d(TAG, "Found device: " + deviceInfo.getName() + " (" + device.getAddress() + ")");
 
-                BluetoothDeviceInfo deviceInfo = new BluetoothDeviceInfo(device, rssi);
+                    BluetoothDeviceInfo found = new BluetoothDeviceInfo(deviceInfo);
+                    dispatch(l -> l.onDeviceFound(found));
 
-                // 避免重复添加同一设备
-                boolean exists = false;
-                for (BluetoothDeviceInfo existingDevice : discoveredDevices) {
-                    if (existingDevice.getAddress().equals(deviceInfo.getAddress())) {
-                        exists = true;
-                        break;
+                    // 快速连接：第一个匹配的机械臂出现时立即停止扫描并连接
+                    if (connectOnFirstMatch && isScanning) {
+                        connectOnFirstMatch = false;
+                        stopScanInternal();
+                        connectToDeviceInternal(device);
+                        return;
                     }
                 }
 
-                if (!exists) {
-                    discoveredDevices.add(deviceInfo);
-                    Log.d(TAG, "Found device: " + deviceName + " (" + device.getAddress() + ")");
-
-                    if (listener != null) {
-                        listener.onDeviceFound(deviceInfo);
-                    }
-                }
+                scheduleDeviceListRefresh();
             } catch (Exception e) {
                 Log.e(TAG, "Error processing scan result: " + e.getMessage());
             }
@@ -248,68 +509,118 @@ public class BluetoothManager {
         @Override
         public void onScanFailed(int errorCode) {
             Log.e(TAG, "Scan failed, error code: " + errorCode);
-            isScanning = false;
-            if (listener != null) {
-                String errorMsg = "Scan failed: ";
-                switch (errorCode) {
-                    case SCAN_FAILED_ALREADY_STARTED:
-                        errorMsg += "Scan already started";
-                        break;
-                    case SCAN_FAILED_APPLICATION_REGISTRATION_FAILED:
-                        errorMsg += "Application registration failed";
-                        break;
-                    case SCAN_FAILED_INTERNAL_ERROR:
-                        errorMsg += "Internal error";
-                        break;
-                    case SCAN_FAILED_FEATURE_UNSUPPORTED:
-                        errorMsg += "Feature not supported";
-                        break;
-                    default:
-                        errorMsg += "Unknown error " + errorCode;
-                }
-                listener.onError(errorMsg);
+            handler.post(() -> isScanning = false);
+            String errorMsg = "Scan failed: ";
+            switch (errorCode) {
+                case SCAN_FAILED_ALREADY_STARTED:
+                    errorMsg += "Scan already started";
+                    break;
+                case SCAN_FAILED_APPLICATION_REGISTRATION_FAILED:
+                    errorMsg += "Application registration failed";
+                    break;
+                case SCAN_FAILED_INTERNAL_ERROR:
+                    errorMsg += "Internal error";
+                    break;
+                case SCAN_FAILED_FEATURE_UNSUPPORTED:
+                    errorMsg += "Feature not supported";
+                    break;
+                default:
+                    errorMsg += "Unknown error " + errorCode;
             }
+            String message = errorMsg;
+            dispatch(l -> l.onError(message));
         }
     };
 
     // 连接到指定设备
     public void connectToDevice(BluetoothDevice device) {
+        ioScheduler.execute(() -> connectToDeviceInternal(device));
+    }
+
+    private void connectToDeviceInternal(BluetoothDevice device) {
         if (!hasRequiredPermissions()) {
-            if (listener != null) {
-                listener.onError("Connection permission missing");
-            }
+            dispatch(l -> l.onError("Connection permission missing"));
             return;
         }
 
-        if (bluetoothGatt != null) {
-            bluetoothGatt.close();
-            bluetoothGatt = null;
-        }
+        stopReconnect();
+        closeGatt();
+        userDisconnected = false;
+        rememberDevice(device.getAddress());
 
         try {
             Log.d(TAG, "Connecting to device: " + device.getAddress());
-            bluetoothGatt = device.connectGatt(context, false, gattCallback);
+            bluetoothGatt = openGatt(device, false);
         } catch (Exception e) {
             Log.e(TAG, "Connection failed: " + e.getMessage());
-            if (listener != null) {
-                listener.onError("Connection failed: " + e.getMessage());
-            }
+            dispatch(l -> l.onError("Connection failed: " + e.getMessage()));
         }
     }
 
+    // Android 8.0及以上让GATT回调直接在I/O线程执行，更早的版本由 legacyGattCallback 转到I/O线程
+    private BluetoothGatt openGatt(BluetoothDevice device, boolean autoConnect) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            return device.connectGatt(context, autoConnect, gattCallback, BluetoothDevice.TRANSPORT_LE,
+                    BluetoothDevice.PHY_LE_1M_MASK, handler);
+        }
+        return device.connectGatt(context, autoConnect, legacyGattCallback, BluetoothDevice.TRANSPORT_LE);
+    }
+
+    // Android 8.0以下GATT回调在binder线程执行，转到I/O线程；通知数据先复制，特征值会被之后的通知覆盖
+    private final BluetoothGattCallback legacyGattCallback = new BluetoothGattCallback() {
+        @Override
+        public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
+            handler.post(() -> gattCallback.onConnectionStateChange(gatt, status, newState));
+        }
+
+        @Override
+        public void onServicesDiscovered(BluetoothGatt gatt, int status) {
+            handler.post(() -> gattCallback.onServicesDiscovered(gatt, status));
+        }
+
+        @Override
+        public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
+            handler.post(() -> gattCallback.onDescriptorWrite(gatt, descriptor, status));
+        }
+
+        @Override
+        public void onMtuChanged(BluetoothGatt gatt, int newMtu, int status) {
+            handler.post(() -> gattCallback.onMtuChanged(gatt, newMtu, status));
+        }
+
+        // 隐藏API（不能加@Override）
+        public void onConnectionUpdated(BluetoothGatt gatt, int interval, int latency, int timeout, int status) {
+            handler.post(() -> onConnectionParametersUpdated(interval, latency, status));
+        }
+
+        @Override
+        public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
+            byte[] value = characteristic.getValue();
+            handler.post(() -> onNotification(characteristic, value));
+        }
+
+        @Override
+        public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+            handler.post(() -> gattCallback.onCharacteristicWrite(gatt, characteristic, status));
+        }
+    };
+
     // GATT回调
     private BluetoothGattCallback gattCallback = new BluetoothGattCallback() {
         @Override
         public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
+            if (gatt != bluetoothGatt) {
+                // 已被替换的旧连接（例如超时放弃的重连尝试）
+                gatt.close();
+                return;
+            }
+
             if (newState == BluetoothProfile.STATE_CONNECTED) {
                 Log.d(TAG, "Connected to GATT server");
                 isConnected = true;
+                handler.removeCallbacks(reconnectTimeoutRunnable);
 
-                handler.post(() -> {
-                    if (listener != null) {
-                        listener.onConnectionStateChanged(true, gatt.getDevice().getAddress());
-                    }
-                });
+                dispatch(l -> l.onConnectionStateChanged(true, gatt.getDevice().getAddress()));
 
                 // 发现服务
                 try {
@@ -319,14 +630,23 @@ public class BluetoothManager {
                 }
 
             } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
-                Log.d(TAG, "Disconnected from GATT server");
-                isConnected = false;
+                Log.d(TAG, "Disconnected from GATT server, status: " + status);
+                boolean wasConnected = isConnected;
+                resetLinkState();
 
-                handler.post(() -> {
-                    if (listener != null) {
-                        listener.onConnectionStateChanged(false, gatt.getDevice().getAddress());
-                    }
-                });
+                // 非用户主动断开时在后台重连
+                boolean failedAttempt = reconnecting && !wasConnected;
+                if (failedAttempt) {
+                    handler.removeCallbacks(reconnectTimeoutRunnable);
+                    closeGatt();
+                    scheduleReconnectAttempt();
+                } else if (wasConnected && !userDisconnected && lastDeviceAddress != null) {
+                    startReconnect();
+                }
+
+                if (!failedAttempt) {
+                    dispatch(l -> l.onConnectionStateChanged(false, gatt.getDevice().getAddress()));
+                }
             }
         }
 
@@ -335,69 +655,104 @@ public class BluetoothManager {
             if (status == BluetoothGatt.GATT_SUCCESS) {
                 Log.d(TAG, "Service discovery successful");
 
-                BluetoothGattService service = gatt.getService(UUID.fromString(SERVICE_UUID));
+                BluetoothGattService service = gatt.getService(UUID_SERVICE);
                 if (service != null) {
-                    rxCharacteristic = service.getCharacteristic(UUID.fromString(CHAR_UUID_RX));
-                    txCharacteristic = service.getCharacteristic(UUID.fromString(CHAR_UUID_TX));
+                    rxCharacteristic = service.getCharacteristic(UUID_RX);
+                    txCharacteristic = service.getCharacteristic(UUID_TX);
 
                     if (rxCharacteristic != null && txCharacteristic != null) {
                         Log.d(TAG, "Found required characteristics");
 
-                        // 启用通知
-                        try {
-                            gatt.setCharacteristicNotification(txCharacteristic, true);
-                        } catch (Exception e) {
-                            Log.e(TAG, "Failed to set notification: " + e.getMessage());
+                        // 启用通知（本地注册 + 写CCCD），完成后在 onDescriptorWrite 中协商MTU
+                        transport.attach(gatt, rxCharacteristic);
+                        if (!enableNotifications(gatt)) {
+                            requestMtu(gatt);
                         }
 
                     } else {
                         Log.e(TAG, "Required characteristics not found");
-                        handler.post(() -> {
-                            if (listener != null) {
-                                listener.onError("Device not compatible");
-                            }
-                        });
+                        dispatch(l -> l.onError("Device not compatible"));
                     }
                 } else {
                     Log.e(TAG, "Required service not found");
-                    handler.post(() -> {
-                        if (listener != null) {
-                            listener.onError("Device not compatible");
-                        }
-                    });
+                    dispatch(l -> l.onError("Device not compatible"));
                 }
             }
         }
 
         @Override
-        public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
-            if (characteristic.getUuid().equals(UUID.fromString(CHAR_UUID_TX))) {
-                byte[] data = characteristic.getValue();
-                String receivedData = new String(data);
-                Log.d(TAG, "Received data: " + receivedData);
-
-                handler.post(() -> {
-                    if (listener != null) {
-                        listener.onDataReceived(receivedData);
-                    }
-                });
+        public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
+            if (status != BluetoothGatt.GATT_SUCCESS) {
+                Log.e(TAG, "Failed to enable notifications, status: " + status);
+            }
+            requestMtu(gatt);
+        }
+
+        @Override
+        public void onMtuChanged(BluetoothGatt gatt, int newMtu, int status) {
+            if (status == BluetoothGatt.GATT_SUCCESS) {
+                transport.setMtu(newMtu);
+                Log.d(TAG, "MTU negotiated: " + newMtu);
+            } else {
+                Log.e(TAG, "MTU negotiation failed, status: " + status);
+            }
+            onLinkReady();
+        }
+
+        @Override
+        public void onPhyUpdate(BluetoothGatt gatt, int newTxPhy, int newRxPhy, int status) {
+            if (status == BluetoothGatt.GATT_SUCCESS) {
+                txPhy = newTxPhy;
+                rxPhy = newRxPhy;
+                Log.d(TAG, "PHY updated: tx=" + newTxPhy + ", rx=" + newRxPhy);
+                notifyLinkParametersChanged();
             }
         }
 
+        // 隐藏API：连接参数更新时由系统回调（不能加@Override）
+        public void onConnectionUpdated(BluetoothGatt gatt, int interval, int latency, int timeout, int status) {
+            onConnectionParametersUpdated(interval, latency, status);
+        }
+
+        @Override
+        public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
+            onNotification(characteristic, characteristic.getValue());
+        }
+
         @Override
         public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
             if (status == BluetoothGatt.GATT_SUCCESS) {
-                Log.d(TAG, "Write successful");
+                if (trace) {
+                    Log.v(TAG, "Write successful");
+                }
             } else {
                 Log.e(TAG, "Write failed, status: " + status);
             }
+
+            // 上一条写入完成，继续发送队列中的下一条
+            transport.onWriteComplete(status == BluetoothGatt.GATT_SUCCESS);
         }
     };
 
-    // 发送数据
+    private void onConnectionParametersUpdated(int interval, int latency, int status) {
+        if (status == BluetoothGatt.GATT_SUCCESS) {
+            connectionIntervalMs = interval * CONNECTION_INTERVAL_UNIT_MS;
+            connectionLatency = latency;
+            Log.d(TAG, "Connection updated: interval=" + connectionIntervalMs + "ms, latency=" + latency);
+            notifyLinkParametersChanged();
+        }
+    }
+
+    private void onNotification(BluetoothGattCharacteristic characteristic, byte[] value) {
+        if (UUID_TX.equals(characteristic.getUuid())) {
+            transport.onNotification(value);
+        }
+    }
+
+    // 发送数据：加入写入队列，由队列按回调节奏逐条写出
     public boolean sendData(String data) {
-        if (!isConnected || bluetoothGatt == null || rxCharacteristic == null) {
-            Log.e(TAG, "Cannot send data, not connected. isConnected=" + isConnected + ", bluetoothGatt=" + bluetoothGatt + ", rxCharacteristic=" + rxCharacteristic);
+        if (!isConnected || !transport.isAttached()) {
+            Log.e(TAG, "Cannot send data, not connected. isConnected=" + isConnected + ", attached=" + transport.isAttached());
             return false;
         }
 
@@ -406,19 +761,586 @@ public class BluetoothManager {
             return false;
         }
 
+        markActive();
+        return afterOffer(pipeline.sendData(data));
+    }
+
+    // 设置单个关节，根据握手结果选择二进制帧或文本命令
+    public boolean sendSetJoint(int jointId, int angle) {
+        if (!canSend()) {
+            return false;
+        }
+
+        markActive();
+        return afterOffer(pipeline.sendSetJoint(jointId, angle));
+    }
+
+    // 设置所有关节
+    public boolean sendSetAll(int a, int b, int c, int g) {
+        if (!canSend()) {
+            return false;
+        }
+
+        markActive();
+        return afterOffer(pipeline.sendSetAll(a, b, c, g));
+    }
+
+    // 批量设置多个关节，打包在同一次写入中发送
+    public boolean sendSetJoints(int[] jointIds, int[] angles, int count) {
+        if (!canSend()) {
+            return false;
+        }
+
+        markActive();
+        return afterOffer(pipeline.sendSetJoints(jointIds, angles, count));
+    }
+
+    // 批量发送多条文本命令
+    public boolean sendBatch(String... commands) {
+        if (!canSend()) {
+            return false;
+        }
+
+        markActive();
+        return afterOffer(pipeline.sendBatch(commands));
+    }
+
+    // 发送文本命令并等待固件应答（固件对每条蓝牙命令回复一行，按顺序匹配）
+    public CommandFuture sendCommand(String command) {
+        return sendCommand(command, DEFAULT_COMMAND_TIMEOUT_MS);
+    }
+
+    public CommandFuture sendCommand(String command, long timeoutMs) {
+        if (!canSend()) {
+            return failedCommand(command);
+        }
+
+        markActive();
+        return pipeline.sendCommand(command, timeoutMs);
+    }
+
+    // 设置单个关节并等待结果（二进制模式按序号匹配应答）
+    public CommandFuture sendSetJointForResult(int jointId, int angle) {
+        if (!canSend()) {
+            return failedCommand(CommandCodec.textSetJoint(jointId, angle));
+        }
+
+        markActive();
+        return pipeline.sendSetJointForResult(jointId, angle, DEFAULT_COMMAND_TIMEOUT_MS);
+    }
+
+    // 设置所有关节并等待结果
+    public CommandFuture sendSetAllForResult(int a, int b, int c, int g) {
+        if (!canSend()) {
+            return failedCommand(CommandCodec.textSetAll(a, b, c, g));
+        }
+
+        markActive();
+        return pipeline.sendSetAllForResult(a, b, c, g, DEFAULT_COMMAND_TIMEOUT_MS);
+    }
+
+    // 同步运动：各关节同时到达，durationMs为0时按最慢的关节
+    public CommandFuture sendSetAllSyncForResult(int a, int b, int c, int g, int durationMs) {
+        if (!canSend()) {
+            return failedCommand(CommandCodec.textSetAllSync(a, b, c, g, durationMs));
+        }
+
+        markActive();
+        return pipeline.sendSetAllSyncForResult(a, b, c, g, durationMs, DEFAULT_COMMAND_TIMEOUT_MS);
+    }
+
+    // 上传运动程序到固件，save为true时同时保存到固件NVS（断电后保留）
+    public CommandFuture uploadProgram(MotionProgram program, boolean save) {
+        if (!canSend()) {
+            return failedCommand(CommandCodec.PROGRAM_END);
+        }
+
+        markActive();
+        return pipeline.uploadProgram(program, save, DEFAULT_COMMAND_TIMEOUT_MS);
+    }
+
+    // 运行固件中的运动程序，loops为0表示无限循环
+    public CommandFuture runProgram(int loops) {
+        if (!canSend()) {
+            return failedCommand(CommandCodec.PROGRAM_RUN);
+        }
+
+        markActive();
+        return pipeline.runProgram(loops, DEFAULT_COMMAND_TIMEOUT_MS);
+    }
+
+    public CommandFuture pauseProgram() {
+        if (!canSend()) {
+            return failedCommand(CommandCodec.PROGRAM_PAUSE);
+        }
+
+        markActive();
+        return pipeline.pauseProgram(DEFAULT_COMMAND_TIMEOUT_MS);
+    }
+
+    public CommandFuture resumeProgram() {
+        if (!canSend()) {
+            return failedCommand(CommandCodec.PROGRAM_RESUME);
+        }
+
+        markActive();
+        return pipeline.resumeProgram(DEFAULT_COMMAND_TIMEOUT_MS);
+    }
+
+    public CommandFuture abortProgram() {
+        if (!canSend()) {
+            return failedCommand(CommandCodec.PROGRAM_ABORT);
+        }
+
+        markActive();
+        return pipeline.abortProgram(DEFAULT_COMMAND_TIMEOUT_MS);
+    }
+
+    // 急停：插队到所有待发命令之前单独写出，丢弃尚未发出的运动命令，机械臂停在当前位置
+    public CommandFuture halt() {
+        if (!canSend()) {
+            return failedCommand(CommandCodec.HALT);
+        }
+
+        markActive();
+        return pipeline.sendHalt(DEFAULT_COMMAND_TIMEOUT_MS);
+    }
+
+    // 握手结果：固件是否支持急停命令
+    public boolean isHaltSupported() {
+        return pipeline.isHaltSupported();
+    }
+
+    // 握手结果：固件是否支持运动程序
+    public boolean isProgramSupported() {
+        return pipeline.isProgramSupported();
+    }
+
+    // 轨迹路点入队，成功应答为 "OK <队列空位>"；连续发送时使用 createTrajectoryStream 做流控
+    public CommandFuture sendTrajectoryPoint(int a, int b, int c, int g, int durationMs) {
+        if (!canSend()) {
+            return failedCommand(CommandCodec.textTrajectoryPoint(a, b, c, g, durationMs));
+        }
+
+        markActive();
+        return pipeline.sendTrajectoryPoint(a, b, c, g, durationMs, DEFAULT_COMMAND_TIMEOUT_MS);
+    }
+
+    // 新建基于信用流控的轨迹流，使用前调用 start()
+    public TrajectoryStream createTrajectoryStream() {
+        return new TrajectoryStream(new TrajectoryStream.Sink() {
+            @Override
+            public CommandFuture sendTrajectoryPoint(int a, int b, int c, int g, int durationMs) {
+                return BluetoothManager.this.sendTrajectoryPoint(a, b, c, g, durationMs);
+            }
+
+            @Override
+            public CommandFuture sendCommand(String command) {
+                return BluetoothManager.this.sendCommand(command);
+            }
+        });
+    }
+
+    // 设置单个关节的速度（°/s），该关节的逐步移动和曲线运动都按此速度，其他关节不受影响
+    public CommandFuture setJointSpeed(int jointId, int speed) {
+        return sendCommand(CommandCodec.textSetJointSpeed(jointId, speed));
+    }
+
+    // 查询各关节速度，回复用 CommandCodec.parseJointSpeeds 解析
+    public CommandFuture queryJointSpeeds() {
+        return sendCommand(CommandCodec.SPEED_STATUS);
+    }
+
+    // 握手结果：固件是否支持同步运动
+    public boolean isSyncSupported() {
+        return pipeline.isSyncSupported();
+    }
+
+    // 握手结果：固件是否支持轨迹队列
+    public boolean isTrajectorySupported() {
+        return pipeline.isTrajectorySupported();
+    }
+
+    private static CommandFuture failedCommand(String command) {
+        CommandFuture future = new CommandFuture(command);
+        future.fail(new IOException("Not connected"));
+        return future;
+    }
+
+    // 往返延迟统计（所有发出的命令，包括不等待结果的）
+    public LatencyHistogram getLatencyHistogram() {
+        return pipeline.getLatencyHistogram();
+    }
+
+    private boolean afterOffer(boolean accepted) {
+        if (!accepted) {
+            Log.e(TAG, "Write queue full, command dropped");
+        }
+        return accepted;
+    }
+
+    public boolean isBinaryMode() {
+        return pipeline.isBinaryMode();
+    }
+
+    // 设置姿态遥测推送间隔（0关闭），已连接时立即下发，之后每次握手自动恢复
+    public void setTelemetryInterval(int intervalMs) {
+        pipeline.setTelemetryInterval(intervalMs);
+    }
+
+    public int getTelemetryInterval() {
+        return pipeline.getTelemetryInterval();
+    }
+
+    // 遥测是否附带电位器实测角度（需要固件接有电位器）
+    public void setTelemetryFeedback(boolean enable) {
+        pipeline.setTelemetryFeedback(enable);
+    }
+
+    public boolean isTelemetrySupported() {
+        return pipeline.isTelemetrySupported();
+    }
+
+    public PoseRingBuffer getPoseBuffer() {
+        return pipeline.getPoseBuffer();
+    }
+
+    public int getMtu() {
+        return transport.getMtu();
+    }
+
+    // 单次写入可携带的最大字节数
+    public int getMaxPayload() {
+        return transport.getMaxPayload();
+    }
+
+    // 写入TX特征值的CCCD以开启通知，返回false表示无需等待 onDescriptorWrite
+    private boolean enableNotifications(BluetoothGatt gatt) {
+        try {
+            gatt.setCharacteristicNotification(txCharacteristic, true);
+            BluetoothGattDescriptor cccd = txCharacteristic.getDescriptor(UUID_CCCD);
+            if (cccd == null) {
+                return false;
+            }
+            cccd.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
+            return gatt.writeDescriptor(cccd);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to set notification: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // 协商最大MTU，完成后在 onMtuChanged 中开始写入
+    private void requestMtu(BluetoothGatt gatt) {
+        boolean mtuRequested = false;
+        try {
+            mtuRequested = gatt.requestMtu(REQUEST_MTU);
+        } catch (Exception e) {
+            Log.e(TAG, "MTU request failed: " + e.getMessage());
+        }
+        if (!mtuRequested) {
+            onLinkReady();
+        }
+    }
+
+    // MTU协商结束：开始写入并进行版本/能力握手，旧固件不回复时保持文本协议
+    private void onLinkReady() {
+        trace = Log.isLoggable(TAG, Log.VERBOSE);
+        transport.setReady(true);
+        openJournal();
+        pipeline.onLinkReady();
+
+        if (reconnecting) {
+            reconnecting = false;
+            reconnectCount++;
+            lastTimeToReadyMs = SystemClock.elapsedRealtime() - disconnectTime;
+            int attempts = reconnectAttempt;
+            long timeToReady = lastTimeToReadyMs;
+            Log.d(TAG, "Reconnected after " + attempts + " attempts, " + timeToReady + "ms to ready");
+            dispatch(l -> l.onReconnected(attempts, timeToReady));
+        }
+    }
+
+    private void rememberDevice(String address) {
+        lastDeviceAddress = address;
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .edit()
+                .putString(PREF_LAST_DEVICE, address)
+                .apply();
+    }
+
+    // 开始断线重连
+    private void startReconnect() {
+        reconnecting = true;
+        reconnectAttempt = 0;
+        disconnectTime = SystemClock.elapsedRealtime();
+        closeGatt();
+        handler.post(reconnectRunnable);
+    }
+
+    private void stopReconnect() {
+        reconnecting = false;
+        handler.removeCallbacks(reconnectRunnable);
+        handler.removeCallbacks(reconnectTimeoutRunnable);
+    }
+
+    private void scheduleReconnectAttempt() {
+        long delay = Math.min(RECONNECT_BASE_DELAY_MS << Math.min(reconnectAttempt - 1, 16), RECONNECT_MAX_DELAY_MS);
+        handler.postDelayed(reconnectRunnable, delay);
+    }
+
+    // 一次重连尝试：前几次直连（连接更快），之后使用autoConnect由系统在设备出现时连接
+    private void attemptReconnect() {
+        if (!reconnecting || lastDeviceAddress == null || !hasRequiredPermissions()) {
+            return;
+        }
+
+        reconnectAttempt++;
+        totalReconnectAttempts++;
+        boolean autoConnect = reconnectAttempt > MAX_DIRECT_ATTEMPTS;
+
         try {
-            rxCharacteristic.setValue(data.getBytes());
-            boolean result = bluetoothGatt.writeCharacteristic(rxCharacteristic);
-            Log.d(TAG, "Send data: " + data + ", result: " + result);
-            return result;
+            closeGatt();
+            BluetoothDevice device = bluetoothAdapter.getRemoteDevice(lastDeviceAddress);
+            Log.d(TAG, "Reconnect attempt " + reconnectAttempt + (autoConnect ? " (autoConnect)" : " (direct)"));
+            bluetoothGatt = openGatt(device, autoConnect);
         } catch (Exception e) {
-            Log.e(TAG, "Send data exception: " + e.getMessage());
+            Log.e(TAG, "Reconnect attempt failed: " + e.getMessage());
+        }
+
+        if (!autoConnect) {
+            handler.postDelayed(reconnectTimeoutRunnable, DIRECT_CONNECT_TIMEOUT_MS);
+        }
+
+        int attempt = reconnectAttempt;
+        dispatch(l -> l.onReconnecting(attempt));
+    }
+
+    // 直连超时：放弃本次尝试并退避后重试
+    private void onReconnectAttemptTimeout() {
+        if (!reconnecting || isConnected) {
+            return;
+        }
+        Log.d(TAG, "Reconnect attempt " + reconnectAttempt + " timed out");
+        closeGatt();
+        scheduleReconnectAttempt();
+    }
+
+    private void closeGatt() {
+        if (bluetoothGatt != null) {
+            try {
+                bluetoothGatt.close();
+            } catch (Exception e) {
+                Log.e(TAG, "Close failed: " + e.getMessage());
+            }
+            bluetoothGatt = null;
+        }
+    }
+
+    // 连接断开时重置链路状态
+    private void resetLinkState() {
+        isConnected = false;
+        transport.detach();
+        highPerformance = false;
+        handler.removeCallbacks(idleRunnable);
+        pipeline.reset(new IOException("Disconnected"));
+        closeJournal();
+    }
+
+    // 为本次连接新建日志文件，并删除最旧的文件
+    private void openJournal() {
+        closeJournal();
+        File dir = getJournalDirectory();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.e(TAG, "Cannot create journal directory " + dir);
+            return;
+        }
+        List<File> files = getJournalFiles();
+        for (int i = 0; i <= files.size() - MAX_JOURNAL_FILES; i++) {
+            files.get(i).delete();
+        }
+        String name = "journal-" + new SimpleDateFormat("yyyyMMdd-HHmmss-SSS", Locale.US).format(new Date()) + ".bin";
+        journal = new CommandJournal(new File(dir, name));
+        pipeline.setJournal(journal);
+        Log.d(TAG, "Journal: " + journal.getFile());
+    }
+
+    private void closeJournal() {
+        if (journal != null) {
+            pipeline.setJournal(null);
+            journal.close();
+            Log.d(TAG, "Journal closed: " + journal.getRecordCount() + " records, "
+                    + journal.getDroppedCount() + " dropped");
+            journal = null;
+        }
+    }
+
+    public File getJournalDirectory() {
+        return new File(context.getFilesDir(), JOURNAL_DIR);
+    }
+
+    // 已保存的日志文件，按时间从旧到新排列
+    public List<File> getJournalFiles() {
+        File[] files = getJournalDirectory().listFiles((dir, name) -> name.endsWith(".bin"));
+        if (files == null) {
+            return new ArrayList<>();
+        }
+        Arrays.sort(files);
+        return new ArrayList<>(Arrays.asList(files));
+    }
+
+    // 回放日志中发出的写入，speed为1按原始节奏，大于1按倍速；需要已连接
+    public JournalReplayer replayJournal(File file, double speed, JournalReplayer.Listener listener) throws IOException {
+        List<CommandJournal.Record> records = JournalReplayer.readOutbound(file);
+        JournalReplayer replayer = new JournalReplayer(records, this::sendRaw, ioScheduler, speed);
+        replayer.setListener(listener);
+        Log.d(TAG, "Replaying " + records.size() + " writes from " + file + " at x" + speed);
+        replayer.start();
+        return replayer;
+    }
+
+    // 原样发送一次写入的内容（日志回放）
+    public boolean sendRaw(byte[] payload) {
+        if (!canSend()) {
+            return false;
+        }
+
+        markActive();
+        return afterOffer(pipeline.sendRaw(payload));
+    }
+
+    public boolean isReconnecting() {
+        return reconnecting;
+    }
+
+    public String getLastDeviceAddress() {
+        return lastDeviceAddress;
+    }
+
+    // 重连统计
+    public long getTotalReconnectAttempts() {
+        return totalReconnectAttempts;
+    }
+
+    public long getReconnectCount() {
+        return reconnectCount;
+    }
+
+    public long getLastTimeToReadyMs() {
+        return lastTimeToReadyMs;
+    }
+
+    private boolean canSend() {
+        if (!isConnected || !transport.isAttached()) {
+            Log.e(TAG, "Cannot send data, not connected");
             return false;
         }
+        return hasRequiredPermissions();
+    }
+
+    // 空闲超时设置，超时后恢复到 idlePriority（BALANCED 或 LOW_POWER）
+    public void setIdleTimeout(long timeoutMs) {
+        this.idleTimeoutMs = timeoutMs;
+    }
+
+    public void setIdlePriority(int priority) {
+        this.idlePriority = priority;
+    }
+
+    public double getConnectionIntervalMs() {
+        return connectionIntervalMs;
+    }
+
+    public int getTxPhy() {
+        return txPhy;
+    }
+
+    public int getRxPhy() {
+        return rxPhy;
+    }
+
+    public boolean isHighPerformance() {
+        return highPerformance;
+    }
+
+    // 有命令发送时切换到高优先级连接，并重新开始空闲计时（在I/O线程执行）
+    private void markActive() {
+        ioScheduler.execute(markActiveRunnable);
+    }
+
+    private void enterHighPerformance() {
+        BluetoothGatt gatt = bluetoothGatt;
+        if (gatt == null || !transport.isReady()) {
+            return;
+        }
+
+        if (!highPerformance) {
+            highPerformance = true;
+            try {
+                gatt.requestConnectionPriority(BluetoothGatt.CONNECTION_PRIORITY_HIGH);
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                    gatt.setPreferredPhy(BluetoothDevice.PHY_LE_2M_MASK, BluetoothDevice.PHY_LE_2M_MASK,
+                            BluetoothDevice.PHY_OPTION_NO_PREFERRED);
+                }
+                Log.d(TAG, "Switched to high priority connection");
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to request high priority: " + e.getMessage());
+            }
+        }
+
+        handler.removeCallbacks(idleRunnable);
+        handler.postDelayed(idleRunnable, idleTimeoutMs);
+    }
+
+    // 空闲超时：恢复为省电的连接间隔（2M PHY空口时间更短，保持不变）
+    private void enterIdleConnection() {
+        BluetoothGatt gatt = bluetoothGatt;
+        if (gatt == null || !highPerformance) {
+            return;
+        }
+
+        highPerformance = false;
+        try {
+            gatt.requestConnectionPriority(idlePriority);
+            Log.d(TAG, "Connection idle, priority restored to " + idlePriority);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to restore connection priority: " + e.getMessage());
+        }
+    }
+
+    private void notifyLinkParametersChanged() {
+        double interval = connectionIntervalMs;
+        int latency = connectionLatency;
+        int tx = txPhy;
+        int rx = rxPhy;
+        dispatch(l -> l.onLinkParametersChanged(interval, latency, tx, rx));
+    }
+
+    // 写入队列状态
+    public int getWriteQueueDepth() {
+        return pipeline.getWriteQueueDepth();
+    }
+
+    public long getWrittenCount() {
+        return pipeline.getWrittenCount();
+    }
+
+    public long getCoalescedCount() {
+        return pipeline.getCoalescedCount();
+    }
+
+    public long getDroppedCount() {
+        return pipeline.getDroppedCount();
     }
 
     // 断开连接
     public void disconnect() {
+        ioScheduler.execute(this::disconnectInternal);
+    }
+
+    private void disconnectInternal() {
+        userDisconnected = true;
+        stopReconnect();
         if (bluetoothGatt != null) {
             try {
                 bluetoothGatt.disconnect();
@@ -428,17 +1350,17 @@ public class BluetoothManager {
             }
             bluetoothGatt = null;
         }
-        isConnected = false;
+        resetLinkState();
         rxCharacteristic = null;
         txCharacteristic = null;
     }
 
     // 清理资源
     public void cleanup() {
-        stopScan();
-        disconnect();
-        if (handler != null) {
+        ioScheduler.execute(() -> {
+            stopScanInternal();
+            disconnectInternal();
             handler.removeCallbacksAndMessages(null);
-        }
+        });
     }
 }
\ No newline at end of file
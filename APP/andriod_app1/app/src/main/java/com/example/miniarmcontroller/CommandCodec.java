@@ -0,0 +1,377 @@
+package com.example.miniarmcontroller;
+
+/**
+ * 二进制命令帧编解码（与ESP32固件 frame_protocol.h 保持一致）。
+ * 帧格式固定8字节：[魔数][操作码][序号][关节掩码][角度0][角度1][角度2][角度3]，掩码加 MASK_SYNC 为同步运动
+ * 应答帧4字节：[魔数][ACK][序号][状态]
+ * 轨迹帧8字节：[魔数][TRAJECTORY][序号][段时长(10ms)][角度0][角度1][角度2][角度3]，应答5字节：[魔数][TRAJECTORY_ACK][序号][状态][队列空位]
+ * 遥测帧20字节：[魔数][TELEMETRY][序号][标志][时间戳ms x4][当前角度x4][目标角度x4][电位器B x2][电位器C x2]
+ */
+public final class CommandCodec {
+    public static final byte FRAME_MAGIC = (byte) 0xA5;
+    public static final int FRAME_LENGTH = 8;
+    public static final int ACK_LENGTH = 4;
+    public static final int TELEMETRY_LENGTH = 20;
+    public static final int TRAJECTORY_ACK_LENGTH = 5;
+    // 轨迹帧段时长的单位，单帧最长 255 x 10ms
+    public static final int TRAJECTORY_TIME_UNIT_MS = 10;
+    public static final int TRAJECTORY_MAX_FRAME_DURATION_MS = 255 * TRAJECTORY_TIME_UNIT_MS;
+
+    // 操作码
+    public static final byte OP_SET_JOINTS = 0x01;
+    public static final byte OP_RESET = 0x02;
+    public static final byte OP_STATUS = 0x03;
+    public static final byte OP_TRAJECTORY = 0x04;
+    public static final byte OP_ACK = (byte) 0x81;
+    public static final byte OP_STATUS_REPLY = (byte) 0x83;
+    public static final byte OP_TELEMETRY = (byte) 0x84;
+    public static final byte OP_TRAJECTORY_ACK = (byte) 0x85;
+
+    // 遥测标志位
+    public static final int TELEMETRY_FLAG_MOVING = 0x01;
+    public static final int TELEMETRY_FLAG_FEEDBACK = 0x02;
+    public static final int TELEMETRY_FLAG_PROGRAM = 0x04;
+    public static final int TELEMETRY_FLAG_TRAJECTORY = 0x08;
+    // 电位器读数单位为0.1度，未启用时为该值
+    public static final int TELEMETRY_NO_FEEDBACK = 0x7FFF;
+
+    // 应答状态
+    public static final int STATUS_OK = 0;
+    public static final int STATUS_ERROR = 1;
+
+    // 所有关节的掩码
+    public static final int MASK_ALL_JOINTS = 0x0F;
+    // 与 MASK_ALL_JOINTS 同用：同步运动，各关节同时到达
+    public static final int MASK_SYNC = 0x10;
+    // 同步运动最长时长（与固件 SYNC_MAX_DURATION 一致）
+    public static final int SYNC_MAX_DURATION_MS = 60000;
+
+    // 握手命令及固件能力标识
+    public static final String HELLO_COMMAND = "hello";
+    public static final String HELLO_REPLY_PREFIX = "HELLO ";
+    public static final String CAPABILITY_BINARY = "BIN";
+    public static final String CAPABILITY_TELEMETRY = "TLM";
+    public static final String CAPABILITY_PROGRAM = "PRG";
+    public static final String CAPABILITY_TRAJECTORY = "TRJ";
+    public static final String CAPABILITY_SYNC = "SYN";
+    public static final String CAPABILITY_HALT = "HLT";
+
+    // 姿态遥测命令
+    public static final String TELEMETRY_COMMAND = "telemetry ";
+    public static final String TELEMETRY_OFF = "off";
+
+    // 运动程序命令（上传的步骤命令见 MotionProgram）
+    public static final String PROGRAM_STATUS = "prog";
+    public static final String PROGRAM_BEGIN = "prog begin";
+    public static final String PROGRAM_END = "prog end";
+    public static final String PROGRAM_SAVE = "prog save";
+    public static final String PROGRAM_RUN = "run";
+    public static final String PROGRAM_PAUSE = "pause";
+    public static final String PROGRAM_RESUME = "resume";
+    public static final String PROGRAM_ABORT = "abort";
+
+    // 轨迹队列命令，路点应答为 "OK <队列空位>"，状态回复为 "TRAJ <空位> <等待数> <取空次数>"
+    public static final String TRAJECTORY_STATUS = "traj";
+    public static final String TRAJECTORY_CLEAR = "traj clear";
+    private static final String TRAJECTORY_STATUS_PREFIX = "TRAJ ";
+
+    // 急停：固件在一个运动周期内把所有关节目标设为当前角度，并中止程序和轨迹队列
+    public static final String HALT = "halt";
+
+    // 关节速度命令，状态回复为 "SPEED <速度>/<步长> x4"，速度单位°/s
+    public static final String SPEED_STATUS = "speed";
+    public static final int SPEED_MIN = 10;
+    public static final int SPEED_MAX = 600;
+    private static final String SPEED_STATUS_PREFIX = "SPEED ";
+
+    private CommandCodec() {
+    }
+
+    // 单关节命令
+    public static byte[] encodeSetJoint(int seq, int jointId, int angle) {
+        byte[] frame = new byte[FRAME_LENGTH];
+        encodeSetJoint(frame, 0, seq, jointId, angle);
+        return frame;
+    }
+
+    // 所有关节命令
+    public static byte[] encodeSetAll(int seq, int a, int b, int c, int g) {
+        byte[] frame = new byte[FRAME_LENGTH];
+        encodeSetAll(frame, 0, seq, a, b, c, g);
+        return frame;
+    }
+
+    public static byte[] encodeReset(int seq) {
+        byte[] frame = new byte[FRAME_LENGTH];
+        writeHeader(frame, 0, OP_RESET, seq, 0);
+        return frame;
+    }
+
+    public static byte[] encodeStatus(int seq) {
+        byte[] frame = new byte[FRAME_LENGTH];
+        writeHeader(frame, 0, OP_STATUS, seq, 0);
+        return frame;
+    }
+
+    // 以下编码方法写入调用方提供的缓冲区，返回写入的字节数，用于无内存分配的发送路径
+    public static int encodeSetJoint(byte[] out, int offset, int seq, int jointId, int angle) {
+        writeHeader(out, offset, OP_SET_JOINTS, seq, 1 << jointId);
+        out[offset + 4 + jointId] = (byte) angle;
+        return FRAME_LENGTH;
+    }
+
+    public static int encodeSetAll(byte[] out, int offset, int seq, int a, int b, int c, int g) {
+        writeHeader(out, offset, OP_SET_JOINTS, seq, MASK_ALL_JOINTS);
+        out[offset + 4] = (byte) a;
+        out[offset + 5] = (byte) b;
+        out[offset + 6] = (byte) c;
+        out[offset + 7] = (byte) g;
+        return FRAME_LENGTH;
+    }
+
+    // 同步运动（时长按最慢的关节），指定时长时用文本命令
+    public static int encodeSetAllSync(byte[] out, int offset, int seq, int a, int b, int c, int g) {
+        encodeSetAll(out, offset, seq, a, b, c, g);
+        out[offset + 3] = (byte) (MASK_ALL_JOINTS | MASK_SYNC);
+        return FRAME_LENGTH;
+    }
+
+    // 轨迹路点，段时长按10ms取整，超出单帧范围时由调用方拆分
+    public static int encodeTrajectoryPoint(byte[] out, int offset, int seq, int a, int b, int c, int g, int durationMs) {
+        int units = Math.min((durationMs + TRAJECTORY_TIME_UNIT_MS / 2) / TRAJECTORY_TIME_UNIT_MS, 255);
+        encodeSetAll(out, offset, seq, a, b, c, g);
+        out[offset + 1] = OP_TRAJECTORY;
+        out[offset + 3] = (byte) units;
+        return FRAME_LENGTH;
+    }
+
+    // 写入帧头并清零角度字段
+    private static void writeHeader(byte[] out, int offset, byte opcode, int seq, int mask) {
+        out[offset] = FRAME_MAGIC;
+        out[offset + 1] = opcode;
+        out[offset + 2] = (byte) seq;
+        out[offset + 3] = (byte) mask;
+        out[offset + 4] = 0;
+        out[offset + 5] = 0;
+        out[offset + 6] = 0;
+        out[offset + 7] = 0;
+    }
+
+    // 文本协议命令
+    public static String textSetJoint(int jointId, int angle) {
+        return "set " + jointId + " " + angle;
+    }
+
+    public static String textTrajectoryPoint(int a, int b, int c, int g, int durationMs) {
+        return TRAJECTORY_STATUS + " " + a + " " + b + " " + c + " " + g + " " + durationMs;
+    }
+
+    public static String textSetJointSpeed(int jointId, int speed) {
+        return SPEED_STATUS + " " + jointId + " " + speed;
+    }
+
+    public static String textSetAll(int a, int b, int c, int g) {
+        return "setall " + a + " " + b + " " + c + " " + g;
+    }
+
+    // durationMs为0时按最慢的关节；不支持同步运动的固件忽略 sync 部分，按普通 setall 执行
+    public static String textSetAllSync(int a, int b, int c, int g, int durationMs) {
+        return textSetAll(a, b, c, g) + (durationMs > 0 ? " sync " + durationMs : " sync");
+    }
+
+    // 文本命令直接写入字节缓冲区，返回写入的字节数
+    public static int writeTextSetJoint(byte[] out, int offset, int jointId, int angle) {
+        int position = writeAscii("set ", out, offset);
+        position = writeInt(jointId, out, position);
+        out[position++] = ' ';
+        position = writeInt(angle, out, position);
+        return position - offset;
+    }
+
+    public static int writeTextSetAll(byte[] out, int offset, int a, int b, int c, int g) {
+        int position = writeAscii("setall ", out, offset);
+        position = writeInt(a, out, position);
+        out[position++] = ' ';
+        position = writeInt(b, out, position);
+        out[position++] = ' ';
+        position = writeInt(c, out, position);
+        out[position++] = ' ';
+        position = writeInt(g, out, position);
+        return position - offset;
+    }
+
+    // 把ASCII字符串写入缓冲区，返回结束位置；含非ASCII字符或放不下时返回-1
+    public static int writeAscii(String text, byte[] out, int offset) {
+        int length = text.length();
+        if (offset + length > out.length) {
+            return -1;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c > 0x7F) {
+                return -1;
+            }
+            out[offset + i] = (byte) c;
+        }
+        return offset + length;
+    }
+
+    // 写入非负十进制整数（负数写入'-'前缀），返回结束位置
+    private static int writeInt(int value, byte[] out, int offset) {
+        if (value < 0) {
+            out[offset++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (int v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            out[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return offset + digits;
+    }
+
+    // 判断收到的数据是否为二进制帧
+    public static boolean isFrame(byte[] data) {
+        return data != null && data.length >= ACK_LENGTH && data[0] == FRAME_MAGIC;
+    }
+
+    public static int opcodeOf(byte[] frame) {
+        return frame[1] & 0xFF;
+    }
+
+    public static int seqOf(byte[] frame) {
+        return frame[2] & 0xFF;
+    }
+
+    // 是否为对某条命令的应答帧（ACK、角度应答或轨迹应答）
+    public static boolean isReply(byte[] frame) {
+        int opcode = opcodeOf(frame);
+        return opcode == (OP_ACK & 0xFF) || opcode == (OP_STATUS_REPLY & 0xFF)
+                || opcode == (OP_TRAJECTORY_ACK & 0xFF);
+    }
+
+    // 是否为固件主动推送的姿态遥测帧
+    public static boolean isTelemetry(byte[] frame) {
+        return frame.length >= TELEMETRY_LENGTH && opcodeOf(frame) == (OP_TELEMETRY & 0xFF);
+    }
+
+    // 遥测帧中的小端有符号16位数
+    public static int readInt16(byte[] frame, int offset) {
+        return (short) ((frame[offset] & 0xFF) | (frame[offset + 1] << 8));
+    }
+
+    // 遥测帧中的小端无符号32位数
+    public static long readUInt32(byte[] frame, int offset) {
+        return (frame[offset] & 0xFFL) | ((frame[offset + 1] & 0xFFL) << 8)
+                | ((frame[offset + 2] & 0xFFL) << 16) | ((frame[offset + 3] & 0xFFL) << 24);
+    }
+
+    // 应答帧是否表示成功（角度应答总是成功）
+    public static boolean isSuccessReply(byte[] frame) {
+        int opcode = opcodeOf(frame);
+        if (opcode == (OP_ACK & 0xFF) || opcode == (OP_TRAJECTORY_ACK & 0xFF)) {
+            return frame[3] == STATUS_OK;
+        }
+        return true;
+    }
+
+    // 将二进制应答转换为与文本协议相同的回复字符串，便于界面统一显示
+    public static String describeReply(byte[] frame) {
+        int opcode = opcodeOf(frame);
+        if (opcode == (OP_ACK & 0xFF)) {
+            return (frame[3] == STATUS_OK) ? "OK" : "ERROR";
+        }
+        if (opcode == (OP_TRAJECTORY_ACK & 0xFF) && frame.length >= TRAJECTORY_ACK_LENGTH) {
+            return (frame[3] == STATUS_OK) ? "OK " + (frame[4] & 0xFF) : "ERROR";
+        }
+        if (opcode == (OP_STATUS_REPLY & 0xFF) && frame.length >= FRAME_LENGTH) {
+            return (frame[4] & 0xFF) + "," + (frame[5] & 0xFF) + "," + (frame[6] & 0xFF) + "," + (frame[7] & 0xFF);
+        }
+        return "FRAME 0x" + Integer.toHexString(opcode);
+    }
+
+    // 文本回复转为字符串，常见回复直接返回常量
+    public static String decodeText(byte[] data) {
+        if (matches(data, "OK")) {
+            return "OK";
+        }
+        if (matches(data, "ERROR")) {
+            return "ERROR";
+        }
+        return new String(data);
+    }
+
+    private static boolean matches(byte[] data, String text) {
+        if (data.length != text.length()) {
+            return false;
+        }
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 从路点应答 "OK <空位>" 或状态回复 "TRAJ <空位> ..." 中取出轨迹队列空位，没有时返回-1
+    public static int parseTrajectoryFree(String reply) {
+        int start;
+        if (reply.startsWith("OK ")) {
+            start = 3;
+        } else if (reply.startsWith(TRAJECTORY_STATUS_PREFIX)) {
+            start = TRAJECTORY_STATUS_PREFIX.length();
+        } else {
+            return -1;
+        }
+        int value = 0;
+        int end = start;
+        while (end < reply.length() && Character.isDigit(reply.charAt(end))) {
+            value = value * 10 + (reply.charAt(end) - '0');
+            end++;
+        }
+        return end > start ? value : -1;
+    }
+
+    // 从状态回复 "SPEED 120/1 90/1 120/1 150/1" 中取出各关节速度，格式不符时返回null
+    public static int[] parseJointSpeeds(String reply) {
+        if (!reply.startsWith(SPEED_STATUS_PREFIX)) {
+            return null;
+        }
+        String[] parts = reply.substring(SPEED_STATUS_PREFIX.length()).trim().split(" ");
+        if (parts.length != 4) {
+            return null;
+        }
+        int[] speeds = new int[4];
+        try {
+            for (int i = 0; i < 4; i++) {
+                int slash = parts[i].indexOf('/');
+                speeds[i] = Integer.parseInt(slash >= 0 ? parts[i].substring(0, slash) : parts[i]);
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return speeds;
+    }
+
+    // 解析握手回复 "HELLO <版本> <能力...>"，返回固件是否支持二进制帧
+    public static boolean supportsBinary(String helloReply) {
+        return supportsCapability(helloReply, CAPABILITY_BINARY);
+    }
+
+    // 握手回复中是否包含指定能力
+    public static boolean supportsCapability(String helloReply, String capability) {
+        if (helloReply == null || !helloReply.startsWith(HELLO_REPLY_PREFIX)) {
+            return false;
+        }
+        String[] parts = helloReply.trim().split(" ");
+        for (int i = 2; i < parts.length; i++) {
+            if (capability.equals(parts[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.miniarmcontroller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 一条命令的应答结果：收到固件匹配的应答后完成，超时、断开或固件回复错误时以异常结束。
+ * minSdk 23 没有 CompletableFuture，这里实现所需的最小功能。
+ */
+public class CommandFuture implements Future<String> {
+    public interface Callback {
+        // 成功时error为null；失败时reply为null
+        void onComplete(String reply, Exception error);
+    }
+
+    // 固件回复 ERROR 或二进制应答状态为失败
+    public static class CommandException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public CommandException(String message) {
+            super(message);
+        }
+    }
+
+    private final String command;
+    private boolean done = false;
+    private boolean cancelled = false;
+    private String reply;
+    private Exception error;
+    private long roundTripMicros = -1;
+    private List<Runnable> callbacks;
+
+    public CommandFuture(String command) {
+        this.command = command;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    // 从写出到收到应答的时间，未完成或未发出时为-1
+    public synchronized long getRoundTripMicros() {
+        return roundTripMicros;
+    }
+
+    boolean complete(String reply, long roundTripMicros) {
+        return finish(reply, null, roundTripMicros);
+    }
+
+    boolean fail(Exception error) {
+        return finish(null, error, -1);
+    }
+
+    private boolean finish(String reply, Exception error, long roundTripMicros) {
+        List<Runnable> toRun;
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            done = true;
+            this.reply = reply;
+            this.error = error;
+            this.roundTripMicros = roundTripMicros;
+            toRun = callbacks;
+            callbacks = null;
+            notifyAll();
+        }
+        if (toRun != null) {
+            for (Runnable callback : toRun) {
+                callback.run();
+            }
+        }
+        return true;
+    }
+
+    // 完成后在完成线程（BLE I/O线程）回调
+    public void addCallback(Callback callback) {
+        addCallback(callback, Runnable::run);
+    }
+
+    public void addCallback(Callback callback, Executor executor) {
+        Runnable task = () -> executor.execute(() -> callback.onComplete(reply, error));
+        synchronized (this) {
+            if (!done) {
+                if (callbacks == null) {
+                    callbacks = new ArrayList<>(1);
+                }
+                callbacks.add(task);
+                return;
+            }
+        }
+        task.run();
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            cancelled = true;
+        }
+        return fail(new CancellationException("Command cancelled: " + command));
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public synchronized String get() throws InterruptedException, ExecutionException {
+        while (!done) {
+            wait();
+        }
+        return result();
+    }
+
+    @Override
+    public synchronized String get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!done) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException("Timed out waiting for " + command);
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return result();
+    }
+
+    private String result() throws ExecutionException {
+        if (cancelled) {
+            throw (CancellationException) error;
+        }
+        if (error != null) {
+            throw new ExecutionException(error);
+        }
+        return reply;
+    }
+}
@@ -0,0 +1,279 @@
+package com.example.miniarmcontroller;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 命令日志：把每次发出的写入和收到的通知追加到二进制文件，用于事后还原发给机械臂的内容。
+ * 调用方只把记录复制进内存环形缓冲区，由后台线程批量写入文件，发送路径不做文件I/O也不会被阻塞；
+ * 缓冲区满时丢弃记录并计数。
+ *
+ * 文件格式: [ARMJ][版本][开始时间(墙钟ms, 8字节大端)] 之后是连续的记录，
+ * 记录: [方向][与上一条的时间差(us, 变长整数)][长度(变长整数)][数据]
+ */
+public class CommandJournal implements Closeable {
+    public static final int DIRECTION_OUT = 0;
+    public static final int DIRECTION_IN = 1;
+
+    private static final byte[] MAGIC = {'A', 'R', 'M', 'J'};
+    private static final int VERSION = 1;
+
+    // 环形缓冲区大小（2的幂），约可容纳几千条命令
+    private static final int BUFFER_SIZE = 256 * 1024;
+    // 单条记录头的最大长度：方向1 + 时间差最多10 + 长度最多5
+    private static final int MAX_HEADER_SIZE = 16;
+    // 后台线程写入文件的间隔，缓冲区过半时提前唤醒
+    private static final long FLUSH_INTERVAL_MS = 100;
+
+    private final File file;
+    private final byte[] ring = new byte[BUFFER_SIZE];
+    private final byte[] drainBuffer = new byte[BUFFER_SIZE];
+    private int head = 0;
+    private int size = 0;
+    private boolean closed = false;
+
+    private final long startNanos = System.nanoTime();
+    private final long startWallMs = System.currentTimeMillis();
+    private long lastMicros = 0;
+
+    private final Thread writer;
+    private volatile IOException error;
+
+    // 统计计数
+    private long recordCount = 0;
+    private long droppedCount = 0;
+    private volatile long bytesWritten = 0;
+
+    // 打开（新建）日志文件，文件在后台线程中创建
+    public CommandJournal(File file) {
+        this.file = file;
+        writer = new Thread(this::writeLoop, "journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    // 追加一条记录，缓冲区已满或日志已关闭时返回false
+    public boolean append(int direction, byte[] data, int offset, int length) {
+        long nowMicros = (System.nanoTime() - startNanos) / 1000;
+        synchronized (ring) {
+            if (closed || BUFFER_SIZE - size < MAX_HEADER_SIZE + length) {
+                droppedCount++;
+                return false;
+            }
+            // 多线程追加时时间戳可能略有倒序，按0处理，保证时间单调
+            long delta = Math.max(nowMicros - lastMicros, 0);
+            lastMicros += delta;
+
+            put(direction);
+            putVarint(delta);
+            putVarint(length);
+            int tail = (head + size) & (BUFFER_SIZE - 1);
+            int first = Math.min(length, BUFFER_SIZE - tail);
+            System.arraycopy(data, offset, ring, tail, first);
+            System.arraycopy(data, offset + first, ring, 0, length - first);
+            size += length;
+            recordCount++;
+
+            if (size > BUFFER_SIZE / 2) {
+                ring.notify();
+            }
+        }
+        return true;
+    }
+
+    private void put(int value) {
+        ring[(head + size) & (BUFFER_SIZE - 1)] = (byte) value;
+        size++;
+    }
+
+    private void putVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            put((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        put((int) value);
+    }
+
+    // 后台线程：定期把缓冲区内容写入文件，关闭时写完剩余内容
+    private void writeLoop() {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            writeHeader(out);
+            while (true) {
+                int length;
+                boolean done;
+                synchronized (ring) {
+                    if (size == 0 && !closed) {
+                        ring.wait(FLUSH_INTERVAL_MS);
+                    }
+                    length = size;
+                    int first = Math.min(length, BUFFER_SIZE - head);
+                    System.arraycopy(ring, head, drainBuffer, 0, first);
+                    System.arraycopy(ring, 0, drainBuffer, first, length - first);
+                    head = (head + length) & (BUFFER_SIZE - 1);
+                    size = 0;
+                    done = closed;
+                }
+                if (length > 0) {
+                    out.write(drainBuffer, 0, length);
+                    out.flush();
+                    bytesWritten += length;
+                }
+                if (done) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            error = e;
+            synchronized (ring) {
+                closed = true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeHeader(OutputStream out) throws IOException {
+        out.write(MAGIC);
+        out.write(VERSION);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (startWallMs >>> shift));
+        }
+    }
+
+    // 停止追加，后台线程写完剩余记录后关闭文件（不等待写完）
+    @Override
+    public void close() {
+        synchronized (ring) {
+            closed = true;
+            ring.notify();
+        }
+    }
+
+    // 等待后台线程把剩余记录写完
+    public void awaitClosed(long timeoutMs) throws InterruptedException {
+        writer.join(timeoutMs);
+    }
+
+    // 文件写入失败时的异常，正常为null
+    public IOException getError() {
+        return error;
+    }
+
+    public long getRecordCount() {
+        synchronized (ring) {
+            return recordCount;
+        }
+    }
+
+    public long getDroppedCount() {
+        synchronized (ring) {
+            return droppedCount;
+        }
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    // 日志中的一条记录
+    public static final class Record {
+        public final long timeMicros;   // 距离日志开始的时间
+        public final int direction;
+        public final byte[] data;
+
+        Record(long timeMicros, int direction, byte[] data) {
+            this.timeMicros = timeMicros;
+            this.direction = direction;
+            this.data = data;
+        }
+
+        public boolean isOutbound() {
+            return direction == DIRECTION_OUT;
+        }
+    }
+
+    /**
+     * 顺序读取日志文件。文件末尾不完整的记录（写入中途断电或崩溃）会被忽略。
+     */
+    public static class Reader implements Closeable {
+        private final DataInputStream in;
+        private final long startWallMs;
+        private long timeMicros = 0;
+
+        public Reader(File file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            byte[] magic = new byte[MAGIC.length];
+            try {
+                in.readFully(magic);
+                for (int i = 0; i < MAGIC.length; i++) {
+                    if (magic[i] != MAGIC[i]) {
+                        throw new IOException("Not a command journal: " + file);
+                    }
+                }
+                int version = in.readUnsignedByte();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported journal version " + version);
+                }
+                startWallMs = in.readLong();
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        // 日志开始时的墙钟时间
+        public long getStartWallMs() {
+            return startWallMs;
+        }
+
+        // 读取下一条记录，没有更多记录时返回null
+        public Record next() throws IOException {
+            try {
+                int direction = in.read();
+                if (direction < 0) {
+                    return null;
+                }
+                timeMicros += readVarint(in);
+                int length = (int) readVarint(in);
+                byte[] data = new byte[length];
+                in.readFully(data);
+                return new Record(timeMicros, direction, data);
+            } catch (EOFException e) {
+                return null;
+            }
+        }
+
+        private static long readVarint(InputStream in) throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = in.read();
+                if (b < 0) {
+                    throw new EOFException();
+                }
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed journal record");
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
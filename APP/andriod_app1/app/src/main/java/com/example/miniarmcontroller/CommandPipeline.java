@@ -0,0 +1,590 @@
+package com.example.miniarmcontroller;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 命令管线：编码命令、写入队列、按传输层的写完成节奏发出，并把回复匹配到命令。
+ * 不依赖Android，通过 ArmTransport 收发数据，可以接BLE也可以接进程内的模拟固件。
+ */
+public class CommandPipeline implements ArmTransport.Callback {
+    public static final long DEFAULT_COMMAND_TIMEOUT_MS = 2000;
+    public static final int DEFAULT_TELEMETRY_INTERVAL_MS = 50;
+
+    // 传输层拒绝写入后重试发送的延时
+    private static final long WRITE_RETRY_DELAY_MS = 20;
+    private static final int POSE_BUFFER_CAPACITY = 256;
+    // 上传运动程序时每批发送的命令数，留出写队列容量给其他命令
+    private static final int PROGRAM_UPLOAD_CHUNK = 16;
+
+    // 写队列泵和超时任务的执行方式，BLE实现中为I/O线程
+    public interface Scheduler {
+        // 在I/O线程执行，已在I/O线程时可以直接执行
+        void execute(Runnable task);
+
+        void schedule(Runnable task, long delayMs);
+    }
+
+    public interface Listener {
+        // 收到一条回复（二进制应答已转换为文本形式）
+        default void onReplyReceived(String reply) {}
+
+        // 握手完成
+        default void onHandshake(String reply, boolean binary, boolean telemetry) {}
+
+        // 收到新的姿态遥测帧
+        default void onPoseUpdated(PoseRingBuffer poses) {}
+
+        // 急停后机械臂已停稳，stopToStillMs为从发出急停到收到第一帧静止姿态的时间
+        default void onHaltSettled(long stopToStillMs) {}
+    }
+
+    private static final Listener NO_LISTENER = new Listener() {};
+
+    private final ArmTransport transport;
+    private final Scheduler scheduler;
+    private volatile Listener listener = NO_LISTENER;
+    private volatile CommandJournal journal;
+
+    private final CommandWriteQueue writeQueue = new CommandWriteQueue();
+    private final LatencyHistogram latencyHistogram = new LatencyHistogram();
+    private final ResponseTracker responseTracker = new ResponseTracker(latencyHistogram);
+    private final PoseRingBuffer poseBuffer = new PoseRingBuffer(POSE_BUFFER_CAPACITY);
+    private final Runnable pumpRunnable = this::pump;
+
+    // 握手后确认固件支持二进制帧时使用二进制协议
+    private volatile boolean binaryMode = false;
+    private volatile boolean telemetrySupported = false;
+    private volatile boolean programSupported = false;
+    private volatile boolean trajectorySupported = false;
+    private volatile boolean syncSupported = false;
+    private volatile boolean haltSupported = false;
+    private int frameSeq = 0;
+
+    // 急停计时：发出时刻（0表示没有在测量），应答到达后等待第一帧静止姿态
+    private volatile long haltSentNanos = 0;
+    private volatile boolean haltAcknowledged = false;
+    private volatile long lastHaltStillMs = -1;
+    // 只在I/O线程（遥测回调）中使用
+    private final PoseRingBuffer.Sample haltSample = new PoseRingBuffer.Sample();
+
+    // 姿态遥测设置，每次握手后下发
+    private volatile int telemetryIntervalMs = DEFAULT_TELEMETRY_INTERVAL_MS;
+    private volatile boolean telemetryFeedback = false;
+
+    // 命令编码缓冲区，只在持有writeQueue锁时使用
+    private final byte[] sendScratch = new byte[CommandWriteQueue.MAX_WRITE_LENGTH];
+
+    public CommandPipeline(ArmTransport transport, Scheduler scheduler) {
+        this.transport = transport;
+        this.scheduler = scheduler;
+        transport.setCallback(this);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = (listener != null) ? listener : NO_LISTENER;
+    }
+
+    // 记录每次写出和收到的数据，null表示不记录
+    public void setJournal(CommandJournal journal) {
+        this.journal = journal;
+    }
+
+    // 发送文本命令，返回false表示队列已满
+    public boolean sendData(String data) {
+        boolean accepted;
+        synchronized (writeQueue) {
+            int length = CommandCodec.writeAscii(data, sendScratch, 0);
+            if (length >= 0) {
+                accepted = writeQueue.offer(CommandWriteQueue.parseJointId(sendScratch, 0, length), sendScratch, 0, length);
+            } else {
+                accepted = writeQueue.offer(CommandWriteQueue.parseJointId(data), data.getBytes());
+            }
+        }
+        schedulePump();
+        return accepted;
+    }
+
+    // 设置单个关节，根据握手结果选择二进制帧或文本命令
+    public boolean sendSetJoint(int jointId, int angle) {
+        boolean accepted;
+        synchronized (writeQueue) {
+            accepted = offerSetJoint(jointId, angle);
+        }
+        schedulePump();
+        return accepted;
+    }
+
+    // 设置所有关节
+    public boolean sendSetAll(int a, int b, int c, int g) {
+        boolean accepted;
+        synchronized (writeQueue) {
+            int length = binaryMode
+                    ? CommandCodec.encodeSetAll(sendScratch, 0, nextSeq(), a, b, c, g)
+                    : CommandCodec.writeTextSetAll(sendScratch, 0, a, b, c, g);
+            accepted = writeQueue.offer(CommandWriteQueue.NO_JOINT, sendScratch, 0, length);
+        }
+        schedulePump();
+        return accepted;
+    }
+
+    // 批量设置多个关节；持有队列锁，保证这批命令在同一次写入中发出
+    public boolean sendSetJoints(int[] jointIds, int[] angles, int count) {
+        boolean accepted = true;
+        synchronized (writeQueue) {
+            for (int i = 0; i < count; i++) {
+                accepted &= offerSetJoint(jointIds[i], angles[i]);
+            }
+        }
+        schedulePump();
+        return accepted;
+    }
+
+    // 批量发送多条文本命令
+    public boolean sendBatch(String... commands) {
+        boolean accepted = true;
+        synchronized (writeQueue) {
+            for (String command : commands) {
+                accepted &= writeQueue.offer(CommandWriteQueue.parseJointId(command), command.getBytes());
+            }
+        }
+        schedulePump();
+        return accepted;
+    }
+
+    // 原样发送一次写入的内容（日志回放），按帧或按行拆开入队，与其他命令一样打包发出
+    public boolean sendRaw(byte[] payload) {
+        boolean accepted = true;
+        synchronized (writeQueue) {
+            if (payload.length > 0 && payload[0] == CommandCodec.FRAME_MAGIC) {
+                for (int offset = 0; offset < payload.length; offset += CommandCodec.FRAME_LENGTH) {
+                    int length = Math.min(CommandCodec.FRAME_LENGTH, payload.length - offset);
+                    accepted &= writeQueue.offer(CommandWriteQueue.NO_JOINT, payload, offset, length);
+                }
+            } else {
+                int start = 0;
+                for (int i = 0; i <= payload.length; i++) {
+                    if (i == payload.length || payload[i] == '\n') {
+                        if (i > start) {
+                            int jointId = CommandWriteQueue.parseJointId(payload, start, i - start);
+                            accepted &= writeQueue.offer(jointId, payload, start, i - start);
+                        }
+                        start = i + 1;
+                    }
+                }
+            }
+        }
+        schedulePump();
+        return accepted;
+    }
+
+    // 发送文本命令并等待固件应答（固件对每条蓝牙命令回复一行，按顺序匹配）
+    public CommandFuture sendCommand(String command, long timeoutMs) {
+        CommandFuture future = new CommandFuture(command);
+        int tag = responseTracker.register(future);
+        boolean accepted;
+        synchronized (writeQueue) {
+            int length = CommandCodec.writeAscii(command, sendScratch, 0);
+            if (length >= 0) {
+                accepted = writeQueue.offer(CommandWriteQueue.NO_JOINT, sendScratch, 0, length, tag);
+            } else {
+                byte[] bytes = command.getBytes();
+                accepted = writeQueue.offer(CommandWriteQueue.NO_JOINT, bytes, 0, bytes.length, tag);
+            }
+        }
+        return track(future, tag, accepted, timeoutMs);
+    }
+
+    // 设置单个关节并等待结果（二进制模式按序号匹配应答）
+    public CommandFuture sendSetJointForResult(int jointId, int angle, long timeoutMs) {
+        CommandFuture future = new CommandFuture(CommandCodec.textSetJoint(jointId, angle));
+        int tag = responseTracker.register(future);
+        boolean accepted;
+        synchronized (writeQueue) {
+            int length = binaryMode
+                    ? CommandCodec.encodeSetJoint(sendScratch, 0, nextSeq(), jointId, angle)
+                    : CommandCodec.writeTextSetJoint(sendScratch, 0, jointId, angle);
+            accepted = writeQueue.offer(CommandWriteQueue.NO_JOINT, sendScratch, 0, length, tag);
+        }
+        return track(future, tag, accepted, timeoutMs);
+    }
+
+    // 设置所有关节并等待结果
+    public CommandFuture sendSetAllForResult(int a, int b, int c, int g, long timeoutMs) {
+        CommandFuture future = new CommandFuture(CommandCodec.textSetAll(a, b, c, g));
+        int tag = responseTracker.register(future);
+        boolean accepted;
+        synchronized (writeQueue) {
+            int length = binaryMode
+                    ? CommandCodec.encodeSetAll(sendScratch, 0, nextSeq(), a, b, c, g)
+                    : CommandCodec.writeTextSetAll(sendScratch, 0, a, b, c, g);
+            accepted = writeQueue.offer(CommandWriteQueue.NO_JOINT, sendScratch, 0, length, tag);
+        }
+        return track(future, tag, accepted, timeoutMs);
+    }
+
+    // 同步运动：各关节同时开始同时到达，durationMs为0时按最慢的关节，否则至少持续durationMs
+    public CommandFuture sendSetAllSyncForResult(int a, int b, int c, int g, int durationMs, long timeoutMs) {
+        CommandFuture future = new CommandFuture(CommandCodec.textSetAllSync(a, b, c, g, durationMs));
+        int tag = responseTracker.register(future);
+        boolean accepted;
+        synchronized (writeQueue) {
+            // 二进制帧没有时长字段；旧固件不认识同步掩码，只用文本命令（按普通setall执行）
+            int length = (binaryMode && syncSupported && durationMs == 0)
+                    ? CommandCodec.encodeSetAllSync(sendScratch, 0, nextSeq(), a, b, c, g)
+                    : CommandCodec.writeAscii(future.getCommand(), sendScratch, 0);
+            accepted = writeQueue.offer(CommandWriteQueue.NO_JOINT, sendScratch, 0, length, tag);
+        }
+        return track(future, tag, accepted, timeoutMs);
+    }
+
+    // 轨迹路点入队并等待应答，成功应答为 "OK <队列空位>"；流控见 TrajectoryStream
+    public CommandFuture sendTrajectoryPoint(int a, int b, int c, int g, int durationMs, long timeoutMs) {
+        CommandFuture future = new CommandFuture(CommandCodec.textTrajectoryPoint(a, b, c, g, durationMs));
+        int tag = responseTracker.register(future);
+        boolean accepted;
+        synchronized (writeQueue) {
+            // 二进制帧的段时长只有一个字节，更长的段用文本命令
+            int length = (binaryMode && durationMs <= CommandCodec.TRAJECTORY_MAX_FRAME_DURATION_MS)
+                    ? CommandCodec.encodeTrajectoryPoint(sendScratch, 0, nextSeq(), a, b, c, g, durationMs)
+                    : CommandCodec.writeAscii(future.getCommand(), sendScratch, 0);
+            accepted = writeQueue.offer(CommandWriteQueue.NO_JOINT, sendScratch, 0, length, tag);
+        }
+        return track(future, tag, accepted, timeoutMs);
+    }
+
+    // 急停：走优先通道，插到写队列最前面单独写出，尚未发出的运动命令被丢弃（需要结果的以异常结束）。
+    // 固件收到后在一个运动周期内停在当前位置；开启遥测时测量从发出到机械臂静止的时间，见 Listener.onHaltSettled
+    public CommandFuture sendHalt(long timeoutMs) {
+        CommandFuture future = new CommandFuture(CommandCodec.HALT);
+        int tag = responseTracker.register(future);
+        int[] droppedTags = new int[writeQueue.getCapacity()];
+        int dropped;
+        synchronized (writeQueue) {
+            int length = CommandCodec.writeAscii(CommandCodec.HALT, sendScratch, 0);
+            dropped = writeQueue.offerPriority(sendScratch, 0, length, tag, droppedTags);
+        }
+        for (int i = 0; i < dropped; i++) {
+            responseTracker.cancel(droppedTags[i], new IOException("Cancelled by halt"));
+        }
+        if (dropped >= 0) {
+            haltAcknowledged = false;
+            haltSentNanos = System.nanoTime();
+            future.addCallback((reply, error) -> {
+                if (error != null) {
+                    haltSentNanos = 0;
+                } else {
+                    haltAcknowledged = true;
+                }
+            });
+        }
+        return track(future, tag, dropped >= 0, timeoutMs);
+    }
+
+    private CommandFuture track(CommandFuture future, int tag, boolean accepted, long timeoutMs) {
+        if (!accepted) {
+            responseTracker.cancel(tag, new IOException("Write queue full"));
+            return future;
+        }
+        scheduler.schedule(() -> responseTracker.onTimeout(tag), timeoutMs);
+        schedulePump();
+        return future;
+    }
+
+    // 编码单关节命令并入队，调用方需持有writeQueue锁
+    private boolean offerSetJoint(int jointId, int angle) {
+        int length = binaryMode
+                ? CommandCodec.encodeSetJoint(sendScratch, 0, nextSeq(), jointId, angle)
+                : CommandCodec.writeTextSetJoint(sendScratch, 0, jointId, angle);
+        return writeQueue.offer(jointId, sendScratch, 0, length);
+    }
+
+    private synchronized int nextSeq() {
+        frameSeq = (frameSeq + 1) & 0xFF;
+        return frameSeq;
+    }
+
+    // 链路就绪：进行版本/能力握手，旧固件不回复时保持文本协议。
+    // 握手不进入应答FIFO，HELLO回复按前缀识别，旧固件不回复也不会让之后的回复错位
+    public void onLinkReady() {
+        synchronized (writeQueue) {
+            int length = CommandCodec.writeAscii(CommandCodec.HELLO_COMMAND, sendScratch, 0);
+            writeQueue.offer(CommandWriteQueue.NO_JOINT, sendScratch, 0, length, ResponseTracker.UNTRACKED_TAG);
+        }
+        schedulePump();
+    }
+
+    // 链路断开：清空队列，等待中的命令以异常结束
+    public void reset(Exception error) {
+        binaryMode = false;
+        telemetrySupported = false;
+        programSupported = false;
+        trajectorySupported = false;
+        syncSupported = false;
+        haltSupported = false;
+        haltSentNanos = 0;
+        poseBuffer.clear();
+        writeQueue.clear();
+        responseTracker.reset(error);
+    }
+
+    private void schedulePump() {
+        scheduler.execute(pumpRunnable);
+    }
+
+    // 若当前没有在途写操作，则发出队首的一批命令
+    public void pump() {
+        if (!transport.isReady()) {
+            return;
+        }
+
+        // 返回的数组由队列复用，传输层在 write 返回前已复制数据
+        byte[] payload = writeQueue.beginWrite(transport.getMaxPayload());
+        if (payload == null) {
+            return;
+        }
+        registerWrittenCommands(payload);
+
+        boolean written = transport.write(payload);
+        CommandJournal currentJournal = journal;
+        if (written && currentJournal != null) {
+            currentJournal.append(CommandJournal.DIRECTION_OUT, payload, 0, payload.length);
+        }
+        if (!written) {
+            // 传输层暂时不能写（另一个GATT操作仍在进行）：撤销应答登记，这批命令留在队首，稍后重新写出
+            responseTracker.rewindBatch();
+            writeQueue.abortWrite();
+            scheduler.schedule(pumpRunnable, WRITE_RETRY_DELAY_MS);
+        }
+    }
+
+    // 登记本次写入中的每条命令，用于匹配应答和计算往返延迟
+    private void registerWrittenCommands(byte[] payload) {
+        boolean binary = payload[0] == CommandCodec.FRAME_MAGIC;
+        int count = writeQueue.getInFlightCount();
+        long now = System.nanoTime();
+        responseTracker.beginBatch();
+        for (int i = 0; i < count; i++) {
+            int seq = binary ? payload[i * CommandCodec.FRAME_LENGTH + 2] & 0xFF : 0;
+            responseTracker.onWritten(writeQueue.getInFlightTag(i), binary, seq, now);
+        }
+    }
+
+    @Override
+    public void onWriteComplete(boolean success) {
+        if (!success) {
+            responseTracker.abortBatch(new IOException("Write failed"));
+        }
+        writeQueue.completeWrite(success);
+        pump();
+    }
+
+    @Override
+    public void onDataReceived(byte[] data) {
+        long now = System.nanoTime();
+        CommandJournal currentJournal = journal;
+        if (currentJournal != null) {
+            currentJournal.append(CommandJournal.DIRECTION_IN, data, 0, data.length);
+        }
+        if (CommandCodec.isFrame(data) && CommandCodec.isTelemetry(data)) {
+            // 遥测帧频率高，只写入缓冲区并通知，不作为回复处理
+            if (poseBuffer.add(data, TimeUnit.NANOSECONDS.toMillis(now))) {
+                listener.onPoseUpdated(poseBuffer);
+                checkHaltSettled(now);
+            }
+            return;
+        }
+
+        String reply;
+        if (CommandCodec.isFrame(data)) {
+            reply = CommandCodec.describeReply(data);
+            if (CommandCodec.isReply(data)) {
+                responseTracker.onFrameReply(CommandCodec.seqOf(data), reply, CommandCodec.isSuccessReply(data), now);
+            }
+        } else {
+            reply = CommandCodec.decodeText(data);
+            if (reply.startsWith(CommandCodec.HELLO_REPLY_PREFIX)) {
+                onHelloReply(reply);
+            } else {
+                responseTracker.onTextReply(reply, now);
+            }
+        }
+        listener.onReplyReceived(reply);
+    }
+
+    // 急停应答之后的第一帧静止姿态：应答前收到的帧可能是固件处理急停之前发出的，不计入
+    private void checkHaltSettled(long nowNanos) {
+        long sentNanos = haltSentNanos;
+        if (sentNanos == 0 || !haltAcknowledged || !poseBuffer.latest(haltSample) || haltSample.isMoving()) {
+            return;
+        }
+        haltSentNanos = 0;
+        lastHaltStillMs = TimeUnit.NANOSECONDS.toMillis(nowNanos - sentNanos);
+        listener.onHaltSettled(lastHaltStillMs);
+    }
+
+    private void onHelloReply(String reply) {
+        binaryMode = CommandCodec.supportsBinary(reply);
+        telemetrySupported = CommandCodec.supportsCapability(reply, CommandCodec.CAPABILITY_TELEMETRY);
+        programSupported = CommandCodec.supportsCapability(reply, CommandCodec.CAPABILITY_PROGRAM);
+        trajectorySupported = CommandCodec.supportsCapability(reply, CommandCodec.CAPABILITY_TRAJECTORY);
+        syncSupported = CommandCodec.supportsCapability(reply, CommandCodec.CAPABILITY_SYNC);
+        haltSupported = CommandCodec.supportsCapability(reply, CommandCodec.CAPABILITY_HALT);
+        listener.onHandshake(reply, binaryMode, telemetrySupported);
+        if (telemetrySupported) {
+            if (telemetryFeedback) {
+                sendData(telemetryFeedbackCommand());
+            }
+            sendData(telemetryIntervalCommand());
+        }
+    }
+
+    // 设置姿态遥测推送间隔（0关闭），固件支持时立即下发，之后每次握手自动恢复
+    public void setTelemetryInterval(int intervalMs) {
+        telemetryIntervalMs = Math.max(intervalMs, 0);
+        if (telemetrySupported) {
+            sendData(telemetryIntervalCommand());
+        }
+    }
+
+    public int getTelemetryInterval() {
+        return telemetryIntervalMs;
+    }
+
+    // 遥测是否附带电位器实测角度（需要固件接有电位器）
+    public void setTelemetryFeedback(boolean enable) {
+        telemetryFeedback = enable;
+        if (telemetrySupported) {
+            sendData(telemetryFeedbackCommand());
+        }
+    }
+
+    private String telemetryIntervalCommand() {
+        int interval = telemetryIntervalMs;
+        return CommandCodec.TELEMETRY_COMMAND + (interval > 0 ? String.valueOf(interval) : CommandCodec.TELEMETRY_OFF);
+    }
+
+    private String telemetryFeedbackCommand() {
+        return CommandCodec.TELEMETRY_COMMAND + (telemetryFeedback ? "fb on" : "fb off");
+    }
+
+    // 上传运动程序：分批发送 prog 命令，每批等最后一条应答后再发下一批，避免占满写队列。
+    // 任一条被固件拒绝时上传失败，固件保留原来的程序；返回的结果在 prog end（或 prog save）应答后完成
+    public CommandFuture uploadProgram(MotionProgram program, boolean save, long timeoutMs) {
+        List<String> commands = program.toCommands(save);
+        CommandFuture result = new CommandFuture(commands.get(commands.size() - 1));
+        sendProgramChunk(commands, 0, result, System.nanoTime(), timeoutMs);
+        return result;
+    }
+
+    private void sendProgramChunk(List<String> commands, int start, CommandFuture result,
+                                  long startNanos, long timeoutMs) {
+        int end = Math.min(start + PROGRAM_UPLOAD_CHUNK, commands.size());
+        Exception[] firstError = new Exception[1];
+        CommandFuture last = null;
+        for (int i = start; i < end; i++) {
+            last = sendCommand(commands.get(i), timeoutMs);
+            if (i < end - 1) {
+                last.addCallback((reply, error) -> {
+                    synchronized (firstError) {
+                        if (firstError[0] == null) {
+                            firstError[0] = error;
+                        }
+                    }
+                });
+            }
+        }
+        // 文本应答按顺序匹配，最后一条完成时同一批的其他命令都已完成
+        last.addCallback((reply, error) -> {
+            Exception failure;
+            synchronized (firstError) {
+                failure = (firstError[0] != null) ? firstError[0] : error;
+            }
+            if (failure != null) {
+                result.fail(failure);
+            } else if (end < commands.size()) {
+                sendProgramChunk(commands, end, result, startNanos, timeoutMs);
+            } else {
+                result.complete(reply, (System.nanoTime() - startNanos) / 1000);
+            }
+        });
+    }
+
+    // 运行固件中的程序，loops为0表示无限循环
+    public CommandFuture runProgram(int loops, long timeoutMs) {
+        return sendCommand(CommandCodec.PROGRAM_RUN + " " + Math.max(loops, 0), timeoutMs);
+    }
+
+    public CommandFuture pauseProgram(long timeoutMs) {
+        return sendCommand(CommandCodec.PROGRAM_PAUSE, timeoutMs);
+    }
+
+    public CommandFuture resumeProgram(long timeoutMs) {
+        return sendCommand(CommandCodec.PROGRAM_RESUME, timeoutMs);
+    }
+
+    // 中止程序，机械臂停在当前位置
+    public CommandFuture abortProgram(long timeoutMs) {
+        return sendCommand(CommandCodec.PROGRAM_ABORT, timeoutMs);
+    }
+
+    public boolean isBinaryMode() {
+        return binaryMode;
+    }
+
+    public boolean isTelemetrySupported() {
+        return telemetrySupported;
+    }
+
+    public boolean isProgramSupported() {
+        return programSupported;
+    }
+
+    public boolean isTrajectorySupported() {
+        return trajectorySupported;
+    }
+
+    public boolean isSyncSupported() {
+        return syncSupported;
+    }
+
+    public boolean isHaltSupported() {
+        return haltSupported;
+    }
+
+    // 最近一次急停从发出到机械臂静止的时间（ms），尚未测得为-1
+    public long getLastHaltStillMs() {
+        return lastHaltStillMs;
+    }
+
+    public PoseRingBuffer getPoseBuffer() {
+        return poseBuffer;
+    }
+
+    // 往返延迟统计（所有发出的命令，包括不等待结果的）
+    public LatencyHistogram getLatencyHistogram() {
+        return latencyHistogram;
+    }
+
+    public int getPendingCount() {
+        return responseTracker.getPendingCount();
+    }
+
+    // 写入队列状态
+    public int getWriteQueueDepth() {
+        return writeQueue.getDepth();
+    }
+
+    public long getWrittenCount() {
+        return writeQueue.getWrittenCount();
+    }
+
+    public long getCoalescedCount() {
+        return writeQueue.getCoalescedCount();
+    }
+
+    public long getDroppedCount() {
+        return writeQueue.getDroppedCount();
+    }
+}
@@ -0,0 +1,367 @@
+package com.example.miniarmcontroller;
+
+/**
+ * GATT写入队列：同一时间只允许一个写操作在途，等待 onCharacteristicWrite 回调后再发下一条。
+ * 同一关节尚未发出的 set 命令会合并为最新值，保证机械臂始终收敛到最新姿态。
+ * 每次写入会在MTU允许的范围内打包多条待发命令（文本命令以换行分隔，二进制帧直接拼接）。
+ * 优先命令（急停）插到所有待发命令之前并单独写出，同时丢弃尚未发出的运动命令。
+ * 在途的命令在写完成前留在队首，传输层拒绝写入时（另一个GATT操作仍在进行）下次重新写出，不会丢失最新的关节角度。
+ * 队列槽位和写入缓冲区都预先分配并重复使用，稳定运行时入队和写出不产生内存分配。
+ */
+public class CommandWriteQueue {
+    // 非单关节命令使用的关节ID
+    public static final int NO_JOINT = -1;
+
+    // 默认队列容量
+    public static final int DEFAULT_CAPACITY = 32;
+
+    // 单条命令的初始缓冲区大小，足够容纳二进制帧和常用文本命令，更长的命令会扩容后继续复用
+    private static final int ENTRY_BUFFER_SIZE = 32;
+
+    // 单次写入的最大长度（MTU 517 - ATT头 3）
+    public static final int MAX_WRITE_LENGTH = 514;
+
+    // 文本命令之间的分隔符
+    private static final byte TEXT_SEPARATOR = '\n';
+
+    private static final class Entry {
+        int jointId;
+        // 等待应答的命令标签（见 ResponseTracker），0表示不需要结果，UNTRACKED_TAG表示不等待回复
+        int tag;
+        // 优先命令单独写出，不与其他命令打包
+        boolean priority;
+        byte[] data = new byte[ENTRY_BUFFER_SIZE];
+        int length;
+
+        void set(int jointId, int tag, byte[] src, int offset, int length) {
+            if (data.length < length) {
+                data = new byte[length];
+            }
+            System.arraycopy(src, offset, data, 0, length);
+            this.jointId = jointId;
+            this.tag = tag;
+            this.length = length;
+            this.priority = false;
+        }
+
+        boolean isBinary() {
+            return length > 0 && data[0] == CommandCodec.FRAME_MAGIC;
+        }
+
+        // 设置关节或轨迹路点的命令，急停时丢弃
+        boolean isMotion() {
+            if (isBinary()) {
+                return length > 1 && (data[1] == CommandCodec.OP_SET_JOINTS || data[1] == CommandCodec.OP_TRAJECTORY);
+            }
+            return startsWith("set ") || startsWith("setall ")
+                    || (startsWith("traj ") && !startsWith(CommandCodec.TRAJECTORY_CLEAR));
+        }
+
+        private boolean startsWith(String prefix) {
+            if (length < prefix.length()) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length(); i++) {
+                if (data[i] != prefix.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // 环形队列，槽位预先分配：前 inFlightCount 个为在途命令，之后为待发命令；
+    // 待发命令最多capacity条，在途命令最多再占capacity个槽位
+    private final Entry[] ring;
+    private final int capacity;
+    private int head = 0;
+    private int size = 0;
+
+    // 按长度缓存的写入数组：characteristic.setValue 需要长度正好的数组
+    private final byte[][] writeArrays = new byte[MAX_WRITE_LENGTH + 1][];
+
+    private boolean writeInFlight = false;
+    private int inFlightCount = 0;
+
+    // 统计计数
+    private long enqueuedCount = 0;
+    private long writtenCount = 0;
+    private long coalescedCount = 0;
+    private long droppedCount = 0;
+    private int maxDepth = 0;
+
+    public CommandWriteQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public CommandWriteQueue(int capacity) {
+        this.capacity = capacity;
+        ring = new Entry[capacity * 2];
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = new Entry();
+        }
+    }
+
+    // 加入队列，返回false表示队列已满被丢弃
+    public boolean offer(int jointId, byte[] payload) {
+        return offer(jointId, payload, 0, payload.length);
+    }
+
+    // 复制 src[offset, offset+length) 到队列槽位中，调用方可以立即复用src
+    public boolean offer(int jointId, byte[] src, int offset, int length) {
+        return offer(jointId, src, offset, length, 0);
+    }
+
+    // 带应答标签入队；需要结果的命令应使用 NO_JOINT，避免被后续命令合并掉
+    public synchronized boolean offer(int jointId, byte[] src, int offset, int length, int tag) {
+        enqueuedCount++;
+
+        // 从队尾向前查找同一关节的待发set命令，遇到其他类型命令或在途命令即停止，避免打乱命令顺序
+        if (jointId != NO_JOINT) {
+            for (int i = size - 1; i >= inFlightCount; i--) {
+                Entry entry = slot(i);
+                if (entry.jointId == NO_JOINT) {
+                    break;
+                }
+                if (entry.jointId == jointId) {
+                    entry.set(jointId, tag, src, offset, length);
+                    coalescedCount++;
+                    return true;
+                }
+            }
+        }
+
+        if (size - inFlightCount >= capacity) {
+            droppedCount++;
+            return false;
+        }
+
+        slot(size).set(jointId, tag, src, offset, length);
+        size++;
+        updateMaxDepth();
+        return true;
+    }
+
+    // 优先命令：丢弃尚未发出的运动命令（需要结果的把标签写入droppedTags，容量不小于队列容量），
+    // 再插到在途命令之后、其他待发命令之前，下一次写入单独发出。返回丢弃的标签数，队列已满返回-1
+    public synchronized int offerPriority(byte[] src, int offset, int length, int tag, int[] droppedTags) {
+        enqueuedCount++;
+
+        // 原地压缩待发命令：保留非运动命令的相对顺序，被丢弃的槽位移到队尾
+        int kept = inFlightCount;
+        int dropped = 0;
+        for (int i = inFlightCount; i < size; i++) {
+            Entry entry = slot(i);
+            if (entry.isMotion()) {
+                if (entry.tag != 0) {
+                    droppedTags[dropped++] = entry.tag;
+                }
+                droppedCount++;
+                continue;
+            }
+            if (kept != i) {
+                int to = (head + kept) % ring.length;
+                int from = (head + i) % ring.length;
+                ring[from] = ring[to];
+                ring[to] = entry;
+            }
+            kept++;
+        }
+        size = kept;
+
+        if (size - inFlightCount >= capacity) {
+            droppedCount++;
+            return -1;
+        }
+
+        // 取队尾的空闲槽位，待发命令依次后移一位
+        Entry entry = slot(size);
+        for (int i = size; i > inFlightCount; i--) {
+            ring[(head + i) % ring.length] = slot(i - 1);
+        }
+        ring[(head + inFlightCount) % ring.length] = entry;
+        entry.set(NO_JOINT, tag, src, offset, length);
+        entry.priority = true;
+        size++;
+        updateMaxDepth();
+        return dropped;
+    }
+
+    // 取出待发命令打包（不超过maxBytes，至少包含一条）并标记为在途。
+    // 返回长度正好的写入数组，该数组会被之后同样长度的写入复用；若已有写操作在途或队列为空则返回null
+    public synchronized byte[] beginWrite(int maxBytes) {
+        if (writeInFlight || size == 0) {
+            return null;
+        }
+        maxBytes = Math.min(maxBytes, MAX_WRITE_LENGTH);
+
+        // 先计算能打包的同类型命令数量和总长度
+        Entry first = slot(0);
+        boolean binary = first.isBinary();
+        int length = first.length;
+        int count = 1;
+        while (count < size && !first.priority) {
+            Entry next = slot(count);
+            if (next.isBinary() != binary || next.priority) {
+                break;
+            }
+            int extra = next.length + (binary ? 0 : 1);
+            if (length + extra > maxBytes) {
+                break;
+            }
+            length += extra;
+            count++;
+        }
+
+        // 超长的单条命令按原长度发送，不进入缓存
+        byte[] out;
+        if (length <= MAX_WRITE_LENGTH) {
+            out = writeArrays[length];
+            if (out == null) {
+                out = new byte[length];
+                writeArrays[length] = out;
+            }
+        } else {
+            out = new byte[length];
+        }
+
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            Entry entry = slot(i);
+            if (i > 0 && !binary) {
+                out[position++] = TEXT_SEPARATOR;
+            }
+            System.arraycopy(entry.data, 0, out, position, entry.length);
+            position += entry.length;
+        }
+
+        writeInFlight = true;
+        inFlightCount = count;
+        return out;
+    }
+
+    // 写操作完成（收到 onCharacteristicWrite），在途命令出队
+    public synchronized void completeWrite(boolean success) {
+        head = (head + inFlightCount) % ring.length;
+        size -= inFlightCount;
+        writeInFlight = false;
+        if (success) {
+            writtenCount += inFlightCount;
+        } else {
+            droppedCount += inFlightCount;
+        }
+        inFlightCount = 0;
+    }
+
+    // 传输层拒绝了本次写入：在途命令留在队首，下一次写入重新发出。
+    // 期间入队的急停排在它们之后，仍在这批命令之后生效
+    public synchronized void abortWrite() {
+        writeInFlight = false;
+        inFlightCount = 0;
+    }
+
+    // 在途写入包含的命令数和各自的标签（二进制帧按 FRAME_LENGTH 依次排列）
+    public synchronized int getInFlightCount() {
+        return inFlightCount;
+    }
+
+    public synchronized int getInFlightTag(int index) {
+        return slot(index).tag;
+    }
+
+    private Entry slot(int index) {
+        return ring[(head + index) % ring.length];
+    }
+
+    private void updateMaxDepth() {
+        if (size - inFlightCount > maxDepth) {
+            maxDepth = size - inFlightCount;
+        }
+    }
+
+    public synchronized boolean isWriteInFlight() {
+        return writeInFlight;
+    }
+
+    // 待发命令数，不含在途命令
+    public synchronized int getDepth() {
+        return size - inFlightCount;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public synchronized long getEnqueuedCount() {
+        return enqueuedCount;
+    }
+
+    public synchronized long getWrittenCount() {
+        return writtenCount;
+    }
+
+    public synchronized long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    // 断开连接时清空队列，未发出的命令计为丢弃
+    public synchronized void clear() {
+        droppedCount += size - inFlightCount;
+        head = 0;
+        size = 0;
+        writeInFlight = false;
+        inFlightCount = 0;
+    }
+
+    // 解析 "set <id> <angle>" 命令的关节ID，其他命令返回 NO_JOINT
+    public static int parseJointId(String command) {
+        if (command == null || !command.startsWith("set ")) {
+            return NO_JOINT;
+        }
+        int start = 4;
+        int end = command.indexOf(' ', start);
+        if (end <= start) {
+            return NO_JOINT;
+        }
+        int id = 0;
+        for (int i = start; i < end; i++) {
+            char c = command.charAt(i);
+            if (c < '0' || c > '9') {
+                return NO_JOINT;
+            }
+            id = id * 10 + (c - '0');
+        }
+        return id;
+    }
+
+    // 解析字节形式的 "set <id> <angle>" 命令的关节ID，其他命令返回 NO_JOINT
+    public static int parseJointId(byte[] command, int offset, int length) {
+        int end = offset + length;
+        if (length < 4 || command[offset] != 's' || command[offset + 1] != 'e'
+                || command[offset + 2] != 't' || command[offset + 3] != ' ') {
+            return NO_JOINT;
+        }
+        int id = 0;
+        int digits = 0;
+        for (int i = offset + 4; i < end; i++) {
+            byte c = command[i];
+            if (c == ' ') {
+                return digits > 0 ? id : NO_JOINT;
+            }
+            if (c < '0' || c > '9') {
+                return NO_JOINT;
+            }
+            id = id * 10 + (c - '0');
+            digits++;
+        }
+        return NO_JOINT;
+    }
+}
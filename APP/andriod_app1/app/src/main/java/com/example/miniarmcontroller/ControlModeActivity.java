@@ -14,6 +14,7 @@ public class ControlModeActivity extends AppCompatActivity {
 
     private String deviceAddress;
     private BluetoothManager bluetoothManager;
+    private BluetoothManager.BluetoothManagerListener bluetoothListener;
 
     // UI组件
     private TextView tvTitle;
@@ -105,7 +106,7 @@ public class ControlModeActivity extends AppCompatActivity {
         try {
             Log.d(TAG, "Starting initBluetooth");
             bluetoothManager = BluetoothManager.getInstance(this);
-            bluetoothManager.setListener(new BluetoothManager.BluetoothManagerListener() {
+            bluetoothListener = new BluetoothManager.BluetoothManagerListener() {
                 @Override
                 public void onDeviceFound(BluetoothDeviceInfo device) {
                     // 不需要处理
@@ -120,7 +121,7 @@ public class ControlModeActivity extends AppCompatActivity {
                 public void onConnectionStateChanged(boolean connected, String deviceAddress) {
                     runOnUiThread(() -> {
                         Log.d(TAG, "Connection state changed: " + connected);
-                        if (!connected) {
+                        if (!connected && !bluetoothManager.isReconnecting()) {
                             Toast.makeText(ControlModeActivity.this, "Connection lost, returning to main screen", Toast.LENGTH_SHORT).show();
                             finish(); // 连接断开时返回主界面
                         }
@@ -139,7 +140,8 @@ public class ControlModeActivity extends AppCompatActivity {
                         Toast.makeText(ControlModeActivity.this, "Error: " + error, Toast.LENGTH_SHORT).show();
                     });
                 }
-            });
+            };
+            bluetoothManager.addListener(bluetoothListener);
             Log.d(TAG, "initBluetooth completed successfully");
         } catch (Exception e) {
             Log.e(TAG, "Error in initBluetooth", e);
@@ -193,7 +195,7 @@ public class ControlModeActivity extends AppCompatActivity {
             Log.d(TAG, "onDestroy called - maintaining Bluetooth connection");
             if (bluetoothManager != null) {
                 // 不调用cleanup()，保持连接状态
-                bluetoothManager.setListener(null); // 只清理监听器
+                bluetoothManager.removeListener(bluetoothListener); // 只注销本界面的监听器
             }
         } catch (Exception e) {
             Log.e(TAG, "Error in onDestroy", e);
@@ -1,71 +1,107 @@
 package com.example.miniarmcontroller;
 
-import android.content.Context;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.BaseAdapter;
 import android.widget.TextView;
 
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+
 import java.util.List;
 
-public class DeviceListAdapter extends BaseAdapter {
-    private Context context;
-    private List<BluetoothDeviceInfo> devices;
-    private LayoutInflater inflater;
+/**
+ * 扫描设备列表：submitList 后在后台线程计算新旧快照的差异，只重新绑定变化的行。
+ * 只有信号强度变化时通过 payload 只更新信号强度一行文字。
+ */
+public class DeviceListAdapter extends ListAdapter<BluetoothDeviceInfo, DeviceListAdapter.ViewHolder> {
+    // 只有信号强度变化
+    private static final Object PAYLOAD_RSSI = new Object();
 
-    public DeviceListAdapter(Context context, List<BluetoothDeviceInfo> devices) {
-        this.context = context;
-        this.devices = devices;
-        this.inflater = LayoutInflater.from(context);
+    public interface OnDeviceClickListener {
+        void onDeviceClick(BluetoothDeviceInfo device);
     }
 
-    @Override
-    public int getCount() {
-        return devices.size();
+    private static final DiffUtil.ItemCallback<BluetoothDeviceInfo> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<BluetoothDeviceInfo>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull BluetoothDeviceInfo oldItem, @NonNull BluetoothDeviceInfo newItem) {
+                    return oldItem.getAddress().equals(newItem.getAddress());
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull BluetoothDeviceInfo oldItem, @NonNull BluetoothDeviceInfo newItem) {
+                    return oldItem.getRssi() == newItem.getRssi() && oldItem.getName().equals(newItem.getName());
+                }
+
+                @Override
+                public Object getChangePayload(@NonNull BluetoothDeviceInfo oldItem, @NonNull BluetoothDeviceInfo newItem) {
+                    if (oldItem.getName().equals(newItem.getName())) {
+                        return PAYLOAD_RSSI;
+                    }
+                    return null;
+                }
+            };
+
+    private final OnDeviceClickListener clickListener;
+
+    public DeviceListAdapter(OnDeviceClickListener clickListener) {
+        super(DIFF_CALLBACK);
+        this.clickListener = clickListener;
     }
 
+    @NonNull
     @Override
-    public Object getItem(int position) {
-        return devices.get(position);
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_device, parent, false);
+        ViewHolder holder = new ViewHolder(view);
+        view.setOnClickListener(v -> {
+            int position = holder.getBindingAdapterPosition();
+            if (position != RecyclerView.NO_POSITION && clickListener != null) {
+                clickListener.onDeviceClick(getItem(position));
+            }
+        });
+        return holder;
     }
 
     @Override
-    public long getItemId(int position) {
-        return position;
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        BluetoothDeviceInfo deviceInfo = getItem(position);
+        holder.tvDeviceName.setText(deviceInfo.getName());
+        holder.tvDeviceAddress.setText(deviceInfo.getAddress());
+        holder.bindRssi(deviceInfo.getRssi());
     }
 
     @Override
-    public View getView(int position, View convertView, ViewGroup parent) {
-        ViewHolder holder;
-
-        if (convertView == null) {
-            convertView = inflater.inflate(R.layout.item_device, parent, false);
-            holder = new ViewHolder();
-            holder.tvDeviceName = convertView.findViewById(R.id.tv_device_name);
-            holder.tvDeviceAddress = convertView.findViewById(R.id.tv_device_address);
-            holder.tvDeviceRssi = convertView.findViewById(R.id.tv_device_rssi);
-            convertView.setTag(holder);
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.contains(PAYLOAD_RSSI)) {
+            holder.bindRssi(getItem(position).getRssi());
         } else {
-            holder = (ViewHolder) convertView.getTag();
+            onBindViewHolder(holder, position);
         }
-
-        BluetoothDeviceInfo deviceInfo = devices.get(position);
-        holder.tvDeviceName.setText(deviceInfo.getName());
-        holder.tvDeviceAddress.setText(deviceInfo.getAddress());
-        holder.tvDeviceRssi.setText("Signal Strength: " + deviceInfo.getRssiString());
-
-        return convertView;
     }
 
-    static class ViewHolder {
-        TextView tvDeviceName;
-        TextView tvDeviceAddress;
-        TextView tvDeviceRssi;
-    }
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        final TextView tvDeviceName;
+        final TextView tvDeviceAddress;
+        final TextView tvDeviceRssi;
+        // 当前显示的信号强度，相同时不重新生成文字
+        private int boundRssi = Integer.MIN_VALUE;
+
+        ViewHolder(View itemView) {
+            super(itemView);
+            tvDeviceName = itemView.findViewById(R.id.tv_device_name);
+            tvDeviceAddress = itemView.findViewById(R.id.tv_device_address);
+            tvDeviceRssi = itemView.findViewById(R.id.tv_device_rssi);
+        }
 
-    public void updateDevices(List<BluetoothDeviceInfo> newDevices) {
-        this.devices = newDevices;
-        notifyDataSetChanged();
+        void bindRssi(int rssi) {
+            if (rssi != boundRssi) {
+                boundRssi = rssi;
+                tvDeviceRssi.setText("Signal Strength: " + rssi + " dBm");
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,99 @@
+package com.example.miniarmcontroller;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 扫描到的设备表：按MAC地址索引，保持发现顺序。
+ * 同一设备的后续广播只原地更新信号强度和最后出现时间，不再创建新对象；
+ * 长时间没有广播的设备会被移除。
+ * 条目类型只需实现 Entry，不依赖Android，可以在JVM上单独测量去重的开销。
+ */
+public class DeviceRegistry<T extends DeviceRegistry.Entry<T>> {
+
+    // 注册表中的设备
+    public interface Entry<T> {
+        String getAddress();
+
+        int getRssi();
+
+        long getLastSeen();
+
+        // 收到新广播时原地更新，返回信号强度是否变化
+        boolean update(int rssi, long now);
+
+        // 复制当前状态，供界面使用
+        T copy();
+    }
+
+    private final LinkedHashMap<String, T> devices = new LinkedHashMap<>();
+
+    // 自上次取快照后是否有变化
+    private boolean dirty = false;
+
+    // 更新已知设备，返回false表示是新设备，需要调用add
+    public synchronized boolean update(String address, int rssi, long now) {
+        T info = devices.get(address);
+        if (info == null) {
+            return false;
+        }
+        if (info.update(rssi, now)) {
+            dirty = true;
+        }
+        return true;
+    }
+
+    public synchronized void add(T info, long now) {
+        info.update(info.getRssi(), now);
+        devices.put(info.getAddress(), info);
+        dirty = true;
+    }
+
+    public synchronized T get(String address) {
+        return devices.get(address);
+    }
+
+    // 移除超过maxAgeMs没有广播的设备，返回移除的数量
+    public synchronized int removeStale(long now, long maxAgeMs) {
+        int removed = 0;
+        Iterator<Map.Entry<String, T>> it = devices.entrySet().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().getValue().getLastSeen() > maxAgeMs) {
+                it.remove();
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            dirty = true;
+        }
+        return removed;
+    }
+
+    // 有变化时返回并清除变化标记
+    public synchronized boolean takeDirty() {
+        boolean wasDirty = dirty;
+        dirty = false;
+        return wasDirty;
+    }
+
+    // 返回当前状态的副本，之后的原地更新不会影响已发给界面的列表
+    public synchronized List<T> snapshot() {
+        List<T> copy = new ArrayList<>(devices.size());
+        for (T info : devices.values()) {
+            copy.add(info.copy());
+        }
+        return copy;
+    }
+
+    public synchronized int size() {
+        return devices.size();
+    }
+
+    public synchronized void clear() {
+        devices.clear();
+        dirty = true;
+    }
+}
@@ -48,6 +48,8 @@ public class DirectionControlActivity extends AppCompatActivity implements Bluet
     private TextView tvCurrentA, tvCurrentB, tvCurrentC, tvCurrentG;
     private TextView tvStepValue, tvLog;
     private SeekBar seekbarStep;
+    private final TextView[] tvJointSpeeds = new TextView[4];
+    private final SeekBar[] seekbarJointSpeeds = new SeekBar[4];
 
     // 当前角度值
     private int currentServoA = SERVO_A_DEFAULT;
@@ -58,6 +60,10 @@ public class DirectionControlActivity extends AppCompatActivity implements Bluet
     // 步进角度
     private int stepAngle = 5;
 
+    // 关节速度滑块范围（°/s），固件允许的上限更高，界面只开放常用范围
+    private static final int JOINT_SPEED_MIN = CommandCodec.SPEED_MIN;
+    private static final int JOINT_SPEED_MAX = 300;
+
     // 动态肘部舵机范围
     private int servoCMin = SERVO_C_MIN;
     private int servoCMax = SERVO_C_MAX;
@@ -67,6 +73,15 @@ public class DirectionControlActivity extends AppCompatActivity implements Bluet
     private Runnable moveRunnable;
     private boolean isMoving = false;
     private int moveDirection = 0; // 0=停止, 1=B上, 2=B下, 3=A左, 4=A右, 5=C上, 6=C下
+    private static final int MOVE_INTERVAL_MS = 200;
+    // 固件支持轨迹队列时，连续移动的每一步作为路点发送，段时长等于发送间隔，关节在步与步之间匀速运动
+    private TrajectoryStream trajectoryStream;
+    // 急停停稳后按遥测的实际角度更新界面
+    private final PoseRingBuffer.Sample haltSample = new PoseRingBuffer.Sample();
+
+    // 批量发送缓存
+    private final int[] batchServoIds = new int[3];
+    private final int[] batchAngles = new int[3];
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -124,16 +139,71 @@ public class DirectionControlActivity extends AppCompatActivity implements Bluet
             @Override
             public void onStopTrackingTouch(SeekBar seekBar) {}
         });
+
+        initJointSpeedControls();
+    }
+
+    // 关节速度控制：每个关节一个滑块，松手时发送 speed 命令，只改变该关节的速度
+    private void initJointSpeedControls() {
+        int[] valueIds = {R.id.tv_speed_a, R.id.tv_speed_b, R.id.tv_speed_c, R.id.tv_speed_g};
+        int[] seekbarIds = {R.id.seekbar_speed_a, R.id.seekbar_speed_b, R.id.seekbar_speed_c, R.id.seekbar_speed_g};
+        for (int i = 0; i < 4; i++) {
+            final int jointId = i;
+            tvJointSpeeds[i] = findViewById(valueIds[i]);
+            seekbarJointSpeeds[i] = findViewById(seekbarIds[i]);
+            seekbarJointSpeeds[i].setMax(JOINT_SPEED_MAX - JOINT_SPEED_MIN);
+            seekbarJointSpeeds[i].setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+                @Override
+                public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+                    tvJointSpeeds[jointId].setText((progress + JOINT_SPEED_MIN) + "°/s");
+                }
+
+                @Override
+                public void onStartTrackingTouch(SeekBar seekBar) {}
+
+                @Override
+                public void onStopTrackingTouch(SeekBar seekBar) {
+                    sendJointSpeed(jointId, seekBar.getProgress() + JOINT_SPEED_MIN);
+                }
+            });
+        }
+    }
+
+    private void sendJointSpeed(int jointId, int speed) {
+        if (!bluetoothManager.isConnected()) {
+            addLog("Error: Not connected to device");
+            return;
+        }
+        String command = CommandCodec.textSetJointSpeed(jointId, speed);
+        bluetoothManager.setJointSpeed(jointId, speed).addCallback((reply, error) -> runOnUiThread(() ->
+                addLog((error == null ? "Sent: " : "Send failed: ") + command)));
+    }
+
+    // 读取固件当前的关节速度，初始化滑块位置；旧固件不支持时保持默认值
+    private void loadJointSpeeds() {
+        bluetoothManager.queryJointSpeeds().addCallback((reply, error) -> {
+            int[] speeds = (error == null) ? CommandCodec.parseJointSpeeds(reply) : null;
+            if (speeds == null) {
+                return;
+            }
+            runOnUiThread(() -> {
+                for (int i = 0; i < 4; i++) {
+                    int speed = Math.max(JOINT_SPEED_MIN, Math.min(speeds[i], JOINT_SPEED_MAX));
+                    seekbarJointSpeeds[i].setProgress(speed - JOINT_SPEED_MIN);
+                }
+            });
+        });
     }
 
     private void initBluetooth() {
         // 使用单例BluetoothManager，保持连接状态
         bluetoothManager = BluetoothManager.getInstance(this);
-        bluetoothManager.setListener(this);
+        bluetoothManager.addListener(this);
 
         // 检查连接状态
         if (bluetoothManager.isConnected()) {
             addLog("Bluetooth connected, ready to send commands");
+            loadJointSpeeds();
         } else {
             addLog("Warning: Bluetooth not connected");
         }
@@ -141,7 +211,7 @@ public class DirectionControlActivity extends AppCompatActivity implements Bluet
 
     private void setupButtonListeners() {
         btnReset.setOnClickListener(v -> resetToDefault());
-        btnStop.setOnClickListener(v -> stopMovement());
+        btnStop.setOnClickListener(v -> haltArm());
         btnGripperOpen.setOnClickListener(v -> openGripper());
         btnGripperClose.setOnClickListener(v -> closeGripper());
 
@@ -183,13 +253,17 @@ public class DirectionControlActivity extends AppCompatActivity implements Bluet
 
         moveDirection = direction;
         isMoving = true;
+        if (bluetoothManager.isTrajectorySupported()) {
+            trajectoryStream = bluetoothManager.createTrajectoryStream();
+            trajectoryStream.start();
+        }
 
         moveRunnable = new Runnable() {
             @Override
             public void run() {
                 if (isMoving) {
                     performMovement(moveDirection);
-                    moveHandler.postDelayed(this, 200); // 200ms间隔
+                    moveHandler.postDelayed(this, MOVE_INTERVAL_MS);
                 }
             }
         };
@@ -207,6 +281,8 @@ public class DirectionControlActivity extends AppCompatActivity implements Bluet
 
         isMoving = false;
         moveDirection = 0;
+        // 只停止本地的重复发送，已入队的路点继续执行完（最多领先一两个间隔），关节减速停稳；要立即停住用停止按钮（haltArm）
+        trajectoryStream = null;
 
         if (moveRunnable != null) {
             moveHandler.removeCallbacks(moveRunnable);
@@ -216,6 +292,21 @@ public class DirectionControlActivity extends AppCompatActivity implements Bluet
         addLog("Stop movement");
     }
 
+    // 急停：停止连续移动，固件丢弃未执行的命令并在一个运动周期内停在当前位置
+    private void haltArm() {
+        stopMovement();
+        if (!bluetoothManager.isConnected()) {
+            addLog("Error: Not connected to device");
+            return;
+        }
+        if (!bluetoothManager.isHaltSupported()) {
+            addLog("Firmware does not support halt");
+            return;
+        }
+        bluetoothManager.halt().addCallback((reply, error) -> runOnUiThread(() ->
+                addLog(error == null ? "Halt: " + reply : "Halt failed: " + error.getMessage())));
+    }
+
     private void performMovement(int direction) {
         int oldA = currentServoA;
         int oldB = currentServoB;
@@ -251,15 +342,43 @@ public class DirectionControlActivity extends AppCompatActivity implements Bluet
             updateServoCRange();
         }
 
-        // 发送命令
+        if (trajectoryStream != null) {
+            if (currentServoA == oldA && currentServoB == oldB && currentServoC == oldC) {
+                return;
+            }
+            // 没有信用（队列满或初始信用未到）时撤销这一步，下个间隔重试
+            if (!trajectoryStream.offer(currentServoA, currentServoB, currentServoC, currentServoG, MOVE_INTERVAL_MS)) {
+                boolean shoulderChanged = currentServoB != oldB;
+                currentServoA = oldA;
+                currentServoB = oldB;
+                currentServoC = oldC;
+                if (shoulderChanged) {
+                    updateServoCRange();
+                }
+                return;
+            }
+            updateCurrentDisplay();
+            return;
+        }
+
+        // 发送命令：多个关节同时变化时打包在同一次写入中
+        int count = 0;
         if (currentServoA != oldA) {
-            sendSingleServoCommand(0, currentServoA);
+            batchServoIds[count] = 0;
+            batchAngles[count++] = currentServoA;
         }
         if (currentServoB != oldB) {
-            sendSingleServoCommand(1, currentServoB);
+            batchServoIds[count] = 1;
+            batchAngles[count++] = currentServoB;
         }
         if (currentServoC != oldC) {
-            sendSingleServoCommand(2, currentServoC);
+            batchServoIds[count] = 2;
+            batchAngles[count++] = currentServoC;
+        }
+        if (count == 1) {
+            sendSingleServoCommand(batchServoIds[0], batchAngles[0]);
+        } else if (count > 1) {
+            sendServoBatch(count);
         }
 
         updateCurrentDisplay();
@@ -313,14 +432,9 @@ public class DirectionControlActivity extends AppCompatActivity implements Bluet
     }
 
     private void updateServoCRange() {
-        // 根据肩部角度计算肘部舵机的动态范围
-        servoCMin = 140 - currentServoB;
-        servoCMax = Math.min(196 - currentServoB, 180);
-
-        // 确保范围有效
-        if (servoCMin < 0) servoCMin = 0;
-        if (servoCMax > 180) servoCMax = 180;
-        if (servoCMin > servoCMax) servoCMin = servoCMax;
+        // 根据肩部角度计算肘部舵机的动态范围（公式见 JointLimits）
+        servoCMin = JointLimits.elbowMin(currentServoB);
+        servoCMax = JointLimits.elbowMax(currentServoB);
 
         // 调整当前肘部角度以适应新范围
         if (currentServoC < servoCMin) {
@@ -348,8 +462,8 @@ public class DirectionControlActivity extends AppCompatActivity implements Bluet
             return;
         }
 
-        String command = "set " + servoId + " " + angle;
-        boolean success = bluetoothManager.sendData(command);
+        String command = CommandCodec.textSetJoint(servoId, angle);
+        boolean success = bluetoothManager.sendSetJoint(servoId, angle);
 
         if (success) {
             addLog("Sent: " + command);
@@ -358,14 +472,27 @@ public class DirectionControlActivity extends AppCompatActivity implements Bluet
         }
     }
 
+    private void sendServoBatch(int count) {
+        if (bluetoothManager == null || !bluetoothManager.isConnected()) {
+            addLog("Error: Not connected to device");
+            return;
+        }
+
+        boolean success = bluetoothManager.sendSetJoints(batchServoIds, batchAngles, count);
+        for (int i = 0; i < count; i++) {
+            String command = CommandCodec.textSetJoint(batchServoIds[i], batchAngles[i]);
+            addLog((success ? "Sent: " : "Send failed: ") + command);
+        }
+    }
+
     private void sendAllServoCommand() {
         if (bluetoothManager == null || !bluetoothManager.isConnected()) {
             addLog("Error: Not connected to device");
             return;
         }
 
-        String command = "setall " + currentServoA + " " + currentServoB + " " + currentServoC + " " + currentServoG;
-        boolean success = bluetoothManager.sendData(command);
+        String command = CommandCodec.textSetAll(currentServoA, currentServoB, currentServoC, currentServoG);
+        boolean success = bluetoothManager.sendSetAll(currentServoA, currentServoB, currentServoC, currentServoG);
 
         if (success) {
             addLog("Sent: " + command);
@@ -405,6 +532,23 @@ public class DirectionControlActivity extends AppCompatActivity implements Bluet
         // 不需要处理
     }
 
+    @Override
+    public void onHaltSettled(long stopToStillMs) {
+        runOnUiThread(() -> {
+            addLog("Arm still " + stopToStillMs + "ms after halt");
+            if (isMoving || !bluetoothManager.getPoseBuffer().latest(haltSample)) {
+                return;
+            }
+            // 机械臂停在了途中，之后的步进从实际位置开始
+            currentServoA = haltSample.currentAngles[0];
+            currentServoB = haltSample.currentAngles[1];
+            currentServoC = haltSample.currentAngles[2];
+            currentServoG = haltSample.currentAngles[3];
+            updateServoCRange();
+            updateCurrentDisplay();
+        });
+    }
+
     @Override
     public void onConnectionStateChanged(boolean connected, String deviceAddress) {
         runOnUiThread(() -> {
@@ -412,6 +556,11 @@ public class DirectionControlActivity extends AppCompatActivity implements Bluet
                 addLog("Bluetooth connected successfully: " + deviceAddress);
                 Toast.makeText(DirectionControlActivity.this, "Connected successfully", Toast.LENGTH_SHORT).show();
             } else {
+                if (bluetoothManager != null && bluetoothManager.isReconnecting()) {
+                    // 后台重连中，保留当前界面
+                    addLog("Bluetooth connection lost, reconnecting...");
+                    return;
+                }
                 addLog("Bluetooth connection lost");
                 Toast.makeText(DirectionControlActivity.this, "Connection lost", Toast.LENGTH_SHORT).show();
                 finish(); // 连接断开时返回上一界面
@@ -426,6 +575,27 @@ public class DirectionControlActivity extends AppCompatActivity implements Bluet
         });
     }
 
+    @Override
+    public void onLinkParametersChanged(double intervalMs, int latency, int txPhy, int rxPhy) {
+        runOnUiThread(() -> {
+            addLog("Link: interval " + intervalMs + "ms, latency " + latency + ", PHY tx/rx " + txPhy + "/" + rxPhy);
+        });
+    }
+
+    @Override
+    public void onReconnecting(int attempt) {
+        runOnUiThread(() -> {
+            addLog("Reconnecting, attempt " + attempt);
+        });
+    }
+
+    @Override
+    public void onReconnected(int attempts, long timeToReadyMs) {
+        runOnUiThread(() -> {
+            addLog("Reconnected after " + attempts + " attempts, ready in " + timeToReadyMs + "ms");
+        });
+    }
+
     @Override
     public void onError(String error) {
         runOnUiThread(() -> {
@@ -442,7 +612,7 @@ public class DirectionControlActivity extends AppCompatActivity implements Bluet
             Log.d(TAG, "onDestroy called - maintaining Bluetooth connection");
             if (bluetoothManager != null) {
                 // 不调用cleanup()，保持连接状态
-                bluetoothManager.setListener(null); // 只清理监听器
+                bluetoothManager.removeListener(this); // 只注销本界面的监听器
             }
         } catch (Exception e) {
             Log.e(TAG, "Error in onDestroy", e);
@@ -0,0 +1,111 @@
+package com.example.miniarmcontroller;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.util.Log;
+
+/**
+ * BLE传输层：写入ESP32的RX特征值，TX特征值的通知和写完成回调由 BluetoothManager 的GATT回调转交。
+ * 除 isAttached/isReady 外的方法都在BLE I/O线程调用。
+ */
+public class GattTransport implements ArmTransport {
+    private static final String TAG = "GattTransport";
+
+    // 收发路径上的逐条日志默认关闭，需要时用 adb shell setprop log.tag.GattTransport VERBOSE 打开，
+    // 每次连接就绪时重新读取，设置后重新连接即可生效
+    private boolean trace = Log.isLoggable(TAG, Log.VERBOSE);
+
+    // MTU：默认23字节（ATT头占3字节）
+    public static final int DEFAULT_MTU = 23;
+    private static final int ATT_HEADER_SIZE = 3;
+
+    private volatile BluetoothGatt gatt;
+    private volatile BluetoothGattCharacteristic rxCharacteristic;
+    private volatile boolean ready = false;
+    private volatile int mtu = DEFAULT_MTU;
+    private Callback callback;
+
+    @Override
+    public void setCallback(Callback callback) {
+        this.callback = callback;
+    }
+
+    // 找到特征值后绑定，MTU协商结束后再 setReady
+    public void attach(BluetoothGatt gatt, BluetoothGattCharacteristic rxCharacteristic) {
+        this.gatt = gatt;
+        this.rxCharacteristic = rxCharacteristic;
+    }
+
+    // 连接断开时解除绑定
+    public void detach() {
+        ready = false;
+        gatt = null;
+        rxCharacteristic = null;
+        mtu = DEFAULT_MTU;
+    }
+
+    // 已找到特征值（可以入队命令，MTU协商结束前暂不写出），可在任意线程调用
+    public boolean isAttached() {
+        return gatt != null && rxCharacteristic != null;
+    }
+
+    public void setReady(boolean ready) {
+        if (ready) {
+            trace = Log.isLoggable(TAG, Log.VERBOSE);
+        }
+        this.ready = ready;
+    }
+
+    public void setMtu(int mtu) {
+        this.mtu = mtu;
+    }
+
+    public int getMtu() {
+        return mtu;
+    }
+
+    @Override
+    public boolean isReady() {
+        return ready && gatt != null && rxCharacteristic != null;
+    }
+
+    @Override
+    public int getMaxPayload() {
+        return mtu - ATT_HEADER_SIZE;
+    }
+
+    @Override
+    public boolean write(byte[] data) {
+        BluetoothGatt currentGatt = gatt;
+        BluetoothGattCharacteristic characteristic = rxCharacteristic;
+        if (currentGatt == null || characteristic == null) {
+            return false;
+        }
+
+        boolean result;
+        try {
+            characteristic.setValue(data);
+            result = currentGatt.writeCharacteristic(characteristic);
+        } catch (Exception e) {
+            Log.e(TAG, "Send data exception: " + e.getMessage());
+            result = false;
+        }
+        if (trace) {
+            Log.v(TAG, "Send data: " + data.length + " bytes, result: " + result);
+        }
+        return result;
+    }
+
+    // TX特征值通知
+    public void onNotification(byte[] data) {
+        if (trace) {
+            Log.v(TAG, "Received " + data.length + " bytes");
+        }
+        callback.onDataReceived(data);
+    }
+
+    // onCharacteristicWrite 回调
+    public void onWriteComplete(boolean success) {
+        callback.onWriteComplete(success);
+    }
+}
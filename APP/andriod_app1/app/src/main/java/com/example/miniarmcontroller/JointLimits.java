@@ -0,0 +1,54 @@
+package com.example.miniarmcontroller;
+
+/**
+ * 关节角度限制（与固件 movement.cpp 的 checkAngleValid 保持一致）。
+ * 肘部舵机的范围取决于肩部角度: min = 140 - b, max = min(196 - b, 180)
+ */
+public final class JointLimits {
+    public static final int BASE_MIN = 0;
+    public static final int BASE_MAX = 180;
+    public static final int SHOULDER_MIN = 0;
+    public static final int SHOULDER_MAX = 77;
+    public static final int ELBOW_MAX = 180;
+    public static final int GRIPPER_MIN = 0;
+    public static final int GRIPPER_MAX = 37;
+
+    private JointLimits() {
+    }
+
+    // 给定肩部角度时肘部的最小角度
+    public static int elbowMin(int shoulderAngle) {
+        int min = Math.max(140 - shoulderAngle, 0);
+        return Math.min(min, elbowMax(shoulderAngle));
+    }
+
+    // 给定肩部角度时肘部的最大角度
+    public static int elbowMax(int shoulderAngle) {
+        return Math.min(196 - shoulderAngle, ELBOW_MAX);
+    }
+
+    // 把肘部角度限制在当前肩部角度允许的范围内
+    public static int clampElbow(int elbowAngle, int shoulderAngle) {
+        int min = elbowMin(shoulderAngle);
+        if (elbowAngle < min) {
+            return min;
+        }
+        return Math.min(elbowAngle, elbowMax(shoulderAngle));
+    }
+
+    // 与固件 checkAngleValid 相同，肘部按给定的肩部角度校验
+    public static boolean isValid(int jointId, int angle, int shoulderAngle) {
+        switch (jointId) {
+            case 0:
+                return angle >= BASE_MIN && angle <= BASE_MAX;
+            case 1:
+                return angle >= SHOULDER_MIN && angle <= SHOULDER_MAX;
+            case 2:
+                return angle >= 140 - shoulderAngle && angle <= elbowMax(shoulderAngle);
+            case 3:
+                return angle >= GRIPPER_MIN && angle <= GRIPPER_MAX;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.miniarmcontroller;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 日志回放：按记录顺序重新发出日志中的出站写入，保持原始的时间间隔或按倍速加快。
+ * 入站记录不回放，只作为原始回复的参照。
+ */
+public class JournalReplayer {
+
+    // 回放的写入去向，BluetoothManager 中为 sendRaw
+    public interface Sink {
+        boolean send(byte[] payload);
+    }
+
+    public interface Listener {
+        // 回放结束，cancelled表示被中途取消
+        void onReplayFinished(int sent, int failed, boolean cancelled);
+    }
+
+    private final List<CommandJournal.Record> records;
+    private final Sink sink;
+    private final CommandPipeline.Scheduler scheduler;
+    private final double speed;
+    private final Runnable sendRunnable = this::sendNext;
+    private Listener listener;
+
+    private volatile boolean cancelled = false;
+    private int index = 0;
+    private int failed = 0;
+    private long startNanos;
+
+    // speed为1按原始时间回放，大于1按倍速加快，Double.POSITIVE_INFINITY表示不等待
+    public JournalReplayer(List<CommandJournal.Record> records, Sink sink,
+                           CommandPipeline.Scheduler scheduler, double speed) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("speed must be positive: " + speed);
+        }
+        this.records = records;
+        this.sink = sink;
+        this.scheduler = scheduler;
+        this.speed = speed;
+    }
+
+    // 读取日志文件中的出站记录
+    public static List<CommandJournal.Record> readOutbound(File file) throws IOException {
+        List<CommandJournal.Record> outbound = new ArrayList<>();
+        try (CommandJournal.Reader reader = new CommandJournal.Reader(file)) {
+            CommandJournal.Record record;
+            while ((record = reader.next()) != null) {
+                if (record.isOutbound()) {
+                    outbound.add(record);
+                }
+            }
+        }
+        return outbound;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public void start() {
+        startNanos = System.nanoTime();
+        scheduler.schedule(sendRunnable, 0);
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public int getTotal() {
+        return records.size();
+    }
+
+    private void sendNext() {
+        if (cancelled) {
+            finish(true);
+            return;
+        }
+        if (index >= records.size()) {
+            finish(false);
+            return;
+        }
+
+        if (!sink.send(records.get(index).data)) {
+            failed++;
+        }
+        index++;
+
+        if (index >= records.size()) {
+            finish(false);
+            return;
+        }
+        // 按距离开始的时间计算下一条的延时，单条发送的耗时不会累计成漂移
+        long dueMicros = (long) ((records.get(index).timeMicros - records.get(0).timeMicros) / speed);
+        long elapsedMicros = (System.nanoTime() - startNanos) / 1000;
+        // 总是重新排队而不是直接调用，倍速很高时也不会递归
+        scheduler.schedule(sendRunnable, Math.max(dueMicros - elapsedMicros, 0) / 1000);
+    }
+
+    private void finish(boolean wasCancelled) {
+        Listener current = listener;
+        if (current != null) {
+            current.onReplayFinished(index - failed, failed, wasCancelled);
+        }
+    }
+}
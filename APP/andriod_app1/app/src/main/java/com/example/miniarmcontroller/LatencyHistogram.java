@@ -0,0 +1,107 @@
+package com.example.miniarmcontroller;
+
+import java.util.Arrays;
+
+/**
+ * 命令往返延迟直方图（微秒）。
+ * 按2的幂分段，每段再均分为8个桶，相对误差约12.5%；记录只做几次位运算，不分配内存。
+ */
+public class LatencyHistogram {
+    // 每个2的幂区间细分的桶数（2^3）
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // 最大可记录约 2^31 微秒，超出的记入最后一个桶
+    private static final int MAX_EXPONENT = 31;
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long totalCount = 0;
+    private long totalMicros = 0;
+    private long maxMicros = 0;
+
+    public synchronized void record(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        counts[bucketOf(micros)]++;
+        totalCount++;
+        totalMicros += micros;
+        if (micros > maxMicros) {
+            maxMicros = micros;
+        }
+    }
+
+    // 返回百分位（0-100）对应的延迟上界（微秒）
+    public synchronized long getPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(totalCount * percentile / 100.0);
+        if (target < 1) {
+            target = 1;
+        }
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(upperBoundOf(i), maxMicros);
+            }
+        }
+        return maxMicros;
+    }
+
+    public synchronized long getCount() {
+        return totalCount;
+    }
+
+    public synchronized long getMaxMicros() {
+        return maxMicros;
+    }
+
+    public synchronized long getMeanMicros() {
+        return totalCount == 0 ? 0 : totalMicros / totalCount;
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        totalMicros = 0;
+        maxMicros = 0;
+    }
+
+    // 例如 "n=120 p50=18.2ms p99=41.0ms max=55.3ms"
+    public String summary() {
+        return "n=" + getCount()
+                + " p50=" + formatMillis(getPercentile(50))
+                + " p99=" + formatMillis(getPercentile(99))
+                + " max=" + formatMillis(getMaxMicros());
+    }
+
+    private static String formatMillis(long micros) {
+        return (micros / 1000) + "." + (micros % 1000 / 100) + "ms";
+    }
+
+    // 小于8的值直接对应桶号，之后每个2的幂区间分为8个桶
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    // 桶内最大值
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        long base = (1L << exponent) + ((long) sub << (exponent - SUB_BUCKET_BITS));
+        return base + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.miniarmcontroller;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+/**
+ * 订阅者列表和事件分发：每个订阅者注册时指定回调所在的executor。
+ * 用 DIRECT_EXECUTOR 注册的订阅者在分发线程上直接回调，不为每个事件创建任务；
+ * 每条回复这样的高频事件用带参数的 dispatch，事件本身可以是不捕获变量的常量。
+ * 不依赖Android，可以在JVM上单独测量分发的开销。
+ */
+public class ListenerDispatcher<L> {
+    // 在分发线程（BLE实现中为I/O线程）直接回调，回调中不能阻塞
+    public static final Executor DIRECT_EXECUTOR = Runnable::run;
+
+    public interface Event<L> {
+        void deliver(L listener);
+    }
+
+    // 参数随分发传入的事件
+    public interface ArgEvent<L, T> {
+        void deliver(L listener, T arg);
+    }
+
+    private static final class Subscription<L> {
+        final L listener;
+        final Executor executor;
+        final boolean direct;
+
+        Subscription(L listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+            this.direct = executor == DIRECT_EXECUTOR;
+        }
+    }
+
+    private static final Subscription<?>[] NONE = new Subscription<?>[0];
+
+    // 注册/注销时整体替换数组，分发时不加锁也不创建迭代器
+    private volatile Subscription<?>[] subscriptions = NONE;
+
+    // 同一个订阅者重复注册时替换原来的executor
+    public synchronized void add(L listener, Executor executor) {
+        remove(listener);
+        Subscription<?>[] current = subscriptions;
+        Subscription<?>[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = new Subscription<>(listener, executor);
+        subscriptions = updated;
+    }
+
+    public synchronized void remove(L listener) {
+        Subscription<?>[] current = subscriptions;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].listener == listener) {
+                Subscription<?>[] updated = new Subscription<?>[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                subscriptions = updated;
+                return;
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return subscriptions.length == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void dispatch(Event<L> event) {
+        for (Subscription<?> entry : subscriptions) {
+            Subscription<L> subscription = (Subscription<L>) entry;
+            if (subscription.direct) {
+                event.deliver(subscription.listener);
+            } else {
+                subscription.executor.execute(() -> event.deliver(subscription.listener));
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> void dispatch(ArgEvent<L, T> event, T arg) {
+        for (Subscription<?> entry : subscriptions) {
+            Subscription<L> subscription = (Subscription<L>) entry;
+            if (subscription.direct) {
+                event.deliver(subscription.listener, arg);
+            } else {
+                subscription.executor.execute(() -> event.deliver(subscription.listener, arg));
+            }
+        }
+    }
+}
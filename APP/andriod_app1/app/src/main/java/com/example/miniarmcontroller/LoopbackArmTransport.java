@@ -0,0 +1,648 @@
+package com.example.miniarmcontroller;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内模拟的机械臂：按固件 command_break.cpp 的规则解析文本命令和二进制帧，
+ * 按 JointLimits（与 movement.cpp 的 checkAngleValid 一致）检查角度并回复 OK/ERROR。
+ * 可设置写入到回复的延迟和回复丢失率，用于在普通JVM上测试和压测命令管线。
+ * 写完成、命令执行和回复都在一个单独的线程中按顺序进行，与真实固件一样每次只处理一个写入。
+ */
+public class LoopbackArmTransport implements ArmTransport {
+    public static final int JOINT_COUNT = 4;
+    public static final int DEFAULT_MAX_PAYLOAD = 244;  // MTU 247
+
+    // 与固件 movement.h 的原点一致
+    private static final int[] DEFAULT_ANGLES = {90, 0, 180, 0};
+
+    private static final int TELEMETRY_MIN_INTERVAL = 20;
+    private static final int TELEMETRY_MAX_INTERVAL = 1000;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "loopback-arm");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Random random;
+    private Callback callback;
+
+    private volatile boolean ready = true;
+    private volatile int maxPayload = DEFAULT_MAX_PAYLOAD;
+    private volatile long latencyMicros = 0;
+    private volatile double lossRate = 0;
+    private volatile boolean helloSupported = true;
+
+    // 模拟的关节状态，只在模拟线程访问；舵机插值不模拟，目标角度立即生效
+    private final int[] currentAngles = DEFAULT_ANGLES.clone();
+    private final int[] targetAngles = DEFAULT_ANGLES.clone();
+
+    private ScheduledFuture<?> telemetryTask;
+    private int telemetrySeq = 0;
+
+    // 运动程序（与固件 program.cpp 一致），步骤为 MotionProgram.Step，只在模拟线程访问
+    private static final int PROGRAM_IDLE = 0;
+    private static final int PROGRAM_RUNNING = 1;
+    private static final int PROGRAM_PAUSED = 2;
+    private final List<MotionProgram.Step> programSteps = new ArrayList<>();
+    private MotionProgram uploadProgram;
+    private int programState = PROGRAM_IDLE;
+    private int programStep = 0;
+    private int programLoops = 0;
+    private int programLoopLimit = 0;
+    private ScheduledFuture<?> programTask;
+
+    // 轨迹队列（与固件 trajectory.cpp 一致），路点为 {a, b, c, g, 段时长ms}；插值不模拟，段结束时到达路点
+    private static final int TRAJECTORY_CAPACITY = 32;
+    private static final int TRAJECTORY_MAX_DURATION = 10000;
+    private final ArrayDeque<int[]> trajectoryQueue = new ArrayDeque<>();
+    private ScheduledFuture<?> trajectoryTask;
+
+    // 关节速度和步长（与固件 movement.cpp 的默认值一致），只影响 speed 命令的回复，运动本身不模拟
+    private final int[] jointSpeeds = {120, 90, 120, 150};
+    private final int[] jointStepSizes = {1, 1, 1, 1};
+
+    // 统计计数
+    private volatile long writeCount = 0;
+    private volatile long commandCount = 0;
+    private volatile long replyCount = 0;
+    private volatile long lostReplyCount = 0;
+
+    public LoopbackArmTransport() {
+        this(new Random());
+    }
+
+    // 指定随机源，丢包序列可重复
+    public LoopbackArmTransport(Random random) {
+        this.random = random;
+    }
+
+    @Override
+    public void setCallback(Callback callback) {
+        this.callback = callback;
+    }
+
+    @Override
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void setReady(boolean ready) {
+        this.ready = ready;
+    }
+
+    @Override
+    public int getMaxPayload() {
+        return maxPayload;
+    }
+
+    public void setMaxPayload(int maxPayload) {
+        this.maxPayload = maxPayload;
+    }
+
+    // 写入到执行（以及写完成回调）的延迟
+    public void setLatencyMicros(long latencyMicros) {
+        this.latencyMicros = latencyMicros;
+    }
+
+    // 每条回复被丢弃的概率（0-1）
+    public void setLossRate(double lossRate) {
+        this.lossRate = lossRate;
+    }
+
+    // 模拟握手之前的旧固件：hello 是未知命令，只在串口打印，不回复蓝牙
+    public void setHelloSupported(boolean helloSupported) {
+        this.helloSupported = helloSupported;
+    }
+
+    @Override
+    public boolean write(byte[] data) {
+        if (!ready) {
+            return false;
+        }
+        byte[] copy = data.clone();
+        long delay = latencyMicros;
+        if (delay > 0) {
+            executor.schedule(() -> receive(copy), delay, TimeUnit.MICROSECONDS);
+        } else {
+            executor.execute(() -> receive(copy));
+        }
+        return true;
+    }
+
+    // 停止模拟线程
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // 模拟线程：确认写入，再依次执行其中的命令
+    private void receive(byte[] data) {
+        writeCount++;
+        callback.onWriteComplete(true);
+
+        if (data.length > 0 && data[0] == CommandCodec.FRAME_MAGIC) {
+            for (int offset = 0; offset + CommandCodec.FRAME_LENGTH <= data.length; offset += CommandCodec.FRAME_LENGTH) {
+                executeFrame(data, offset);
+            }
+            return;
+        }
+
+        // 文本命令以换行分隔，每条命令回复一行
+        int start = 0;
+        for (int i = 0; i <= data.length; i++) {
+            if (i == data.length || data[i] == '\n') {
+                if (i > start) {
+                    executeText(new String(data, start, i - start));
+                }
+                start = i + 1;
+            }
+        }
+    }
+
+    private void executeFrame(byte[] data, int offset) {
+        commandCount++;
+        int opcode = data[offset + 1] & 0xFF;
+        int seq = data[offset + 2] & 0xFF;
+
+        if (opcode == CommandCodec.OP_SET_JOINTS) {
+            stopAutomaticMotion();
+            int mask = data[offset + 3] & 0xFF;
+            int[] angles = new int[JOINT_COUNT];
+            for (int i = 0; i < JOINT_COUNT; i++) {
+                angles[i] = data[offset + 4 + i] & 0xFF;
+            }
+            replyAck(seq, applyJointMask(mask, angles));
+        } else if (opcode == CommandCodec.OP_TRAJECTORY) {
+            int[] point = new int[JOINT_COUNT + 1];
+            for (int i = 0; i < JOINT_COUNT; i++) {
+                point[i] = data[offset + 4 + i] & 0xFF;
+            }
+            point[JOINT_COUNT] = (data[offset + 3] & 0xFF) * CommandCodec.TRAJECTORY_TIME_UNIT_MS;
+            boolean ok = pushTrajectoryPoint(point);
+            reply(new byte[]{CommandCodec.FRAME_MAGIC, CommandCodec.OP_TRAJECTORY_ACK, (byte) seq,
+                    (byte) (ok ? CommandCodec.STATUS_OK : CommandCodec.STATUS_ERROR),
+                    (byte) (TRAJECTORY_CAPACITY - trajectoryQueue.size())});
+        } else if (opcode == CommandCodec.OP_RESET) {
+            stopAutomaticMotion();
+            resetToDefault();
+            replyAck(seq, true);
+        } else if (opcode == CommandCodec.OP_STATUS) {
+            byte[] reply = new byte[CommandCodec.FRAME_LENGTH];
+            reply[0] = CommandCodec.FRAME_MAGIC;
+            reply[1] = CommandCodec.OP_STATUS_REPLY;
+            reply[2] = (byte) seq;
+            reply[3] = (byte) CommandCodec.MASK_ALL_JOINTS;
+            for (int i = 0; i < JOINT_COUNT; i++) {
+                reply[4 + i] = (byte) currentAngles[i];
+            }
+            reply(reply);
+        } else {
+            replyAck(seq, false);
+        }
+    }
+
+    // 与固件 applyJointMask 一致：全部关节走setall校验，其余逐个设置
+    private boolean applyJointMask(int mask, int[] angles) {
+        if (mask == CommandCodec.MASK_ALL_JOINTS || mask == (CommandCodec.MASK_ALL_JOINTS | CommandCodec.MASK_SYNC)) {
+            return setAll(angles[0], angles[1], angles[2], angles[3]);
+        }
+        if (mask == 0 || (mask & ~CommandCodec.MASK_ALL_JOINTS) != 0) {
+            return false;
+        }
+        boolean ok = true;
+        for (int i = 0; i < JOINT_COUNT; i++) {
+            if ((mask & (1 << i)) != 0) {
+                ok = setJoint(i, angles[i]) && ok;
+            }
+        }
+        return ok;
+    }
+
+    // 与固件 parseCommand/executeParsedCommand 一致的文本命令处理
+    private void executeText(String command) {
+        commandCount++;
+        command = command.trim();
+
+        if (command.startsWith("set ")) {
+            stopAutomaticMotion();
+            String params = command.substring(4).trim();
+            int space = params.indexOf(' ');
+            if (space == -1) {
+                replyText("ERROR");
+                return;
+            }
+            int jointId = toInt(params.substring(0, space));
+            int angle = toInt(params.substring(space + 1));
+            boolean valid = jointId >= 0 && jointId < JOINT_COUNT;
+            replyText(valid && setJoint(jointId, angle) ? "OK" : "ERROR");
+        } else if (command.startsWith("setall ")) {
+            stopAutomaticMotion();
+            // 多余的角度被忽略，不足4个时报错；同步运动的时长只校验范围
+            String params = command.substring(7).trim();
+            boolean valid = true;
+            int syncIndex = params.indexOf(" sync");
+            if (syncIndex != -1) {
+                String duration = params.substring(syncIndex + 5).trim();
+                int durationMs = duration.isEmpty() ? 0 : toInt(duration);
+                valid = durationMs >= 0 && durationMs <= CommandCodec.SYNC_MAX_DURATION_MS;
+                params = params.substring(0, syncIndex);
+            }
+            int[] angles = new int[JOINT_COUNT];
+            int count = 0;
+            for (String part : params.split(" ")) {
+                if (part.length() > 0 && count < JOINT_COUNT) {
+                    angles[count++] = toInt(part);
+                }
+            }
+            valid = valid && count == JOINT_COUNT;
+            replyText(valid && setAll(angles[0], angles[1], angles[2], angles[3]) ? "OK" : "ERROR");
+        } else if (command.equals("reset")) {
+            stopAutomaticMotion();
+            resetToDefault();
+            replyText("RESET_OK");
+        } else if (command.equals(CommandCodec.HALT)) {
+            // 与固件一致：中止程序和轨迹，目标设为当前角度
+            stopAutomaticMotion();
+            System.arraycopy(currentAngles, 0, targetAngles, 0, JOINT_COUNT);
+            replyText("OK");
+        } else if (command.equals("status")) {
+            replyText(currentAngles[0] + "," + currentAngles[1] + "," + currentAngles[2] + "," + currentAngles[3]);
+        } else if (command.equals("limits") || command.equals("info")) {
+            replyText("LIMITS: 基座0-180°,肩部0-77°,肘部动态,抓手0-37°");
+        } else if (command.equals("hello")) {
+            if (!helloSupported) {
+                return;
+            }
+            replyText(CommandCodec.HELLO_REPLY_PREFIX + "2 " + CommandCodec.CAPABILITY_BINARY + " "
+                    + CommandCodec.CAPABILITY_TELEMETRY + " " + CommandCodec.CAPABILITY_PROGRAM
+                    + " " + CommandCodec.CAPABILITY_TRAJECTORY + " " + CommandCodec.CAPABILITY_SYNC
+                    + " " + CommandCodec.CAPABILITY_HALT);
+        } else if (command.equals("help")) {
+            replyText("HELP: set/setall/reset/status/limits/help/torque/hello/telemetry/prog/run/pause/resume/abort/halt/traj/profile/speed/perf");
+        } else if (command.equals("torque")) {
+            replyText("TORQUE_STATUS_OK");
+        } else if (command.equals("torque on") || command.equals("torque off")) {
+            replyText(command.equals("torque on") ? "TORQUE_ON" : "TORQUE_OFF");
+        } else if (command.startsWith("torque set ")) {
+            String[] parts = command.substring(11).trim().split(" ");
+            boolean valid = parts.length >= 3
+                    && inRange(toInt(parts[0]), 0, 77)
+                    && inRange(toInt(parts[1]), 0, 10)
+                    && inRange(toInt(parts[2]), 50, 500);
+            replyText(valid ? "TORQUE_SET_OK" : "ERROR");
+        } else if (command.startsWith(CommandCodec.TELEMETRY_COMMAND)) {
+            String params = command.substring(CommandCodec.TELEMETRY_COMMAND.length()).trim();
+            if (params.equals(CommandCodec.TELEMETRY_OFF)) {
+                setTelemetryInterval(0);
+                replyText("OK");
+            } else if (params.equals("fb on") || params.equals("fb off")) {
+                replyText("OK");
+            } else if (params.length() > 0 && Character.isDigit(params.charAt(0))) {
+                setTelemetryInterval(toInt(params));
+                replyText("OK");
+            } else {
+                replyText("ERROR");
+            }
+        } else if (command.equals(CommandCodec.PROGRAM_STATUS) || command.startsWith("prog ")
+                || command.equals(CommandCodec.PROGRAM_RUN) || command.startsWith("run ")
+                || command.equals(CommandCodec.PROGRAM_PAUSE) || command.equals(CommandCodec.PROGRAM_RESUME)
+                || command.equals(CommandCodec.PROGRAM_ABORT)) {
+            executeProgramCommand(command);
+        } else if (command.equals(CommandCodec.TRAJECTORY_STATUS)) {
+            replyText("TRAJ " + (TRAJECTORY_CAPACITY - trajectoryQueue.size()) + " " + trajectoryQueue.size() + " 0");
+        } else if (command.equals(CommandCodec.TRAJECTORY_CLEAR)) {
+            clearTrajectory();
+            replyText("OK " + TRAJECTORY_CAPACITY);
+        } else if (command.startsWith(CommandCodec.TRAJECTORY_STATUS + " ")) {
+            String[] parts = command.split(" +");
+            boolean ok = false;
+            if (parts.length == 6) {
+                int[] point = new int[JOINT_COUNT + 1];
+                for (int i = 0; i <= JOINT_COUNT; i++) {
+                    point[i] = toInt(parts[i + 1]);
+                }
+                ok = pushTrajectoryPoint(point);
+            }
+            replyText(ok ? "OK " + (TRAJECTORY_CAPACITY - trajectoryQueue.size()) : "ERROR");
+        } else if (command.equals(CommandCodec.SPEED_STATUS)) {
+            StringBuilder status = new StringBuilder("SPEED");
+            for (int i = 0; i < JOINT_COUNT; i++) {
+                status.append(' ').append(jointSpeeds[i]).append('/').append(jointStepSizes[i]);
+            }
+            replyText(status.toString());
+        } else if (command.startsWith(CommandCodec.SPEED_STATUS + " ")) {
+            replyText(executeSpeedCommand(command.substring(6).trim().split(" +")) ? "OK" : "ERROR");
+        } else {
+            replyText("ERROR");
+        }
+    }
+
+    // 与固件 speed 命令一致：<关节ID> <速度> [步长] 设置单个关节，4个参数设置所有关节（步长为1）
+    private boolean executeSpeedCommand(String[] parts) {
+        if (parts.length == 2 || parts.length == 3) {
+            return setJointSpeed(toInt(parts[0]), toInt(parts[1]), parts.length == 3 ? toInt(parts[2]) : 1);
+        }
+        if (parts.length == JOINT_COUNT) {
+            boolean ok = true;
+            for (int i = 0; i < JOINT_COUNT; i++) {
+                ok = setJointSpeed(i, toInt(parts[i]), 1) && ok;
+            }
+            return ok;
+        }
+        return false;
+    }
+
+    private boolean setJointSpeed(int jointId, int speed, int stepSize) {
+        if (jointId < 0 || jointId >= JOINT_COUNT
+                || !inRange(speed, CommandCodec.SPEED_MIN, CommandCodec.SPEED_MAX) || !inRange(stepSize, 1, 10)) {
+            return false;
+        }
+        jointSpeeds[jointId] = speed;
+        jointStepSizes[jointId] = stepSize;
+        return true;
+    }
+
+    // 与固件运动程序命令一致：上传、保存（模拟中无NVS，总是成功）和运行控制
+    private void executeProgramCommand(String command) {
+        if (command.equals(CommandCodec.PROGRAM_STATUS)) {
+            String[] names = {"IDLE", "RUN", "PAUSE"};
+            replyText("PROG " + names[programState] + " " + programStep + " " + programSteps.size() + " " + programLoops);
+            return;
+        }
+        String[] parts = command.split(" +");
+        boolean ok;
+        try {
+            if (command.equals(CommandCodec.PROGRAM_BEGIN)) {
+                uploadProgram = new MotionProgram();
+                ok = true;
+            } else if (command.startsWith("prog move ") && (parts.length == 6 || parts.length == 7)) {
+                ok = uploadProgram != null;
+                if (ok) {
+                    uploadProgram.move(toInt(parts[2]), toInt(parts[3]), toInt(parts[4]), toInt(parts[5]),
+                            parts.length == 7 ? toInt(parts[6]) : 0);
+                }
+            } else if (command.startsWith("prog sync ") && (parts.length == 6 || parts.length == 7)) {
+                ok = uploadProgram != null;
+                if (ok) {
+                    uploadProgram.moveSync(toInt(parts[2]), toInt(parts[3]), toInt(parts[4]), toInt(parts[5]),
+                            parts.length == 7 ? toInt(parts[6]) : 0);
+                }
+            } else if (command.startsWith("prog grip ") && (parts.length == 3 || parts.length == 4)) {
+                ok = uploadProgram != null;
+                if (ok) {
+                    uploadProgram.grip(toInt(parts[2]), parts.length == 4 ? toInt(parts[3]) : 0);
+                }
+            } else if (command.equals(CommandCodec.PROGRAM_END)) {
+                ok = uploadProgram != null && uploadProgram.size() > 0 && programState == PROGRAM_IDLE;
+                if (ok) {
+                    programSteps.clear();
+                    programSteps.addAll(uploadProgram.getSteps());
+                    uploadProgram = null;
+                }
+            } else if (command.equals(CommandCodec.PROGRAM_SAVE)) {
+                ok = !programSteps.isEmpty();
+            } else if (parts[0].equals(CommandCodec.PROGRAM_RUN) && parts.length <= 2) {
+                int loops = parts.length == 2 ? toInt(parts[1]) : 0;
+                ok = !programSteps.isEmpty() && loops >= 0;
+                if (ok) {
+                    stopProgram();
+                    clearTrajectory();
+                    programState = PROGRAM_RUNNING;
+                    programStep = 0;
+                    programLoops = 0;
+                    programLoopLimit = loops;
+                    startProgramStep();
+                }
+            } else if (command.equals(CommandCodec.PROGRAM_PAUSE)) {
+                ok = programState == PROGRAM_RUNNING;
+                if (ok) {
+                    cancelProgramTask();
+                    programState = PROGRAM_PAUSED;
+                }
+            } else if (command.equals(CommandCodec.PROGRAM_RESUME)) {
+                ok = programState == PROGRAM_PAUSED;
+                if (ok) {
+                    programState = PROGRAM_RUNNING;
+                    startProgramStep();
+                }
+            } else if (command.equals(CommandCodec.PROGRAM_ABORT)) {
+                stopProgram();
+                ok = true;
+            } else {
+                ok = false;
+            }
+        } catch (IllegalArgumentException e) {
+            // 角度、停留时间或步数超出限制
+            ok = false;
+        }
+        replyText(ok ? "OK" : "ERROR");
+    }
+
+    // 执行当前步骤；舵机插值不模拟，目标立即到达后开始计停留时间
+    private void startProgramStep() {
+        MotionProgram.Step step = programSteps.get(programStep);
+        if (step.grip) {
+            targetAngles[3] = currentAngles[3] = step.angles[3];
+        } else {
+            System.arraycopy(step.angles, 0, targetAngles, 0, JOINT_COUNT);
+            System.arraycopy(step.angles, 0, currentAngles, 0, JOINT_COUNT);
+        }
+        programTask = executor.schedule(this::nextProgramStep, step.dwellMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void nextProgramStep() {
+        if (programState != PROGRAM_RUNNING) {
+            return;
+        }
+        programStep++;
+        if (programStep >= programSteps.size()) {
+            programStep = 0;
+            programLoops++;
+            if (programLoopLimit > 0 && programLoops >= programLoopLimit) {
+                programState = PROGRAM_IDLE;
+                programTask = null;
+                return;
+            }
+        }
+        startProgramStep();
+    }
+
+    // 路点入队，运动程序运行中、角度无效或队列已满时拒绝
+    private boolean pushTrajectoryPoint(int[] point) {
+        int duration = point[JOINT_COUNT];
+        if (programState != PROGRAM_IDLE || trajectoryQueue.size() >= TRAJECTORY_CAPACITY
+                || duration < 0 || duration > TRAJECTORY_MAX_DURATION
+                || !JointLimits.isValid(0, point[0], currentAngles[1]) || !JointLimits.isValid(1, point[1], currentAngles[1])
+                || !JointLimits.isValid(2, point[2], point[1]) || !JointLimits.isValid(3, point[3], point[1])) {
+            return false;
+        }
+        trajectoryQueue.add(point);
+        if (trajectoryTask == null) {
+            nextTrajectoryPoint();
+        }
+        return true;
+    }
+
+    // 取出下一个路点，段时长结束时到达
+    private void nextTrajectoryPoint() {
+        int[] point = trajectoryQueue.poll();
+        if (point == null) {
+            trajectoryTask = null;
+            return;
+        }
+        trajectoryTask = executor.schedule(() -> {
+            System.arraycopy(point, 0, targetAngles, 0, JOINT_COUNT);
+            System.arraycopy(point, 0, currentAngles, 0, JOINT_COUNT);
+            nextTrajectoryPoint();
+        }, point[JOINT_COUNT], TimeUnit.MILLISECONDS);
+    }
+
+    private void clearTrajectory() {
+        trajectoryQueue.clear();
+        if (trajectoryTask != null) {
+            trajectoryTask.cancel(false);
+            trajectoryTask = null;
+        }
+    }
+
+    // 手动运动命令接管：中止运动程序并清空轨迹队列
+    private void stopAutomaticMotion() {
+        stopProgram();
+        clearTrajectory();
+    }
+
+    // 中止程序（abort 或手动运动命令接管）
+    private void stopProgram() {
+        cancelProgramTask();
+        programState = PROGRAM_IDLE;
+    }
+
+    private void cancelProgramTask() {
+        if (programTask != null) {
+            programTask.cancel(false);
+            programTask = null;
+        }
+    }
+
+    private boolean setJoint(int jointId, int angle) {
+        if (!JointLimits.isValid(jointId, angle, currentAngles[1])) {
+            return false;
+        }
+        targetAngles[jointId] = angle;
+        currentAngles[jointId] = angle;
+        return true;
+    }
+
+    // 与固件 setAllJointPositions 一致：肘部按新的肩部角度校验
+    private boolean setAll(int a, int b, int c, int g) {
+        if (!JointLimits.isValid(0, a, currentAngles[1]) || !JointLimits.isValid(1, b, currentAngles[1])
+                || !JointLimits.isValid(2, c, b) || !JointLimits.isValid(3, g, b)) {
+            return false;
+        }
+        int[] angles = {a, b, c, g};
+        System.arraycopy(angles, 0, targetAngles, 0, JOINT_COUNT);
+        System.arraycopy(angles, 0, currentAngles, 0, JOINT_COUNT);
+        return true;
+    }
+
+    private void resetToDefault() {
+        System.arraycopy(DEFAULT_ANGLES, 0, targetAngles, 0, JOINT_COUNT);
+        System.arraycopy(DEFAULT_ANGLES, 0, currentAngles, 0, JOINT_COUNT);
+    }
+
+    private void setTelemetryInterval(int intervalMs) {
+        if (telemetryTask != null) {
+            telemetryTask.cancel(false);
+            telemetryTask = null;
+        }
+        if (intervalMs > 0) {
+            int interval = Math.max(TELEMETRY_MIN_INTERVAL, Math.min(intervalMs, TELEMETRY_MAX_INTERVAL));
+            telemetryTask = executor.scheduleAtFixedRate(this::sendTelemetry, 0, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // 与固件 telemetry.cpp 相同的遥测帧，不带电位器读数
+    private void sendTelemetry() {
+        long now = TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+        byte[] packet = new byte[CommandCodec.TELEMETRY_LENGTH];
+        packet[0] = CommandCodec.FRAME_MAGIC;
+        packet[1] = CommandCodec.OP_TELEMETRY;
+        packet[2] = (byte) telemetrySeq++;
+        for (int i = 0; i < 4; i++) {
+            packet[4 + i] = (byte) (now >>> (8 * i));
+        }
+        for (int i = 0; i < JOINT_COUNT; i++) {
+            packet[8 + i] = (byte) currentAngles[i];
+            packet[12 + i] = (byte) targetAngles[i];
+        }
+        if (programState == PROGRAM_RUNNING) {
+            packet[3] |= CommandCodec.TELEMETRY_FLAG_PROGRAM;
+        }
+        if (trajectoryTask != null) {
+            packet[3] |= CommandCodec.TELEMETRY_FLAG_TRAJECTORY;
+        }
+        packet[16] = packet[18] = (byte) (CommandCodec.TELEMETRY_NO_FEEDBACK & 0xFF);
+        packet[17] = packet[19] = (byte) (CommandCodec.TELEMETRY_NO_FEEDBACK >> 8);
+        reply(packet);
+    }
+
+    private static boolean inRange(int value, int min, int max) {
+        return value >= min && value <= max;
+    }
+
+    // Arduino String.toInt()：解析开头的整数，无法解析时为0
+    private static int toInt(String text) {
+        text = text.trim();
+        int value = 0;
+        int i = 0;
+        boolean negative = false;
+        if (i < text.length() && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+        for (; i < text.length() && Character.isDigit(text.charAt(i)); i++) {
+            value = value * 10 + (text.charAt(i) - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    private void replyAck(int seq, boolean ok) {
+        reply(new byte[]{CommandCodec.FRAME_MAGIC, CommandCodec.OP_ACK, (byte) seq,
+                (byte) (ok ? CommandCodec.STATUS_OK : CommandCodec.STATUS_ERROR)});
+    }
+
+    private void replyText(String text) {
+        reply(text.getBytes());
+    }
+
+    private void reply(byte[] data) {
+        if (lossRate > 0 && random.nextDouble() < lossRate) {
+            lostReplyCount++;
+            return;
+        }
+        replyCount++;
+        callback.onDataReceived(data);
+    }
+
+    public long getWriteCount() {
+        return writeCount;
+    }
+
+    public long getCommandCount() {
+        return commandCount;
+    }
+
+    public long getReplyCount() {
+        return replyCount;
+    }
+
+    public long getLostReplyCount() {
+        return lostReplyCount;
+    }
+}
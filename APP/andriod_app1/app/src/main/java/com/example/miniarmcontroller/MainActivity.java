@@ -9,7 +9,6 @@ import android.os.Bundle;
 import android.util.Log;
 import android.view.View;
 import android.widget.Button;
-import android.widget.ListView;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -17,6 +16,9 @@ import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.DividerItemDecoration;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -34,10 +36,13 @@ public class MainActivity extends AppCompatActivity implements BluetoothManager.
     private TextView tvBluetoothStatus;
     private TextView tvEmptyList;
     private Button btnScan;
-    private ListView lvDevices;
+    private Button btnQuickConnect;
+    private RecyclerView rvDevices;
 
     // 连接状态
     private boolean isConnecting = false;
+    // 控制界面打开时本界面仍然订阅事件，只在前台时弹出提示
+    private boolean isInForeground = false;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -89,12 +94,19 @@ public class MainActivity extends AppCompatActivity implements BluetoothManager.
             }
             Log.d(TAG, "btn_scan found");
 
-            lvDevices = findViewById(R.id.lv_devices);
-            if (lvDevices == null) {
-                Log.e(TAG, "ERROR: lv_devices not found in layout");
+            rvDevices = findViewById(R.id.rv_devices);
+            if (rvDevices == null) {
+                Log.e(TAG, "ERROR: rv_devices not found in layout");
                 return;
             }
-            Log.d(TAG, "lv_devices found");
+            Log.d(TAG, "rv_devices found");
+
+            btnQuickConnect = findViewById(R.id.btn_quick_connect);
+            if (btnQuickConnect == null) {
+                Log.e(TAG, "ERROR: btn_quick_connect not found in layout");
+                return;
+            }
+            Log.d(TAG, "btn_quick_connect found");
 
             // 设置按钮点击事件
             btnScan.setOnClickListener(v -> {
@@ -102,18 +114,22 @@ public class MainActivity extends AppCompatActivity implements BluetoothManager.
                 startScan();
             });
 
+            btnQuickConnect.setOnClickListener(v -> {
+                Log.d(TAG, "Quick connect button clicked");
+                startQuickConnect();
+            });
+
             // 设置设备列表点击事件 - 点击直接连接
             deviceList = new ArrayList<>();
-            deviceAdapter = new DeviceListAdapter(this, deviceList);
-            lvDevices.setAdapter(deviceAdapter);
-
-            lvDevices.setOnItemClickListener((parent, view, position, id) -> {
-                if (position < deviceList.size() && !isConnecting) {
-                    BluetoothDeviceInfo deviceInfo = deviceList.get(position);
+            deviceAdapter = new DeviceListAdapter(deviceInfo -> {
+                if (!isConnecting) {
                     Log.d(TAG, "User clicked device: " + deviceInfo.getName());
                     connectToDevice(deviceInfo);
                 }
             });
+            rvDevices.setLayoutManager(new LinearLayoutManager(this));
+            rvDevices.addItemDecoration(new DividerItemDecoration(this, DividerItemDecoration.VERTICAL));
+            rvDevices.setAdapter(deviceAdapter);
 
             updateBluetoothStatus();
             updateEmptyListVisibility();
@@ -131,7 +147,7 @@ public class MainActivity extends AppCompatActivity implements BluetoothManager.
             Log.d(TAG, "Starting initBluetooth");
             // 明确使用getInstance方法
             bluetoothManager = BluetoothManager.getInstance(this);
-            bluetoothManager.setListener(this);
+            bluetoothManager.addListener(this);
             Log.d(TAG, "initBluetooth completed successfully");
         } catch (Exception e) {
             Log.e(TAG, "ERROR in initBluetooth", e);
@@ -214,6 +230,9 @@ public class MainActivity extends AppCompatActivity implements BluetoothManager.
                     if (btnScan != null) {
                         btnScan.setEnabled(true);
                     }
+                    if (btnQuickConnect != null) {
+                        btnQuickConnect.setEnabled(true);
+                    }
                 } else {
                     if (tvBluetoothStatus != null) {
                         tvBluetoothStatus.setText("Bluetooth not enabled");
@@ -222,6 +241,9 @@ public class MainActivity extends AppCompatActivity implements BluetoothManager.
                     if (btnScan != null) {
                         btnScan.setEnabled(false);
                     }
+                    if (btnQuickConnect != null) {
+                        btnQuickConnect.setEnabled(false);
+                    }
                 }
             });
         } catch (Exception e) {
@@ -231,13 +253,13 @@ public class MainActivity extends AppCompatActivity implements BluetoothManager.
 
     private void updateEmptyListVisibility() {
         try {
-            if (deviceList != null && tvEmptyList != null && lvDevices != null) {
+            if (deviceList != null && tvEmptyList != null && rvDevices != null) {
                 if (deviceList.isEmpty()) {
                     tvEmptyList.setVisibility(View.VISIBLE);
-                    lvDevices.setVisibility(View.GONE);
+                    rvDevices.setVisibility(View.GONE);
                 } else {
                     tvEmptyList.setVisibility(View.GONE);
-                    lvDevices.setVisibility(View.VISIBLE);
+                    rvDevices.setVisibility(View.VISIBLE);
                 }
             }
         } catch (Exception e) {
@@ -245,6 +267,15 @@ public class MainActivity extends AppCompatActivity implements BluetoothManager.
         }
     }
 
+    // 提交新的设备快照，差异在后台计算后只刷新变化的行
+    private void showDevices(List<BluetoothDeviceInfo> devices) {
+        deviceList = devices;
+        if (deviceAdapter != null) {
+            deviceAdapter.submitList(devices);
+        }
+        updateEmptyListVisibility();
+    }
+
     private void startScan() {
         try {
             Log.d(TAG, "startScan called");
@@ -255,13 +286,7 @@ public class MainActivity extends AppCompatActivity implements BluetoothManager.
             }
 
             // 清空设备列表
-            if (deviceList != null) {
-                deviceList.clear();
-                if (deviceAdapter != null) {
-                    deviceAdapter.notifyDataSetChanged();
-                }
-                updateEmptyListVisibility();
-            }
+            showDevices(new ArrayList<>());
 
             if (btnScan != null) {
                 btnScan.setText("Scanning...");
@@ -273,13 +298,51 @@ public class MainActivity extends AppCompatActivity implements BluetoothManager.
             }
 
             Log.d(TAG, "Starting device scan");
-            bluetoothManager.startScan();
+            bluetoothManager.startArmScan(false);
         } catch (Exception e) {
             Log.e(TAG, "Error in startScan", e);
             Toast.makeText(this, "Scan failed to start: " + e.getMessage(), Toast.LENGTH_SHORT).show();
         }
     }
 
+    // 快速连接：只扫描机械臂，发现第一个即自动连接
+    private void startQuickConnect() {
+        try {
+            Log.d(TAG, "startQuickConnect called");
+            if (bluetoothManager == null || !bluetoothManager.isBluetoothEnabled()) {
+                Toast.makeText(this, "Please enable Bluetooth first", Toast.LENGTH_SHORT).show();
+                checkBluetoothEnabled();
+                return;
+            }
+            if (isConnecting) {
+                return;
+            }
+
+            isConnecting = true;
+
+            showDevices(new ArrayList<>());
+
+            if (btnScan != null) {
+                btnScan.setText("Connecting...");
+                btnScan.setEnabled(false);
+            }
+            if (btnQuickConnect != null) {
+                btnQuickConnect.setEnabled(false);
+            }
+
+            if (tvBluetoothStatus != null) {
+                tvBluetoothStatus.setText("Searching for robot arm...");
+                tvBluetoothStatus.setTextColor(getResources().getColor(android.R.color.holo_orange_dark));
+            }
+
+            bluetoothManager.startArmScan(true);
+        } catch (Exception e) {
+            Log.e(TAG, "Error in startQuickConnect", e);
+            Toast.makeText(this, "Quick connect failed: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+            isConnecting = false;
+        }
+    }
+
     private void connectToDevice(BluetoothDeviceInfo deviceInfo) {
         try {
             Log.d(TAG, "Starting connection to device: " + deviceInfo.getName());
@@ -315,31 +378,18 @@ public class MainActivity extends AppCompatActivity implements BluetoothManager.
     // BluetoothManagerListener 接口实现
     @Override
     public void onDeviceFound(BluetoothDeviceInfo device) {
-        Log.d(TAG, "Found device: " + device.getName());
+        // 列表由 onDevicesUpdated 合并刷新
+        Log.d(TAG, "Found device: " + device.getName() + " (" + device.getAddress() + ")");
+    }
+
+    @Override
+    public void onDevicesUpdated(List<BluetoothDeviceInfo> devices) {
         runOnUiThread(() -> {
             try {
-                if (deviceList == null) return;
-
-                // 检查设备是否已存在
-                boolean exists = false;
-                for (BluetoothDeviceInfo existingDevice : deviceList) {
-                    if (existingDevice.getAddress().equals(device.getAddress())) {
-                        exists = true;
-                        break;
-                    }
-                }
-
-                if (!exists) {
-                    deviceList.add(device);
-                    if (deviceAdapter != null) {
-                        deviceAdapter.notifyDataSetChanged();
-                    }
-                    updateEmptyListVisibility();
-                    Log.d(TAG, "Added device to list: " + device.getName() + " (" + device.getAddress() + ")");
-                    Log.d(TAG, "Current device list size: " + deviceList.size());
-                }
+                showDevices(devices);
+                Log.d(TAG, "Current device list size: " + deviceList.size());
             } catch (Exception e) {
-                Log.e(TAG, "Error in onDeviceFound", e);
+                Log.e(TAG, "Error in onDevicesUpdated", e);
             }
         });
     }
@@ -349,10 +399,19 @@ public class MainActivity extends AppCompatActivity implements BluetoothManager.
         Log.d(TAG, "Scan finished");
         runOnUiThread(() -> {
             try {
+                if (isConnecting && deviceList != null && !deviceList.isEmpty()) {
+                    // 快速连接已找到机械臂，正在连接中
+                    return;
+                }
+                isConnecting = false;
+
                 if (btnScan != null) {
                     btnScan.setText("Scan Devices");
                     btnScan.setEnabled(true);
                 }
+                if (btnQuickConnect != null) {
+                    btnQuickConnect.setEnabled(true);
+                }
 
                 String message = "Scan complete, found " + (deviceList != null ? deviceList.size() : 0) + " devices";
                 if (tvBluetoothStatus != null) {
@@ -381,9 +440,11 @@ public class MainActivity extends AppCompatActivity implements BluetoothManager.
         Log.d(TAG, "Connection state changed: connected=" + connected + ", address=" + deviceAddress);
         runOnUiThread(() -> {
             try {
+                // 只有用户发起的连接才跳转，后台重连不重复打开控制界面
+                boolean userInitiated = isConnecting;
                 isConnecting = false;
 
-                if (connected) {
+                if (connected && userInitiated) {
                     Toast.makeText(this, "Connected successfully!", Toast.LENGTH_SHORT).show();
 
                     if (tvBluetoothStatus != null) {
@@ -403,8 +464,10 @@ public class MainActivity extends AppCompatActivity implements BluetoothManager.
                     intent.putExtra("device_address", deviceAddress);
                     startActivity(intent);
 
-                } else {
-                    Toast.makeText(this, "Connection lost", Toast.LENGTH_SHORT).show();
+                } else if (!connected) {
+                    if (isInForeground) {
+                        Toast.makeText(this, "Connection lost", Toast.LENGTH_SHORT).show();
+                    }
 
                     if (tvBluetoothStatus != null) {
                         tvBluetoothStatus.setText("Connection lost, please scan again");
@@ -415,6 +478,9 @@ public class MainActivity extends AppCompatActivity implements BluetoothManager.
                         btnScan.setText("Scan Devices");
                         btnScan.setEnabled(true);
                     }
+                    if (btnQuickConnect != null) {
+                        btnQuickConnect.setEnabled(true);
+                    }
                 }
             } catch (Exception e) {
                 Log.e(TAG, "Error in onConnectionStateChanged", e);
@@ -432,7 +498,9 @@ public class MainActivity extends AppCompatActivity implements BluetoothManager.
         Log.e(TAG, "Bluetooth error: " + error);
         runOnUiThread(() -> {
             isConnecting = false;
-            Toast.makeText(this, "Error: " + error, Toast.LENGTH_LONG).show();
+            if (isInForeground) {
+                Toast.makeText(this, "Error: " + error, Toast.LENGTH_LONG).show();
+            }
 
             if (tvBluetoothStatus != null) {
                 tvBluetoothStatus.setText("Error occurred: " + error);
@@ -443,6 +511,9 @@ public class MainActivity extends AppCompatActivity implements BluetoothManager.
                 btnScan.setText("Scan Devices");
                 btnScan.setEnabled(true);
             }
+            if (btnQuickConnect != null) {
+                btnQuickConnect.setEnabled(true);
+            }
         });
     }
 
@@ -451,6 +522,10 @@ public class MainActivity extends AppCompatActivity implements BluetoothManager.
         super.onRequestPermissionsResult(requestCode, permissions, grantResults);
 
         if (requestCode == REQUEST_PERMISSIONS) {
+            if (bluetoothManager != null) {
+                bluetoothManager.invalidatePermissions();
+            }
+
             boolean allPermissionsGranted = true;
             for (int i = 0; i < grantResults.length; i++) {
                 if (grantResults[i] != PackageManager.PERMISSION_GRANTED) {
@@ -487,11 +562,17 @@ public class MainActivity extends AppCompatActivity implements BluetoothManager.
     @Override
     protected void onResume() {
         super.onResume();
+        isInForeground = true;
         try {
             Log.d(TAG, "onResume called");
             // 重置连接状态
             isConnecting = false;
 
+            // 从设置页面返回时权限可能已变化
+            if (bluetoothManager != null) {
+                bluetoothManager.invalidatePermissions();
+            }
+
             // 添加蓝牙诊断日志
             BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
             Log.d(TAG, "Bluetooth adapter status: " + (adapter != null ? "exists" : "not exists"));
@@ -503,12 +584,22 @@ public class MainActivity extends AppCompatActivity implements BluetoothManager.
         }
     }
 
+    @Override
+    protected void onPause() {
+        super.onPause();
+        isInForeground = false;
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
         try {
             Log.d(TAG, "MainActivity onDestroy - checking if Bluetooth disconnection needed");
 
+            if (bluetoothManager != null) {
+                bluetoothManager.removeListener(this); // 只注销本界面的监听器
+            }
+
             // 只有在应用真正退出时才断开连接
             if (isFinishing()) {
                 Log.d(TAG, "App exiting, disconnecting Bluetooth");
@@ -517,9 +608,6 @@ public class MainActivity extends AppCompatActivity implements BluetoothManager.
                 }
             } else {
                 Log.d(TAG, "Activity switching, maintaining Bluetooth connection");
-                if (bluetoothManager != null) {
-                    bluetoothManager.setListener(null); // 只清理监听器
-                }
             }
         } catch (Exception e) {
             Log.e(TAG, "Error in onDestroy", e);
@@ -0,0 +1,101 @@
+package com.example.miniarmcontroller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 运动程序：按顺序执行的路点（完整姿态）和抓手动作，每步到达后停留一段时间。
+ * 同步路点的各关节同时开始同时到达，每步时长只取决于姿态，便于固定节拍的取放程序。
+ * 上传到固件后由固件在运动定时器中自行执行，循环运行时不需要蓝牙通信。
+ * 角度在加入时按 JointLimits 校验，与固件上传时的校验一致。
+ */
+public final class MotionProgram {
+    // 与固件 program.h 一致
+    public static final int MAX_STEPS = 64;
+    public static final int MAX_DWELL_MS = 60000;
+
+    public static final class Step {
+        public final boolean grip;      // 只改变抓手角度
+        public final boolean sync;      // 同步运动，各关节同时到达
+        public final int[] angles;      // 抓手动作只使用 angles[3]
+        public final int dwellMs;       // 到达后的停留时间
+
+        Step(boolean grip, boolean sync, int[] angles, int dwellMs) {
+            this.grip = grip;
+            this.sync = sync;
+            this.angles = angles;
+            this.dwellMs = dwellMs;
+        }
+
+        // 上传命令: prog move/sync a b c g dwell / prog grip g dwell
+        public String toCommand() {
+            if (grip) {
+                return "prog grip " + angles[3] + " " + dwellMs;
+            }
+            return (sync ? "prog sync " : "prog move ")
+                    + angles[0] + " " + angles[1] + " " + angles[2] + " " + angles[3] + " " + dwellMs;
+        }
+    }
+
+    private final List<Step> steps = new ArrayList<>();
+
+    // 添加路点，角度超出限制时抛出 IllegalArgumentException
+    public MotionProgram move(int a, int b, int c, int g, int dwellMs) {
+        return addPose(false, a, b, c, g, dwellMs);
+    }
+
+    // 添加同步路点：各关节沿直线同时到达（需要固件支持 SYN）
+    public MotionProgram moveSync(int a, int b, int c, int g, int dwellMs) {
+        return addPose(true, a, b, c, g, dwellMs);
+    }
+
+    private MotionProgram addPose(boolean sync, int a, int b, int c, int g, int dwellMs) {
+        if (!JointLimits.isValid(0, a, b) || !JointLimits.isValid(1, b, b)
+                || !JointLimits.isValid(2, c, b) || !JointLimits.isValid(3, g, b)) {
+            throw new IllegalArgumentException("Pose out of range: " + a + " " + b + " " + c + " " + g);
+        }
+        return add(new Step(false, sync, new int[]{a, b, c, g}, dwellMs));
+    }
+
+    // 添加抓手动作，其他关节保持上一步的位置
+    public MotionProgram grip(int g, int dwellMs) {
+        if (!JointLimits.isValid(3, g, 0)) {
+            throw new IllegalArgumentException("Gripper angle out of range: " + g);
+        }
+        return add(new Step(true, false, new int[]{0, 0, 0, g}, dwellMs));
+    }
+
+    private MotionProgram add(Step step) {
+        if (steps.size() >= MAX_STEPS) {
+            throw new IllegalArgumentException("Program is limited to " + MAX_STEPS + " steps");
+        }
+        if (step.dwellMs < 0 || step.dwellMs > MAX_DWELL_MS) {
+            throw new IllegalArgumentException("Dwell out of range: " + step.dwellMs);
+        }
+        steps.add(step);
+        return this;
+    }
+
+    public int size() {
+        return steps.size();
+    }
+
+    public List<Step> getSteps() {
+        return Collections.unmodifiableList(steps);
+    }
+
+    // 完整的上传命令序列，save为true时最后保存到固件NVS
+    public List<String> toCommands(boolean save) {
+        List<String> commands = new ArrayList<>(steps.size() + 3);
+        commands.add(CommandCodec.PROGRAM_BEGIN);
+        for (Step step : steps) {
+            commands.add(step.toCommand());
+        }
+        commands.add(CommandCodec.PROGRAM_END);
+        if (save) {
+            commands.add(CommandCodec.PROGRAM_SAVE);
+        }
+        return commands;
+    }
+}
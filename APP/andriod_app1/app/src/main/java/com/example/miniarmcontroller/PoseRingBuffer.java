@@ -0,0 +1,146 @@
+package com.example.miniarmcontroller;
+
+/**
+ * 姿态遥测环形缓冲区：保存固件推送的最近若干帧姿态，每帧带设备时间戳和接收时间。
+ * 数据按基本类型数组存放，写入和读取都复制到调用方提供的 Sample 中，不产生内存分配。
+ */
+public class PoseRingBuffer {
+    public static final int JOINT_COUNT = 4;
+
+    // 一帧姿态数据，由调用方创建并重复使用
+    public static final class Sample {
+        public long deviceTimeMs;    // 固件 millis()
+        public long receivedAtMs;    // 接收时的单调时钟（System.nanoTime换算为ms）
+        public int flags;
+        public final int[] currentAngles = new int[JOINT_COUNT];
+        public final int[] targetAngles = new int[JOINT_COUNT];
+        // 电位器实测角度（度），未启用时为NaN
+        public float feedbackB = Float.NaN;
+        public float feedbackC = Float.NaN;
+
+        public boolean isMoving() {
+            return (flags & CommandCodec.TELEMETRY_FLAG_MOVING) != 0;
+        }
+
+        public boolean hasFeedback() {
+            return (flags & CommandCodec.TELEMETRY_FLAG_FEEDBACK) != 0;
+        }
+
+        // 固件正在执行运动程序
+        public boolean isProgramRunning() {
+            return (flags & CommandCodec.TELEMETRY_FLAG_PROGRAM) != 0;
+        }
+
+        // 固件正在执行轨迹队列
+        public boolean isTrajectoryActive() {
+            return (flags & CommandCodec.TELEMETRY_FLAG_TRAJECTORY) != 0;
+        }
+    }
+
+    private final int capacity;
+    private final long[] deviceTimes;
+    private final long[] receivedTimes;
+    private final int[] flags;
+    private final int[] currentAngles;
+    private final int[] targetAngles;
+    private final int[] feedbackB;
+    private final int[] feedbackC;
+
+    private int head = 0;   // 下一帧写入位置
+    private int size = 0;
+
+    // 统计：收到的帧数和按序号推算丢失的帧数
+    private long receivedCount = 0;
+    private long lostCount = 0;
+    private int lastSeq = -1;
+
+    public PoseRingBuffer(int capacity) {
+        this.capacity = capacity;
+        deviceTimes = new long[capacity];
+        receivedTimes = new long[capacity];
+        flags = new int[capacity];
+        currentAngles = new int[capacity * JOINT_COUNT];
+        targetAngles = new int[capacity * JOINT_COUNT];
+        feedbackB = new int[capacity];
+        feedbackC = new int[capacity];
+    }
+
+    // 解码一帧遥测数据并写入，格式错误返回false
+    public synchronized boolean add(byte[] frame, long receivedAtMs) {
+        if (!CommandCodec.isTelemetry(frame)) {
+            return false;
+        }
+
+        int seq = CommandCodec.seqOf(frame);
+        if (lastSeq >= 0) {
+            lostCount += (seq - lastSeq - 1) & 0xFF;
+        }
+        lastSeq = seq;
+        receivedCount++;
+
+        int i = head;
+        flags[i] = frame[3] & 0xFF;
+        deviceTimes[i] = CommandCodec.readUInt32(frame, 4);
+        receivedTimes[i] = receivedAtMs;
+        for (int j = 0; j < JOINT_COUNT; j++) {
+            currentAngles[i * JOINT_COUNT + j] = frame[8 + j] & 0xFF;
+            targetAngles[i * JOINT_COUNT + j] = frame[12 + j] & 0xFF;
+        }
+        feedbackB[i] = CommandCodec.readInt16(frame, 16);
+        feedbackC[i] = CommandCodec.readInt16(frame, 18);
+
+        head = (head + 1) % capacity;
+        if (size < capacity) {
+            size++;
+        }
+        return true;
+    }
+
+    // 最新一帧
+    public boolean latest(Sample out) {
+        return get(0, out);
+    }
+
+    // 读取倒数第age帧（0为最新），不存在返回false
+    public synchronized boolean get(int age, Sample out) {
+        if (age < 0 || age >= size) {
+            return false;
+        }
+        int i = (head - 1 - age + capacity) % capacity;
+        out.deviceTimeMs = deviceTimes[i];
+        out.receivedAtMs = receivedTimes[i];
+        out.flags = flags[i];
+        System.arraycopy(currentAngles, i * JOINT_COUNT, out.currentAngles, 0, JOINT_COUNT);
+        System.arraycopy(targetAngles, i * JOINT_COUNT, out.targetAngles, 0, JOINT_COUNT);
+        out.feedbackB = toDegrees(feedbackB[i]);
+        out.feedbackC = toDegrees(feedbackC[i]);
+        return true;
+    }
+
+    private static float toDegrees(int tenths) {
+        return tenths == CommandCodec.TELEMETRY_NO_FEEDBACK ? Float.NaN : tenths / 10f;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized long getReceivedCount() {
+        return receivedCount;
+    }
+
+    public synchronized long getLostCount() {
+        return lostCount;
+    }
+
+    // 断开连接时清空，避免显示过期姿态
+    public synchronized void clear() {
+        head = 0;
+        size = 0;
+        lastSeq = -1;
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.miniarmcontroller;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 把固件应答匹配到发出的命令：
+ * 二进制帧的应答带有序号，按序号匹配；文本命令每条回复一行，按发出顺序(FIFO)匹配。
+ * 所有发出的命令（包括不需要结果的）都会记录往返延迟到直方图。
+ */
+public class ResponseTracker {
+    // 等待文本回复的最大条数，超出时丢弃最旧的
+    private static final int TEXT_FIFO_CAPACITY = 256;
+    private static final int SEQ_COUNT = 256;
+
+    // 不登记应答的命令标签：旧固件对未知命令不回复（如hello握手），占用FIFO位置会让之后的回复全部错位
+    public static final int UNTRACKED_TAG = -1;
+
+    // 文本命令FIFO：标签(0表示不需要结果)和写出时间
+    private final int[] fifoTags = new int[TEXT_FIFO_CAPACITY];
+    private final long[] fifoSentAt = new long[TEXT_FIFO_CAPACITY];
+    private int fifoHead = 0;
+    private int fifoSize = 0;
+
+    // 二进制帧：按序号记录标签和写出时间（写出时间为0表示没有等待中的帧）
+    private final int[] seqTags = new int[SEQ_COUNT];
+    private final long[] seqSentAt = new long[SEQ_COUNT];
+
+    // 当前这次写入登记的条目，写入失败时撤销
+    private int batchTextCount = 0;
+    private final int[] batchSeqs = new int[SEQ_COUNT];
+    private int batchSeqCount = 0;
+
+    private final HashMap<Integer, CommandFuture> pending = new HashMap<>();
+    private int nextTag = 1;
+
+    private final LatencyHistogram histogram;
+
+    public ResponseTracker(LatencyHistogram histogram) {
+        this.histogram = histogram;
+    }
+
+    // 登记需要结果的命令，返回非0标签
+    public synchronized int register(CommandFuture future) {
+        int tag = nextTag;
+        nextTag = (nextTag == Integer.MAX_VALUE) ? 1 : nextTag + 1;
+        pending.put(tag, future);
+        return tag;
+    }
+
+    // 一次写入开始
+    public synchronized void beginBatch() {
+        batchTextCount = 0;
+        batchSeqCount = 0;
+    }
+
+    // 一条命令已写出
+    public synchronized void onWritten(int tag, boolean binary, int seq, long nowNanos) {
+        if (tag == UNTRACKED_TAG) {
+            return;
+        }
+        if (binary) {
+            seqTags[seq] = tag;
+            seqSentAt[seq] = nowNanos;
+            batchSeqs[batchSeqCount++] = seq;
+            return;
+        }
+
+        if (fifoSize == TEXT_FIFO_CAPACITY) {
+            fifoHead = (fifoHead + 1) % TEXT_FIFO_CAPACITY;
+            fifoSize--;
+        }
+        int index = (fifoHead + fifoSize) % TEXT_FIFO_CAPACITY;
+        fifoTags[index] = tag;
+        fifoSentAt[index] = nowNanos;
+        fifoSize++;
+        batchTextCount++;
+    }
+
+    // 写入失败：撤销本次写入登记的条目，需要结果的命令以异常结束
+    public void abortBatch(Exception error) {
+        List<CommandFuture> failed = null;
+        synchronized (this) {
+            for (int i = 0; i < batchTextCount && fifoSize > 0; i++) {
+                fifoSize--;
+                int tag = fifoTags[(fifoHead + fifoSize) % TEXT_FIFO_CAPACITY];
+                failed = collect(failed, tag);
+            }
+            for (int i = 0; i < batchSeqCount; i++) {
+                int seq = batchSeqs[i];
+                failed = collect(failed, seqTags[seq]);
+                seqTags[seq] = 0;
+                seqSentAt[seq] = 0;
+            }
+            batchTextCount = 0;
+            batchSeqCount = 0;
+        }
+        failAll(failed, error);
+    }
+
+    // 传输层拒绝了本次写入：只撤销登记，命令仍在等待结果，重新写出时再登记
+    public synchronized void rewindBatch() {
+        fifoSize -= Math.min(batchTextCount, fifoSize);
+        for (int i = 0; i < batchSeqCount; i++) {
+            seqTags[batchSeqs[i]] = 0;
+            seqSentAt[batchSeqs[i]] = 0;
+        }
+        batchTextCount = 0;
+        batchSeqCount = 0;
+    }
+
+    // 收到一行文本回复，匹配最早发出的文本命令
+    public void onTextReply(String reply, long nowNanos) {
+        CommandFuture future;
+        long sentAt;
+        synchronized (this) {
+            if (fifoSize == 0) {
+                return;
+            }
+            int tag = fifoTags[fifoHead];
+            sentAt = fifoSentAt[fifoHead];
+            fifoHead = (fifoHead + 1) % TEXT_FIFO_CAPACITY;
+            fifoSize--;
+            future = (tag == 0) ? null : pending.remove(tag);
+        }
+        finish(future, reply, !isErrorReply(reply), sentAt, nowNanos);
+    }
+
+    // 收到带序号的二进制应答
+    public void onFrameReply(int seq, String reply, boolean ok, long nowNanos) {
+        CommandFuture future;
+        long sentAt;
+        synchronized (this) {
+            sentAt = seqSentAt[seq];
+            if (sentAt == 0) {
+                return;
+            }
+            int tag = seqTags[seq];
+            seqTags[seq] = 0;
+            seqSentAt[seq] = 0;
+            future = (tag == 0) ? null : pending.remove(tag);
+        }
+        finish(future, reply, ok, sentAt, nowNanos);
+    }
+
+    // 命令超时：以异常结束；固件应答丢失时FIFO中它之前的条目也不会再有回复，一并移除以免后续错位
+    public void onTimeout(int tag) {
+        CommandFuture future;
+        synchronized (this) {
+            future = pending.remove(tag);
+            if (future == null) {
+                return;
+            }
+            for (int i = 0; i < fifoSize; i++) {
+                if (fifoTags[(fifoHead + i) % TEXT_FIFO_CAPACITY] == tag) {
+                    fifoHead = (fifoHead + i + 1) % TEXT_FIFO_CAPACITY;
+                    fifoSize -= i + 1;
+                    break;
+                }
+            }
+            for (int seq = 0; seq < SEQ_COUNT; seq++) {
+                if (seqTags[seq] == tag) {
+                    seqTags[seq] = 0;
+                    seqSentAt[seq] = 0;
+                }
+            }
+        }
+        future.fail(new TimeoutException("No response to " + future.getCommand()));
+    }
+
+    // 命令未能入队等情况，直接以异常结束
+    public void cancel(int tag, Exception error) {
+        CommandFuture future;
+        synchronized (this) {
+            future = pending.remove(tag);
+        }
+        if (future != null) {
+            future.fail(error);
+        }
+    }
+
+    // 断开连接：所有等待中的命令以异常结束
+    public void reset(Exception error) {
+        List<CommandFuture> failed;
+        synchronized (this) {
+            failed = new ArrayList<>(pending.values());
+            pending.clear();
+            fifoHead = 0;
+            fifoSize = 0;
+            for (int seq = 0; seq < SEQ_COUNT; seq++) {
+                seqTags[seq] = 0;
+                seqSentAt[seq] = 0;
+            }
+            batchTextCount = 0;
+            batchSeqCount = 0;
+        }
+        failAll(failed, error);
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    private void finish(CommandFuture future, String reply, boolean ok, long sentAt, long nowNanos) {
+        long micros = (nowNanos - sentAt) / 1000;
+        histogram.record(micros);
+        if (future == null) {
+            return;
+        }
+        if (ok) {
+            future.complete(reply, micros);
+        } else {
+            future.fail(new CommandFuture.CommandException(reply));
+        }
+    }
+
+    private List<CommandFuture> collect(List<CommandFuture> list, int tag) {
+        if (tag == 0) {
+            return list;
+        }
+        CommandFuture future = pending.remove(tag);
+        if (future == null) {
+            return list;
+        }
+        if (list == null) {
+            list = new ArrayList<>();
+        }
+        list.add(future);
+        return list;
+    }
+
+    private static void failAll(List<CommandFuture> futures, Exception error) {
+        if (futures == null) {
+            return;
+        }
+        for (CommandFuture future : futures) {
+            future.fail(error);
+        }
+    }
+
+    private static boolean isErrorReply(String reply) {
+        return reply.startsWith("ERROR");
+    }
+}
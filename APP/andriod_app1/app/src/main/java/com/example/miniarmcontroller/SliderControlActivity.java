@@ -37,11 +37,22 @@ public class SliderControlActivity extends AppCompatActivity implements Bluetoot
     private static final int SERVO_G_MAX = 37;
     private static final int SERVO_G_DEFAULT = 0;
 
+    // 预设位置 {基座, 肩部, 肘部, 抓手}，同时作为运动程序的路点
+    private static final int[][] PRESET_POSITIONS = {
+            {138, 62, 124, 37},
+            {33, 62, 124, 0},
+            {50, 50, 125, 35},
+    };
+    // 运动程序中每个预设位置的停留时间
+    private static final int PRESET_DWELL_MS = 500;
+
     // UI组件 - 移除btnBack
     private SeekBar seekbarServoA, seekbarServoB, seekbarServoC, seekbarServoG;
     private TextView tvServoAValue, tvServoBValue, tvServoCValue, tvServoGValue;
-    private TextView tvServoCRange, tvLog;
+    private TextView tvServoCRange, tvLog, tvActualPose;
     private Button btnReset, btnPreset1, btnPreset2, btnPreset3;
+    private Button btnProgramRun, btnProgramPause, btnProgramAbort;
+    private boolean programPaused = false;
 
     // 当前角度值
     private int currentServoA = SERVO_A_DEFAULT;
@@ -49,6 +60,9 @@ public class SliderControlActivity extends AppCompatActivity implements Bluetoot
     private int currentServoC = SERVO_C_DEFAULT;
     private int currentServoG = SERVO_G_DEFAULT;
 
+    // 遥测姿态读取缓冲，重复使用
+    private final PoseRingBuffer.Sample poseSample = new PoseRingBuffer.Sample();
+
     // 动态肘部舵机范围
     private int servoCMin = SERVO_C_MIN;
     private int servoCMax = SERVO_C_MAX;
@@ -79,11 +93,15 @@ public class SliderControlActivity extends AppCompatActivity implements Bluetoot
         tvServoGValue = findViewById(R.id.tv_servo_g_value);
         tvServoCRange = findViewById(R.id.tv_servo_c_range);
         tvLog = findViewById(R.id.tv_log);
+        tvActualPose = findViewById(R.id.tv_actual_pose);
 
         btnReset = findViewById(R.id.btn_reset);
         btnPreset1 = findViewById(R.id.btn_preset1);
         btnPreset2 = findViewById(R.id.btn_preset2);
         btnPreset3 = findViewById(R.id.btn_preset3);
+        btnProgramRun = findViewById(R.id.btn_program_run);
+        btnProgramPause = findViewById(R.id.btn_program_pause);
+        btnProgramAbort = findViewById(R.id.btn_program_abort);
 
         // 设置日志可滚动
         tvLog.setMovementMethod(new ScrollingMovementMethod());
@@ -91,15 +109,18 @@ public class SliderControlActivity extends AppCompatActivity implements Bluetoot
 
         // 设置按钮点击事件 - 移除btnBack点击事件，使用系统返回键
         btnReset.setOnClickListener(v -> resetToDefault());
-        btnPreset1.setOnClickListener(v -> setPresetPosition1());
-        btnPreset2.setOnClickListener(v -> setPresetPosition2());
-        btnPreset3.setOnClickListener(v -> setPresetPosition3());
+        btnPreset1.setOnClickListener(v -> setPresetPosition(0));
+        btnPreset2.setOnClickListener(v -> setPresetPosition(1));
+        btnPreset3.setOnClickListener(v -> setPresetPosition(2));
+        btnProgramRun.setOnClickListener(v -> runPresetCycle());
+        btnProgramPause.setOnClickListener(v -> togglePresetCyclePause());
+        btnProgramAbort.setOnClickListener(v -> abortPresetCycle());
     }
 
     private void initBluetooth() {
         // 使用单例BluetoothManager，保持连接状态
         bluetoothManager = BluetoothManager.getInstance(this);
-        bluetoothManager.setListener(this);
+        bluetoothManager.addListener(this);
 
         // 检查连接状态
         if (bluetoothManager.isConnected()) {
@@ -192,25 +213,15 @@ public class SliderControlActivity extends AppCompatActivity implements Bluetoot
     }
 
     private void updateServoCRange() {
-        // 根据肩部角度计算肘部舵机的动态范围
-        // 根据ESP32代码中的公式: minc_Angle = 140 - b_Angle, maxc_Angle = min(196 - b_Angle, 180)
-        servoCMin = 140 - currentServoB;
-        servoCMax = Math.min(196 - currentServoB, 180);
-
-        // 确保范围有效
-        if (servoCMin < 0) servoCMin = 0;
-        if (servoCMax > 180) servoCMax = 180;
-        if (servoCMin > servoCMax) servoCMin = servoCMax;
+        // 根据肩部角度计算肘部舵机的动态范围（公式见 JointLimits）
+        servoCMin = JointLimits.elbowMin(currentServoB);
+        servoCMax = JointLimits.elbowMax(currentServoB);
 
         // 更新SeekBar的最大值
         seekbarServoC.setMax(servoCMax - servoCMin);
 
         // 调整当前肘部角度以适应新范围
-        if (currentServoC < servoCMin) {
-            currentServoC = servoCMin;
-        } else if (currentServoC > servoCMax) {
-            currentServoC = servoCMax;
-        }
+        currentServoC = JointLimits.clampElbow(currentServoC, currentServoB);
 
         // 更新SeekBar位置
         seekbarServoC.setProgress(currentServoC - servoCMin);
@@ -253,41 +264,90 @@ public class SliderControlActivity extends AppCompatActivity implements Bluetoot
         updateServoCDisplay();
         updateServoGDisplay();
 
-        sendAllServoCommand();
+        sendAllServoCommand(false);
         addLog("Reset to default position");
     }
 
-    // 预设位置1 (参考Android模板代码)
-    private void setPresetPosition1() {
-        currentServoA = 138;
-        currentServoB = 62;
-        currentServoC = 124;
-        currentServoG = 37;
+    // 预设位置 (参考Android模板代码)
+    private void setPresetPosition(int index) {
+        int[] preset = PRESET_POSITIONS[index];
+        currentServoA = preset[0];
+        currentServoB = preset[1];
+        currentServoC = preset[2];
+        currentServoG = preset[3];
 
+        // 预设位置用同步运动，各关节同时到达
         updatePositionAndSend();
-        addLog("Set to preset position 1");
+        addLog("Set to preset position " + (index + 1));
     }
 
-    // 预设位置2
-    private void setPresetPosition2() {
-        currentServoA = 33;
-        currentServoB = 62;
-        currentServoC = 124;
-        currentServoG = 0;
+    // 把预设位置作为运动程序上传并由固件循环执行，运行期间不再逐步发送命令
+    private void runPresetCycle() {
+        if (bluetoothManager == null || !bluetoothManager.isConnected()) {
+            addLog("Error: Not connected to device");
+            return;
+        }
+        if (!bluetoothManager.isProgramSupported()) {
+            addLog("Firmware does not support motion programs");
+            return;
+        }
 
-        updatePositionAndSend();
-        addLog("Set to preset position 2");
+        MotionProgram program = new MotionProgram();
+        for (int[] preset : PRESET_POSITIONS) {
+            if (bluetoothManager.isSyncSupported()) {
+                program.moveSync(preset[0], preset[1], preset[2], preset[3], PRESET_DWELL_MS);
+            } else {
+                program.move(preset[0], preset[1], preset[2], preset[3], PRESET_DWELL_MS);
+            }
+        }
+        addLog("Uploading preset cycle (" + program.size() + " steps)");
+        bluetoothManager.uploadProgram(program, false).addCallback((reply, error) -> {
+            if (error != null) {
+                runOnUiThread(() -> addLog("Program upload failed: " + error.getMessage()));
+                return;
+            }
+            bluetoothManager.runProgram(0).addCallback((runReply, runError) -> runOnUiThread(() -> {
+                if (runError == null) {
+                    programPaused = false;
+                    btnProgramPause.setText("Pause");
+                    addLog("Preset cycle running on the arm");
+                } else {
+                    addLog("Program start failed: " + runError.getMessage());
+                }
+            }));
+        });
     }
 
-    // 预设位置3
-    private void setPresetPosition3() {
-        currentServoA = 50;
-        currentServoB = 50;
-        currentServoC = 125;
-        currentServoG = 35;
+    private void togglePresetCyclePause() {
+        if (bluetoothManager == null || !bluetoothManager.isConnected()) {
+            addLog("Error: Not connected to device");
+            return;
+        }
 
-        updatePositionAndSend();
-        addLog("Set to preset position 3");
+        boolean resume = programPaused;
+        CommandFuture future = resume ? bluetoothManager.resumeProgram() : bluetoothManager.pauseProgram();
+        future.addCallback((reply, error) -> runOnUiThread(() -> {
+            if (error == null) {
+                programPaused = !resume;
+                btnProgramPause.setText(programPaused ? "Resume" : "Pause");
+                addLog(programPaused ? "Preset cycle paused" : "Preset cycle resumed");
+            } else {
+                addLog("Command failed: " + error.getMessage());
+            }
+        }));
+    }
+
+    private void abortPresetCycle() {
+        if (bluetoothManager == null || !bluetoothManager.isConnected()) {
+            addLog("Error: Not connected to device");
+            return;
+        }
+
+        bluetoothManager.abortProgram().addCallback((reply, error) -> runOnUiThread(() -> {
+            programPaused = false;
+            btnProgramPause.setText("Pause");
+            addLog(error == null ? "Preset cycle aborted" : "Command failed: " + error.getMessage());
+        }));
     }
 
     private void updatePositionAndSend() {
@@ -313,7 +373,7 @@ public class SliderControlActivity extends AppCompatActivity implements Bluetoot
         updateServoCDisplay();
         updateServoGDisplay();
 
-        sendAllServoCommand();
+        sendAllServoCommand(true);
     }
 
     private void sendSingleServoCommand(int servoId, int angle) {
@@ -322,8 +382,8 @@ public class SliderControlActivity extends AppCompatActivity implements Bluetoot
             return;
         }
 
-        String command = "set " + servoId + " " + angle;
-        boolean success = bluetoothManager.sendData(command);
+        String command = CommandCodec.textSetJoint(servoId, angle);
+        boolean success = bluetoothManager.sendSetJoint(servoId, angle);
 
         if (success) {
             addLog("Sent: " + command);
@@ -332,20 +392,25 @@ public class SliderControlActivity extends AppCompatActivity implements Bluetoot
         }
     }
 
-    private void sendAllServoCommand() {
+    private void sendAllServoCommand(boolean sync) {
         if (bluetoothManager == null || !bluetoothManager.isConnected()) {
             addLog("Error: Not connected to device");
             return;
         }
 
-        String command = "setall " + currentServoA + " " + currentServoB + " " + currentServoC + " " + currentServoG;
-        boolean success = bluetoothManager.sendData(command);
-
-        if (success) {
-            addLog("Sent: " + command);
-        } else {
-            addLog("Send failed: " + command);
-        }
+        // 整体姿态命令等待固件应答，显示往返延迟
+        CommandFuture future = sync
+                ? bluetoothManager.sendSetAllSyncForResult(currentServoA, currentServoB, currentServoC, currentServoG, 0)
+                : bluetoothManager.sendSetAllForResult(currentServoA, currentServoB, currentServoC, currentServoG);
+        addLog("Sent: " + future.getCommand());
+        future.addCallback((reply, error) -> runOnUiThread(() -> {
+            if (error == null) {
+                addLog(reply + " in " + (future.getRoundTripMicros() / 1000) + "ms, latency "
+                        + bluetoothManager.getLatencyHistogram().summary());
+            } else {
+                addLog("Command failed: " + error.getMessage());
+            }
+        }));
     }
 
     private void addLog(String message) {
@@ -384,6 +449,11 @@ public class SliderControlActivity extends AppCompatActivity implements Bluetoot
                 addLog("Bluetooth connected successfully: " + deviceAddress);
                 Toast.makeText(this, "Connected successfully", Toast.LENGTH_SHORT).show();
             } else {
+                if (bluetoothManager != null && bluetoothManager.isReconnecting()) {
+                    // 后台重连中，保留当前界面
+                    addLog("Bluetooth connection lost, reconnecting...");
+                    return;
+                }
                 addLog("Bluetooth connection lost");
                 Toast.makeText(this, "Connection lost", Toast.LENGTH_SHORT).show();
                 finish(); // 连接断开时返回上一界面
@@ -398,6 +468,49 @@ public class SliderControlActivity extends AppCompatActivity implements Bluetoot
         });
     }
 
+    // 固件推送的实际姿态（回调已在主线程）
+    @Override
+    public void onPoseUpdated(PoseRingBuffer poses) {
+        if (!poses.latest(poseSample)) {
+            return;
+        }
+        int[] angles = poseSample.currentAngles;
+        StringBuilder text = new StringBuilder("Actual: A ").append(angles[0])
+                .append("° B ").append(angles[1])
+                .append("° C ").append(angles[2])
+                .append("° G ").append(angles[3]).append('°');
+        if (poseSample.isProgramRunning()) {
+            text.append(" (program)");
+        } else if (poseSample.isMoving()) {
+            text.append(" (moving)");
+        }
+        if (poseSample.hasFeedback()) {
+            text.append(String.format(Locale.US, "\nPot: B %.1f° C %.1f°", poseSample.feedbackB, poseSample.feedbackC));
+        }
+        tvActualPose.setText(text);
+    }
+
+    @Override
+    public void onLinkParametersChanged(double intervalMs, int latency, int txPhy, int rxPhy) {
+        runOnUiThread(() -> {
+            addLog("Link: interval " + intervalMs + "ms, latency " + latency + ", PHY tx/rx " + txPhy + "/" + rxPhy);
+        });
+    }
+
+    @Override
+    public void onReconnecting(int attempt) {
+        runOnUiThread(() -> {
+            addLog("Reconnecting, attempt " + attempt);
+        });
+    }
+
+    @Override
+    public void onReconnected(int attempts, long timeToReadyMs) {
+        runOnUiThread(() -> {
+            addLog("Reconnected after " + attempts + " attempts, ready in " + timeToReadyMs + "ms");
+        });
+    }
+
     @Override
     public void onError(String error) {
         runOnUiThread(() -> {
@@ -413,7 +526,7 @@ public class SliderControlActivity extends AppCompatActivity implements Bluetoot
             Log.d(TAG, "onDestroy called - maintaining Bluetooth connection");
             if (bluetoothManager != null) {
                 // 不调用cleanup()，保持连接状态
-                bluetoothManager.setListener(null); // 只清理监听器
+                bluetoothManager.removeListener(this); // 只注销本界面的监听器
             }
         } catch (Exception e) {
             Log.e(TAG, "Error in onDestroy", e);
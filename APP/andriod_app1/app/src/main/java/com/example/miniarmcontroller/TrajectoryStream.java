@@ -0,0 +1,116 @@
+package com.example.miniarmcontroller;
+
+/**
+ * 轨迹流：把带段时长的路点连续发给固件的轨迹队列，不等待每条应答，固件在相邻路点间插值，运动不停顿。
+ * 基于信用的流控：固件每条应答带回队列空位，可发送的路点数 = 最近一次报告的空位 - 之后发出且未应答的路点数。
+ * 应答按发送顺序到达，所以收到第k条的应答时，仍在途的正好是第k条之后发出的路点。
+ * 队列取空后固件不会主动报告，信用用完且没有在途路点时发一次状态查询刷新空位。
+ */
+public class TrajectoryStream {
+
+    // 路点和查询命令的发送方式，BluetoothManager 中经过连接检查后交给 CommandPipeline
+    public interface Sink {
+        CommandFuture sendTrajectoryPoint(int a, int b, int c, int g, int durationMs);
+
+        CommandFuture sendCommand(String command);
+    }
+
+    private final Sink sink;
+
+    // 以下字段由调用线程和BLE I/O线程（应答回调）访问，持有this锁
+    private int reportedFree = 0;
+    private int inFlight = 0;
+    private boolean refreshing = false;
+    private long sentCount = 0;
+    private long rejectedCount = 0;
+
+    public TrajectoryStream(Sink sink) {
+        this.sink = sink;
+    }
+
+    // 直接使用命令管线（不经过 BluetoothManager，如模拟固件上的测试）
+    public TrajectoryStream(CommandPipeline pipeline, long timeoutMs) {
+        this(new Sink() {
+            @Override
+            public CommandFuture sendTrajectoryPoint(int a, int b, int c, int g, int durationMs) {
+                return pipeline.sendTrajectoryPoint(a, b, c, g, durationMs, timeoutMs);
+            }
+
+            @Override
+            public CommandFuture sendCommand(String command) {
+                return pipeline.sendCommand(command, timeoutMs);
+            }
+        });
+    }
+
+    // 清空固件轨迹队列（机械臂停在当前位置）并取得初始信用；返回的结果在固件应答后完成
+    public CommandFuture start() {
+        synchronized (this) {
+            refreshing = true;
+        }
+        CommandFuture future = sink.sendCommand(CommandCodec.TRAJECTORY_CLEAR);
+        future.addCallback(this::onStatusReply);
+        return future;
+    }
+
+    // 当前可发送的路点数
+    public synchronized int getCredits() {
+        return reportedFree - inFlight;
+    }
+
+    // 发送一个路点：从上一个路点出发经过durationMs到达该姿态。没有信用时返回false，调用方稍后重试或丢弃
+    public boolean offer(int a, int b, int c, int g, int durationMs) {
+        synchronized (this) {
+            if (reportedFree - inFlight <= 0) {
+                refreshIfIdle();
+                return false;
+            }
+            inFlight++;
+            sentCount++;
+        }
+        sink.sendTrajectoryPoint(a, b, c, g, durationMs).addCallback(this::onPointReply);
+        return true;
+    }
+
+    private void onPointReply(String reply, Exception error) {
+        synchronized (this) {
+            inFlight--;
+            if (error == null) {
+                int free = CommandCodec.parseTrajectoryFree(reply);
+                if (free >= 0) {
+                    reportedFree = free;
+                }
+            } else {
+                // 被拒绝（角度无效、队列已满或运动程序运行中）或应答超时，信用以后续应答为准
+                rejectedCount++;
+            }
+        }
+    }
+
+    private void onStatusReply(String reply, Exception error) {
+        synchronized (this) {
+            refreshing = false;
+            int free = (error == null) ? CommandCodec.parseTrajectoryFree(reply) : -1;
+            if (free >= 0) {
+                reportedFree = free;
+            }
+        }
+    }
+
+    // 信用用完且没有在途路点时查询一次队列空位（持有this锁调用）
+    private void refreshIfIdle() {
+        if (inFlight > 0 || refreshing) {
+            return;
+        }
+        refreshing = true;
+        sink.sendCommand(CommandCodec.TRAJECTORY_STATUS).addCallback(this::onStatusReply);
+    }
+
+    public synchronized long getSentCount() {
+        return sentCount;
+    }
+
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+}
@@ -0,0 +1,325 @@
+package com.example.miniarmcontroller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 命令管线接模拟固件（LoopbackArmTransport）：握手、应答匹配、合并、急停、超时和轨迹流控。
+ * I/O线程用单线程调度器代替，需要命令在队列中积压时先把I/O线程阻塞住。
+ */
+public class CommandPipelineLoopbackTest {
+    private static final long TIMEOUT_MS = 1000;
+    private static final long LATENCY_MICROS = 1000;
+
+    private ScheduledExecutorService io;
+    private LoopbackArmTransport arm;
+    private CommandPipeline pipeline;
+
+    @Before
+    public void setUp() throws Exception {
+        io = Executors.newSingleThreadScheduledExecutor();
+        arm = new LoopbackArmTransport(new Random(1));
+        arm.setLatencyMicros(LATENCY_MICROS);
+        pipeline = newPipeline(arm);
+
+        // 回复通知在握手处理（含下发 telemetry off）之后，此后发出的命令排在它后面
+        CountDownLatch handshake = new CountDownLatch(1);
+        pipeline.setListener(new CommandPipeline.Listener() {
+            @Override
+            public void onReplyReceived(String reply) {
+                if (reply.startsWith(CommandCodec.HELLO_REPLY_PREFIX)) {
+                    handshake.countDown();
+                }
+            }
+        });
+        pipeline.setTelemetryInterval(0);
+        pipeline.onLinkReady();
+        assertTrue(handshake.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        // telemetry off 也应答后才开始测试
+        assertEquals("90,0,180,0", pipeline.sendCommand("status", TIMEOUT_MS).get());
+    }
+
+    @After
+    public void tearDown() {
+        arm.shutdown();
+        io.shutdownNow();
+    }
+
+    // 拒绝接下来的若干次写入，如BLE上另一个GATT操作仍在进行
+    private static final class RejectingTransport implements ArmTransport {
+        private final ArmTransport delegate;
+        final AtomicInteger rejects = new AtomicInteger();
+
+        RejectingTransport(ArmTransport delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void setCallback(Callback callback) {
+            delegate.setCallback(callback);
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegate.isReady();
+        }
+
+        @Override
+        public int getMaxPayload() {
+            return delegate.getMaxPayload();
+        }
+
+        @Override
+        public boolean write(byte[] data) {
+            if (rejects.getAndUpdate(n -> Math.max(n - 1, 0)) > 0) {
+                return false;
+            }
+            return delegate.write(data);
+        }
+    }
+
+    private CommandPipeline newPipeline(ArmTransport transport) {
+        return new CommandPipeline(transport, new CommandPipeline.Scheduler() {
+            @Override
+            public void execute(Runnable task) {
+                io.execute(task);
+            }
+
+            @Override
+            public void schedule(Runnable task, long delayMs) {
+                io.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    // 阻塞I/O线程，期间入队的命令不会被写出；调用返回的latch放行
+    private CountDownLatch blockIo() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        io.execute(() -> {
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(blocked.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        return release;
+    }
+
+    // 结果完成后才回调流控，等待信用更新
+    private static void awaitCredits(TrajectoryStream stream, int credits) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (stream.getCredits() != credits && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(credits, stream.getCredits());
+    }
+
+    private static Throwable errorOf(CommandFuture future) throws Exception {
+        try {
+            future.get(TIMEOUT_MS * 2, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+        fail("expected " + future.getCommand() + " to fail");
+        return null;
+    }
+
+    @Test
+    public void handshakeSelectsBinaryAndCapabilities() {
+        assertTrue(pipeline.isBinaryMode());
+        assertTrue(pipeline.isTelemetrySupported());
+        assertTrue(pipeline.isProgramSupported());
+        assertTrue(pipeline.isTrajectorySupported());
+        assertTrue(pipeline.isSyncSupported());
+        assertTrue(pipeline.isHaltSupported());
+    }
+
+    @Test
+    public void firmwareWithoutHelloKeepsTextModeAndAlignedReplies() throws Exception {
+        LoopbackArmTransport legacyArm = new LoopbackArmTransport(new Random(2));
+        legacyArm.setHelloSupported(false);
+        legacyArm.setLatencyMicros(LATENCY_MICROS);
+        try {
+            CommandPipeline legacy = newPipeline(legacyArm);
+            legacy.onLinkReady();
+            // 不等握手超时，紧接着发出的命令也要拿到各自的回复
+            CommandFuture status = legacy.sendCommand("status", TIMEOUT_MS);
+            CommandFuture torque = legacy.sendCommand("torque", TIMEOUT_MS);
+            CommandFuture set = legacy.sendSetJointForResult(0, 45, TIMEOUT_MS);
+
+            assertEquals("90,0,180,0", status.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            assertEquals("TORQUE_STATUS_OK", torque.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            assertEquals("OK", set.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            assertFalse(legacy.isBinaryMode());
+            assertFalse(legacy.isHaltSupported());
+            assertEquals(0, legacy.getPendingCount());
+        } finally {
+            legacyArm.shutdown();
+        }
+    }
+
+    @Test
+    public void rejectedWritesAreRetriedWithoutLosingCommands() throws Exception {
+        LoopbackArmTransport busyArm = new LoopbackArmTransport(new Random(3));
+        RejectingTransport transport = new RejectingTransport(busyArm);
+        try {
+            CommandPipeline busy = newPipeline(transport);
+            CountDownLatch release = blockIo();
+            transport.rejects.set(3);
+            busy.sendSetJoint(0, 30);
+            busy.sendSetJoint(1, 40);
+            CommandFuture set = busy.sendSetJointForResult(2, 120, TIMEOUT_MS);
+            CommandFuture status = busy.sendCommand("status", TIMEOUT_MS);
+            release.countDown();
+
+            assertEquals("OK", set.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            assertEquals("30,40,120,0", status.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            assertEquals(0, transport.rejects.get());
+            assertEquals(0, busy.getDroppedCount());
+            assertEquals(0, busy.getPendingCount());
+        } finally {
+            busyArm.shutdown();
+        }
+    }
+
+    @Test
+    public void repliesMatchCommandsInOrder() throws Exception {
+        CommandFuture speed = pipeline.sendCommand("speed", TIMEOUT_MS);
+        CommandFuture valid = pipeline.sendSetJointForResult(0, 45, TIMEOUT_MS);
+        CommandFuture invalid = pipeline.sendSetJointForResult(3, 170, TIMEOUT_MS);
+        CommandFuture torque = pipeline.sendCommand("torque", TIMEOUT_MS);
+        CommandFuture status = pipeline.sendCommand("status", TIMEOUT_MS);
+
+        assertEquals("SPEED 120/1 90/1 120/1 150/1", speed.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        valid.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertTrue(errorOf(invalid) instanceof CommandFuture.CommandException);
+        assertEquals("TORQUE_STATUS_OK", torque.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals("45,0,180,0", status.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+        assertEquals(0, pipeline.getPendingCount());
+        // 往返延迟不小于模拟固件的处理延迟
+        LatencyHistogram histogram = pipeline.getLatencyHistogram();
+        assertTrue(histogram.getCount() >= 5);
+        assertTrue(histogram.getPercentile(50) >= LATENCY_MICROS);
+    }
+
+    @Test
+    public void queuedSetsForSameJointAreCoalesced() throws Exception {
+        long coalescedBefore = pipeline.getCoalescedCount();
+        CountDownLatch release = blockIo();
+        for (int angle = 10; angle <= 50; angle += 10) {
+            assertTrue(pipeline.sendSetJoint(0, angle));
+        }
+        pipeline.sendSetJoint(1, 20);
+        assertEquals(2, pipeline.getWriteQueueDepth());
+        assertEquals(coalescedBefore + 4, pipeline.getCoalescedCount());
+        release.countDown();
+
+        assertEquals("50,20,180,0", pipeline.sendCommand("status", TIMEOUT_MS).get());
+    }
+
+    @Test
+    public void haltJumpsQueueAndCancelsQueuedMotion() throws Exception {
+        CountDownLatch release = blockIo();
+        CommandFuture status = pipeline.sendCommand("status", TIMEOUT_MS);
+        List<CommandFuture> moves = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            moves.add(pipeline.sendSetAllForResult(90, 10, 170, i, TIMEOUT_MS));
+        }
+        moves.add(pipeline.sendTrajectoryPoint(90, 30, 150, 10, 200, TIMEOUT_MS));
+        pipeline.sendSetJoint(2, 120);
+        CommandFuture halt = pipeline.sendHalt(TIMEOUT_MS);
+        assertEquals(2, pipeline.getWriteQueueDepth());
+        release.countDown();
+
+        assertEquals("OK", halt.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        for (CommandFuture move : moves) {
+            Throwable error = errorOf(move);
+            assertTrue(error instanceof IOException);
+            assertEquals("Cancelled by halt", error.getMessage());
+        }
+        // 非运动命令保留在急停之后执行，被丢弃的运动命令没有生效
+        assertEquals("90,0,180,0", status.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(0, pipeline.getPendingCount());
+    }
+
+    @Test
+    public void lostReplyTimesOutWithoutMisaligningLaterReplies() throws Exception {
+        arm.setLossRate(1.0);
+        CommandFuture lostText = pipeline.sendCommand("speed", 100);
+        CommandFuture lostFrame = pipeline.sendSetJointForResult(0, 60, 100);
+        assertTrue(errorOf(lostText) instanceof TimeoutException);
+        assertTrue(errorOf(lostFrame) instanceof TimeoutException);
+        assertEquals(2, arm.getLostReplyCount());
+
+        arm.setLossRate(0);
+        assertEquals("60,0,180,0", pipeline.sendCommand("status", TIMEOUT_MS).get());
+        pipeline.sendSetJointForResult(0, 70, TIMEOUT_MS).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertEquals(0, pipeline.getPendingCount());
+    }
+
+    @Test
+    public void fullWriteQueueFailsImmediately() throws Exception {
+        CountDownLatch release = blockIo();
+        List<CommandFuture> accepted = new ArrayList<>();
+        for (int i = 0; i < CommandWriteQueue.DEFAULT_CAPACITY; i++) {
+            accepted.add(pipeline.sendCommand("status", TIMEOUT_MS));
+        }
+        CommandFuture rejected = pipeline.sendCommand("status", TIMEOUT_MS);
+        assertTrue(rejected.isDone());
+        assertEquals("Write queue full", errorOf(rejected).getMessage());
+        assertFalse(pipeline.sendData("status"));
+        release.countDown();
+
+        for (CommandFuture future : accepted) {
+            assertEquals("90,0,180,0", future.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test
+    public void trajectoryStreamStopsAtFirmwareQueueCapacity() throws Exception {
+        TrajectoryStream stream = new TrajectoryStream(pipeline, TIMEOUT_MS);
+        int capacity = 32;
+        assertEquals("OK " + capacity, stream.start().get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        awaitCredits(stream, capacity);
+
+        // 应答到达前只能发出信用数量的路点；段时长足够长，测试期间固件只取走第一个路点
+        CountDownLatch release = blockIo();
+        int sent = 0;
+        while (stream.offer(90, 30, 150, 10, 2000)) {
+            sent++;
+        }
+        assertEquals(capacity, sent);
+        assertEquals(0, stream.getCredits());
+        release.countDown();
+
+        // 最后一条应答报告1个空位（第一个路点正在执行，已出队）
+        awaitCredits(stream, 1);
+        assertEquals(0, stream.getRejectedCount());
+
+        assertTrue(stream.offer(90, 30, 150, 10, 2000));
+        assertFalse(stream.offer(90, 30, 150, 10, 2000));
+        assertEquals(capacity + 1, stream.getSentCount());
+    }
+}
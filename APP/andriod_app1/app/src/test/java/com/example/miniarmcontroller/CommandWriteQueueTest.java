@@ -0,0 +1,226 @@
+package com.example.miniarmcontroller;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 写队列：同一关节的合并、打包写出和急停优先通道。
+ */
+public class CommandWriteQueueTest {
+
+    private static boolean offerText(CommandWriteQueue queue, String command, int tag) {
+        byte[] bytes = command.getBytes(StandardCharsets.US_ASCII);
+        return queue.offer(CommandWriteQueue.parseJointId(command), bytes, 0, bytes.length, tag);
+    }
+
+    private static String writeText(CommandWriteQueue queue) {
+        byte[] payload = queue.beginWrite(CommandWriteQueue.MAX_WRITE_LENGTH);
+        if (payload == null) {
+            return null;
+        }
+        queue.completeWrite(true);
+        return new String(payload, StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void pendingSetsForSameJointAreCoalesced() {
+        CommandWriteQueue queue = new CommandWriteQueue(8);
+        offerText(queue, "set 0 10", 0);
+        offerText(queue, "set 1 20", 0);
+        offerText(queue, "set 0 30", 0);
+        offerText(queue, "set 0 40", 0);
+
+        assertEquals(2, queue.getDepth());
+        assertEquals(2, queue.getCoalescedCount());
+        assertEquals("set 0 40\nset 1 20", writeText(queue));
+        assertEquals(4, queue.getEnqueuedCount());
+        assertEquals(2, queue.getWrittenCount());
+    }
+
+    @Test
+    public void coalescingStopsAtOtherCommands() {
+        CommandWriteQueue queue = new CommandWriteQueue(8);
+        offerText(queue, "set 0 10", 0);
+        offerText(queue, "status", 0);
+        offerText(queue, "set 0 20", 0);
+
+        // 不能越过status合并，否则status会看到错误的顺序
+        assertEquals(3, queue.getDepth());
+        assertEquals(0, queue.getCoalescedCount());
+        assertEquals("set 0 10\nstatus\nset 0 20", writeText(queue));
+    }
+
+    @Test
+    public void oneWriteInFlightAtATime() {
+        CommandWriteQueue queue = new CommandWriteQueue(8);
+        offerText(queue, "status", 0);
+        assertTrue(queue.beginWrite(CommandWriteQueue.MAX_WRITE_LENGTH) != null);
+        offerText(queue, "speed", 0);
+
+        assertNull(queue.beginWrite(CommandWriteQueue.MAX_WRITE_LENGTH));
+        queue.completeWrite(true);
+        assertEquals("speed", writeText(queue));
+        assertNull(queue.beginWrite(CommandWriteQueue.MAX_WRITE_LENGTH));
+    }
+
+    @Test
+    public void batchRespectsMaxBytesAndDoesNotMixBinaryWithText() {
+        CommandWriteQueue queue = new CommandWriteQueue(8);
+        offerText(queue, "status", 1);
+        offerText(queue, "speed", 2);
+        byte[] frame = CommandCodec.encodeSetAll(7, 90, 30, 150, 10);
+        queue.offer(CommandWriteQueue.NO_JOINT, frame, 0, frame.length, 3);
+
+        // "status\nspeed" 为12字节，限制11字节时只能写出第一条
+        byte[] first = queue.beginWrite(11);
+        assertEquals("status", new String(first, StandardCharsets.US_ASCII));
+        assertEquals(1, queue.getInFlightCount());
+        assertEquals(1, queue.getInFlightTag(0));
+        queue.completeWrite(true);
+
+        assertEquals("speed", writeText(queue));
+
+        byte[] binary = queue.beginWrite(CommandWriteQueue.MAX_WRITE_LENGTH);
+        assertArrayEquals(frame, binary);
+        assertEquals(3, queue.getInFlightTag(0));
+        queue.completeWrite(false);
+        assertEquals(1, queue.getDroppedCount());
+    }
+
+    @Test
+    public void fullQueueRejectsNewCommands() {
+        CommandWriteQueue queue = new CommandWriteQueue(2);
+        assertTrue(offerText(queue, "set 0 10", 0));
+        assertTrue(offerText(queue, "set 1 20", 0));
+        assertFalse(offerText(queue, "status", 0));
+        assertFalse(offerText(queue, "set 2 30", 0));
+        // 同一关节的set仍可合并进已有槽位
+        assertTrue(offerText(queue, "set 0 40", 0));
+        assertEquals(2, queue.getDroppedCount());
+        assertEquals(2, queue.getMaxDepth());
+        assertEquals("set 0 40\nset 1 20", writeText(queue));
+    }
+
+    @Test
+    public void priorityJumpsQueueAndDropsMotion() {
+        CommandWriteQueue queue = new CommandWriteQueue(8);
+        offerText(queue, "set 0 10", 0);
+        offerText(queue, "status", 7);
+        offerText(queue, "setall 90 30 150 10", 9);
+        offerText(queue, "traj clear", 11);
+        offerText(queue, "traj 90 30 150 10 200", 12);
+        byte[] frame = CommandCodec.encodeSetAll(3, 90, 30, 150, 10);
+        queue.offer(CommandWriteQueue.NO_JOINT, frame, 0, frame.length, 13);
+
+        int[] droppedTags = new int[queue.getCapacity()];
+        byte[] halt = CommandCodec.HALT.getBytes(StandardCharsets.US_ASCII);
+        int dropped = queue.offerPriority(halt, 0, halt.length, 99, droppedTags);
+
+        // 运动命令被丢弃，只返回需要结果的标签；status和traj clear保留原顺序
+        assertEquals(3, dropped);
+        assertArrayEquals(new int[]{9, 12, 13}, Arrays.copyOf(droppedTags, dropped));
+        assertEquals(3, queue.getDepth());
+
+        // 急停单独写出，不与后面的命令打包
+        byte[] first = queue.beginWrite(CommandWriteQueue.MAX_WRITE_LENGTH);
+        assertEquals(CommandCodec.HALT, new String(first, StandardCharsets.US_ASCII));
+        assertEquals(1, queue.getInFlightCount());
+        assertEquals(99, queue.getInFlightTag(0));
+        queue.completeWrite(true);
+
+        assertEquals("status\ntraj clear", writeText(queue));
+    }
+
+    @Test
+    public void priorityFailsWhenQueueFullOfOtherCommands() {
+        CommandWriteQueue queue = new CommandWriteQueue(2);
+        offerText(queue, "status", 1);
+        offerText(queue, "speed", 2);
+
+        int[] droppedTags = new int[queue.getCapacity()];
+        byte[] halt = CommandCodec.HALT.getBytes(StandardCharsets.US_ASCII);
+        assertEquals(-1, queue.offerPriority(halt, 0, halt.length, 3, droppedTags));
+        assertEquals(2, queue.getDepth());
+    }
+
+    @Test
+    public void rejectedWriteIsSentAgain() {
+        CommandWriteQueue queue = new CommandWriteQueue(8);
+        offerText(queue, "set 0 10", 0);
+        offerText(queue, "status", 5);
+
+        byte[] rejected = queue.beginWrite(CommandWriteQueue.MAX_WRITE_LENGTH);
+        assertEquals("set 0 10\nstatus", new String(rejected, StandardCharsets.US_ASCII));
+        queue.abortWrite();
+        assertFalse(queue.isWriteInFlight());
+        assertEquals(2, queue.getDepth());
+
+        // 重新写出同样的命令和标签，之后入队的命令排在后面
+        offerText(queue, "set 0 20", 0);
+        byte[] retried = queue.beginWrite(CommandWriteQueue.MAX_WRITE_LENGTH);
+        assertEquals("set 0 10\nstatus\nset 0 20", new String(retried, StandardCharsets.US_ASCII));
+        assertEquals(5, queue.getInFlightTag(1));
+        queue.completeWrite(true);
+        assertEquals(3, queue.getWrittenCount());
+        assertEquals(0, queue.getDroppedCount());
+        assertEquals(0, queue.getDepth());
+    }
+
+    @Test
+    public void inFlightEntriesAreNotCoalescedOrCountedAsPending() {
+        CommandWriteQueue queue = new CommandWriteQueue(2);
+        offerText(queue, "set 0 10", 0);
+        queue.beginWrite(CommandWriteQueue.MAX_WRITE_LENGTH);
+
+        // 在途的set不能再被修改，待发命令仍有完整容量
+        assertTrue(offerText(queue, "set 0 20", 0));
+        assertTrue(offerText(queue, "status", 0));
+        assertEquals(0, queue.getCoalescedCount());
+        assertEquals(2, queue.getDepth());
+        assertFalse(offerText(queue, "speed", 0));
+
+        queue.abortWrite();
+        assertEquals("set 0 10\nset 0 20\nstatus", writeText(queue));
+    }
+
+    @Test
+    public void priorityQueuedDuringWriteGoesAfterInFlightEntries() {
+        CommandWriteQueue queue = new CommandWriteQueue(4);
+        offerText(queue, "set 0 10", 0);
+        queue.beginWrite(CommandWriteQueue.MAX_WRITE_LENGTH);
+        offerText(queue, "status", 1);
+        offerText(queue, "setall 90 30 150 10", 2);
+
+        int[] droppedTags = new int[queue.getCapacity()];
+        byte[] halt = CommandCodec.HALT.getBytes(StandardCharsets.US_ASCII);
+        assertEquals(1, queue.offerPriority(halt, 0, halt.length, 9, droppedTags));
+        assertEquals(2, droppedTags[0]);
+        assertEquals(2, queue.getDepth());
+
+        // 被拒绝的在途命令先重发，急停仍单独写出
+        queue.abortWrite();
+        assertEquals("set 0 10", writeText(queue));
+        assertEquals(CommandCodec.HALT, writeText(queue));
+        assertEquals("status", writeText(queue));
+    }
+
+    @Test
+    public void parseJointIdMatchesStringAndBytes() {
+        String[] commands = {"set 0 90", "set 3 10", "set 12 5", "setall 1 2 3 4", "set x 1", "set 1", "status"};
+        int[] expected = {0, 3, 12, CommandWriteQueue.NO_JOINT, CommandWriteQueue.NO_JOINT,
+                CommandWriteQueue.NO_JOINT, CommandWriteQueue.NO_JOINT};
+        for (int i = 0; i < commands.length; i++) {
+            byte[] bytes = commands[i].getBytes(StandardCharsets.US_ASCII);
+            assertEquals(commands[i], expected[i], CommandWriteQueue.parseJointId(commands[i]));
+            assertEquals(commands[i], expected[i], CommandWriteQueue.parseJointId(bytes, 0, bytes.length));
+        }
+    }
+}
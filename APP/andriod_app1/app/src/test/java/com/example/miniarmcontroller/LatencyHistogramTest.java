@@ -0,0 +1,99 @@
+package com.example.miniarmcontroller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * 延迟直方图的分桶和百分位计算。
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void smallValuesHaveOwnBuckets() {
+        for (int value = 0; value < 8; value++) {
+            assertEquals(value, LatencyHistogram.bucketOf(value));
+            assertEquals(value, LatencyHistogram.upperBoundOf(value));
+        }
+    }
+
+    @Test
+    public void eachPowerOfTwoIsSplitIntoEightBuckets() {
+        // 8-15 每桶1，16-31 每桶2，32-63 每桶4
+        assertEquals(8, LatencyHistogram.bucketOf(8));
+        assertEquals(15, LatencyHistogram.bucketOf(15));
+        assertEquals(16, LatencyHistogram.bucketOf(16));
+        assertEquals(16, LatencyHistogram.bucketOf(17));
+        assertEquals(17, LatencyHistogram.bucketOf(18));
+        assertEquals(23, LatencyHistogram.bucketOf(31));
+        assertEquals(24, LatencyHistogram.bucketOf(32));
+        assertEquals(17, LatencyHistogram.upperBoundOf(16));
+        assertEquals(35, LatencyHistogram.upperBoundOf(24));
+    }
+
+    @Test
+    public void bucketBoundsContainValueWithinRelativeError() {
+        int previous = -1;
+        for (long value = 0; value < (1L << 33); value = value * 5 / 4 + 1) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue("buckets must not decrease at " + value, bucket >= previous);
+            previous = bucket;
+            if (value >= (1L << 32)) {
+                continue;
+            }
+            long upper = LatencyHistogram.upperBoundOf(bucket);
+            assertTrue("upper bound below " + value, upper >= value);
+            assertTrue("bucket too wide at " + value, upper - value <= value / 8);
+        }
+    }
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0, histogram.getMeanMicros());
+        assertEquals("n=0 p50=0.0ms p99=0.0ms max=0.0ms", histogram.summary());
+    }
+
+    @Test
+    public void percentilesUseBucketUpperBoundCappedAtMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(50, histogram.getMeanMicros());
+        assertEquals(100, histogram.getMaxMicros());
+
+        // 第50个值(50)落在48-51桶，第99个值(99)的桶上界103被最大值截断
+        assertEquals(51, histogram.getPercentile(50));
+        assertEquals(100, histogram.getPercentile(99));
+        assertEquals(100, histogram.getPercentile(100));
+        assertEquals(1, histogram.getPercentile(0));
+    }
+
+    @Test
+    public void outliersAndNegativeValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE / 2);
+        assertEquals(0, histogram.getPercentile(50));
+        // 超出范围的值记入最后一个桶，百分位报告该桶上界，最大值仍是实际值
+        assertEquals((1L << 32) - 1, histogram.getPercentile(100));
+        assertEquals(Long.MAX_VALUE / 2, histogram.getMaxMicros());
+    }
+
+    @Test
+    public void summaryFormatsMilliseconds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(18_200);
+        histogram.record(55_300);
+        assertTrue(histogram.summary().startsWith("n=2 p50="));
+        assertTrue(histogram.summary().endsWith(" max=55.3ms"));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxMicros());
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.miniarmcontroller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 应答匹配：文本按FIFO，二进制帧按序号；超时、写入失败和断开时的处理。
+ */
+public class ResponseTrackerTest {
+    // 写出时间必须非0（二进制帧用0表示没有等待中的帧）
+    private static final long T0 = 1_000_000_000L;
+
+    private LatencyHistogram histogram;
+    private ResponseTracker tracker;
+
+    @Before
+    public void setUp() {
+        histogram = new LatencyHistogram();
+        tracker = new ResponseTracker(histogram);
+    }
+
+    private int registerText(CommandFuture future) {
+        int tag = tracker.register(future);
+        tracker.beginBatch();
+        tracker.onWritten(tag, false, 0, T0);
+        return tag;
+    }
+
+    private static Throwable errorOf(CommandFuture future) throws InterruptedException {
+        assertTrue(future.isDone());
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+        fail("expected " + future.getCommand() + " to fail");
+        return null;
+    }
+
+    @Test
+    public void textRepliesMatchInWriteOrder() throws Exception {
+        CommandFuture status = new CommandFuture("status");
+        CommandFuture set = new CommandFuture("set 3 170");
+        registerText(status);
+        // 不需要结果的命令也占FIFO位置
+        tracker.onWritten(0, false, 0, T0);
+        registerText(set);
+
+        tracker.onTextReply("90,0,180,0", T0 + 2_000_000);
+        tracker.onTextReply("OK", T0 + 3_000_000);
+        assertEquals("90,0,180,0", status.get());
+        assertEquals(2000, status.getRoundTripMicros());
+        assertFalse(set.isDone());
+
+        tracker.onTextReply("ERROR", T0 + 4_000_000);
+        Throwable error = errorOf(set);
+        assertTrue(error instanceof CommandFuture.CommandException);
+        assertEquals("ERROR", error.getMessage());
+
+        assertEquals(0, tracker.getPendingCount());
+        assertEquals(3, histogram.getCount());
+        assertEquals(4000, histogram.getMaxMicros());
+    }
+
+    @Test
+    public void unexpectedTextReplyIsIgnored() {
+        tracker.onTextReply("OK", T0);
+        assertEquals(0, histogram.getCount());
+    }
+
+    @Test
+    public void frameRepliesMatchBySeqInAnyOrder() throws Exception {
+        CommandFuture first = new CommandFuture("frame 5");
+        CommandFuture second = new CommandFuture("frame 6");
+        int firstTag = tracker.register(first);
+        int secondTag = tracker.register(second);
+        tracker.beginBatch();
+        tracker.onWritten(firstTag, true, 5, T0);
+        tracker.onWritten(secondTag, true, 6, T0);
+
+        tracker.onFrameReply(6, "ACK 6", false, T0 + 1_000_000);
+        tracker.onFrameReply(5, "ACK 5", true, T0 + 2_000_000);
+        assertEquals("ACK 5", first.get());
+        assertTrue(errorOf(second) instanceof CommandFuture.CommandException);
+
+        // 重复或未知序号的应答不会再匹配
+        tracker.onFrameReply(5, "ACK 5", true, T0 + 3_000_000);
+        tracker.onFrameReply(7, "ACK 7", true, T0 + 3_000_000);
+        assertEquals(2, histogram.getCount());
+    }
+
+    @Test
+    public void timeoutDropsEarlierTextEntriesSoLaterRepliesStayAligned() throws Exception {
+        CommandFuture lost = new CommandFuture("status");
+        CommandFuture next = new CommandFuture("speed");
+        // 未被应答的不需要结果的命令排在前面
+        tracker.onWritten(0, false, 0, T0);
+        int lostTag = registerText(lost);
+        registerText(next);
+
+        tracker.onTimeout(lostTag);
+        assertTrue(errorOf(lost) instanceof TimeoutException);
+
+        tracker.onTextReply("SPEED 120/1 90/1 120/1 150/1", T0 + 5_000_000);
+        assertEquals("SPEED 120/1 90/1 120/1 150/1", next.get());
+
+        // 已完成的命令超时不再处理
+        tracker.onTimeout(lostTag);
+        assertEquals(0, tracker.getPendingCount());
+    }
+
+    @Test
+    public void timeoutClearsFrameSeq() throws Exception {
+        CommandFuture frame = new CommandFuture("frame 9");
+        int tag = tracker.register(frame);
+        tracker.beginBatch();
+        tracker.onWritten(tag, true, 9, T0);
+
+        tracker.onTimeout(tag);
+        assertTrue(errorOf(frame) instanceof TimeoutException);
+
+        // 迟到的应答被忽略
+        tracker.onFrameReply(9, "ACK 9", true, T0 + 1_000_000);
+        assertEquals(0, histogram.getCount());
+    }
+
+    @Test
+    public void abortBatchFailsOnlyTheCurrentWrite() throws Exception {
+        CommandFuture written = new CommandFuture("status");
+        registerText(written);
+
+        CommandFuture text = new CommandFuture("speed");
+        CommandFuture frame = new CommandFuture("frame 3");
+        int textTag = tracker.register(text);
+        int frameTag = tracker.register(frame);
+        tracker.beginBatch();
+        tracker.onWritten(textTag, false, 0, T0);
+        tracker.onWritten(frameTag, true, 3, T0);
+
+        IOException rejected = new IOException("Write rejected");
+        tracker.abortBatch(rejected);
+        assertSame(rejected, errorOf(text));
+        assertSame(rejected, errorOf(frame));
+        assertFalse(written.isDone());
+
+        tracker.onTextReply("90,0,180,0", T0 + 1_000_000);
+        assertEquals("90,0,180,0", written.get());
+    }
+
+    @Test
+    public void resetFailsAllPending() throws Exception {
+        CommandFuture written = new CommandFuture("status");
+        CommandFuture queued = new CommandFuture("speed");
+        registerText(written);
+        tracker.register(queued);
+
+        IOException disconnected = new IOException("Disconnected");
+        tracker.reset(disconnected);
+        assertSame(disconnected, errorOf(written));
+        assertSame(disconnected, errorOf(queued));
+        assertEquals(0, tracker.getPendingCount());
+
+        tracker.onTextReply("OK", T0);
+        assertEquals(0, histogram.getCount());
+    }
+
+    @Test
+    public void cancelFailsRegisteredCommand() throws Exception {
+        CommandFuture future = new CommandFuture("status");
+        int tag = tracker.register(future);
+        IOException full = new IOException("Write queue full");
+        tracker.cancel(tag, full);
+        assertSame(full, errorOf(future));
+        assertEquals(0, tracker.getPendingCount());
+    }
+}
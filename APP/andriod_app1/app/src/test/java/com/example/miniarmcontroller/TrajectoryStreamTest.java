@@ -0,0 +1,139 @@
+package com.example.miniarmcontroller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 轨迹流的信用计算：应答手动完成，检查每一步的可发送路点数。
+ */
+public class TrajectoryStreamTest {
+
+    // 记录发出的命令，由测试决定何时应答
+    private static final class RecordingSink implements TrajectoryStream.Sink {
+        final List<CommandFuture> points = new ArrayList<>();
+        final List<CommandFuture> commands = new ArrayList<>();
+
+        @Override
+        public CommandFuture sendTrajectoryPoint(int a, int b, int c, int g, int durationMs) {
+            CommandFuture future = new CommandFuture(CommandCodec.textTrajectoryPoint(a, b, c, g, durationMs));
+            points.add(future);
+            return future;
+        }
+
+        @Override
+        public CommandFuture sendCommand(String command) {
+            CommandFuture future = new CommandFuture(command);
+            commands.add(future);
+            return future;
+        }
+    }
+
+    private RecordingSink sink;
+    private TrajectoryStream stream;
+
+    @Before
+    public void setUp() {
+        sink = new RecordingSink();
+        stream = new TrajectoryStream(sink);
+    }
+
+    private boolean offer() {
+        return stream.offer(90, 30, 150, 10, 100);
+    }
+
+    private void startWithFree(int free) {
+        stream.start();
+        assertEquals(CommandCodec.TRAJECTORY_CLEAR, sink.commands.get(0).getCommand());
+        sink.commands.get(0).complete("OK " + free, 0);
+    }
+
+    @Test
+    public void startTakesCreditsFromClearReply() {
+        assertEquals(0, stream.getCredits());
+        startWithFree(32);
+        assertEquals(32, stream.getCredits());
+    }
+
+    @Test
+    public void inFlightPointsConsumeCreditsUntilReplied() {
+        startWithFree(32);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(offer());
+        }
+        assertEquals(29, stream.getCredits());
+        assertEquals(3, stream.getSentCount());
+
+        // 第1条应答时队列还有31个空位，仍在途的是后面2条
+        sink.points.get(0).complete("OK 31", 0);
+        assertEquals(29, stream.getCredits());
+
+        // 固件在此期间取走了路点，空位变多
+        sink.points.get(1).complete("OK 31", 0);
+        assertEquals(30, stream.getCredits());
+        sink.points.get(2).complete("OK 32", 0);
+        assertEquals(32, stream.getCredits());
+    }
+
+    @Test
+    public void rejectedPointReleasesInFlightWithoutChangingReportedFree() {
+        startWithFree(4);
+        assertTrue(offer());
+        assertTrue(offer());
+
+        sink.points.get(0).fail(new CommandFuture.CommandException("ERROR"));
+        assertEquals(1, stream.getRejectedCount());
+        assertEquals(3, stream.getCredits());
+
+        sink.points.get(1).fail(new IOException("Cancelled by halt"));
+        assertEquals(2, stream.getRejectedCount());
+        assertEquals(4, stream.getCredits());
+    }
+
+    @Test
+    public void noCreditsWhileInFlightDoesNotQuery() {
+        startWithFree(2);
+        assertTrue(offer());
+        assertTrue(offer());
+        assertFalse(offer());
+        assertEquals(2, stream.getSentCount());
+        // 在途应答会带回空位，不需要查询
+        assertEquals(1, sink.commands.size());
+    }
+
+    @Test
+    public void emptyCreditsWithNothingInFlightQueriesOnce() {
+        startWithFree(1);
+        assertTrue(offer());
+        sink.points.get(0).complete("OK 0", 0);
+        assertEquals(0, stream.getCredits());
+
+        assertFalse(offer());
+        assertFalse(offer());
+        assertEquals(2, sink.commands.size());
+        CommandFuture query = sink.commands.get(1);
+        assertEquals(CommandCodec.TRAJECTORY_STATUS, query.getCommand());
+
+        query.complete("TRAJ 5 27 0", 0);
+        assertEquals(5, stream.getCredits());
+        assertTrue(offer());
+    }
+
+    @Test
+    public void failedQueryAllowsAnotherQuery() {
+        startWithFree(0);
+        assertFalse(offer());
+        sink.commands.get(1).fail(new IOException("Write queue full"));
+        assertEquals(0, stream.getCredits());
+
+        assertFalse(offer());
+        assertEquals(3, sink.commands.size());
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.miniarmcontroller.benchmark;
+
+import com.example.miniarmcontroller.CommandCodec;
+import com.example.miniarmcontroller.CommandWriteQueue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * 命令编码和入队的单次开销：二进制帧、文本命令写入复用缓冲区，
+ * 以及旧的字符串拼接方式（对照分配量），和入队-打包写出-写完成的一个完整循环。
+ */
+@State(Scope.Thread)
+public class CommandEncodingBenchmark {
+    private static final int MAX_PAYLOAD = 244;
+
+    private final byte[] scratch = new byte[CommandWriteQueue.MAX_WRITE_LENGTH];
+    private final CommandWriteQueue queue = new CommandWriteQueue();
+    private int angle = 0;
+
+    private int nextAngle() {
+        angle = (angle + 7) % 181;
+        return angle;
+    }
+
+    @Benchmark
+    public int binarySetJoint() {
+        return CommandCodec.encodeSetJoint(scratch, 0, angle & 0xFF, 0, nextAngle());
+    }
+
+    @Benchmark
+    public int binarySetAll() {
+        int a = nextAngle();
+        return CommandCodec.encodeSetAll(scratch, 0, a, a, 40, 150, 20);
+    }
+
+    @Benchmark
+    public int textSetJoint() {
+        return CommandCodec.writeTextSetJoint(scratch, 0, 0, nextAngle());
+    }
+
+    @Benchmark
+    public int textSetAll() {
+        return CommandCodec.writeTextSetAll(scratch, 0, nextAngle(), 40, 150, 20);
+    }
+
+    // 旧的发送方式：拼接字符串再转字节
+    @Benchmark
+    public byte[] textSetAllString() {
+        return CommandCodec.textSetAll(nextAngle(), 40, 150, 20).getBytes();
+    }
+
+    // 编码 -> 入队 -> 打包写出 -> 写完成
+    @Benchmark
+    public void queueRoundTrip(Blackhole blackhole) {
+        int length = CommandCodec.encodeSetJoint(scratch, 0, angle & 0xFF, 0, nextAngle());
+        queue.offer(0, scratch, 0, length);
+        blackhole.consume(queue.beginWrite(MAX_PAYLOAD));
+        queue.completeWrite(true);
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.miniarmcontroller.benchmark;
+
+import com.example.miniarmcontroller.JointLimits;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * 肘部动态范围计算（滑块界面 updateServoCRange 中与界面无关的部分）和关节角度校验。
+ * 肩部角度在整个范围内循环，避免分支被完全预测。
+ */
+@State(Scope.Thread)
+public class ElbowRangeBenchmark {
+    private int shoulder = 0;
+    private int elbow = 120;
+
+    @Benchmark
+    public void updateElbowRange(Blackhole blackhole) {
+        shoulder = (shoulder + 13) % (JointLimits.SHOULDER_MAX + 1);
+        elbow = (elbow + 29) % (JointLimits.ELBOW_MAX + 1);
+        blackhole.consume(JointLimits.elbowMin(shoulder));
+        blackhole.consume(JointLimits.elbowMax(shoulder));
+        blackhole.consume(JointLimits.clampElbow(elbow, shoulder));
+    }
+
+    @Benchmark
+    public boolean validateSetAll() {
+        shoulder = (shoulder + 13) % (JointLimits.SHOULDER_MAX + 1);
+        elbow = (elbow + 29) % (JointLimits.ELBOW_MAX + 1);
+        return JointLimits.isValid(0, elbow, shoulder)
+                & JointLimits.isValid(1, shoulder, shoulder)
+                & JointLimits.isValid(2, elbow, shoulder)
+                & JointLimits.isValid(3, shoulder, shoulder);
+    }
+}
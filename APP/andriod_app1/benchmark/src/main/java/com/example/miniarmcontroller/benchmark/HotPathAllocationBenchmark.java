@@ -0,0 +1,190 @@
+package com.example.miniarmcontroller.benchmark;
+
+import com.example.miniarmcontroller.ArmTransport;
+import com.example.miniarmcontroller.CommandCodec;
+import com.example.miniarmcontroller.CommandPipeline;
+import com.example.miniarmcontroller.CommandWriteQueue;
+import com.example.miniarmcontroller.ListenerDispatcher;
+import com.example.miniarmcontroller.PoseRingBuffer;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 发送/接收热路径的内存分配基准：驱动 BluetoothManager 使用的同一个 CommandPipeline，
+ * sendSetJoint 入队(合并) -> pump 打包写出并登记应答 -> onWriteComplete -> onDataReceived 解析并匹配应答，
+ * 二进制协议下每次写入之后再收一帧姿态遥测；回复和遥测像 BluetoothManager 一样经 ListenerDispatcher
+ * 分发给用 DIRECT_EXECUTOR 注册的订阅者。
+ * 传输层只复制写出的数据，调度器在当前线程直接执行，统计每条命令分配的字节数，不为0时以非0状态退出。
+ *
+ * 运行: ./gradlew :benchmark:run
+ */
+public class HotPathAllocationBenchmark {
+    private static final int WARMUP_ITERATIONS = 200_000;
+    private static final int MEASURE_ITERATIONS = 1_000_000;
+    private static final int MAX_PAYLOAD = 244;
+
+    private static final byte[] TEXT_OK = {'O', 'K'};
+
+    // 不连接设备的传输层：复制写出的数据（与GattTransport相同），写完成和应答由基准手动送回
+    private static final class NoOpTransport implements ArmTransport {
+        final byte[] written = new byte[CommandWriteQueue.MAX_WRITE_LENGTH];
+        int writtenLength = 0;
+        // 为false时pump不写出，用来让多条命令先在队列中累积
+        boolean ready = true;
+
+        @Override
+        public void setCallback(Callback callback) {
+        }
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        public int getMaxPayload() {
+            return MAX_PAYLOAD;
+        }
+
+        @Override
+        public boolean write(byte[] data) {
+            System.arraycopy(data, 0, written, 0, data.length);
+            writtenLength = data.length;
+            return true;
+        }
+    }
+
+    // 在当前线程直接执行，基准本身就是I/O线程；不需要结果的命令不会调度超时任务
+    private static final CommandPipeline.Scheduler INLINE_SCHEDULER = new CommandPipeline.Scheduler() {
+        @Override
+        public void execute(Runnable task) {
+            task.run();
+        }
+
+        @Override
+        public void schedule(Runnable task, long delayMs) {
+        }
+    };
+
+    // 与 BluetoothManagerListener 中高频回调相同的订阅者
+    private interface Subscriber {
+        void onDataReceived(String data);
+
+        void onPoseUpdated(PoseRingBuffer poses);
+    }
+
+    private static final ListenerDispatcher.ArgEvent<Subscriber, String> DATA_RECEIVED = Subscriber::onDataReceived;
+
+    private final byte[] ackFrame = {CommandCodec.FRAME_MAGIC, CommandCodec.OP_ACK, 0, CommandCodec.STATUS_OK};
+    private final byte[] telemetryFrame = new byte[CommandCodec.TELEMETRY_LENGTH];
+
+    private final boolean binary;
+    private final NoOpTransport transport = new NoOpTransport();
+    private final CommandPipeline pipeline = new CommandPipeline(transport, INLINE_SCHEDULER);
+    private final ListenerDispatcher<Subscriber> listeners = new ListenerDispatcher<>();
+    private final ListenerDispatcher.Event<Subscriber> poseEvent = l -> l.onPoseUpdated(pipeline.getPoseBuffer());
+    private long delivered = 0;
+    // 防止JIT把结果优化掉
+    private long sink = 0;
+
+    public static void main(String[] args) {
+        boolean ok = true;
+        ok &= new HotPathAllocationBenchmark(true).run("binary set", 1);
+        ok &= new HotPathAllocationBenchmark(false).run("text set", 1);
+        ok &= new HotPathAllocationBenchmark(true).run("binary set x3 packed", 3);
+        ok &= new HotPathAllocationBenchmark(false).run("text set x3 packed", 3);
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    // 二进制协议需要先完成握手，文本协议相当于不回复hello的旧固件
+    private HotPathAllocationBenchmark(boolean binary) {
+        this.binary = binary;
+        telemetryFrame[0] = CommandCodec.FRAME_MAGIC;
+        telemetryFrame[1] = CommandCodec.OP_TELEMETRY;
+        pipeline.setListener(new CommandPipeline.Listener() {
+            @Override
+            public void onReplyReceived(String reply) {
+                listeners.dispatch(DATA_RECEIVED, reply);
+            }
+
+            @Override
+            public void onPoseUpdated(PoseRingBuffer poses) {
+                listeners.dispatch(poseEvent);
+            }
+        });
+        listeners.add(new Subscriber() {
+            @Override
+            public void onDataReceived(String data) {
+                delivered++;
+                sink += data.length();
+            }
+
+            @Override
+            public void onPoseUpdated(PoseRingBuffer poses) {
+                delivered++;
+                sink += poses.size();
+            }
+        }, ListenerDispatcher.DIRECT_EXECUTOR);
+        pipeline.onLinkReady();
+        pipeline.onWriteComplete(true);
+        if (binary) {
+            pipeline.onDataReceived((CommandCodec.HELLO_REPLY_PREFIX + "2 " + CommandCodec.CAPABILITY_BINARY)
+                    .getBytes(StandardCharsets.US_ASCII));
+        }
+        if (pipeline.isBinaryMode() != binary) {
+            throw new IllegalStateException("handshake did not select the expected protocol");
+        }
+    }
+
+    private boolean run(String name, int commandsPerWrite) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            step(i, commandsPerWrite);
+        }
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long startBytes = threads.getThreadAllocatedBytes(threadId);
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+            step(i, commandsPerWrite);
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - startBytes;
+
+        long commands = (long) MEASURE_ITERATIONS * commandsPerWrite;
+        System.out.printf("%-22s %8.1f ns/command %8.3f bytes/command (sink %d, matched %d, pending %d, delivered %d)%n",
+                name, (double) elapsedNanos / commands, (double) allocated / commands, sink,
+                pipeline.getLatencyHistogram().getCount(), pipeline.getPendingCount(), delivered);
+        return allocated == 0 && pipeline.getPendingCount() == 0;
+    }
+
+    // 一次写入周期：命令在I/O线程处理前累积，打包写出，完成写入，收到每条命令的应答
+    private void step(int i, int commandsPerWrite) {
+        transport.ready = false;
+        for (int joint = 0; joint < commandsPerWrite; joint++) {
+            pipeline.sendSetJoint(joint, (i + joint) % 181);
+        }
+        transport.ready = true;
+        pipeline.pump();
+        sink += transport.writtenLength;
+        pipeline.onWriteComplete(true);
+
+        for (int k = 0; k < commandsPerWrite; k++) {
+            if (binary) {
+                ackFrame[2] = transport.written[k * CommandCodec.FRAME_LENGTH + 2];
+                pipeline.onDataReceived(ackFrame);
+            } else {
+                pipeline.onDataReceived(TEXT_OK);
+            }
+        }
+        if (binary) {
+            telemetryFrame[2] = (byte) i;
+            telemetryFrame[8] = (byte) (i % 181);
+            pipeline.onDataReceived(telemetryFrame);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.miniarmcontroller.benchmark;
+
+import com.example.miniarmcontroller.CommandFuture;
+import com.example.miniarmcontroller.CommandPipeline;
+import com.example.miniarmcontroller.LoopbackArmTransport;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 命令管线压测：CommandPipeline 接进程内模拟固件 LoopbackArmTransport，
+ * 以固定的在途窗口连续发送带结果的关节命令，统计吞吐、成功/失败/超时数和往返延迟分布。
+ * 约5%的命令角度越界，用于覆盖固件回复ERROR的路径。
+ *
+ * 运行: ./gradlew :benchmark:loadTest --args="--commands 100000 --latency-us 200 --loss 0.01"
+ * 参数: --commands N  --window N  --latency-us N  --loss P  --text(不握手，使用文本协议)
+ */
+public class PipelineLoadTest {
+    private static final long TIMEOUT_MS = 500;
+    private static final double INVALID_RATE = 0.05;
+
+    public static void main(String[] args) throws Exception {
+        int commands = 100_000;
+        int window = 16;
+        long latencyMicros = 200;
+        double loss = 0;
+        boolean text = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--commands": commands = Integer.parseInt(args[++i]); break;
+                case "--window": window = Integer.parseInt(args[++i]); break;
+                case "--latency-us": latencyMicros = Long.parseLong(args[++i]); break;
+                case "--loss": loss = Double.parseDouble(args[++i]); break;
+                case "--text": text = true; break;
+                default:
+                    System.err.println("Unknown argument: " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        // 与 BluetoothManager 相同：写队列泵和超时都在一个I/O线程执行
+        ScheduledExecutorService io = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pipeline-io");
+            thread.setDaemon(true);
+            return thread;
+        });
+        CommandPipeline.Scheduler scheduler = new CommandPipeline.Scheduler() {
+            @Override
+            public void execute(Runnable task) {
+                io.execute(task);
+            }
+
+            @Override
+            public void schedule(Runnable task, long delayMs) {
+                io.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+            }
+        };
+
+        LoopbackArmTransport arm = new LoopbackArmTransport(new Random(1));
+        arm.setLatencyMicros(latencyMicros);
+        CommandPipeline pipeline = new CommandPipeline(arm, scheduler);
+        pipeline.setTelemetryInterval(0);
+
+        if (!text) {
+            CountDownLatch handshake = new CountDownLatch(1);
+            pipeline.setListener(new CommandPipeline.Listener() {
+                @Override
+                public void onHandshake(String reply, boolean binary, boolean telemetry) {
+                    handshake.countDown();
+                }
+            });
+            pipeline.onLinkReady();
+            if (!handshake.await(2, TimeUnit.SECONDS)) {
+                System.err.println("Handshake timed out");
+                System.exit(1);
+            }
+        }
+        // 握手之后再打开丢包，避免握手本身丢失
+        arm.setLossRate(loss);
+
+        Semaphore inFlight = new Semaphore(window);
+        AtomicLong ok = new AtomicLong();
+        AtomicLong rejected = new AtomicLong();
+        AtomicLong timedOut = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(commands);
+        Random random = new Random(2);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < commands; i++) {
+            inFlight.acquire();
+            int b = random.nextInt(78);
+            int a = random.nextDouble() < INVALID_RATE ? 200 : random.nextInt(181);
+            int cMin = 140 - b;
+            int cMax = Math.min(196 - b, 180);
+            int c = cMin + random.nextInt(cMax - cMin + 1);
+            int g = random.nextInt(38);
+
+            CommandFuture future = pipeline.sendSetAllForResult(a, b, c, g, TIMEOUT_MS);
+            future.addCallback((reply, error) -> {
+                if (error == null) {
+                    ok.incrementAndGet();
+                } else if (error instanceof CommandFuture.CommandException) {
+                    rejected.incrementAndGet();
+                } else if (error instanceof TimeoutException) {
+                    timedOut.incrementAndGet();
+                } else {
+                    failed.incrementAndGet();
+                }
+                inFlight.release();
+                done.countDown();
+            });
+        }
+        done.await();
+        long elapsedNanos = System.nanoTime() - start;
+
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("%s protocol, %d commands, window %d, latency %dus, loss %.3f%n",
+                text ? "text" : "binary", commands, window, latencyMicros, loss);
+        System.out.printf("  %.0f commands/s, %d writes (%.2f commands/write)%n",
+                commands / seconds, arm.getWriteCount(), (double) arm.getCommandCount() / arm.getWriteCount());
+        System.out.printf("  ok %d, rejected %d, timed out %d, failed %d, replies lost %d%n",
+                ok.get(), rejected.get(), timedOut.get(), failed.get(), arm.getLostReplyCount());
+        System.out.println("  round trip " + pipeline.getLatencyHistogram().summary());
+
+        arm.shutdown();
+        io.shutdownNow();
+    }
+}
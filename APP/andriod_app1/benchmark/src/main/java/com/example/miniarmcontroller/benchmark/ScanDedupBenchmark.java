@@ -0,0 +1,94 @@
+package com.example.miniarmcontroller.benchmark;
+
+import com.example.miniarmcontroller.DeviceRegistry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * 扫描结果去重：已知设备的每条广播按地址查表并原地更新信号强度，
+ * 以及界面刷新时取快照的开销。设备数量用 deviceCount 参数调整。
+ */
+@State(Scope.Thread)
+public class ScanDedupBenchmark {
+
+    // 与 BluetoothDeviceInfo 相同的更新规则，不依赖Android
+    static final class Device implements DeviceRegistry.Entry<Device> {
+        private final String address;
+        private int rssi;
+        private long lastSeen;
+
+        Device(String address, int rssi) {
+            this.address = address;
+            this.rssi = rssi;
+        }
+
+        @Override
+        public String getAddress() {
+            return address;
+        }
+
+        @Override
+        public int getRssi() {
+            return rssi;
+        }
+
+        @Override
+        public long getLastSeen() {
+            return lastSeen;
+        }
+
+        @Override
+        public boolean update(int rssi, long now) {
+            lastSeen = now;
+            if (this.rssi == rssi) {
+                return false;
+            }
+            this.rssi = rssi;
+            return true;
+        }
+
+        @Override
+        public Device copy() {
+            Device copy = new Device(address, rssi);
+            copy.lastSeen = lastSeen;
+            return copy;
+        }
+    }
+
+    @Param({"10", "100"})
+    public int deviceCount;
+
+    private final DeviceRegistry<Device> registry = new DeviceRegistry<>();
+    private String[] addresses;
+    private int next = 0;
+    private long now = 0;
+
+    @Setup
+    public void setUp() {
+        addresses = new String[deviceCount];
+        for (int i = 0; i < deviceCount; i++) {
+            // 扫描回调每次都会得到新的地址字符串，这里同样每次构造新对象
+            addresses[i] = String.format("24:6F:28:%02X:%02X:%02X", i >> 16 & 0xFF, i >> 8 & 0xFF, i & 0xFF);
+            registry.add(new Device(addresses[i], -60), 0);
+        }
+    }
+
+    @Benchmark
+    public boolean updateKnownDevice() {
+        int i = next;
+        next = (next + 1) % deviceCount;
+        now++;
+        return registry.update(new String(addresses[i]), -50 - (int) (now & 15), now);
+    }
+
+    @Benchmark
+    public List<Device> snapshot() {
+        return registry.snapshot();
+    }
+}
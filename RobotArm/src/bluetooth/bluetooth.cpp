@@ -1,14 +1,102 @@
 #include "bluetooth.h"
+#include "../movement/movement.h"
+
+#include <atomic>
 
 // 全局变量
 bool bluetoothConnected = false;
-String receivedCommand = "";
-bool hasNewCommand = false;
+
+// 接收队列：BLE任务（核心0）写入，loop任务取出，单生产者单消费者，不加锁。
+// 每个槽位保存一次完整的写入，同一个时间窗口内的多次写入不会互相覆盖
+typedef struct {
+    uint16_t length;            // 写入长度，0表示丢弃标记
+    uint16_t droppedCommands;   // 丢弃标记：被丢弃的文本命令条数，取出时逐条回复ERROR
+    uint16_t droppedWrites;     // 丢弃标记：被丢弃的写入次数
+    uint8_t data[BLE_MAX_WRITE];
+} RxSlot;
+
+static RxSlot rxQueue[RX_QUEUE_SLOTS];
+static std::atomic<uint32_t> rxHead(0);  // 只由生产者修改
+static std::atomic<uint32_t> rxTail(0);  // 只由消费者修改
+static TaskHandle_t rxConsumerTask = NULL;
+
+// 以下只在BLE任务中访问：队列满时丢弃的命令，有空位后先放入丢弃标记，保证应答顺序
+static uint16_t pendingDroppedCommands = 0;
+static uint16_t pendingDroppedWrites = 0;
+static std::atomic<unsigned long> droppedWriteCount(0);
 
 BLEServer* pServer = NULL;
 BLECharacteristic* pTxCharacteristic = NULL;
 BLECharacteristic* pRxCharacteristic = NULL;
 
+// 一次文本写入中的命令条数（换行分隔的非空行），每条命令都需要一行应答
+static uint16_t countTextCommands(const uint8_t* data, size_t length) {
+    uint16_t count = 0;
+    bool hasContent = false;
+    for (size_t i = 0; i < length; i++) {
+        if (data[i] == '\n') {
+            count += hasContent ? 1 : 0;
+            hasContent = false;
+        } else if (data[i] > ' ') {
+            hasContent = true;
+        }
+    }
+    return count + (hasContent ? 1 : 0);
+}
+
+// 优先通道：整次写入只有一条halt命令（前后可以有空白）
+bool isHaltWrite(const uint8_t* data, size_t length) {
+    size_t start = 0;
+    while (start < length && data[start] <= ' ') {
+        start++;
+    }
+    while (length > start && data[length - 1] <= ' ') {
+        length--;
+    }
+    return length - start == 4 && memcmp(data + start, "halt", 4) == 0;
+}
+
+// 生产者：放入一次写入，队列满时记为丢弃并返回false
+static bool pushRxWrite(const uint8_t* data, size_t length) {
+    uint32_t head = rxHead.load(std::memory_order_relaxed);
+    uint32_t tail = rxTail.load(std::memory_order_acquire);
+    uint32_t free = RX_QUEUE_SLOTS - (head - tail);
+    
+    if (pendingDroppedWrites > 0 && free > 0) {
+        RxSlot& marker = rxQueue[head & (RX_QUEUE_SLOTS - 1)];
+        marker.length = 0;
+        marker.droppedCommands = pendingDroppedCommands;
+        marker.droppedWrites = pendingDroppedWrites;
+        pendingDroppedCommands = 0;
+        pendingDroppedWrites = 0;
+        head++;
+        free--;
+    }
+    
+    bool queued = free > 0 && pendingDroppedWrites == 0;
+    if (queued) {
+        RxSlot& slot = rxQueue[head & (RX_QUEUE_SLOTS - 1)];
+        memcpy(slot.data, data, length);
+        slot.length = length;
+        head++;
+    } else {
+        // 二进制帧按序号匹配应答，只计数；文本命令在标记处补回ERROR
+        if (data[0] != FRAME_MAGIC) {
+            pendingDroppedCommands += countTextCommands(data, length);
+        }
+        pendingDroppedWrites++;
+        droppedWriteCount.fetch_add(1, std::memory_order_relaxed);
+    }
+    
+    if (head != rxHead.load(std::memory_order_relaxed)) {
+        rxHead.store(head, std::memory_order_release);
+        if (rxConsumerTask != NULL) {
+            xTaskNotifyGive(rxConsumerTask);
+        }
+    }
+    return queued;
+}
+
 // 服务器回调类
 class MyServerCallbacks: public BLEServerCallbacks {
     void onConnect(BLEServer* pServer) {
@@ -24,21 +112,23 @@ class MyServerCallbacks: public BLEServerCallbacks {
     }
 };
 
-// 特征值回调类
+// 特征值回调类：只把写入复制进接收队列，解析和执行都在loop中进行（halt除外）
 class MyCallbacks: public BLECharacteristicCallbacks {
     void onWrite(BLECharacteristic *pCharacteristic) {
         std::string rxValue = pCharacteristic->getValue();
-
-        if (rxValue.length() > 0) {
-            // 将 std::string 转换为 Arduino String
-            receivedCommand = String(rxValue.c_str());
-            
-            // 移除换行符
-            receivedCommand.trim();
-            hasNewCommand = true;
-            
-            Serial.print("蓝牙接收到命令: ");
-            Serial.println(receivedCommand);
+        size_t length = rxValue.length();
+        if (length == 0) {
+            return;
+        }
+        if (length > BLE_MAX_WRITE) {
+            length = BLE_MAX_WRITE;
+        }
+        // 按原始字节保存：二进制帧不能转换为String（角度0会被当作结束符）
+        const uint8_t* data = (const uint8_t*)rxValue.data();
+        bool queued = pushRxWrite(data, length);
+        // halt不等排在前面的命令，在这里立即停住；应答仍在loop中按顺序回复
+        if (isHaltWrite(data, length)) {
+            requestEarlyHalt(queued);
         }
     }
 };
@@ -46,9 +136,11 @@ class MyCallbacks: public BLECharacteristicCallbacks {
 // 初始化蓝牙
 void initBluetooth() {
     Serial.println("初始化蓝牙BLE服务...");
+    rxConsumerTask = xTaskGetCurrentTaskHandle();
     
     // 创建BLE设备
     BLEDevice::init(BT_DEVICE_NAME);
+    BLEDevice::setMTU(BLE_MAX_MTU);  // 允许App协商大MTU，一次写入携带多条命令
     
     // 创建BLE服务器
     pServer = BLEDevice::createServer();
@@ -87,22 +179,61 @@ void initBluetooth() {
 }
 
 // 发送蓝牙消息
-void sendBluetooth(String message) {
+void sendBluetooth(const char* message) {
     if (bluetoothConnected && pTxCharacteristic != NULL) {
-        pTxCharacteristic->setValue(message.c_str());
+        pTxCharacteristic->setValue((uint8_t*)message, strlen(message));
         pTxCharacteristic->notify();
         Serial.print("蓝牙发送: ");
         Serial.println(message);
     }
 }
 
-// 获取蓝牙接收的命令
-String getBluetooth() {
-    if (hasNewCommand) {
-        hasNewCommand = false;
-        return receivedCommand;
+// 发送二进制帧
+void sendBluetoothFrame(const uint8_t* data, size_t length) {
+    if (bluetoothConnected && pTxCharacteristic != NULL) {
+        pTxCharacteristic->setValue((uint8_t*)data, length);
+        pTxCharacteristic->notify();
     }
-    return "";
+}
+
+// 消费者：取出下一次写入，返回长度，队列为空时返回0；遇到丢弃标记时按顺序补回ERROR应答
+size_t takeBluetoothWrite(uint8_t* buffer, size_t maxLength) {
+    uint32_t tail = rxTail.load(std::memory_order_relaxed);
+    while (tail != rxHead.load(std::memory_order_acquire)) {
+        const RxSlot& slot = rxQueue[tail & (RX_QUEUE_SLOTS - 1)];
+        size_t length = slot.length;
+        uint16_t droppedCommands = slot.droppedCommands;
+        uint16_t droppedWrites = slot.droppedWrites;
+        if (length > maxLength) {
+            length = maxLength;
+        }
+        if (length > 0) {
+            memcpy(buffer, slot.data, length);
+        }
+        rxTail.store(++tail, std::memory_order_release);
+        
+        if (length > 0) {
+            return length;
+        }
+        Serial.printf("蓝牙接收队列已满，丢弃%d次写入\n", droppedWrites);
+        for (int i = 0; i < droppedCommands; i++) {
+            sendBluetooth("ERROR");
+        }
+    }
+    return 0;
+}
+
+// 阻塞等待生产者的通知，代替固定的延时轮询
+bool waitForBluetoothWrite(uint32_t timeoutMs) {
+    if (rxTail.load(std::memory_order_relaxed) != rxHead.load(std::memory_order_acquire)) {
+        return true;
+    }
+    ulTaskNotifyTake(pdTRUE, pdMS_TO_TICKS(timeoutMs));
+    return rxTail.load(std::memory_order_relaxed) != rxHead.load(std::memory_order_acquire);
+}
+
+unsigned long getBluetoothDroppedWrites() {
+    return droppedWriteCount.load(std::memory_order_relaxed);
 }
 
 // 检查蓝牙连接状态
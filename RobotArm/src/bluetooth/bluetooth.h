@@ -6,6 +6,7 @@
 #include <BLEUtils.h>
 #include <BLE2902.h>
 #include <Arduino.h>
+#include "../command_break/frame_protocol.h"
 
 // 蓝牙设备名称和UUID
 #define BT_DEVICE_NAME "RobotArm"
@@ -13,15 +14,20 @@
 #define CHAR_UUID_RX "d05182d7-e26f-4bfc-8a69-6e3efb177358"  
 #define CHAR_UUID_TX "a0c4ca34-247c-4651-86a9-bf61b28b7bff"
 
+#define BLE_MAX_WRITE (BLE_MAX_MTU - 3)  // 单次写入的最大长度
+#define RX_QUEUE_SLOTS 16                 // 接收队列的写入个数（2的幂）
+
 // 全局变量
 extern bool bluetoothConnected;
-extern String receivedCommand;
-extern bool hasNewCommand;
 
 // 简单函数
-void initBluetooth();
-void sendBluetooth(String message);
-String getBluetooth();
+void initBluetooth();  // 在setup中调用，接收队列的消费者为调用它的任务（loop）
+void sendBluetooth(const char* message);
+void sendBluetoothFrame(const uint8_t* data, size_t length);
+size_t takeBluetoothWrite(uint8_t* buffer, size_t maxLength);  // 取出下一次写入（二进制帧以FRAME_MAGIC开头），队列为空时返回0
+bool waitForBluetoothWrite(uint32_t timeoutMs);  // 等待新的写入，收到时立即返回
+unsigned long getBluetoothDroppedWrites();  // 队列满时丢弃的写入次数
+bool isHaltWrite(const uint8_t* data, size_t length);  // 单独一次写入的halt，BLE任务中已提前停住
 bool isBluetoothConnected();
 
 #endif
\ No newline at end of file
@@ -1,182 +1,493 @@
 #include "command_break.h"
 #include "../movement/movement.h"
 #include "../bluetooth/bluetooth.h"
+#include "../telemetry/telemetry.h"
+#include "../program/program.h"
+#include "../trajectory/trajectory.h"
 
-// 主要的命令执行函数
-void executeCommand(String command, bool fromBluetooth) {
-  // 解析命令
-  ParsedCommand parsedCmd = parseCommand(command);
-  
-  // 执行解析后的命令
-  executeParsedCommand(parsedCmd, fromBluetooth);
+// 命令解析和应答都在固定缓冲区中进行，不分配堆内存：
+// 命令在接收缓冲区中原地切分为单词，按命令表分发；应答用snprintf格式化到replyBuffer
+#define REPLY_BUFFER_SIZE 160
+static char replyBuffer[REPLY_BUFFER_SIZE];
+
+// 执行一次写入中的命令（原地修改缓冲区，多条命令以换行分隔，空行忽略）
+void executeCommandBuffer(char* text, size_t length, bool fromBluetooth) {
+  size_t start = 0;
+  while(start < length) {
+    char* line = text + start;
+    char* newline = (char*)memchr(line, '\n', length - start);
+    size_t end = newline ? (size_t)(newline - text) : length;
+    text[end] = '\0';
+    
+    ParsedCommand parsedCmd;
+    if(parseCommand(line, parsedCmd)) {
+      executeParsedCommand(parsedCmd, fromBluetooth);
+    }
+    start = end + 1;
+  }
 }
 
-// 解析原始命令字符串
-ParsedCommand parseCommand(String rawCommand) {
-  ParsedCommand result;
-  
-  // 初始化结果结构体
-  result.type = CMD_UNKNOWN;
-  result.jointId = -1;
-  result.angleCount = 0;
-  result.originalCommand = rawCommand;
-  result.isValid = false;
-  result.errorMessage = "";
-  
-  // 清空角度数组
+// 原地切分后的命令单词，指向命令缓冲区
+#define MAX_COMMAND_WORDS 8
+
+typedef struct {
+  char* word[MAX_COMMAND_WORDS];
+  int count;
+} CommandWords;
+
+// 把命令原地切分为单词（空白字符替换为'\0'），超过MAX_COMMAND_WORDS个单词时count为-1
+static void splitWords(char* line, CommandWords& words) {
+  words.count = 0;
+  char* p = line;
+  while(true) {
+    while(*p != '\0' && *p <= ' ') {
+      *p++ = '\0';
+    }
+    if(*p == '\0') {
+      return;
+    }
+    if(words.count >= MAX_COMMAND_WORDS) {
+      words.count = -1;
+      return;
+    }
+    words.word[words.count++] = p;
+    while(*p > ' ') {
+      p++;
+    }
+  }
+}
+
+// 解析非负整数，含非数字或超过int范围时返回false
+static bool parseNumber(const char* word, int& value) {
+  long result = 0;
+  if(*word == '\0') {
+    return false;
+  }
+  for(; *word != '\0'; word++) {
+    if(!isDigit(*word)) {
+      return false;
+    }
+    result = result * 10 + (*word - '0');
+    if(result > 0x7FFFFFFF) {
+      return false;
+    }
+  }
+  value = (int)result;
+  return true;
+}
+
+// 解析第first个到第last-1个单词为非负整数，返回个数；超过maxCount或含非数字时返回-1
+static int parseNumbers(const CommandWords& words, int first, int last, int values[], int maxCount) {
+  int count = 0;
+  for(int i = first; i < last; i++) {
+    if(count >= maxCount || !parseNumber(words.word[i], values[count])) {
+      return -1;
+    }
+    count++;
+  }
+  return count;
+}
+
+static int parseNumbers(const CommandWords& words, int first, int values[], int maxCount) {
+  return parseNumbers(words, first, words.count, values, maxCount);
+}
+
+static bool wordIs(const CommandWords& words, int index, const char* text) {
+  return index < words.count && strcmp(words.word[index], text) == 0;
+}
+
+static void setValid(ParsedCommand& result, CommandType type) {
+  result.type = type;
+  result.isValid = true;
+}
+
+// 复制4个角度，第5个值（如有）作为附加参数
+static void setPose(ParsedCommand& result, CommandType type, const int values[], int value) {
   for(int i = 0; i < 4; i++) {
-    result.angles[i] = 0;
+    result.angles[i] = values[i];
   }
+  result.angleCount = 4;
+  result.value = value;
+  setValid(result, type);
+}
+
+// set <关节ID> <角度>
+static void parseSet(const CommandWords& words, ParsedCommand& result) {
+  int values[2];
+  if(parseNumbers(words, 1, values, 2) != 2) {
+    result.errorMessage = "set命令格式错误，应为: set <关节ID> <角度>";
+    return;
+  }
+  result.jointId = values[0];
+  result.angles[0] = values[1];
+  result.angleCount = 1;
   
-  // 预处理：去掉首尾空格
-  rawCommand.trim();
-  
-  if(rawCommand.length() == 0) {
-    result.errorMessage = "空命令";
-    return result;
+  // 验证关节ID范围
+  if(result.jointId < 0 || result.jointId >= 4) {
+    result.errorMessage = "关节ID必须在0-3之间";
+    return;
+  }
+  setValid(result, CMD_SET_JOINT);
+}
+
+// setall <基座> <肩部> <肘部> <抓手> [sync [时长ms]]，多余的角度被忽略
+static void parseSetAll(const CommandWords& words, ParsedCommand& result) {
+  int syncIndex = 1;
+  while(syncIndex < words.count && strcmp(words.word[syncIndex], "sync") != 0) {
+    syncIndex++;
   }
   
-  // 分析命令类型和参数
-  if(rawCommand.startsWith("set ")) {
-    result.type = CMD_SET_JOINT;
-    
-    // 解析 "set 0 90" 格式
-    String params = rawCommand.substring(4);
-    params.trim();
-    
-    int spaceIndex = params.indexOf(' ');
-    if(spaceIndex == -1) {
-      result.errorMessage = "set命令格式错误，应为: set <关节ID> <角度>";
-      return result;
-    }
-    
-    result.jointId = params.substring(0, spaceIndex).toInt();
-    result.angles[0] = params.substring(spaceIndex + 1).toInt();
-    result.angleCount = 1;
-    
-    // 验证关节ID范围
-    if(result.jointId < 0 || result.jointId >= 4) {
-      result.errorMessage = "关节ID必须在0-3之间";
-      return result;
+  CommandType type = CMD_SET_ALL_JOINTS;
+  int duration = 0;
+  if(syncIndex < words.count) {
+    // 可选的 "sync [时长ms]"：同步运动
+    int values[1];
+    int count = parseNumbers(words, syncIndex + 1, values, 1);
+    if(count < 0) {
+      result.errorMessage = "setall命令格式错误，应为: setall <基座> <肩部> <肘部> <抓手> [sync [时长ms]]";
+      return;
     }
-    
-    result.isValid = true;
+    type = CMD_SET_ALL_SYNC;
+    duration = (count == 1) ? values[0] : 0;
   }
-  else if(rawCommand.startsWith("setall ")) {
-    result.type = CMD_SET_ALL_JOINTS;
-    
-    // 解析 "setall 90 45 60 20" 格式
-    String params = rawCommand.substring(7);
-    params.trim();
-    
-    // 分割参数
-    result.angleCount = 0;
-    int lastIndex = 0;
-    
-    for(int i = 0; i <= params.length(); i++) {
-      if(i == params.length() || params.charAt(i) == ' ') {
-        if(i > lastIndex) {
-          String angleStr = params.substring(lastIndex, i);
-          angleStr.trim();
-          
-          if(angleStr.length() > 0 && result.angleCount < 4) {
-            result.angles[result.angleCount] = angleStr.toInt();
-            result.angleCount++;
-          }
-        }
-        lastIndex = i + 1;
+  
+  int values[MAX_COMMAND_WORDS];
+  if(parseNumbers(words, 1, syncIndex, values, MAX_COMMAND_WORDS) < 4) {
+    result.errorMessage = "setall命令需要4个角度值";
+    return;
+  }
+  setPose(result, type, values, duration);
+}
+
+// torque、torque on/off、torque set <阈值> <超调角度> <延时>
+static void parseTorque(const CommandWords& words, ParsedCommand& result) {
+  if(words.count == 1) {
+    setValid(result, CMD_TORQUE_STATUS);
+  }
+  else if(words.count == 2 && (wordIs(words, 1, "on") || wordIs(words, 1, "off"))) {
+    result.angles[0] = wordIs(words, 1, "on") ? 1 : 0;  // 使用angles[0]存储启用标志
+    setValid(result, CMD_TORQUE_ENABLE);
+  }
+  else if(wordIs(words, 1, "set")) {
+    int values[MAX_COMMAND_WORDS];
+    if(parseNumbers(words, 2, values, MAX_COMMAND_WORDS) >= 3) {
+      for(int i = 0; i < 3; i++) {
+        result.angles[i] = values[i];  // 阈值、超调角度、延时
       }
+      result.angleCount = 3;
+      setValid(result, CMD_TORQUE_SET);
+    } else {
+      result.errorMessage = "torque set命令格式错误，应为: torque set <阈值> <超调角度> <延时>";
     }
-    
-    // 验证角度数量
-    if(result.angleCount != 4) {
-      result.errorMessage = "setall命令需要4个角度值";
-      return result;
-    }
-    
-    result.isValid = true;
   }
-  else if(rawCommand == "reset") {
-    result.type = CMD_RESET;
-    result.isValid = true;
+  else {
+    result.errorMessage = "torque命令格式错误，可用: torque、torque on、torque off、torque set <参数>";
   }
-  else if(rawCommand == "status") {
-    result.type = CMD_STATUS;
-    result.isValid = true;
+}
+
+// telemetry <间隔ms>、telemetry off、telemetry fb on/off
+static void parseTelemetry(const CommandWords& words, ParsedCommand& result) {
+  if(words.count == 2 && wordIs(words, 1, "off")) {
+    result.angles[0] = 0;  // 使用angles[0]存储推送间隔
+    setValid(result, CMD_TELEMETRY);
   }
-  else if(rawCommand == "limits" || rawCommand == "info") {
-    result.type = CMD_LIMITS;
-    result.isValid = true;
+  else if(words.count == 3 && wordIs(words, 1, "fb") && (wordIs(words, 2, "on") || wordIs(words, 2, "off"))) {
+    result.angles[0] = wordIs(words, 2, "on") ? 1 : 0;
+    setValid(result, CMD_TELEMETRY_FEEDBACK);
   }
-  else if(rawCommand == "help") {
-    result.type = CMD_HELP;
-    result.isValid = true;
+  else if(words.count == 2 && parseNumber(words.word[1], result.angles[0])) {
+    setValid(result, CMD_TELEMETRY);
   }
-  // 新增：力矩补偿相关命令
-  else if(rawCommand == "torque") {
-    result.type = CMD_TORQUE_STATUS;
-    result.isValid = true;
+  else {
+    result.errorMessage = "telemetry命令格式错误，可用: telemetry <间隔ms>、telemetry off、telemetry fb on/off";
   }
-  else if(rawCommand.startsWith("torque ")) {
-    String params = rawCommand.substring(7);
-    params.trim();
-    
-    if(params == "on") {
-      result.type = CMD_TORQUE_ENABLE;
-      result.angles[0] = 1;  // 使用angles[0]存储启用标志
-      result.isValid = true;
+}
+
+// prog、prog begin/end/save/load/clear、prog move/sync <基座> <肩部> <肘部> <抓手> [停留ms]、prog grip <抓手> [停留ms]
+static void parseProgram(const CommandWords& words, ParsedCommand& result) {
+  static const struct {
+    const char* name;
+    CommandType type;
+  } actions[] = {
+    {"begin", CMD_PROGRAM_BEGIN}, {"end", CMD_PROGRAM_END}, {"save", CMD_PROGRAM_SAVE},
+    {"load", CMD_PROGRAM_LOAD}, {"clear", CMD_PROGRAM_CLEAR}
+  };
+  
+  if(words.count == 1) {
+    setValid(result, CMD_PROGRAM_STATUS);
+    return;
+  }
+  if(words.count == 2) {
+    for(size_t i = 0; i < sizeof(actions) / sizeof(actions[0]); i++) {
+      if(wordIs(words, 1, actions[i].name)) {
+        setValid(result, actions[i].type);
+        return;
+      }
     }
-    else if(params == "off") {
-      result.type = CMD_TORQUE_ENABLE;
-      result.angles[0] = 0;  // 禁用
-      result.isValid = true;
+  }
+  
+  int values[5];
+  int count;
+  if(wordIs(words, 1, "move") || wordIs(words, 1, "sync")) {
+    bool sync = wordIs(words, 1, "sync");
+    count = parseNumbers(words, 2, values, 5);
+    if(count == 4 || count == 5) {
+      setPose(result, sync ? CMD_PROGRAM_SYNC : CMD_PROGRAM_MOVE, values, (count == 5) ? values[4] : 0);
+    } else {
+      result.errorMessage = sync ? "prog sync命令格式错误，应为: prog sync <基座> <肩部> <肘部> <抓手> [停留ms]"
+                                 : "prog move命令格式错误，应为: prog move <基座> <肩部> <肘部> <抓手> [停留ms]";
     }
-    else if(params.startsWith("set ")) {
-      // torque set <threshold> <compensation> <delay>
-      result.type = CMD_TORQUE_SET;
-      
-      String setParams = params.substring(4);
-      setParams.trim();
-      
-      // 解析三个参数
-      int spaceIndex1 = setParams.indexOf(' ');
-      int spaceIndex2 = setParams.indexOf(' ', spaceIndex1 + 1);
-      
-      if(spaceIndex1 != -1 && spaceIndex2 != -1) {
-        result.angles[0] = setParams.substring(0, spaceIndex1).toInt();  // threshold
-        result.angles[1] = setParams.substring(spaceIndex1 + 1, spaceIndex2).toInt();  // compensation
-        result.angles[2] = setParams.substring(spaceIndex2 + 1).toInt();  // delay
-        result.angleCount = 3;
-        result.isValid = true;
-      } else {
-        result.errorMessage = "torque set命令格式错误，应为: torque set <阈值> <超调角度> <延时>";
-      }
+  }
+  else if(wordIs(words, 1, "grip")) {
+    count = parseNumbers(words, 2, values, 2);
+    if(count == 1 || count == 2) {
+      result.angles[0] = values[0];
+      result.angleCount = 1;
+      result.value = (count == 2) ? values[1] : 0;
+      setValid(result, CMD_PROGRAM_GRIP);
+    } else {
+      result.errorMessage = "prog grip命令格式错误，应为: prog grip <抓手> [停留ms]";
     }
-    else {
-      result.errorMessage = "torque命令格式错误，可用: torque、torque on、torque off、torque set <参数>";
+  }
+  else {
+    result.errorMessage = "prog命令格式错误，可用: prog、prog begin/move/sync/grip/end/save/load/clear";
+  }
+}
+
+// run [循环次数]，省略时无限循环
+static void parseRun(const CommandWords& words, ParsedCommand& result) {
+  int loops[1];
+  int count = parseNumbers(words, 1, loops, 1);
+  if(count >= 0) {
+    result.value = (count == 1) ? loops[0] : 0;
+    setValid(result, CMD_RUN);
+  } else {
+    result.errorMessage = "run命令格式错误，应为: run [循环次数]";
+  }
+}
+
+// traj、traj clear、traj <基座> <肩部> <肘部> <抓手> <段时长ms>
+static void parseTrajectory(const CommandWords& words, ParsedCommand& result) {
+  int values[5];
+  if(words.count == 1) {
+    setValid(result, CMD_TRAJECTORY_STATUS);
+  }
+  else if(words.count == 2 && wordIs(words, 1, "clear")) {
+    setValid(result, CMD_TRAJECTORY_CLEAR);
+  }
+  else if(parseNumbers(words, 1, values, 5) == 5) {
+    setPose(result, CMD_TRAJECTORY_POINT, values, values[4]);
+  }
+  else {
+    result.errorMessage = "traj命令格式错误，应为: traj <基座> <肩部> <肘部> <抓手> <段时长ms>、traj、traj clear";
+  }
+}
+
+// profile、profile step/trap/scurve、profile <关节ID> <速度> <加速度> [加加速度]
+static void parseProfile(const CommandWords& words, ParsedCommand& result) {
+  static const char* modes[] = {"step", "trap", "scurve"};  // 顺序与MotionProfileMode一致
+  
+  if(words.count == 1) {
+    setValid(result, CMD_PROFILE_STATUS);
+    return;
+  }
+  if(words.count == 2) {
+    for(int i = 0; i < 3; i++) {
+      if(wordIs(words, 1, modes[i])) {
+        result.value = i;
+        setValid(result, CMD_PROFILE_MODE);
+        return;
+      }
     }
   }
+  
+  int values[4];
+  int count = parseNumbers(words, 1, values, 4);
+  if(count == 3 || count == 4) {
+    // 省略加加速度时取加速度的10倍
+    result.jointId = values[0];
+    result.angles[0] = values[1];
+    result.angles[1] = values[2];
+    result.angles[2] = (count == 4) ? values[3] : values[2] * 10;
+    result.angleCount = 3;
+    setValid(result, CMD_PROFILE_SET);
+  } else {
+    result.errorMessage = "profile命令格式错误，可用: profile、profile step/trap/scurve、profile <关节ID> <速度> <加速度> [加加速度]";
+  }
+}
+
+// speed、speed <关节ID> <速度> [步长]、speed <基座> <肩部> <肘部> <抓手>
+static void parseSpeed(const CommandWords& words, ParsedCommand& result) {
+  if(words.count == 1) {
+    setValid(result, CMD_SPEED_STATUS);
+    return;
+  }
+  
+  int values[4];
+  int count = parseNumbers(words, 1, values, 4);
+  if(count == 2 || count == 3) {
+    result.jointId = values[0];
+    result.angles[0] = values[1];
+    result.angleCount = 1;
+    result.value = (count == 3) ? values[2] : 1;
+    setValid(result, CMD_SPEED_SET);
+  }
+  else if(count == 4) {
+    // 所有关节，步长为1
+    setPose(result, CMD_SPEED_SET, values, 1);
+  }
+  else {
+    result.errorMessage = "speed命令格式错误，可用: speed、speed <关节ID> <速度> [步长]、speed <基座> <肩部> <肘部> <抓手>";
+  }
+}
+
+// perf、perf reset
+static void parsePerf(const CommandWords& words, ParsedCommand& result) {
+  if(words.count == 1) {
+    setValid(result, CMD_PERF_STATUS);
+  }
+  else if(words.count == 2 && wordIs(words, 1, "reset")) {
+    setValid(result, CMD_PERF_RESET);
+  }
   else {
-    result.errorMessage = "未知命令: " + rawCommand;
+    result.errorMessage = "perf命令格式错误，可用: perf、perf reset";
+  }
+}
+
+// 命令表：按第一个单词分发，常用的运动命令在前；没有解析函数的命令不带参数，直接使用表中的类型
+typedef void (*CommandParser)(const CommandWords& words, ParsedCommand& result);
+
+typedef struct {
+  const char* name;
+  CommandType type;
+  CommandParser parse;
+} CommandSpec;
+
+static const CommandSpec commandTable[] = {
+  {"set",       CMD_UNKNOWN,            parseSet},
+  {"setall",    CMD_UNKNOWN,            parseSetAll},
+  {"traj",      CMD_UNKNOWN,            parseTrajectory},
+  {"status",    CMD_STATUS,             NULL},
+  {"reset",     CMD_RESET,              NULL},
+  {"hello",     CMD_HELLO,              NULL},
+  {"telemetry", CMD_UNKNOWN,            parseTelemetry},
+  {"prog",      CMD_UNKNOWN,            parseProgram},
+  {"run",       CMD_UNKNOWN,            parseRun},
+  {"pause",     CMD_PAUSE,              NULL},
+  {"resume",    CMD_RESUME,             NULL},
+  {"abort",     CMD_ABORT,              NULL},
+  {"halt",      CMD_HALT,               NULL},
+  {"profile",   CMD_UNKNOWN,            parseProfile},
+  {"speed",     CMD_UNKNOWN,            parseSpeed},
+  {"perf",      CMD_UNKNOWN,            parsePerf},
+  {"torque",    CMD_UNKNOWN,            parseTorque},
+  {"limits",    CMD_LIMITS,             NULL},
+  {"info",      CMD_LIMITS,             NULL},
+  {"help",      CMD_HELP,               NULL}
+};
+
+// 解析一行命令（原地切分），空行返回false
+bool parseCommand(char* line, ParsedCommand& result) {
+  // 初始化结果结构体
+  result.type = CMD_UNKNOWN;
+  result.jointId = -1;
+  result.angleCount = 0;
+  result.value = 0;
+  result.name = "";
+  result.isValid = false;
+  result.errorMessage = "";
+  for(int i = 0; i < 4; i++) {
+    result.angles[i] = 0;
+  }
+  
+  CommandWords words;
+  splitWords(line, words);
+  if(words.count == 0) {
+    return false;
+  }
+  if(words.count < 0) {
+    result.name = line;
+    result.errorMessage = "参数过多";
+    return true;
+  }
+  result.name = words.word[0];
+  
+  for(size_t i = 0; i < sizeof(commandTable) / sizeof(commandTable[0]); i++) {
+    const CommandSpec& spec = commandTable[i];
+    if(strcmp(words.word[0], spec.name) != 0) {
+      continue;
+    }
+    if(spec.parse != NULL) {
+      spec.parse(words, result);
+    } else if(words.count == 1) {
+      setValid(result, spec.type);
+    } else {
+      result.errorMessage = "该命令没有参数";
+    }
+    return true;
   }
   
-  return result;
+  result.errorMessage = "未知命令";
+  return true;
+}
+
+// 回复执行结果：串口打印说明，蓝牙回复OK/ERROR
+static void sendResult(bool ok, const char* message, bool fromBluetooth) {
+  sendResponse(message, fromBluetooth);
+  if(fromBluetooth) {
+    sendBluetooth(ok ? "OK" : "ERROR");
+  }
+}
+
+// 手动运动命令接管机械臂，中止正在执行的运动程序和轨迹队列
+static void stopProgramForManualControl() {
+  if(getProgramState() != PROGRAM_IDLE) {
+    abortProgram(false);
+    Serial.println("收到手动运动命令，运动程序已中止");
+  }
+  if(isTrajectoryActive()) {
+    clearTrajectory(false);
+    Serial.println("收到手动运动命令，轨迹队列已清空");
+  }
+}
+
+// 路点入队，运动程序运行中不接受
+static bool pushTrajectoryFromCommand(const int angles[], int durationMs) {
+  if(getProgramState() != PROGRAM_IDLE) {
+    return false;
+  }
+  return pushTrajectoryPoint(angles, durationMs);
+}
+
+// 状态查询的应答：蓝牙发送一行，串口打印
+static void sendReply(const char* reply, bool fromBluetooth) {
+  if(fromBluetooth) {
+    sendBluetooth(reply);
+  } else {
+    Serial.println(reply);
+  }
 }
 
 // 执行解析后的命令
-void executeParsedCommand(ParsedCommand cmd, bool fromBluetooth) {
+void executeParsedCommand(const ParsedCommand& cmd, bool fromBluetooth) {
   // 检查命令是否有效
   if(!cmd.isValid) {
-    sendResponse("ERROR: " + cmd.errorMessage, fromBluetooth);
+    Serial.printf("ERROR: %s: %s\n", cmd.name, cmd.errorMessage);
+    
+    // 蓝牙命令每条都回复一行，App按顺序匹配应答
+    if(fromBluetooth) {
+      sendBluetooth("ERROR");
+    }
     return;
   }
   
   // 根据命令类型执行相应操作
   switch(cmd.type) {
     case CMD_SET_JOINT: {
+      stopProgramForManualControl();
       if(setJointPosition(cmd.jointId, cmd.angles[0])) {
-        String response = "设置关节" + String(cmd.jointId) + "到" + String(cmd.angles[0]) + "度";
-        sendResponse(response, fromBluetooth);
+        snprintf(replyBuffer, sizeof(replyBuffer), "设置关节%d到%d度", cmd.jointId, cmd.angles[0]);
+        sendResponse(replyBuffer, fromBluetooth);
         
         // 蓝牙发送简单确认
         if(fromBluetooth) {
@@ -193,6 +504,7 @@ void executeParsedCommand(ParsedCommand cmd, bool fromBluetooth) {
     }
     
     case CMD_SET_ALL_JOINTS: {
+      stopProgramForManualControl();
       if(setAllJointPositions(cmd.angles[0], cmd.angles[1], cmd.angles[2], cmd.angles[3])) {
         sendResponse("成功设置所有关节角度", fromBluetooth);
         
@@ -209,7 +521,15 @@ void executeParsedCommand(ParsedCommand cmd, bool fromBluetooth) {
       break;
     }
     
+    case CMD_SET_ALL_SYNC: {
+      stopProgramForManualControl();
+      bool ok = setAllJointPositionsSync(cmd.angles[0], cmd.angles[1], cmd.angles[2], cmd.angles[3], cmd.value);
+      sendResult(ok, ok ? "同步运动：各关节同时到达" : "设置失败，某些角度或时长超出限制", fromBluetooth);
+      break;
+    }
+    
     case CMD_RESET: {
+      stopProgramForManualControl();
       resetToDefaultPosition();
       sendResponse("重置所有关节到默认位置", fromBluetooth);
       
@@ -225,9 +545,9 @@ void executeParsedCommand(ParsedCommand cmd, bool fromBluetooth) {
       
       if(fromBluetooth) {
         // 蓝牙发送简单格式
-        String status = String(positions[0]) + "," + String(positions[1]) + "," + 
-                       String(positions[2]) + "," + String(positions[3]);
-        sendBluetooth(status);
+        snprintf(replyBuffer, sizeof(replyBuffer), "%d,%d,%d,%d",
+                 positions[0], positions[1], positions[2], positions[3]);
+        sendBluetooth(replyBuffer);
       } else {
         // 串口发送详细格式
         Serial.println("当前关节角度:");
@@ -253,23 +573,55 @@ void executeParsedCommand(ParsedCommand cmd, bool fromBluetooth) {
     
     case CMD_HELP: {
       if(fromBluetooth) {
-        sendBluetooth("HELP: set/setall/reset/status/limits/help/torque");
+        sendBluetooth("HELP: set/setall/reset/status/limits/help/torque/hello/telemetry/prog/run/pause/resume/abort/halt/traj/profile/speed/perf");
       } else {
         Serial.println("可用命令:");
         Serial.println("set <关节ID> <角度> - 设置单个关节角度");
         Serial.println("  关节ID: 0=基座(舵机a), 1=肩部(舵机b), 2=肘部(舵机c), 3=抓手(舵机g)");
         Serial.println("setall <基座> <肩部> <肘部> <抓手> - 设置所有关节角度");
+        Serial.println("setall <基座> <肩部> <肘部> <抓手> sync [时长ms] - 同步运动，各关节同时到达");
         Serial.println("reset - 重置到各舵机原点位置");
         Serial.println("status - 显示当前角度");
         Serial.println("limits 或 info - 显示角度限制和原点信息");
         Serial.println("torque - 显示力矩补偿状态");
         Serial.println("torque on/off - 启用/禁用力矩补偿");
         Serial.println("torque set <阈值> <超调> <延时> - 设置补偿参数");
+        Serial.println("hello - 协议版本和能力握手");
+        Serial.println("telemetry <间隔ms>/off - 开启/关闭姿态遥测推送");
+        Serial.println("telemetry fb on/off - 遥测是否附带电位器读数");
+        Serial.println("prog - 显示运动程序状态");
+        Serial.println("prog begin - 开始上传运动程序");
+        Serial.println("prog move <基座> <肩部> <肘部> <抓手> [停留ms] - 添加路点");
+        Serial.println("prog sync <基座> <肩部> <肘部> <抓手> [停留ms] - 添加同步运动路点");
+        Serial.println("prog grip <抓手> [停留ms] - 添加抓手动作");
+        Serial.println("prog end - 上传完成，替换当前程序");
+        Serial.println("prog save/load/clear - 保存到NVS/从NVS读取/清空程序");
+        Serial.println("run [循环次数] - 运行程序，省略或0为无限循环");
+        Serial.println("pause/resume/abort - 暂停/继续/中止程序");
+        Serial.println("halt - 急停：中止程序和轨迹，停在当前位置（蓝牙单独发送时不等排在前面的命令）");
+        Serial.println("traj <基座> <肩部> <肘部> <抓手> <段时长ms> - 轨迹路点入队，回复 OK <队列空位>");
+        Serial.println("traj - 显示轨迹队列状态");
+        Serial.println("traj clear - 清空轨迹队列并停在当前位置");
+        Serial.println("profile - 显示运动曲线和各关节 速度/加速度/加加速度");
+        Serial.println("profile step/trap/scurve - 逐步移动/梯形曲线/S曲线");
+        Serial.println("profile <关节ID> <速度°/s> <加速度°/s²> [加加速度°/s³] - 设置关节曲线参数");
+        Serial.println("speed - 显示各关节 速度/步长");
+        Serial.println("speed <关节ID> <速度°/s> [步长°] - 设置单个关节速度");
+        Serial.println("speed <基座> <肩部> <肘部> <抓手> - 设置所有关节速度");
+        Serial.println("perf - 显示运动周期统计（间隔/执行时间 最小/平均/最大）");
+        Serial.println("perf reset - 清空运动周期统计");
         Serial.println("help - 显示帮助");
       }
       break;
     }
     
+    case CMD_HELLO: {
+      // 回复协议版本和能力，App据此选择二进制帧
+      snprintf(replyBuffer, sizeof(replyBuffer), "HELLO %d BIN TLM PRG TRJ SYN HLT", PROTOCOL_VERSION);
+      sendReply(replyBuffer, fromBluetooth);
+      break;
+    }
+    
     // 新增：力矩补偿命令处理
     case CMD_TORQUE_STATUS: {
       if(fromBluetooth) {
@@ -284,8 +636,7 @@ void executeParsedCommand(ParsedCommand cmd, bool fromBluetooth) {
       bool enable = (cmd.angles[0] == 1);
       enableTorqueCompensation(enable);
       
-      String response = "力矩补偿已" + String(enable ? "启用" : "禁用");
-      sendResponse(response, fromBluetooth);
+      sendResponse(enable ? "力矩补偿已启用" : "力矩补偿已禁用", fromBluetooth);
       
       if(fromBluetooth) {
         sendBluetooth(enable ? "TORQUE_ON" : "TORQUE_OFF");
@@ -301,14 +652,23 @@ void executeParsedCommand(ParsedCommand cmd, bool fromBluetooth) {
       // 验证参数范围
       if(threshold < 0 || threshold > 77) {
         sendResponse("阈值必须在0-77度之间", fromBluetooth);
+        if(fromBluetooth) {
+          sendBluetooth("ERROR");
+        }
         return;
       }
       if(compensation < 0 || compensation > 10) {
         sendResponse("超调角度必须在0-10度之间", fromBluetooth);
+        if(fromBluetooth) {
+          sendBluetooth("ERROR");
+        }
         return;
       }
       if(delay < 50 || delay > 500) {
         sendResponse("延时必须在50-500ms之间", fromBluetooth);
+        if(fromBluetooth) {
+          sendBluetooth("ERROR");
+        }
         return;
       }
       
@@ -321,19 +681,301 @@ void executeParsedCommand(ParsedCommand cmd, bool fromBluetooth) {
       break;
     }
     
+    case CMD_TELEMETRY: {
+      setTelemetryInterval(cmd.angles[0]);
+      int interval = getTelemetryInterval();
+      if(interval > 0) {
+        snprintf(replyBuffer, sizeof(replyBuffer), "姿态遥测已开启，间隔%dms", interval);
+        sendResponse(replyBuffer, fromBluetooth);
+      } else {
+        sendResponse("姿态遥测已关闭", fromBluetooth);
+      }
+      if(fromBluetooth) {
+        sendBluetooth("OK");
+      }
+      break;
+    }
+    
+    case CMD_TELEMETRY_FEEDBACK: {
+      enableTelemetryFeedback(cmd.angles[0] == 1);
+      sendResponse(cmd.angles[0] == 1 ? "遥测电位器读数已启用" : "遥测电位器读数已禁用", fromBluetooth);
+      if(fromBluetooth) {
+        sendBluetooth("OK");
+      }
+      break;
+    }
+    
+    case CMD_PROGRAM_STATUS: {
+      formatProgramStatus(replyBuffer, sizeof(replyBuffer));
+      sendReply(replyBuffer, fromBluetooth);
+      break;
+    }
+    
+    case CMD_PROGRAM_BEGIN: {
+      sendResult(beginProgramUpload(), "开始上传运动程序", fromBluetooth);
+      break;
+    }
+    
+    case CMD_PROGRAM_MOVE: {
+      bool ok = addProgramMove(cmd.angles[0], cmd.angles[1], cmd.angles[2], cmd.angles[3], cmd.value);
+      sendResult(ok, ok ? "已添加路点" : "路点无效：未开始上传、步数已满或角度超出限制", fromBluetooth);
+      break;
+    }
+    
+    case CMD_PROGRAM_SYNC: {
+      bool ok = addProgramMove(cmd.angles[0], cmd.angles[1], cmd.angles[2], cmd.angles[3], cmd.value, true);
+      sendResult(ok, ok ? "已添加同步运动路点" : "路点无效：未开始上传、步数已满或角度超出限制", fromBluetooth);
+      break;
+    }
+    
+    case CMD_PROGRAM_GRIP: {
+      bool ok = addProgramGrip(cmd.angles[0], cmd.value);
+      sendResult(ok, ok ? "已添加抓手动作" : "抓手动作无效：未开始上传、步数已满或角度超出限制", fromBluetooth);
+      break;
+    }
+    
+    case CMD_PROGRAM_END: {
+      bool ok = endProgramUpload();
+      sendResult(ok, ok ? "运动程序上传完成" : "无法替换程序：未上传步骤或程序正在运行", fromBluetooth);
+      break;
+    }
+    
+    case CMD_PROGRAM_SAVE: {
+      bool ok = saveProgram();
+      sendResult(ok, ok ? "运动程序已保存" : "保存失败", fromBluetooth);
+      break;
+    }
+    
+    case CMD_PROGRAM_LOAD: {
+      bool ok = loadProgram();
+      sendResult(ok, ok ? "已读取保存的运动程序" : "没有保存的程序或程序正在运行", fromBluetooth);
+      break;
+    }
+    
+    case CMD_PROGRAM_CLEAR: {
+      bool ok = clearProgram();
+      sendResult(ok, ok ? "运动程序已清空" : "程序正在运行，无法清空", fromBluetooth);
+      break;
+    }
+    
+    case CMD_RUN: {
+      // 运动程序接管机械臂，丢弃未执行的轨迹
+      clearTrajectory(false);
+      bool ok = runProgram(cmd.value);
+      sendResult(ok, ok ? "运动程序开始运行" : "没有可运行的程序", fromBluetooth);
+      break;
+    }
+    
+    case CMD_PAUSE: {
+      bool ok = pauseProgram();
+      sendResult(ok, ok ? "运动程序已暂停" : "程序未在运行", fromBluetooth);
+      break;
+    }
+    
+    case CMD_RESUME: {
+      bool ok = resumeProgram();
+      sendResult(ok, ok ? "运动程序继续运行" : "程序未暂停", fromBluetooth);
+      break;
+    }
+    
+    case CMD_ABORT: {
+      abortProgram(true);
+      sendResult(true, "运动程序已中止", fromBluetooth);
+      break;
+    }
+    
+    case CMD_HALT: {
+      // 程序和轨迹的钩子不再设置目标，之前发布、尚未生效的目标作废
+      abortProgram(false);
+      clearTrajectory(false);
+      haltMotion();
+      sendResult(true, "已停止在当前位置", fromBluetooth);
+      break;
+    }
+    
+    case CMD_TRAJECTORY_STATUS: {
+      formatTrajectoryStatus(replyBuffer, sizeof(replyBuffer));
+      sendReply(replyBuffer, fromBluetooth);
+      break;
+    }
+    
+    case CMD_TRAJECTORY_POINT: {
+      // 应答带回队列空位，用于App的流控
+      bool ok = pushTrajectoryFromCommand(cmd.angles, cmd.value);
+      if(!ok) {
+        sendReply(fromBluetooth ? "ERROR" : "路点无效、队列已满或运动程序正在运行", fromBluetooth);
+        break;
+      }
+      snprintf(replyBuffer, sizeof(replyBuffer), fromBluetooth ? "OK %d" : "路点已入队，空位%d", getTrajectoryFree());
+      sendReply(replyBuffer, fromBluetooth);
+      break;
+    }
+    
+    case CMD_TRAJECTORY_CLEAR: {
+      clearTrajectory(true);
+      if(fromBluetooth) {
+        snprintf(replyBuffer, sizeof(replyBuffer), "OK %d", getTrajectoryFree());
+        sendBluetooth(replyBuffer);
+      } else {
+        Serial.println("轨迹队列已清空");
+      }
+      break;
+    }
+    
+    case CMD_PROFILE_STATUS: {
+      formatMotionProfileStatus(replyBuffer, sizeof(replyBuffer));
+      sendReply(replyBuffer, fromBluetooth);
+      break;
+    }
+    
+    case CMD_PROFILE_MODE: {
+      setMotionProfileMode((MotionProfileMode)cmd.value);
+      sendResult(true, "运动曲线已切换", fromBluetooth);
+      break;
+    }
+    
+    case CMD_PROFILE_SET: {
+      bool ok = setJointProfileLimits(cmd.jointId, cmd.angles[0], cmd.angles[1], cmd.angles[2]);
+      if(ok) {
+        snprintf(replyBuffer, sizeof(replyBuffer), "关节%d运动曲线参数已更新", cmd.jointId);
+      }
+      sendResult(ok, ok ? replyBuffer : "参数无效：关节ID 0-3，速度10-600°/s，加速度10-5000°/s²", fromBluetooth);
+      break;
+    }
+    
+    case CMD_PERF_STATUS: {
+      formatMotionPerfStatus(replyBuffer, sizeof(replyBuffer));
+      sendReply(replyBuffer, fromBluetooth);
+      break;
+    }
+    
+    case CMD_PERF_RESET: {
+      resetMotionPerf();
+      sendResult(true, "运动周期统计已清空", fromBluetooth);
+      break;
+    }
+    
+    case CMD_SPEED_STATUS: {
+      formatJointSpeedStatus(replyBuffer, sizeof(replyBuffer));
+      sendReply(replyBuffer, fromBluetooth);
+      break;
+    }
+    
+    case CMD_SPEED_SET: {
+      bool ok = true;
+      if(cmd.angleCount == 1) {
+        ok = setJointSpeed(cmd.jointId, cmd.angles[0], cmd.value);
+      } else {
+        for(int i = 0; i < JOINT_COUNT; i++) {
+          ok = setJointSpeed(i, cmd.angles[i], cmd.value) && ok;
+        }
+      }
+      sendResult(ok, ok ? "关节速度已更新" : "参数无效：关节ID 0-3，速度10-600°/s，步长1-10°", fromBluetooth);
+      break;
+    }
+    
     default: {
       sendResponse("系统错误，无法处理命令", fromBluetooth);
+      if(fromBluetooth) {
+        sendBluetooth("ERROR");
+      }
       break;
     }
   }
 }
 
 // 统一的响应发送函数
-void sendResponse(String response, bool toBluetooth) {
+void sendResponse(const char* response, bool toBluetooth) {
   Serial.println(response);
   
   if(toBluetooth && isBluetoothConnected()) {
     // 这里不用sendBluetooth，避免重复发送
     // sendBluetooth(response);
   }
-}
\ No newline at end of file
+}
+
+// 发送二进制应答帧
+static void sendFrameAck(uint8_t seq, bool ok) {
+  uint8_t ack[FRAME_ACK_LENGTH] = {FRAME_MAGIC, OP_ACK, seq, (uint8_t)(ok ? FRAME_STATUS_OK : FRAME_STATUS_ERROR)};
+  sendBluetoothFrame(ack, FRAME_ACK_LENGTH);
+}
+
+// 发送轨迹应答帧，附带队列空位
+static void sendTrajectoryAck(uint8_t seq, bool ok) {
+  uint8_t ack[TRAJECTORY_ACK_LENGTH] = {FRAME_MAGIC, OP_TRAJECTORY_ACK, seq,
+                                        (uint8_t)(ok ? FRAME_STATUS_OK : FRAME_STATUS_ERROR),
+                                        (uint8_t)getTrajectoryFree()};
+  sendBluetoothFrame(ack, TRAJECTORY_ACK_LENGTH);
+}
+
+// 按掩码设置关节：全部关节走setall校验，其余一起校验、一起生效
+static bool applyJointMask(uint8_t mask, const uint8_t* angles) {
+  if(mask == MASK_ALL_JOINTS) {
+    return setAllJointPositions(angles[0], angles[1], angles[2], angles[3]);
+  }
+  if(mask == (MASK_ALL_JOINTS | MASK_SYNC)) {
+    return setAllJointPositionsSync(angles[0], angles[1], angles[2], angles[3], 0);
+  }
+  int jointAngles[JOINT_COUNT] = {angles[0], angles[1], angles[2], angles[3]};
+  return setJointPositionsMasked(mask, jointAngles);
+}
+
+// 执行一次写入中连续排列的多个二进制帧
+void executeBinaryBatch(const uint8_t* data, size_t length) {
+  size_t offset = 0;
+  while(offset + FRAME_LENGTH <= length) {
+    executeBinaryFrame(data + offset, FRAME_LENGTH);
+    offset += FRAME_LENGTH;
+  }
+  
+  if(offset != length) {
+    Serial.println("二进制帧长度错误，忽略尾部数据");
+  }
+}
+
+// 解析并执行二进制命令帧（直接读取字节，不分配堆内存）
+void executeBinaryFrame(const uint8_t* frame, size_t length) {
+  if(length < FRAME_LENGTH || frame[0] != FRAME_MAGIC) {
+    Serial.println("二进制帧格式错误");
+    return;
+  }
+  
+  uint8_t opcode = frame[1];
+  uint8_t seq = frame[2];
+  
+  switch(opcode) {
+    case OP_SET_JOINTS: {
+      stopProgramForManualControl();
+      sendFrameAck(seq, applyJointMask(frame[3], &frame[4]));
+      break;
+    }
+    
+    case OP_RESET: {
+      stopProgramForManualControl();
+      resetToDefaultPosition();
+      sendFrameAck(seq, true);
+      break;
+    }
+    
+    case OP_TRAJECTORY: {
+      int angles[JOINT_COUNT] = {frame[4], frame[5], frame[6], frame[7]};
+      sendTrajectoryAck(seq, pushTrajectoryFromCommand(angles, frame[3] * TRAJECTORY_TIME_UNIT));
+      break;
+    }
+    
+    case OP_STATUS: {
+      int positions[JOINT_COUNT];
+      getCurrentPositions(positions);
+      uint8_t reply[FRAME_LENGTH] = {FRAME_MAGIC, OP_STATUS_REPLY, seq, MASK_ALL_JOINTS,
+                                     (uint8_t)positions[0], (uint8_t)positions[1],
+                                     (uint8_t)positions[2], (uint8_t)positions[3]};
+      sendBluetoothFrame(reply, FRAME_LENGTH);
+      break;
+    }
+    
+    default: {
+      sendFrameAck(seq, false);
+      break;
+    }
+  }
+}
@@ -2,36 +2,68 @@
 #define COMMAND_BREAK_H
 
 #include <Arduino.h>
+#include "frame_protocol.h"
 
 // 命令类型枚举（新增力矩补偿命令）
 typedef enum {
   CMD_UNKNOWN = 0,
   CMD_SET_JOINT,        // set 0 90
   CMD_SET_ALL_JOINTS,   // setall 90 45 60 20
+  CMD_SET_ALL_SYNC,     // setall 90 45 60 20 sync [时长ms] - 各关节同时到达
   CMD_RESET,           // reset
   CMD_STATUS,          // status
   CMD_LIMITS,          // limits/info
   CMD_HELP,            // help
   CMD_TORQUE_STATUS,   // torque - 查看力矩补偿状态
   CMD_TORQUE_ENABLE,   // torque on/off - 启用/禁用力矩补偿
-  CMD_TORQUE_SET       // torque set <threshold> <compensation> <delay>
+  CMD_TORQUE_SET,      // torque set <threshold> <compensation> <delay>
+  CMD_HELLO,           // hello - 版本/能力握手
+  CMD_TELEMETRY,       // telemetry <间隔ms>/off - 姿态遥测推送
+  CMD_TELEMETRY_FEEDBACK, // telemetry fb on/off - 遥测是否附带电位器读数
+  CMD_PROGRAM_STATUS,  // prog - 运动程序状态
+  CMD_PROGRAM_BEGIN,   // prog begin - 开始上传程序
+  CMD_PROGRAM_MOVE,    // prog move <基座> <肩部> <肘部> <抓手> [停留ms]
+  CMD_PROGRAM_SYNC,    // prog sync <基座> <肩部> <肘部> <抓手> [停留ms] - 同步运动路点
+  CMD_PROGRAM_GRIP,    // prog grip <抓手> [停留ms]
+  CMD_PROGRAM_END,     // prog end - 上传完成，替换当前程序
+  CMD_PROGRAM_SAVE,    // prog save - 保存到NVS
+  CMD_PROGRAM_LOAD,    // prog load - 从NVS读取
+  CMD_PROGRAM_CLEAR,   // prog clear - 清空程序
+  CMD_RUN,             // run [循环次数] - 运行程序，0或省略为无限循环
+  CMD_PAUSE,           // pause - 暂停程序
+  CMD_RESUME,          // resume - 继续程序
+  CMD_ABORT,           // abort - 中止程序
+  CMD_TRAJECTORY_STATUS, // traj - 轨迹队列状态
+  CMD_TRAJECTORY_POINT,  // traj <基座> <肩部> <肘部> <抓手> <段时长ms> - 路点入队
+  CMD_TRAJECTORY_CLEAR,  // traj clear - 清空轨迹队列
+  CMD_PROFILE_STATUS,    // profile - 运动曲线参数
+  CMD_PROFILE_MODE,      // profile step/trap/scurve - 切换运动曲线
+  CMD_PROFILE_SET,       // profile <关节ID> <速度> <加速度> [加加速度]
+  CMD_SPEED_STATUS,      // speed - 各关节速度和步长
+  CMD_SPEED_SET,         // speed <关节ID> <速度> [步长] 或 speed <基座> <肩部> <肘部> <抓手>
+  CMD_PERF_STATUS,       // perf - 运动周期统计
+  CMD_PERF_RESET,        // perf reset
+  CMD_HALT               // halt - 急停，停在当前位置
 } CommandType;
 
-// 解析后的命令结构体
+// 解析后的命令结构体（不含String，解析时不分配堆内存）
 typedef struct {
   CommandType type;
   int jointId;           // 关节ID (仅用于单关节命令)
   int angles[4];         // 角度数组 (用于多关节命令，也用于存储torque参数)
   int angleCount;        // 有效角度数量
-  String originalCommand; // 原始命令字符串
+  int value;             // 附加参数（停留时间、循环次数、段时长、同步运动时长）
+  const char* name;      // 命令名，指向命令缓冲区
   bool isValid;          // 命令是否有效
-  String errorMessage;   // 错误信息
+  const char* errorMessage;  // 错误信息（字符串常量）
 } ParsedCommand;
 
 // 函数声明
-void executeCommand(String command, bool fromBluetooth = false);
-ParsedCommand parseCommand(String rawCommand);
-void executeParsedCommand(ParsedCommand cmd, bool fromBluetooth = false);
-void sendResponse(String response, bool toBluetooth = false);
+void executeCommandBuffer(char* text, size_t length, bool fromBluetooth = false);  // 原地解析，缓冲区会被修改
+bool parseCommand(char* line, ParsedCommand& result);  // 解析一行命令，空行返回false
+void executeParsedCommand(const ParsedCommand& cmd, bool fromBluetooth = false);
+void sendResponse(const char* response, bool toBluetooth = false);
+void executeBinaryFrame(const uint8_t* frame, size_t length);
+void executeBinaryBatch(const uint8_t* data, size_t length);
 
 #endif // COMMAND_BREAK_H
\ No newline at end of file
@@ -0,0 +1,50 @@
+#ifndef FRAME_PROTOCOL_H
+#define FRAME_PROTOCOL_H
+
+#include <stdint.h>
+
+// 协议版本（握手时通过 "hello" 命令返回）
+#define PROTOCOL_VERSION 2
+
+// 二进制命令帧（与App中CommandCodec保持一致）
+// 命令帧: [魔数][操作码][序号][关节掩码][角度0][角度1][角度2][角度3]
+// 应答帧: [魔数][ACK][序号][状态]
+// 轨迹帧: [魔数][TRAJECTORY][序号][段时长(10ms)][角度0][角度1][角度2][角度3]
+// 轨迹应答帧: [魔数][TRAJECTORY_ACK][序号][状态][队列空位]
+// 遥测帧: [魔数][TELEMETRY][序号][标志][时间戳ms(4字节小端)][当前角度x4][目标角度x4][电位器B(2字节)][电位器C(2字节)]
+#define FRAME_MAGIC       0xA5
+#define FRAME_LENGTH      8
+#define FRAME_ACK_LENGTH  4
+#define TRAJECTORY_ACK_LENGTH  5
+#define TRAJECTORY_TIME_UNIT   10  // 轨迹帧段时长的单位（ms）
+#define FRAME_MAX_LENGTH  512  // 单次写入缓冲区大小（MTU协商后一次写入可包含多帧）
+#define BLE_MAX_MTU       517  // 允许协商的最大MTU
+#define TELEMETRY_LENGTH  20   // 正好放进默认MTU(23)的一次通知
+
+// 操作码
+#define OP_SET_JOINTS     0x01   // 按掩码设置关节角度
+#define OP_RESET          0x02   // 重置
+#define OP_STATUS         0x03   // 查询角度
+#define OP_TRAJECTORY     0x04   // 轨迹路点入队
+#define OP_ACK            0x81   // 命令应答
+#define OP_STATUS_REPLY   0x83   // 角度应答
+#define OP_TELEMETRY      0x84   // 固件主动推送的姿态遥测
+#define OP_TRAJECTORY_ACK 0x85   // 轨迹路点应答，附带队列空位
+
+// 应答状态
+#define FRAME_STATUS_OK     0
+#define FRAME_STATUS_ERROR  1
+
+#define MASK_ALL_JOINTS   0x0F
+#define MASK_SYNC         0x10   // 与MASK_ALL_JOINTS同用：同步运动，各关节同时到达
+
+// 遥测标志位
+#define TELEMETRY_FLAG_MOVING    0x01  // 仍有关节未到达目标角度
+#define TELEMETRY_FLAG_FEEDBACK  0x02  // 电位器读数有效
+#define TELEMETRY_FLAG_PROGRAM   0x04  // 运动程序正在运行
+#define TELEMETRY_FLAG_TRAJECTORY 0x08 // 正在执行轨迹队列
+
+// 电位器读数单位为0.1度（有符号16位），未启用时填此值
+#define TELEMETRY_NO_FEEDBACK    0x7FFF
+
+#endif // FRAME_PROTOCOL_H
@@ -2,6 +2,9 @@
 #include "movement/movement.h"
 #include "bluetooth/bluetooth.h"
 #include "command_break/command_break.h"
+#include "telemetry/telemetry.h"
+#include "program/program.h"
+#include "trajectory/trajectory.h"
 //#include "anglefeedback/anglefeedback.h"
 
 
@@ -14,6 +17,12 @@ void setup() {
   // 初始化机械臂
   initRobotArm();
 
+  // 加载保存的运动程序
+  initProgram();
+
+  // 轨迹队列
+  initTrajectory();
+
   // 初始化电位器
   // initanglefeedback();
 
@@ -23,18 +32,35 @@ void setup() {
 void loop() {
   // 检查是否有串口输入命令
   if (Serial.available() > 0) {
-    String command = Serial.readStringUntil('\n');
-    executeCommand(command, false);  // 来自串口
+    static char serialCommand[128];
+    size_t length = Serial.readBytesUntil('\n', serialCommand, sizeof(serialCommand) - 1);
+    serialCommand[length] = '\0';
+    executeCommandBuffer(serialCommand, length, false);  // 来自串口
   }
-  // 检查蓝牙命令
-  String btCommand = getBluetooth();
-  if (btCommand.length() > 0) {
+  // 处理接收队列中的蓝牙写入：文本命令或二进制帧
+  static uint8_t btWrite[BLE_MAX_WRITE + 1];
+  size_t length;
+  while ((length = takeBluetoothWrite(btWrite, BLE_MAX_WRITE)) > 0) {
+    if (btWrite[0] == FRAME_MAGIC) {
+      executeBinaryBatch(btWrite, length);
+      continue;
+    }
+    btWrite[length] = '\0';
     Serial.print("蓝牙收到命令: ");
-    Serial.println(btCommand);
-    executeCommand(btCommand, true);  // 来自蓝牙
+    Serial.println((const char*)btWrite);
+    bool earlyHalt = isHaltWrite(btWrite, length);  // 原地解析前判断
+    executeCommandBuffer((char*)btWrite, length, true);  // 来自蓝牙
+    if (earlyHalt) {
+      endEarlyHalt();  // halt已按顺序执行，恢复处理之后的命令
+    }
   }
+  // 按设定间隔推送姿态遥测
+  updateTelemetry();
+  // 运动任务记录的补偿提示和程序事件
+  printMotionEvents();
+  printProgramEvents();
 
-  
-  delay(10); // 短暂延时避免CPU占用过高
+  // 等待下一次蓝牙写入，收到时立即处理；串口命令和遥测最多延后10ms
+  waitForBluetoothWrite(10);
 }
 
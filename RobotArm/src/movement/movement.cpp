@@ -1,9 +1,10 @@
 #include "movement.h"
 #include <Arduino.h>
+#include <limits.h>
+#include <atomic>
 
 // 全局变量
 JointSystem jointSystem;
-Ticker moveTimer;
 
 // 新增：力矩补偿参数
 struct TorqueCompensation {
@@ -17,14 +18,45 @@ struct TorqueCompensation {
   int originalTarget = 0;                // 原始目标角度
 } torqueComp;
 
-// 新增：移动速度控制
+// 移动速度控制：运动周期固定，每个关节按自己的速度和步长移动，B轴重载只降低B轴的速度
 struct MoveSpeed {
-  int normalInterval = 15;    // 正常移动间隔（ms）
-  int slowInterval = 25;      // 慢速移动间隔（ms）
-  int fastInterval = 10;      // 快速移动间隔（ms）
-  bool useSlowMode = false;   // 当前是否使用慢速模式
+  int stepInterval = 5;          // 逐步移动方式的运动周期（ms），各关节的速度决定每隔几个周期走一步
+  int profileInterval = 10;      // 运动曲线方式的运动周期（ms）
+  int loadedSpeedPercent = 60;   // B轴在重载区域的速度比例（相当于原来的15ms/25ms）
 } moveSpeed;
 
+// 运动任务：固定在APP核心上按固定周期运行，命令只修改目标，不会重新开始计时
+#define MOTION_TASK_CORE 1         // BLE协议栈运行在核心0
+#define MOTION_TASK_PRIORITY 5     // 高于loop任务（1）
+#define MOTION_TASK_STACK 4096
+
+static TaskHandle_t motionTaskHandle = NULL;
+static volatile int motionPeriod = 10;  // 当前运动周期（ms），下一个周期生效
+
+// 运动周期统计：相邻两次开始之间的间隔和每个周期的执行时间（us）
+typedef struct {
+  unsigned long count;
+  unsigned long periodMin;
+  unsigned long periodMax;
+  uint64_t periodSum;
+  unsigned long execMin;
+  unsigned long execMax;
+  uint64_t execSum;
+  unsigned long late;      // 间隔超过设定周期1.5倍的次数
+} MotionPerf;
+
+static portMUX_TYPE perfMux = portMUX_INITIALIZER_UNLOCKED;
+static MotionPerf motionPerf;
+static volatile bool perfResetPending = true;
+
+// 运动任务中不打印，补偿过程的提示记录下来由loop输出
+static volatile bool compensationStartPending = false;
+static volatile int compensationStartFrom = 0;
+static volatile int compensationStartTarget = 0;
+static volatile int compensationStartFinal = 0;
+static volatile int compensationReachedAngle = -1;
+static volatile int compensationDoneAngle = -1;
+
 // 新增：检查是否需要力矩补偿
 bool needsTorqueCompensation(int jointId, int targetAngle) {
   if (!torqueComp.enabled || jointId != 1) {  // 只对B轴舵机进行补偿
@@ -54,8 +86,11 @@ void startTorqueCompensation(int originalTarget) {
   
   jointSystem.targetAngles[1] = compensationTarget;
   
-  Serial.printf("B轴力矩补偿启动: %d° -> %d° -> %d°\n", 
-                jointSystem.currentAngles[1], compensationTarget, originalTarget);
+  // 运动程序的步骤在运动任务中启动补偿，提示统一由loop输出
+  compensationStartFrom = jointSystem.currentAngles[1];
+  compensationStartTarget = compensationTarget;
+  compensationStartFinal = originalTarget;
+  compensationStartPending = true;
 }
 
 // 新增：检查补偿完成
@@ -68,61 +103,560 @@ void checkCompensationComplete() {
   if (elapsed >= torqueComp.compensationDelay) {
     jointSystem.targetAngles[1] = torqueComp.originalTarget;
     torqueComp.isCompensating = false;
-    
-    Serial.printf("B轴补偿完成，切换到目标角度: %d°\n", torqueComp.originalTarget);
+    compensationDoneAngle = torqueComp.originalTarget;
   }
 }
 
-// 增强的舵机移动控制函数
-void moveJointHelper(int id, int targetAngle, int currentAngle) {
-  // 特殊处理B轴移动
-  if (id == 1) {
-    // 检查是否在重载区域，使用慢速移动
-    if (currentAngle >= torqueComp.slowMoveThreshold || targetAngle >= torqueComp.slowMoveThreshold) {
-      moveSpeed.useSlowMode = true;
-    } else {
-      moveSpeed.useSlowMode = false;
+// 运动周期的附加钩子（运动程序、轨迹队列）
+#define MAX_MOTION_TICK_HOOKS 4
+static void (*motionTickHooks[MAX_MOTION_TICK_HOOKS])();
+static int motionTickHookCount = 0;
+
+// 在setup中添加，之后不再修改
+bool addMotionTickHook(void (*hook)()) {
+  if (motionTickHookCount >= MAX_MOTION_TICK_HOOKS) {
+    return false;
+  }
+  motionTickHooks[motionTickHookCount++] = hook;
+  return true;
+}
+
+// 运动曲线：梯形曲线按每个关节的最大速度和加速度规划，运动周期固定为快速周期；
+// S曲线把梯形曲线的位置再做滑动平均，平均窗口 = 加速度/加加速度，加速度在窗口内线性变化
+// 目标在运动中改变时从当前速度重新规划，不需要预先知道整段运动
+#define PROFILE_SMOOTHING_MAX 16
+
+typedef struct {
+  float position;   // 梯形曲线的位置（度）
+  float velocity;   // 梯形曲线的速度（度/秒）
+  float output;     // 输出到舵机的位置（S曲线为平滑后的位置）
+  float history[PROFILE_SMOOTHING_MAX];  // 最近若干周期的梯形曲线位置
+  int historyIndex;
+} JointMotion;
+
+static JointProfileLimits profileLimits[JOINT_COUNT] = {
+  {120, 400, 4000},   // 基座
+  {90, 250, 2500},    // 肩部：负载最大，加速度较小
+  {120, 400, 4000},   // 肘部
+  {150, 600, 6000}    // 抓手
+};
+static JointMotion jointMotion[JOINT_COUNT];
+static int smoothingSamples[JOINT_COUNT];
+
+static volatile MotionProfileMode requestedProfile = PROFILE_TRAPEZOID;
+static MotionProfileMode activeProfile = PROFILE_STEP;  // 第一个周期从当前角度同步
+static volatile bool profileResync = false;
+// 目标由轨迹插值逐周期给出时只限速，不再按加速度规划
+static volatile bool directFollow = false;
+
+static void cancelSyncMove();
+static void requestSyncMove(const int angles[], int minDurationMs);
+static unsigned long lastTickMicros = 0;
+
+// S曲线平滑窗口的采样数，梯形曲线为1
+static void updateSmoothingSamples() {
+  for (int i = 0; i < JOINT_COUNT; i++) {
+    int samples = 1;
+    if (requestedProfile == PROFILE_SCURVE && profileLimits[i].maxJerk > 0) {
+      float window = profileLimits[i].maxAcceleration / profileLimits[i].maxJerk;
+      samples = constrain((int)lroundf(window * 1000 / moveSpeed.profileInterval), 1, PROFILE_SMOOTHING_MAX);
+    }
+    smoothingSamples[i] = samples;
+  }
+}
+
+// 从当前输出位置静止开始（切换曲线、修改参数时）；atCurrent为true时从舵机当前角度开始（原地停止），
+// 不再向取整前的输出位置移动
+static void resyncJointMotion(bool atCurrent) {
+  for (int i = 0; i < JOINT_COUNT; i++) {
+    JointMotion& m = jointMotion[i];
+    float start = (atCurrent || activeProfile == PROFILE_STEP) ? jointSystem.currentAngles[i] : m.output;
+    m.position = start;
+    m.velocity = 0;
+    m.output = start;
+    for (int k = 0; k < PROFILE_SMOOTHING_MAX; k++) {
+      m.history[k] = start;
+    }
+    m.historyIndex = 0;
+  }
+}
+
+// 梯形曲线前进一个周期：follow为true时只限速（目标逐周期给出）
+static void advanceProfile(float& position, float& velocity, float target,
+                           float maxVelocity, float maxAcceleration, float dt, bool follow) {
+  float distance = target - position;
+  float step = maxAcceleration * dt;  // 一个周期内允许的速度变化
+  float desired;
+  if (follow) {
+    desired = distance / dt;
+  } else {
+    // 离散时间的制动速度：此后每周期减速step，正好在目标处停下
+    desired = step * (sqrtf(0.25f + 2 * fabsf(distance) / (step * dt)) - 0.5f);
+    if (distance < 0) {
+      desired = -desired;
     }
   }
+  desired = constrain(desired, -maxVelocity, maxVelocity);
+  velocity = follow ? desired : constrain(desired, velocity - step, velocity + step);
   
-  // 标准移动逻辑
-  if (targetAngle > currentAngle) {
-    currentAngle++;
-    jointSystem.servos[id].write(currentAngle);
-  } else if (targetAngle < currentAngle) {
-    currentAngle--;
-    jointSystem.servos[id].write(currentAngle);
+  float next = position + velocity * dt;
+  bool reached = (distance >= 0) ? next >= target : next <= target;
+  if (reached && (follow || fabsf(velocity) <= step * 1.001f)) {
+    // 到达目标；速度较大时（目标在运动中被改近）继续减速，越过后再返回
+    position = target;
+    velocity = 0;
+  } else {
+    position = next;
+  }
+}
+
+// 滑动平均：samples为1时直接返回value
+static float smoothPosition(float history[], int& index, int samples, float value) {
+  history[index] = value;
+  index = (index + 1) % samples;
+  float sum = 0;
+  for (int k = 0; k < samples; k++) {
+    sum += history[k];
+  }
+  return sum / samples;
+}
+
+static void writeJointOutput(int id, float output) {
+  int angle = lroundf(output);
+  if (angle != jointSystem.currentAngles[id]) {
+    jointSystem.servos[id].write(angle);
+    jointSystem.currentAngles[id] = angle;
+  }
+}
+
+// 逐步移动方式的关节速度（度/秒），默认与原来每15ms走1度相同，重载区的B轴按比例降到约每25ms走1度；
+// speed 命令同时设置逐步移动和运动曲线的速度
+static int stepSpeed[JOINT_COUNT] = {67, 67, 67, 67};
+
+// 关节速度（按当前运动方式）；B轴在重载区域按比例降速，不影响其他关节
+static float jointMaxVelocity(int id, float from, float to) {
+  float maxVelocity = (activeProfile == PROFILE_STEP) ? stepSpeed[id] : profileLimits[id].maxVelocity;
+  if (id == 1 && (from >= torqueComp.slowMoveThreshold || to >= torqueComp.slowMoveThreshold)) {
+    maxVelocity = maxVelocity * moveSpeed.loadedSpeedPercent / 100;
+  }
+  return maxVelocity;
+}
+
+// 逐步移动的步长（度）和累积的可移动角度
+static int jointStepSize[JOINT_COUNT] = {1, 1, 1, 1};
+static float stepBudget[JOINT_COUNT];
+
+// 增强的舵机移动控制函数：关节按自己的速度累积可移动角度，够一步时移动stepSize度
+void moveJointHelper(int id, float dt) {
+  int targetAngle = jointSystem.targetAngles[id];
+  int currentAngle = jointSystem.currentAngles[id];
+  if (targetAngle == currentAngle) {
+    stepBudget[id] = 0;
+    return;
   }
   
+  int stepSize = jointStepSize[id];
+  // 余量带到下一步，平均速度不受运动周期取整影响；上限两步，避免停顿后连跳
+  stepBudget[id] = min(stepBudget[id] + jointMaxVelocity(id, currentAngle, targetAngle) * dt, 2.0f * stepSize);
+  if (stepBudget[id] < stepSize) {
+    return;
+  }
+  stepBudget[id] -= stepSize;
+  
+  int step = min(stepSize, abs(targetAngle - currentAngle));
+  currentAngle += (targetAngle > currentAngle) ? step : -step;
+  jointSystem.servos[id].write(currentAngle);
   jointSystem.currentAngles[id] = currentAngle;
   
   // B轴特殊处理：到达补偿角度时的调试信息
   if (id == 1 && torqueComp.isCompensating && currentAngle == jointSystem.targetAngles[1]) {
-    Serial.printf("B轴到达补偿位置: %d°\n", currentAngle);
+    compensationReachedAngle = currentAngle;
+  }
+}
+
+static void profileJoint(int id, float dt) {
+  JointMotion& m = jointMotion[id];
+  int target = jointSystem.targetAngles[id];
+  advanceProfile(m.position, m.velocity, target, jointMaxVelocity(id, m.position, target),
+                 profileLimits[id].maxAcceleration, dt, directFollow);
+  m.output = smoothPosition(m.history, m.historyIndex, smoothingSamples[id], m.position);
+  writeJointOutput(id, m.output);
+}
+
+// 同步运动：所有关节沿关节空间的直线从起点走到目标，按最慢的关节规划路径参数s(0→1)，
+// 各关节同时开始同时到达。肘部范围是肩部角度的线性约束，两端姿态有效时直线上的姿态也都有效
+typedef struct {
+  bool active;
+  float start[JOINT_COUNT];
+  float delta[JOINT_COUNT];
+  float s;                // 路径参数
+  float velocity;         // 路径参数的速度（1/秒）
+  float maxVelocity;
+  float maxAcceleration;
+  float output;           // 平滑后的路径参数（S曲线）
+  float history[PROFILE_SMOOTHING_MAX];
+  int historyIndex;
+  int samples;
+  unsigned long durationMs;  // 规划的时长
+} SyncMove;
+
+static SyncMove syncMove;
+static volatile bool syncRequested = false;
+static volatile bool syncCancelRequested = false;
+static volatile int syncMinDuration = 0;
+
+// 梯形曲线走完单位距离的时间
+static float unitProfileDuration(float maxVelocity, float maxAcceleration) {
+  if (maxVelocity * maxVelocity >= maxAcceleration) {
+    return 2 * sqrtf(1 / maxAcceleration);  // 三角形：达不到最大速度
   }
+  return 1 / maxVelocity + maxVelocity / maxAcceleration;
 }
 
-// 增强的定时器回调函数
-void moveTimerCallback() {
+// 在运动周期中按当前位置和目标角度规划同步运动
+static void planSyncMove() {
+  SyncMove& sync = syncMove;
+  float maxDelta = 0;
+  float maxVelocity = 1e9f;
+  float maxAcceleration = 1e9f;
+  sync.samples = 1;
+  for (int i = 0; i < JOINT_COUNT; i++) {
+    float start = (activeProfile == PROFILE_STEP) ? jointSystem.currentAngles[i] : jointMotion[i].output;
+    int target = jointSystem.targetAngles[i];
+    sync.start[i] = start;
+    sync.delta[i] = target - start;
+    float distance = fabsf(sync.delta[i]);
+    if (distance < 0.001f) {
+      continue;
+    }
+    maxDelta = max(maxDelta, distance);
+    // 换算到路径参数：关节i的速度 = 路径参数速度 × 关节的行程
+    maxVelocity = min(maxVelocity, jointMaxVelocity(i, start, target) / distance);
+    maxAcceleration = min(maxAcceleration, profileLimits[i].maxAcceleration / distance);
+    sync.samples = max(sync.samples, smoothingSamples[i]);
+  }
+  sync.active = false;
+  if (maxDelta < 0.001f) {
+    return;  // 已在目标位置
+  }
+  
+  float minDuration = syncMinDuration / 1000.0f;
+  if (activeProfile == PROFILE_STEP) {
+    // 匀速：最慢的关节按自己的速度，指定时长更长时按指定时长
+    float duration = max(1 / maxVelocity, minDuration);
+    sync.velocity = 1 / duration;
+    sync.durationMs = (unsigned long)(duration * 1000);
+  } else {
+    // 时间拉长k倍：速度除以k，加速度除以k²
+    float duration = unitProfileDuration(maxVelocity, maxAcceleration);
+    if (minDuration > duration) {
+      float k = minDuration / duration;
+      maxVelocity /= k;
+      maxAcceleration /= k * k;
+      duration = minDuration;
+    }
+    sync.velocity = 0;
+    sync.durationMs = (unsigned long)(duration * 1000) + (sync.samples - 1) * moveSpeed.profileInterval;
+  }
+  sync.maxVelocity = maxVelocity;
+  sync.maxAcceleration = maxAcceleration;
+  sync.s = 0;
+  sync.output = 0;
+  for (int k = 0; k < PROFILE_SMOOTHING_MAX; k++) {
+    sync.history[k] = 0;
+  }
+  sync.historyIndex = 0;
+  for (int i = 0; i < JOINT_COUNT; i++) {
+    JointMotion& m = jointMotion[i];
+    m.position = sync.start[i];
+    m.velocity = 0;
+    m.output = sync.start[i];
+    for (int k = 0; k < PROFILE_SMOOTHING_MAX; k++) {
+      m.history[k] = sync.start[i];
+    }
+    m.historyIndex = 0;
+  }
+  sync.active = true;
+}
+
+// 同步运动前进一个周期，到达终点时结束
+static void advanceSyncMove(float dt) {
+  SyncMove& sync = syncMove;
+  if (activeProfile == PROFILE_STEP) {
+    sync.s = min(sync.s + sync.velocity * dt, 1.0f);
+    for (int i = 0; i < JOINT_COUNT; i++) {
+      writeJointOutput(i, sync.start[i] + sync.s * sync.delta[i]);
+    }
+    sync.active = sync.s < 1;
+    return;
+  }
+  
+  advanceProfile(sync.s, sync.velocity, 1, sync.maxVelocity, sync.maxAcceleration, dt, false);
+  sync.output = smoothPosition(sync.history, sync.historyIndex, sync.samples, sync.s);
+  for (int i = 0; i < JOINT_COUNT; i++) {
+    // 各关节的状态保持与路径一致，同步运动被新命令打断时从这里接着规划
+    JointMotion& m = jointMotion[i];
+    m.position = sync.start[i] + sync.s * sync.delta[i];
+    m.velocity = sync.velocity * sync.delta[i];
+    m.history[m.historyIndex] = m.position;
+    m.historyIndex = (m.historyIndex + 1) % smoothingSamples[i];
+    m.output = sync.start[i] + sync.output * sync.delta[i];
+    writeJointOutput(i, m.output);
+  }
+  sync.active = sync.output < 1;
+}
+
+// 命令设置的目标：loop任务把一组完整的目标写入三个缓冲区中自己的一个，用一次原子交换发布；
+// 运动周期开始时整组取走并应用，不会看到只写了一半的setall，两边都不加锁。
+// 上一组还没被取走时loop任务先把它收回，合并新的命令后再发布，同一周期内的多条命令都会生效
+#define JOINT_MASK_ALL ((1 << JOINT_COUNT) - 1)
+#define TARGET_FRESH 0x4  // 中间缓冲区的目标尚未被运动周期取走
+
+typedef enum {
+  TARGET_MOVE = 0,  // 普通运动，B轴按需要预超调
+  TARGET_SYNC = 1   // 同步运动
+} TargetMode;
+
+typedef struct {
+  uint8_t mask;             // 设置了目标的关节
+  TargetMode mode;
+  int angles[JOINT_COUNT];
+  int syncDuration;         // 同步运动的最短时长（ms）
+  uint32_t haltCount;       // 发布时的急停次数，之后又执行过急停的目标作废
+} TargetUpdate;
+
+static TargetUpdate targetBuffers[3];
+static std::atomic<uint8_t> targetMiddle(0);  // 中间缓冲区的序号 | TARGET_FRESH
+static uint8_t targetBack = 1;   // 只由loop任务使用
+static uint8_t targetFront = 2;  // 只由运动任务使用
+
+// 急停：halt按命令顺序在loop任务中执行时haltCount加1，在它之前发布、尚未生效的目标作废。
+// BLE任务收到单独一次写入的halt时不等排在前面的命令，立即请求停住；在这条halt按顺序执行之前，
+// 运动周期作废新发布的目标并暂停钩子，排在它前面的命令不会让机械臂再动起来
+static std::atomic<uint32_t> haltCount(0);      // 只由loop任务增加
+static std::atomic<int> earlyHalts(0);          // 已提前停住、尚未按顺序执行到的halt
+static std::atomic<bool> haltRequested(false);
+
+// 发布一组目标（只在loop任务中调用），mask之外的关节保持上一组未生效的目标或当前目标
+static void publishTargetUpdate(uint8_t mask, TargetMode mode, const int angles[], int syncDuration) {
+  uint32_t halts = haltCount.load(std::memory_order_relaxed);
+  // 换出自己的空缓冲区，收回中间的一个；它带TARGET_FRESH时说明还没被取走，在它上面合并（急停之前的不合并）
+  uint8_t middle = targetMiddle.exchange(targetBack, std::memory_order_acq_rel);
+  uint8_t index = middle & 3;
+  TargetUpdate& update = targetBuffers[index];
+  if (!(middle & TARGET_FRESH) || update.haltCount != halts) {
+    update.mask = 0;
+  }
+  update.haltCount = halts;
+  update.mode = mode;  // 部分关节的命令合并到同步运动上时按普通运动
+  for (int i = 0; i < JOINT_COUNT; i++) {
+    if (mask & (1 << i)) {
+      update.angles[i] = angles[i];
+    }
+  }
+  update.mask |= mask;
+  update.syncDuration = syncDuration;
+  targetBack = targetMiddle.exchange(index | TARGET_FRESH, std::memory_order_acq_rel) & 3;
+}
+
+// 在运动周期开始时取走并应用发布的目标
+static void applyTargetUpdate() {
+  if (!(targetMiddle.load(std::memory_order_relaxed) & TARGET_FRESH)) {
+    return;
+  }
+  uint8_t middle = targetMiddle.exchange(targetFront, std::memory_order_acq_rel);
+  targetFront = middle & 3;
+  if (!(middle & TARGET_FRESH)) {
+    return;  // 刚被loop任务收回合并，下一个周期再取
+  }
+  
+  const TargetUpdate& update = targetBuffers[targetFront];
+  if (update.haltCount != haltCount.load(std::memory_order_acquire) ||
+      earlyHalts.load(std::memory_order_acquire) > 0) {
+    return;  // 发布后又收到了halt
+  }
+  if (update.mode == TARGET_SYNC) {
+    requestSyncMove(update.angles, update.syncDuration);
+    return;
+  }
+  cancelSyncMove();
+  directFollow = false;
+  for (int i = 0; i < JOINT_COUNT; i++) {
+    if (i != 1 && (update.mask & (1 << i))) {
+      jointSystem.targetAngles[i] = update.angles[i];
+    }
+  }
+  // B轴特殊处理：新的目标取代正在进行的补偿
+  if (update.mask & (1 << 1)) {
+    if (needsTorqueCompensation(1, update.angles[1])) {
+      startTorqueCompensation(update.angles[1]);
+    } else {
+      torqueComp.isCompensating = false;
+      jointSystem.targetAngles[1] = update.angles[1];
+    }
+  }
+}
+
+// 一个运动周期：处理急停、应用命令设置的目标，运行钩子、推进补偿和同步运动、移动关节
+void motionTick() {
+  // 先停在当前位置，再应用急停之后发布的目标
+  if (haltRequested.exchange(false, std::memory_order_acq_rel)) {
+    holdCurrentPosition();
+  }
+  applyTargetUpdate();
+  
+  // 运动程序、轨迹队列在移动关节前更新目标；提前停住期间暂停，等halt按顺序执行时中止它们
+  if (earlyHalts.load(std::memory_order_acquire) == 0) {
+    for (int i = 0; i < motionTickHookCount; i++) {
+      motionTickHooks[i]();
+    }
+  }
+  
   // 检查力矩补偿状态
   checkCompensationComplete();
   
-  // 执行关节移动
+  unsigned long now = micros();
+  MotionProfileMode profile = requestedProfile;
+  if (profile != activeProfile || profileResync) {
+    profileResync = false;
+    syncMove.active = false;
+    resyncJointMotion(false);
+    activeProfile = profile;
+    lastTickMicros = now;
+  }
+  
+  if (syncRequested) {
+    syncRequested = false;
+    planSyncMove();
+  } else if (syncCancelRequested) {
+    syncCancelRequested = false;
+    syncMove.active = false;
+  }
+  
+  // 按实际经过的时间计算，周期抖动不影响速度
+  float dt = constrain((now - lastTickMicros) / 1000000.0f, 0.001f, motionPeriod * 3 / 1000.0f);
+  lastTickMicros = now;
+  
+  if (syncMove.active) {
+    advanceSyncMove(dt);
+    return;
+  }
+  
+  if (activeProfile == PROFILE_STEP) {
+    for (int i = 0; i < JOINT_COUNT; i++) {
+      moveJointHelper(i, dt);
+    }
+    return;
+  }
+  
   for (int i = 0; i < JOINT_COUNT; i++) {
-    moveJointHelper(i, jointSystem.targetAngles[i], jointSystem.currentAngles[i]);
+    profileJoint(i, dt);
   }
 }
 
-// 动态调整定时器间隔
-void updateMoveTimer() {
-  moveTimer.detach();
-  
-  int interval = moveSpeed.normalInterval;
-  if (moveSpeed.useSlowMode) {
-    interval = moveSpeed.slowInterval;
+// 新的目标由其他方式设置时结束同步运动（在运动周期中生效）
+static void cancelSyncMove() {
+  syncRequested = false;
+  syncCancelRequested = true;
+}
+
+// 记录一个周期的间隔和执行时间；第一个周期（或重置后）没有间隔，只开始计时
+static void recordMotionPerf(unsigned long period, unsigned long exec, bool hasPeriod) {
+  portENTER_CRITICAL(&perfMux);
+  MotionPerf& perf = motionPerf;
+  if (perfResetPending) {
+    perfResetPending = false;
+    perf = MotionPerf();
+    perf.periodMin = ULONG_MAX;
+    perf.execMin = ULONG_MAX;
+    hasPeriod = false;
+  }
+  perf.count++;
+  perf.execMin = min(perf.execMin, exec);
+  perf.execMax = max(perf.execMax, exec);
+  perf.execSum += exec;
+  if (hasPeriod) {
+    perf.periodMin = min(perf.periodMin, period);
+    perf.periodMax = max(perf.periodMax, period);
+    perf.periodSum += period;
+    if (period > (unsigned long)motionPeriod * 1500) {
+      perf.late++;
+    }
+  }
+  portEXIT_CRITICAL(&perfMux);
+}
+
+// 运动任务：按绝对时间等待下一个周期，执行时间和命令都不会使周期漂移
+static void motionTask(void* arg) {
+  TickType_t lastWake = xTaskGetTickCount();
+  unsigned long lastStart = 0;
+  bool hasLastStart = false;
+  for (;;) {
+    vTaskDelayUntil(&lastWake, pdMS_TO_TICKS(motionPeriod));
+    unsigned long start = micros();
+    motionTick();
+    recordMotionPerf(start - lastStart, micros() - start, hasLastStart);
+    lastStart = start;
+    hasLastStart = true;
   }
+}
+
+// 按运动方式设置运动周期，任务在当前周期结束后按新的周期等待，不重新开始计时
+static void updateMotionPeriod() {
+  motionPeriod = (requestedProfile == PROFILE_STEP) ? moveSpeed.stepInterval : moveSpeed.profileInterval;
+}
+
+// "PERF <周期ms> n=<周期数> period=<最小/平均/最大>us exec=<最小/平均/最大>us late=<次数>"
+void formatMotionPerfStatus(char* buffer, size_t size) {
+  portENTER_CRITICAL(&perfMux);
+  MotionPerf perf = motionPerf;
+  bool empty = perfResetPending;
+  portEXIT_CRITICAL(&perfMux);
   
-  moveTimer.attach_ms(interval, moveTimerCallback);
+  if (empty || perf.count == 0) {
+    snprintf(buffer, size, "PERF %d n=0", motionPeriod);
+    return;
+  }
+  unsigned long periods = perf.count - 1;  // 第一个周期没有间隔
+  snprintf(buffer, size, "PERF %d n=%lu period=%lu/%lu/%luus exec=%lu/%lu/%luus late=%lu",
+           motionPeriod, perf.count,
+           periods > 0 ? perf.periodMin : 0, periods > 0 ? (unsigned long)(perf.periodSum / periods) : 0,
+           perf.periodMax,
+           perf.execMin, (unsigned long)(perf.execSum / perf.count), perf.execMax, perf.late);
+}
+
+// 清空统计，下一个周期起重新计数
+void resetMotionPerf() {
+  perfResetPending = true;
+}
+
+// 在loop中输出运动任务记录的补偿提示
+void printMotionEvents() {
+  if (compensationStartPending) {
+    compensationStartPending = false;
+    Serial.printf("B轴力矩补偿启动: %d° -> %d° -> %d°\n",
+                  compensationStartFrom, compensationStartTarget, compensationStartFinal);
+  }
+  int reached = compensationReachedAngle;
+  if (reached >= 0) {
+    compensationReachedAngle = -1;
+    Serial.printf("B轴到达补偿位置: %d°\n", reached);
+  }
+  int done = compensationDoneAngle;
+  if (done >= 0) {
+    compensationDoneAngle = -1;
+    Serial.printf("B轴补偿完成，切换到目标角度: %d°\n", done);
+  }
+}
+
+// 肘部角度范围取决于肩部角度
+static bool checkElbowAngleValid(int c_Angle, int b_Angle) {
+  int minc_Angle = 140 - b_Angle;
+  int maxc_Angle = 180;
+  if (196 - b_Angle < 180) {
+    maxc_Angle = 196 - b_Angle;
+  }
+  return (c_Angle >= minc_Angle && c_Angle <= maxc_Angle);
 }
 
 // 检查角度是否在允许范围内（保持原有逻辑）
@@ -137,13 +671,7 @@ bool checkAngleValid(int jointId, int angle) {
   }
   // 肘部舵机c (公式范围)
   else if (jointId == 2) {
-    int b_Angle = jointSystem.currentAngles[1];
-    int minc_Angle = 140 - b_Angle;
-    int maxc_Angle = 180;
-    if (196 - b_Angle < 180) {
-      maxc_Angle = 196 - b_Angle;
-    }
-    return (angle >= minc_Angle && angle <= maxc_Angle);
+    return checkElbowAngleValid(angle, jointSystem.currentAngles[1]);
   }
   // 抓手舵机g (0-37.5度)
   else if (jointId == 3) {
@@ -153,6 +681,12 @@ bool checkAngleValid(int jointId, int angle) {
   return false;
 }
 
+// 检查整组姿态，肘部按目标肩部角度校验
+bool isPoseValid(int a_Angle, int b_Angle, int c_Angle, int g_Angle) {
+  return checkAngleValid(0, a_Angle) && checkAngleValid(1, b_Angle) &&
+         checkElbowAngleValid(c_Angle, b_Angle) && checkAngleValid(3, g_Angle);
+}
+
 // 初始化机械臂（保持原有逻辑，添加补偿初始化）
 void initRobotArm() {
   // 连接舵机到引脚（为B轴使用更强的PWM设置）
@@ -178,15 +712,20 @@ void initRobotArm() {
   jointSystem.currentAngles[3] = DEFAULT_POS_G;
   jointSystem.servos[3].write(DEFAULT_POS_G);
   
-  // 启动定时器
-  moveTimer.attach_ms(moveSpeed.normalInterval, moveTimerCallback);
+  // 启动运动任务
+  updateSmoothingSamples();
+  updateMotionPeriod();
+  if (motionTaskHandle == NULL) {
+    xTaskCreatePinnedToCore(motionTask, "motion", MOTION_TASK_STACK, NULL,
+                            MOTION_TASK_PRIORITY, &motionTaskHandle, MOTION_TASK_CORE);
+  }
   
   Serial.println("机械臂初始化完成，力矩补偿系统已启用");
   Serial.printf("力矩补偿参数: 阈值=%d°, 超调=%d°, 延时=%dms\n", 
                 torqueComp.bAxisThreshold, torqueComp.compensationAngle, torqueComp.compensationDelay);
 }
 
-// 增强的设置单个关节角度
+// 增强的设置单个关节角度：校验后发布，下一个运动周期开始时生效
 bool setJointPosition(int jointId, int angle) {
   if (jointId < 0 || jointId >= JOINT_COUNT) {
     return false;
@@ -197,72 +736,227 @@ bool setJointPosition(int jointId, int angle) {
     return false;
   }
   
-  // B轴特殊处理：检查是否需要力矩补偿
-  if (needsTorqueCompensation(jointId, angle)) {
-    startTorqueCompensation(angle);
-    Serial.printf("B轴智能控制: %d° -> %d° (启用力矩补偿)\n", 
-                  jointSystem.currentAngles[1], angle);
-  } else {
-    jointSystem.targetAngles[jointId] = angle;
-    
-    if (jointId == 1) {
-      // B轴常规移动的调试信息
-      if (angle > jointSystem.currentAngles[1]) {
-        Serial.printf("B轴下降: %d° -> %d° (重力协助)\n", 
-                      jointSystem.currentAngles[1], angle);
-      } else {
-        Serial.printf("B轴上升: %d° -> %d° (常规模式)\n", 
-                      jointSystem.currentAngles[1], angle);
-      }
+  if (jointId == 1) {
+    // B轴常规移动的调试信息，需要预超调时由运动任务记录、loop输出
+    if (angle > jointSystem.currentAngles[1]) {
+      Serial.printf("B轴下降: %d° -> %d° (重力协助)\n", 
+                    jointSystem.currentAngles[1], angle);
+    } else {
+      Serial.printf("B轴上升: %d° -> %d°\n", 
+                    jointSystem.currentAngles[1], angle);
     }
   }
   
-  // 更新移动速度
-  updateMoveTimer();
-  
+  int angles[JOINT_COUNT] = {0};
+  angles[jointId] = angle;
+  publishTargetUpdate(1 << jointId, TARGET_MOVE, angles, 0);
   return true;
 }
 
-// 增强的设置所有关节角度
+// 增强的设置所有关节角度：整组在同一个运动周期生效
 bool setAllJointPositions(int a_Angle, int b_Angle, int c_Angle, int g_Angle) {
-  // 首先检查基座和肩部角度
-  if (!checkAngleValid(0, a_Angle) || !checkAngleValid(1, b_Angle)) {
+  // 肘部按目标肩部角度校验
+  if (!isPoseValid(a_Angle, b_Angle, c_Angle, g_Angle)) {
     return false;
   }
   
-  // 临时更新肩部角度，以便正确计算肘部范围
-  int oldb_Angle = jointSystem.currentAngles[1];
-  jointSystem.currentAngles[1] = b_Angle;
-  
-  // 检查肘部和抓手角度
-  bool c_Valid = checkAngleValid(2, c_Angle);
-  bool g_Valid = checkAngleValid(3, g_Angle);
-  
-  // 恢复肩部角度
-  jointSystem.currentAngles[1] = oldb_Angle;
+  int angles[JOINT_COUNT] = {a_Angle, b_Angle, c_Angle, g_Angle};
+  publishTargetUpdate(JOINT_MASK_ALL, TARGET_MOVE, angles, 0);
+  return true;
+}
+
+// 按掩码设置部分关节：全部有效时一起生效，肘部按新的（未设置时按当前的）肩部角度校验
+bool setJointPositionsMasked(uint8_t mask, const int angles[]) {
+  if (mask == 0 || (mask & ~JOINT_MASK_ALL) != 0) {
+    return false;
+  }
+  int b_Angle = (mask & (1 << 1)) ? angles[1] : jointSystem.currentAngles[1];
+  for (int i = 0; i < JOINT_COUNT; i++) {
+    if (!(mask & (1 << i))) {
+      continue;
+    }
+    bool valid = (i == 2) ? checkElbowAngleValid(angles[i], b_Angle) : checkAngleValid(i, angles[i]);
+    if (!valid) {
+      Serial.printf("关节%d角度%d°超出范围\n", i, angles[i]);
+      return false;
+    }
+  }
   
-  if (!c_Valid || !g_Valid) {
+  publishTargetUpdate(mask, TARGET_MOVE, angles, 0);
+  return true;
+}
+
+// 在运动周期中设置目标并请求同步运动，由本周期规划
+static void requestSyncMove(const int angles[], int minDurationMs) {
+  directFollow = false;
+  torqueComp.isCompensating = false;
+  for (int i = 0; i < JOINT_COUNT; i++) {
+    jointSystem.targetAngles[i] = angles[i];
+  }
+  syncMinDuration = minDurationMs;
+  syncCancelRequested = false;
+  syncRequested = true;
+}
+
+// 同步运动：各关节沿直线同时开始同时到达；minDurationMs比最慢关节所需时间长时按它拉长，
+// 0表示按最慢的关节。路径上各关节按比例运动，不做B轴预超调
+bool setAllJointPositionsSync(int a_Angle, int b_Angle, int c_Angle, int g_Angle, int minDurationMs) {
+  if (!isPoseValid(a_Angle, b_Angle, c_Angle, g_Angle) || minDurationMs < 0 || minDurationMs > SYNC_MAX_DURATION) {
     return false;
   }
   
-  // 设置非B轴关节
-  jointSystem.targetAngles[0] = a_Angle;
-  jointSystem.targetAngles[2] = c_Angle;
-  jointSystem.targetAngles[3] = g_Angle;
+  int angles[JOINT_COUNT] = {a_Angle, b_Angle, c_Angle, g_Angle};
+  publishTargetUpdate(JOINT_MASK_ALL, TARGET_SYNC, angles, minDurationMs);
+  
+  return true;
+}
+
+// 最近一次同步运动规划的时长（ms）
+unsigned long getSyncMoveDuration() {
+  return syncMove.durationMs;
+}
+
+// 在运动周期中设置目标角度：角度已在上传时校验
+void setJointTargetsFromTimer(const int angles[]) {
+  cancelSyncMove();
+  directFollow = false;
+  jointSystem.targetAngles[0] = angles[0];
+  jointSystem.targetAngles[2] = angles[2];
+  jointSystem.targetAngles[3] = angles[3];
   
-  // B轴特殊处理
-  if (needsTorqueCompensation(1, b_Angle)) {
-    startTorqueCompensation(b_Angle);
-    Serial.printf("setall命令 - B轴启用力矩补偿: %d°\n", b_Angle);
+  if (needsTorqueCompensation(1, angles[1])) {
+    startTorqueCompensation(angles[1]);
   } else {
-    jointSystem.targetAngles[1] = b_Angle;
+    jointSystem.targetAngles[1] = angles[1];
+  }
+}
+
+// 在运动周期中开始同步运动：角度已在上传时校验
+void setJointTargetsSyncFromTimer(const int angles[]) {
+  requestSyncMove(angles, 0);
+}
+
+void setGripperTargetFromTimer(int angle) {
+  cancelSyncMove();
+  directFollow = false;
+  jointSystem.targetAngles[3] = angle;
+}
+
+// 轨迹插值每个周期只移动很小的角度，不需要B轴预超调，运动曲线只限速
+void setJointTargetsDirect(const int angles[]) {
+  torqueComp.isCompensating = false;
+  cancelSyncMove();
+  directFollow = true;
+  for (int i = 0; i < JOINT_COUNT; i++) {
+    jointSystem.targetAngles[i] = angles[i];
+  }
+}
+
+// 停在当前位置（在运动周期中调用：暂停或中止运动程序、急停），运动曲线从当前角度静止开始
+void holdCurrentPosition() {
+  torqueComp.isCompensating = false;
+  cancelSyncMove();
+  directFollow = false;
+  resyncJointMotion(true);
+  for (int i = 0; i < JOINT_COUNT; i++) {
+    jointSystem.targetAngles[i] = jointSystem.currentAngles[i];
+  }
+}
+
+// 按命令顺序执行halt（loop任务）：下一个运动周期停在当前位置，之前发布、尚未生效的目标作废
+void haltMotion() {
+  haltCount.fetch_add(1, std::memory_order_acq_rel);
+  haltRequested.store(true, std::memory_order_release);
+}
+
+// BLE任务收到halt：下一个运动周期立即停住。queued表示这条halt已进入接收队列，
+// 它按顺序执行（endEarlyHalt）之前作废新发布的目标、暂停钩子；队列已满时只停住一次
+void requestEarlyHalt(bool queued) {
+  if (queued) {
+    earlyHalts.fetch_add(1, std::memory_order_acq_rel);
+  }
+  haltRequested.store(true, std::memory_order_release);
+}
+
+void endEarlyHalt() {
+  earlyHalts.fetch_sub(1, std::memory_order_acq_rel);
+}
+
+bool isMotionSettled() {
+  // 已发布、尚未生效的目标也算在运动中
+  if ((targetMiddle.load(std::memory_order_relaxed) & TARGET_FRESH) ||
+      torqueComp.isCompensating || syncRequested || syncMove.active) {
+    return false;
+  }
+  for (int i = 0; i < JOINT_COUNT; i++) {
+    if (jointSystem.currentAngles[i] != jointSystem.targetAngles[i]) {
+      return false;
+    }
+    // 运动曲线：S曲线的平滑窗口也要到达目标
+    if (activeProfile != PROFILE_STEP &&
+        (jointMotion[i].velocity != 0 || jointMotion[i].output != jointSystem.targetAngles[i])) {
+      return false;
+    }
   }
-  
-  updateMoveTimer();
-  
   return true;
 }
 
+void setMotionProfileMode(MotionProfileMode mode) {
+  requestedProfile = mode;
+  updateSmoothingSamples();
+  updateMotionPeriod();
+}
+
+MotionProfileMode getMotionProfileMode() {
+  return requestedProfile;
+}
+
+bool setJointProfileLimits(int jointId, int maxVelocity, int maxAcceleration, int maxJerk) {
+  if (jointId < 0 || jointId >= JOINT_COUNT) {
+    return false;
+  }
+  if (maxVelocity < 10 || maxVelocity > 600 || maxAcceleration < 10 || maxAcceleration > 5000 ||
+      maxJerk < 0 || maxJerk > 100000) {
+    return false;
+  }
+  profileLimits[jointId].maxVelocity = maxVelocity;
+  profileLimits[jointId].maxAcceleration = maxAcceleration;
+  profileLimits[jointId].maxJerk = maxJerk;
+  updateSmoothingSamples();
+  profileResync = true;
+  return true;
+}
+
+bool setJointSpeed(int jointId, int speed, int stepSize) {
+  if (jointId < 0 || jointId >= JOINT_COUNT || speed < 10 || speed > 600 || stepSize < 1 || stepSize > 10) {
+    return false;
+  }
+  // 只改速度上限，正在进行的运动按新速度继续
+  profileLimits[jointId].maxVelocity = speed;
+  stepSpeed[jointId] = speed;
+  jointStepSize[jointId] = stepSize;
+  return true;
+}
+
+// 报告当前选择的运动方式使用的速度
+void formatJointSpeedStatus(char* buffer, size_t size) {
+  int speeds[JOINT_COUNT];
+  for (int i = 0; i < JOINT_COUNT; i++) {
+    speeds[i] = (requestedProfile == PROFILE_STEP) ? stepSpeed[i] : (int)profileLimits[i].maxVelocity;
+  }
+  snprintf(buffer, size, "SPEED %d/%d %d/%d %d/%d %d/%d", speeds[0], jointStepSize[0], speeds[1], jointStepSize[1],
+           speeds[2], jointStepSize[2], speeds[3], jointStepSize[3]);
+}
+
+void formatMotionProfileStatus(char* buffer, size_t size) {
+  const char* names[] = {"step", "trap", "scurve"};
+  int length = snprintf(buffer, size, "PROFILE %s", names[requestedProfile]);
+  for (int i = 0; i < JOINT_COUNT && length > 0 && (size_t)length < size; i++) {
+    length += snprintf(buffer + length, size - length, " %d/%d/%d", (int)profileLimits[i].maxVelocity,
+                       (int)profileLimits[i].maxAcceleration, (int)profileLimits[i].maxJerk);
+  }
+}
+
 // 新增：调整力矩补偿参数的函数
 void setTorqueCompensationParams(int threshold, int compensation, int delay) {
   torqueComp.bAxisThreshold = threshold;
@@ -287,7 +981,7 @@ void printTorqueCompensationStatus() {
   Serial.printf("超调角度: %d°\n", torqueComp.compensationAngle);
   Serial.printf("补偿延时: %dms\n", torqueComp.compensationDelay);
   Serial.printf("当前补偿中: %s\n", torqueComp.isCompensating ? "是" : "否");
-  Serial.printf("慢速模式: %s\n", moveSpeed.useSlowMode ? "是" : "否");
+  Serial.printf("B轴重载区速度: %d%%\n", moveSpeed.loadedSpeedPercent);
   Serial.println("========================");
 }
 
@@ -303,10 +997,8 @@ void getCurrentPositions(int positions[]) {
 }
 
 void resetToDefaultPosition() {
-  jointSystem.targetAngles[0] = DEFAULT_POS_A;
-  jointSystem.targetAngles[1] = DEFAULT_POS_B;
-  jointSystem.targetAngles[2] = DEFAULT_POS_C;
-  jointSystem.targetAngles[3] = DEFAULT_POS_G;
+  int angles[JOINT_COUNT] = {DEFAULT_POS_A, DEFAULT_POS_B, DEFAULT_POS_C, DEFAULT_POS_G};
+  publishTargetUpdate(JOINT_MASK_ALL, TARGET_MOVE, angles, 0);
   
   Serial.println("重置所有舵机到原点位置");
 }
@@ -1,8 +1,8 @@
 #ifndef MOVEMENT_H
 #define MOVEMENT_H
 
+#include <Arduino.h>
 #include <ESP32Servo.h>
-#include <Ticker.h>
 
 // 舵机数量和引脚定义
 #define JOINT_COUNT 4
@@ -13,6 +13,8 @@
 #define DEFAULT_POS_C 180    // 舵机c原点为180度
 #define DEFAULT_POS_G 0      // 舵机g原点为0度
 
+#define SYNC_MAX_DURATION 60000  // 同步运动最长时长（ms）
+
 // 舵机引脚
 #define SERVO_PIN_A 33
 #define SERVO_PIN_B 25 
@@ -26,21 +28,69 @@ typedef struct {
   int targetAngles[JOINT_COUNT];   // 目标角度
 } JointSystem;
 
+// 运动曲线
+typedef enum {
+  PROFILE_STEP = 0,       // 按关节速度逐步移动，每步stepSize度（原有方式）
+  PROFILE_TRAPEZOID = 1,  // 梯形速度曲线
+  PROFILE_SCURVE = 2      // 加加速度受限的S曲线
+} MotionProfileMode;
+
+// 每个关节的运动曲线参数
+typedef struct {
+  float maxVelocity;      // 最大速度（度/秒）
+  float maxAcceleration;  // 最大加速度（度/秒²）
+  float maxJerk;          // 最大加加速度（度/秒³），只用于S曲线
+} JointProfileLimits;
+
 // 外部变量声明
 extern JointSystem jointSystem;
 
-// 原有函数声明
+// 原有函数声明（设置目标的函数只在loop任务中调用，目标在下一个运动周期开始时整组生效）
 void initRobotArm();  // 初始化机械臂
 bool setJointPosition(int jointId, int angle);  // 设置单个关节位置
 bool setAllJointPositions(int a_Angle, int b_Angle, int c_Angle, int g_Angle);  // 设置所有关节位置
 bool setJointPositions(int angles[]);  // 数组方式设置关节位置
+bool setJointPositionsMasked(uint8_t mask, const int angles[]);  // 按掩码设置部分关节，全部有效时一起生效
 void getCurrentPositions(int positions[]);  // 获取当前位置
 void resetToDefaultPosition();  // 重置到默认位置
 void printJointLimits();  // 调试用：打印关节限制
+bool setAllJointPositionsSync(int a_Angle, int b_Angle, int c_Angle, int g_Angle, int minDurationMs);  // 同步运动：各关节同时到达
+unsigned long getSyncMoveDuration();  // 最近一次同步运动规划的时长（ms）
 
 // 新增：力矩补偿相关函数声明
 void setTorqueCompensationParams(int threshold, int compensation, int delay);  // 设置补偿参数
 void enableTorqueCompensation(bool enable);  // 启用/禁用补偿
 void printTorqueCompensationStatus();  // 打印补偿状态
 
+// 运动程序支持
+bool checkAngleValid(int jointId, int angle);  // 检查单个关节角度（肘部按当前肩部角度）
+bool isPoseValid(int a_Angle, int b_Angle, int c_Angle, int g_Angle);  // 检查整组姿态（肘部按给定肩部角度）
+bool addMotionTickHook(void (*hook)());  // 添加运动任务每个周期移动关节前调用的钩子
+void setJointTargetsFromTimer(const int angles[]);  // 在运动周期（钩子）中设置目标角度
+void setJointTargetsSyncFromTimer(const int angles[]);  // 在运动周期（钩子）中开始同步运动
+void setGripperTargetFromTimer(int angle);  // 在运动周期（钩子）中只设置抓手目标角度
+void setJointTargetsDirect(const int angles[]);  // 直接设置目标角度，不做力矩补偿（轨迹插值的小步长）
+void holdCurrentPosition();  // 目标角度设为当前角度，停在原地
+bool isMotionSettled();  // 所有关节已到达目标且不在补偿中
+
+// 急停：目标设为当前角度，在一个运动周期内停住
+void haltMotion();  // loop任务中按命令顺序调用，之前发布、尚未生效的目标作废
+void requestEarlyHalt(bool queued);  // BLE任务收到halt时立即调用，不等排在前面的命令
+void endEarlyHalt();  // 提前执行过的halt按顺序执行完后调用
+
+// 运动曲线
+void setMotionProfileMode(MotionProfileMode mode);  // 切换运动曲线，正在进行的运动从当前位置重新规划
+MotionProfileMode getMotionProfileMode();
+bool setJointProfileLimits(int jointId, int maxVelocity, int maxAcceleration, int maxJerk);  // 设置单个关节的曲线参数
+void formatMotionProfileStatus(char* buffer, size_t size);  // "PROFILE <曲线> <速度/加速度/加加速度> x4"
+
+// 关节速度：每个关节独立，B轴重载只降低B轴
+bool setJointSpeed(int jointId, int speed, int stepSize);  // 速度（度/秒）和逐步移动的步长（度）
+void formatJointSpeedStatus(char* buffer, size_t size);  // "SPEED <速度/步长> x4"，速度为当前运动方式使用的
+
+// 运动任务：固定在APP核心、按固定周期运行
+void formatMotionPerfStatus(char* buffer, size_t size);  // "PERF <周期ms> n=<周期数> period=<最小/平均/最大>us exec=<最小/平均/最大>us late=<次数>"
+void resetMotionPerf();  // 清空周期统计
+void printMotionEvents();  // 在loop中输出运动任务记录的提示
+
 #endif // MOVEMENT_H
\ No newline at end of file
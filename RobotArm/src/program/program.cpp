@@ -0,0 +1,308 @@
+#include "program.h"
+#include <Preferences.h>
+
+// NVS中保存程序的位置和格式: [版本][步数][步骤...]
+#define PROGRAM_NVS_NAMESPACE "armprog"
+#define PROGRAM_NVS_KEY "steps"
+#define PROGRAM_NVS_VERSION 1
+#define PROGRAM_NVS_HEADER 2
+
+// 当前程序和上传暂存区
+static ProgramStep steps[PROGRAM_MAX_STEPS];
+static int stepCount = 0;
+static ProgramStep uploadSteps[PROGRAM_MAX_STEPS];
+static int uploadCount = 0;
+static bool uploading = false;
+
+// 执行状态：命令在loop中修改，运动任务中推进，两边都在programMux内访问
+static portMUX_TYPE programMux = portMUX_INITIALIZER_UNLOCKED;
+static volatile ProgramState state = PROGRAM_IDLE;
+static volatile int stepIndex = 0;
+static volatile int loopsDone = 0;
+static int loopLimit = 0;
+static bool stepStarted = false;    // 当前步骤的目标是否已下发
+static bool stepSettled = false;    // 当前步骤是否已到达目标，开始计停留时间
+static unsigned long settledAt = 0;
+static bool holdPending = false;    // 暂停/中止后由运动任务停住关节
+static volatile bool finishPending = false;  // 程序运行完成，由loop中的 printProgramEvents 打印
+
+// 推进执行状态，需要下发新步骤时返回true（在programMux内调用）
+static bool advanceProgram(unsigned long now) {
+  if (!stepStarted) {
+    stepStarted = true;
+    stepSettled = false;
+    return true;
+  }
+  if (!isMotionSettled()) {
+    return false;
+  }
+  if (!stepSettled) {
+    stepSettled = true;
+    settledAt = now;
+  }
+  if (now - settledAt < steps[stepIndex].dwellMs) {
+    return false;
+  }
+  
+  stepIndex = stepIndex + 1;
+  if (stepIndex >= stepCount) {
+    stepIndex = 0;
+    loopsDone = loopsDone + 1;
+    if (loopLimit > 0 && loopsDone >= loopLimit) {
+      state = PROGRAM_IDLE;
+      finishPending = true;
+      return false;
+    }
+  }
+  stepSettled = false;
+  return true;
+}
+
+// 下发一个步骤的目标角度
+static void applyStep(const ProgramStep& step) {
+  if (step.type == STEP_GRIP) {
+    setGripperTargetFromTimer(step.angles[3]);
+    return;
+  }
+  int angles[JOINT_COUNT];
+  for (int i = 0; i < JOINT_COUNT; i++) {
+    angles[i] = step.angles[i];
+  }
+  if (step.type == STEP_SYNC) {
+    setJointTargetsSyncFromTimer(angles);
+  } else {
+    setJointTargetsFromTimer(angles);
+  }
+}
+
+// 运动任务钩子：每个周期在移动关节前调用
+static void programTick() {
+  ProgramStep step;
+  bool start = false;
+  
+  portENTER_CRITICAL(&programMux);
+  bool hold = holdPending;
+  holdPending = false;
+  if (state == PROGRAM_RUNNING) {
+    start = advanceProgram(millis());
+    if (start) {
+      step = steps[stepIndex];
+    }
+  }
+  portEXIT_CRITICAL(&programMux);
+  
+  // 下发目标会发布给运动状态并可能启动补偿，不在临界区内执行
+  if (hold) {
+    holdCurrentPosition();
+  }
+  if (start) {
+    applyStep(step);
+  }
+}
+
+// 在loop中输出运动任务记录的程序事件，运动任务不等待串口
+void printProgramEvents() {
+  portENTER_CRITICAL(&programMux);
+  bool finished = finishPending;
+  finishPending = false;
+  portEXIT_CRITICAL(&programMux);
+  
+  if (finished) {
+    Serial.println("运动程序运行完成");
+  }
+}
+
+void initProgram() {
+  if (loadProgram() && stepCount > 0) {
+    Serial.printf("已加载保存的运动程序，共%d步\n", stepCount);
+  }
+  addMotionTickHook(programTick);
+}
+
+bool beginProgramUpload() {
+  uploadCount = 0;
+  uploading = true;
+  return true;
+}
+
+static bool checkDwell(int dwellMs) {
+  return dwellMs >= 0 && dwellMs <= PROGRAM_MAX_DWELL;
+}
+
+bool addProgramMove(int a_Angle, int b_Angle, int c_Angle, int g_Angle, int dwellMs, bool sync) {
+  if (!uploading || uploadCount >= PROGRAM_MAX_STEPS || !checkDwell(dwellMs)) {
+    return false;
+  }
+  // 上传时完成校验，执行时直接下发目标
+  if (!isPoseValid(a_Angle, b_Angle, c_Angle, g_Angle)) {
+    return false;
+  }
+  ProgramStep& step = uploadSteps[uploadCount++];
+  step.type = sync ? STEP_SYNC : STEP_MOVE;
+  step.angles[0] = a_Angle;
+  step.angles[1] = b_Angle;
+  step.angles[2] = c_Angle;
+  step.angles[3] = g_Angle;
+  step.dwellMs = dwellMs;
+  return true;
+}
+
+bool addProgramGrip(int g_Angle, int dwellMs) {
+  if (!uploading || uploadCount >= PROGRAM_MAX_STEPS || !checkDwell(dwellMs)) {
+    return false;
+  }
+  if (!checkAngleValid(3, g_Angle)) {
+    return false;
+  }
+  ProgramStep& step = uploadSteps[uploadCount++];
+  step.type = STEP_GRIP;
+  step.angles[0] = 0;
+  step.angles[1] = 0;
+  step.angles[2] = 0;
+  step.angles[3] = g_Angle;
+  step.dwellMs = dwellMs;
+  return true;
+}
+
+bool endProgramUpload() {
+  // 运行或暂停中不替换程序，暂存区保留，停止后可以重新发送 prog end
+  if (!uploading || uploadCount == 0 || state != PROGRAM_IDLE) {
+    return false;
+  }
+  memcpy(steps, uploadSteps, sizeof(ProgramStep) * uploadCount);
+  stepCount = uploadCount;
+  uploading = false;
+  Serial.printf("运动程序已更新，共%d步\n", stepCount);
+  return true;
+}
+
+bool saveProgram() {
+  if (stepCount == 0) {
+    return false;
+  }
+  uint8_t blob[PROGRAM_NVS_HEADER + sizeof(steps)];
+  size_t length = PROGRAM_NVS_HEADER + sizeof(ProgramStep) * stepCount;
+  blob[0] = PROGRAM_NVS_VERSION;
+  blob[1] = stepCount;
+  memcpy(blob + PROGRAM_NVS_HEADER, steps, sizeof(ProgramStep) * stepCount);
+  
+  Preferences prefs;
+  if (!prefs.begin(PROGRAM_NVS_NAMESPACE, false)) {
+    return false;
+  }
+  bool ok = prefs.putBytes(PROGRAM_NVS_KEY, blob, length) == length;
+  prefs.end();
+  
+  Serial.printf("运动程序%s保存到NVS\n", ok ? "已" : "未能");
+  return ok;
+}
+
+bool loadProgram() {
+  if (state != PROGRAM_IDLE) {
+    return false;
+  }
+  Preferences prefs;
+  if (!prefs.begin(PROGRAM_NVS_NAMESPACE, true)) {
+    return false;
+  }
+  uint8_t blob[PROGRAM_NVS_HEADER + sizeof(steps)];
+  size_t length = prefs.getBytesLength(PROGRAM_NVS_KEY);
+  bool ok = length >= PROGRAM_NVS_HEADER && length <= sizeof(blob) &&
+            prefs.getBytes(PROGRAM_NVS_KEY, blob, length) == length;
+  prefs.end();
+  
+  // 版本或长度不符时视为没有保存的程序
+  if (!ok || blob[0] != PROGRAM_NVS_VERSION || blob[1] == 0 || blob[1] > PROGRAM_MAX_STEPS ||
+      length != PROGRAM_NVS_HEADER + sizeof(ProgramStep) * blob[1]) {
+    return false;
+  }
+  memcpy(steps, blob + PROGRAM_NVS_HEADER, length - PROGRAM_NVS_HEADER);
+  stepCount = blob[1];
+  return true;
+}
+
+bool clearProgram() {
+  if (state != PROGRAM_IDLE) {
+    return false;
+  }
+  stepCount = 0;
+  Preferences prefs;
+  if (prefs.begin(PROGRAM_NVS_NAMESPACE, false)) {
+    prefs.remove(PROGRAM_NVS_KEY);
+    prefs.end();
+  }
+  return true;
+}
+
+bool runProgram(int loops) {
+  if (stepCount == 0 || loops < 0) {
+    return false;
+  }
+  portENTER_CRITICAL(&programMux);
+  state = PROGRAM_RUNNING;
+  stepIndex = 0;
+  loopsDone = 0;
+  loopLimit = loops;
+  stepStarted = false;
+  portEXIT_CRITICAL(&programMux);
+  return true;
+}
+
+bool pauseProgram() {
+  bool ok = false;
+  portENTER_CRITICAL(&programMux);
+  if (state == PROGRAM_RUNNING) {
+    state = PROGRAM_PAUSED;
+    holdPending = true;
+    ok = true;
+  }
+  portEXIT_CRITICAL(&programMux);
+  return ok;
+}
+
+bool resumeProgram() {
+  bool ok = false;
+  portENTER_CRITICAL(&programMux);
+  if (state == PROGRAM_PAUSED) {
+    // 重新下发当前步骤，停留时间重新计算
+    state = PROGRAM_RUNNING;
+    stepStarted = false;
+    ok = true;
+  }
+  portEXIT_CRITICAL(&programMux);
+  return ok;
+}
+
+void abortProgram(bool hold) {
+  portENTER_CRITICAL(&programMux);
+  if (state != PROGRAM_IDLE) {
+    state = PROGRAM_IDLE;
+    holdPending = hold;
+  }
+  portEXIT_CRITICAL(&programMux);
+}
+
+ProgramState getProgramState() {
+  return state;
+}
+
+bool isProgramRunning() {
+  return state == PROGRAM_RUNNING;
+}
+
+int getProgramStepCount() {
+  return stepCount;
+}
+
+int getProgramStepIndex() {
+  return stepIndex;
+}
+
+int getProgramLoop() {
+  return loopsDone;
+}
+
+void formatProgramStatus(char* buffer, size_t size) {
+  const char* names[] = {"IDLE", "RUN", "PAUSE"};
+  snprintf(buffer, size, "PROG %s %d %d %d", names[state], (int)stepIndex, stepCount, (int)loopsDone);
+}
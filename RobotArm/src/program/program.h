@@ -0,0 +1,54 @@
+#ifndef PROGRAM_H
+#define PROGRAM_H
+
+#include <Arduino.h>
+#include "../movement/movement.h"
+
+// 运动程序：一组路点（姿态+停留时间）和抓手动作，上传后由固件在运动任务中自行执行，
+// 循环运行时不需要蓝牙通信。程序可保存到NVS，开机时自动加载。
+#define PROGRAM_MAX_STEPS 64
+#define PROGRAM_MAX_DWELL 60000   // 单步最长停留时间（ms）
+
+// 步骤类型
+typedef enum {
+  STEP_MOVE = 0,   // 移动到完整姿态
+  STEP_GRIP = 1,   // 只改变抓手角度
+  STEP_SYNC = 2    // 同步运动到完整姿态，各关节同时到达
+} ProgramStepType;
+
+// 程序步骤：到达目标后停留dwellMs再执行下一步
+typedef struct {
+  uint8_t type;
+  uint8_t angles[JOINT_COUNT];  // STEP_GRIP 只使用 angles[3]
+  uint16_t dwellMs;
+} ProgramStep;
+
+// 执行状态
+typedef enum {
+  PROGRAM_IDLE = 0,
+  PROGRAM_RUNNING,
+  PROGRAM_PAUSED
+} ProgramState;
+
+// 函数声明
+void initProgram();  // 从NVS加载已保存的程序，并挂接到运动任务
+bool beginProgramUpload();  // 开始上传，清空暂存区
+bool addProgramMove(int a_Angle, int b_Angle, int c_Angle, int g_Angle, int dwellMs, bool sync = false);  // 暂存一个路点
+bool addProgramGrip(int g_Angle, int dwellMs);  // 暂存一个抓手动作
+bool endProgramUpload();  // 用暂存区替换当前程序（运行中不能替换）
+bool saveProgram();  // 当前程序写入NVS
+bool loadProgram();  // 从NVS读取程序（运行中不能读取）
+bool clearProgram();  // 清空当前程序和NVS中保存的程序
+bool runProgram(int loops);  // 从第一步开始运行，loops为0表示无限循环
+bool pauseProgram();  // 暂停，停在当前位置
+bool resumeProgram();  // 从当前步骤继续
+void abortProgram(bool hold);  // 中止，hold为true时停在当前位置
+ProgramState getProgramState();
+bool isProgramRunning();
+int getProgramStepCount();
+int getProgramStepIndex();
+int getProgramLoop();
+void printProgramEvents();  // 在loop中输出运动任务记录的程序事件
+void formatProgramStatus(char* buffer, size_t size);  // "PROG <状态> <步骤> <步数> <已完成循环>"
+
+#endif // PROGRAM_H
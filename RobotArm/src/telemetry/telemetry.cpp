@@ -0,0 +1,103 @@
+#include "telemetry.h"
+#include "../movement/movement.h"
+#include "../bluetooth/bluetooth.h"
+#include "../anglefeedback/anglefeedback.h"
+#include "../program/program.h"
+#include "../trajectory/trajectory.h"
+
+static int telemetryInterval = 0;
+static bool feedbackEnabled = false;
+static bool feedbackInitialized = false;
+static unsigned long lastSendTime = 0;
+static uint8_t telemetrySeq = 0;
+
+// 遥测帧缓冲区，重复使用
+static uint8_t packet[TELEMETRY_LENGTH];
+
+void setTelemetryInterval(int intervalMs) {
+  if(intervalMs <= 0) {
+    telemetryInterval = 0;
+    return;
+  }
+  telemetryInterval = constrain(intervalMs, TELEMETRY_MIN_INTERVAL, TELEMETRY_MAX_INTERVAL);
+  lastSendTime = 0;  // 立即推送第一帧
+}
+
+int getTelemetryInterval() {
+  return telemetryInterval;
+}
+
+void enableTelemetryFeedback(bool enable) {
+  // 电位器按需初始化，不接电位器时不影响其他功能
+  if(enable && !feedbackInitialized) {
+    initanglefeedback();
+    feedbackInitialized = true;
+  }
+  feedbackEnabled = enable;
+}
+
+bool isTelemetryFeedbackEnabled() {
+  return feedbackEnabled;
+}
+
+// 角度转换为0.1度的小端16位整数
+static void writeTenths(uint8_t* out, float angle) {
+  int16_t value = (int16_t)lroundf(angle * 10.0f);
+  out[0] = (uint8_t)(value & 0xFF);
+  out[1] = (uint8_t)((value >> 8) & 0xFF);
+}
+
+static void buildPacket(unsigned long now) {
+  uint8_t flags = 0;
+  for(int i = 0; i < JOINT_COUNT; i++) {
+    packet[8 + i] = (uint8_t)jointSystem.currentAngles[i];
+    packet[12 + i] = (uint8_t)jointSystem.targetAngles[i];
+    if(jointSystem.currentAngles[i] != jointSystem.targetAngles[i]) {
+      flags |= TELEMETRY_FLAG_MOVING;
+    }
+  }
+  if(isProgramRunning()) {
+    flags |= TELEMETRY_FLAG_PROGRAM;
+  }
+  if(isTrajectoryActive()) {
+    flags |= TELEMETRY_FLAG_TRAJECTORY;
+  }
+
+  if(feedbackEnabled) {
+    flags |= TELEMETRY_FLAG_FEEDBACK;
+    writeTenths(&packet[16], getAngleB());
+    writeTenths(&packet[18], getAngleC());
+  } else {
+    packet[16] = packet[18] = (uint8_t)(TELEMETRY_NO_FEEDBACK & 0xFF);
+    packet[17] = packet[19] = (uint8_t)(TELEMETRY_NO_FEEDBACK >> 8);
+  }
+
+  packet[0] = FRAME_MAGIC;
+  packet[1] = OP_TELEMETRY;
+  packet[2] = telemetrySeq++;
+  packet[3] = flags;
+  packet[4] = (uint8_t)(now & 0xFF);
+  packet[5] = (uint8_t)((now >> 8) & 0xFF);
+  packet[6] = (uint8_t)((now >> 16) & 0xFF);
+  packet[7] = (uint8_t)((now >> 24) & 0xFF);
+}
+
+void updateTelemetry() {
+  if(telemetryInterval == 0) {
+    return;
+  }
+  // 断开后停止推送，由下次连接的App重新开启
+  if(!isBluetoothConnected()) {
+    telemetryInterval = 0;
+    return;
+  }
+  unsigned long now = millis();
+  if(lastSendTime != 0 && now - lastSendTime < (unsigned long)telemetryInterval) {
+    return;
+  }
+  // 按固定节拍推进，避免loop延时造成的累计漂移；落后太多则重新对齐
+  lastSendTime = (lastSendTime != 0 && now - lastSendTime < 2UL * telemetryInterval)
+                 ? lastSendTime + telemetryInterval : now;
+  buildPacket(now);
+  sendBluetoothFrame(packet, TELEMETRY_LENGTH);
+}
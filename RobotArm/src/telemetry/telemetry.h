@@ -0,0 +1,17 @@
+#ifndef TELEMETRY_H
+#define TELEMETRY_H
+
+#include <Arduino.h>
+
+// 推送间隔范围（ms），下限受BLE连接间隔限制
+#define TELEMETRY_MIN_INTERVAL 20
+#define TELEMETRY_MAX_INTERVAL 1000
+
+// 函数声明
+void setTelemetryInterval(int intervalMs);  // 设置推送间隔，0表示关闭
+int getTelemetryInterval();                 // 当前推送间隔，0表示关闭
+void enableTelemetryFeedback(bool enable);  // 是否附带电位器读数
+bool isTelemetryFeedbackEnabled();
+void updateTelemetry();                     // 在loop中调用，到时间则推送一帧
+
+#endif // TELEMETRY_H
@@ -0,0 +1,157 @@
+#include "trajectory.h"
+
+// 队列中的路点：从上一个路点出发，经过durationMs到达angles
+typedef struct {
+  uint8_t angles[JOINT_COUNT];
+  uint16_t durationMs;
+} TrajectoryPoint;
+
+// 环形队列：loop中入队，运动任务中出队，两边都在trajectoryMux内访问
+static portMUX_TYPE trajectoryMux = portMUX_INITIALIZER_UNLOCKED;
+static TrajectoryPoint queue[TRAJECTORY_CAPACITY];
+static int queueHead = 0;
+static int queueCount = 0;
+
+// 正在插值的段
+static bool segmentActive = false;
+static unsigned long segmentStart = 0;
+static int segmentFrom[JOINT_COUNT];
+static int segmentTo[JOINT_COUNT];
+static int segmentDuration = 0;
+
+static unsigned long underruns = 0;
+static bool holdPending = false;
+
+// 取出下一个路点作为新的段，起点为上一段的终点（在trajectoryMux内调用）
+static void startSegment(unsigned long startTime, const int from[]) {
+  TrajectoryPoint& point = queue[queueHead];
+  queueHead = (queueHead + 1) % TRAJECTORY_CAPACITY;
+  queueCount--;
+  
+  for (int i = 0; i < JOINT_COUNT; i++) {
+    segmentFrom[i] = from[i];
+    segmentTo[i] = point.angles[i];
+  }
+  segmentDuration = point.durationMs;
+  segmentStart = startTime;
+  segmentActive = true;
+}
+
+// 线性插值，四舍五入到整数角度
+static int interpolate(int from, int to, unsigned long elapsed, int duration) {
+  long delta = (long)(to - from) * (long)elapsed * 2;
+  long rounded = (delta >= 0) ? delta + duration : delta - duration;
+  return from + (int)(rounded / (2L * duration));
+}
+
+// 计算当前时刻的插值目标，需要更新目标时返回true（在trajectoryMux内调用）
+static bool advanceTrajectory(unsigned long now, int targets[]) {
+  if (!segmentActive) {
+    if (queueCount == 0) {
+      return false;
+    }
+    // 队列由空变为非空：从当前目标角度出发
+    startSegment(now, jointSystem.targetAngles);
+  }
+  
+  // 一个周期内可能跨过多个很短的段，段首尾相接，不累积定时误差
+  while ((long)(now - segmentStart) >= segmentDuration) {
+    if (queueCount == 0) {
+      segmentActive = false;
+      underruns++;
+      for (int i = 0; i < JOINT_COUNT; i++) {
+        targets[i] = segmentTo[i];
+      }
+      return true;
+    }
+    int from[JOINT_COUNT];
+    for (int i = 0; i < JOINT_COUNT; i++) {
+      from[i] = segmentTo[i];
+    }
+    startSegment(segmentStart + segmentDuration, from);
+  }
+  
+  unsigned long elapsed = now - segmentStart;
+  for (int i = 0; i < JOINT_COUNT; i++) {
+    targets[i] = interpolate(segmentFrom[i], segmentTo[i], elapsed, segmentDuration);
+  }
+  // 两端姿态都有效，插值后肘部只可能因取整偏出1度，按肩部角度收回范围内
+  int minC = 140 - targets[1];
+  int maxC = min(196 - targets[1], 180);
+  targets[2] = constrain(targets[2], minC, maxC);
+  return true;
+}
+
+// 运动任务钩子：按时间更新插值目标
+static void trajectoryTick() {
+  int targets[JOINT_COUNT];
+  
+  portENTER_CRITICAL(&trajectoryMux);
+  bool hold = holdPending;
+  holdPending = false;
+  bool update = advanceTrajectory(millis(), targets);
+  portEXIT_CRITICAL(&trajectoryMux);
+  
+  if (hold) {
+    holdCurrentPosition();
+  }
+  if (update) {
+    setJointTargetsDirect(targets);
+  }
+}
+
+void initTrajectory() {
+  addMotionTickHook(trajectoryTick);
+}
+
+bool pushTrajectoryPoint(const int angles[], int durationMs) {
+  if (durationMs < 0 || durationMs > TRAJECTORY_MAX_DURATION) {
+    return false;
+  }
+  if (!isPoseValid(angles[0], angles[1], angles[2], angles[3])) {
+    return false;
+  }
+  
+  bool ok = false;
+  portENTER_CRITICAL(&trajectoryMux);
+  if (queueCount < TRAJECTORY_CAPACITY) {
+    TrajectoryPoint& point = queue[(queueHead + queueCount) % TRAJECTORY_CAPACITY];
+    for (int i = 0; i < JOINT_COUNT; i++) {
+      point.angles[i] = angles[i];
+    }
+    point.durationMs = durationMs;
+    queueCount++;
+    ok = true;
+  }
+  portEXIT_CRITICAL(&trajectoryMux);
+  return ok;
+}
+
+void clearTrajectory(bool hold) {
+  portENTER_CRITICAL(&trajectoryMux);
+  bool wasActive = segmentActive || queueCount > 0;
+  queueCount = 0;
+  segmentActive = false;
+  holdPending = hold && wasActive;
+  portEXIT_CRITICAL(&trajectoryMux);
+}
+
+bool isTrajectoryActive() {
+  return segmentActive || queueCount > 0;
+}
+
+int getTrajectoryFree() {
+  return TRAJECTORY_CAPACITY - queueCount;
+}
+
+int getTrajectoryQueued() {
+  return queueCount;
+}
+
+unsigned long getTrajectoryUnderruns() {
+  return underruns;
+}
+
+void formatTrajectoryStatus(char* buffer, size_t size) {
+  snprintf(buffer, size, "TRAJ %d %d %lu", getTrajectoryFree(), getTrajectoryQueued(), getTrajectoryUnderruns());
+}
@@ -0,0 +1,22 @@
+#ifndef TRAJECTORY_H
+#define TRAJECTORY_H
+
+#include <Arduino.h>
+#include "../movement/movement.h"
+
+// 轨迹队列：App连续发送带段时长的路点，不等待每条应答；运动任务按时间在相邻路点间线性插值，
+// 连续的路点之间不会停顿。每条路点的应答带回队列空位，App据此做基于信用的流控。
+#define TRAJECTORY_CAPACITY 32
+#define TRAJECTORY_MAX_DURATION 10000  // 单段最长时长（ms）
+
+// 函数声明
+void initTrajectory();  // 挂接到运动任务
+bool pushTrajectoryPoint(const int angles[], int durationMs);  // 路点入队，角度无效或队列已满时返回false
+void clearTrajectory(bool hold);  // 清空队列并停止插值，hold为true时停在当前位置
+bool isTrajectoryActive();  // 队列中有路点或正在插值
+int getTrajectoryFree();  // 队列空位
+int getTrajectoryQueued();  // 队列中等待的路点数
+unsigned long getTrajectoryUnderruns();  // 插值完成时队列已空的次数（流结束也计一次）
+void formatTrajectoryStatus(char* buffer, size_t size);  // "TRAJ <空位> <等待数> <取空次数>"
+
+#endif // TRAJECTORY_H
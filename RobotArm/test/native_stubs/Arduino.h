@@ -0,0 +1,51 @@
+#ifndef NATIVE_STUB_ARDUINO_H
+#define NATIVE_STUB_ARDUINO_H
+
+// native测试环境下的Arduino替身：只提供固件源码用到的部分，串口输出全部丢弃
+
+#include <stdint.h>
+#include <stddef.h>
+#include <string.h>
+#include <stdlib.h>
+#include <stdio.h>
+#include <math.h>
+#include <chrono>
+#include "freertos/FreeRTOS.h"
+#include "freertos/task.h"
+
+typedef uint8_t byte;
+
+class HardwareSerial {
+public:
+  void begin(unsigned long) {}
+  template<class T> size_t print(T) { return 0; }
+  template<class T> size_t print(T, int) { return 0; }
+  template<class T> size_t println(T) { return 0; }
+  template<class T> size_t println(T, int) { return 0; }
+  size_t println() { return 0; }
+  size_t printf(const char*, ...) { return 0; }
+};
+
+inline HardwareSerial Serial;
+
+// 时钟取主机单调时钟
+inline unsigned long micros() {
+  using namespace std::chrono;
+  return (unsigned long)duration_cast<microseconds>(steady_clock::now().time_since_epoch()).count();
+}
+inline unsigned long millis() { return micros() / 1000; }
+inline void delay(unsigned long) {}
+
+// 电位器读数固定在量程中点
+inline void analogReadResolution(int) {}
+inline int analogRead(int) { return 2048; }
+
+template<class T> T constrain(T x, T low, T high) { return x < low ? low : (x > high ? high : x); }
+inline bool isDigit(int c) { return c >= '0' && c <= '9'; }
+
+#ifndef min
+#define min(a, b) ((a) < (b) ? (a) : (b))
+#define max(a, b) ((a) > (b) ? (a) : (b))
+#endif
+
+#endif // NATIVE_STUB_ARDUINO_H
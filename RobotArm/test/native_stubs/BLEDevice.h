@@ -0,0 +1,6 @@
+#ifndef NATIVE_STUB_BLEDEVICE_H
+#define NATIVE_STUB_BLEDEVICE_H
+
+// bluetooth.h 只需要这些头文件存在，native测试不编译 bluetooth.cpp
+
+#endif // NATIVE_STUB_BLEDEVICE_H
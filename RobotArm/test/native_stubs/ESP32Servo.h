@@ -0,0 +1,10 @@
+#ifndef NATIVE_STUB_ESP32SERVO_H
+#define NATIVE_STUB_ESP32SERVO_H
+
+class Servo {
+public:
+  int attach(int pin, int, int) { return pin; }
+  void write(int) {}
+};
+
+#endif // NATIVE_STUB_ESP32SERVO_H
@@ -0,0 +1,18 @@
+#ifndef NATIVE_STUB_PREFERENCES_H
+#define NATIVE_STUB_PREFERENCES_H
+
+// NVS替身：没有已保存的程序，写入直接成功
+
+#include <stddef.h>
+
+class Preferences {
+public:
+  bool begin(const char*, bool = false) { return true; }
+  void end() {}
+  size_t putBytes(const char*, const void*, size_t length) { return length; }
+  size_t getBytes(const char*, void*, size_t) { return 0; }
+  size_t getBytesLength(const char*) { return 0; }
+  bool remove(const char*) { return true; }
+};
+
+#endif // NATIVE_STUB_PREFERENCES_H
@@ -0,0 +1,24 @@
+#ifndef NATIVE_STUB_TASK_H
+#define NATIVE_STUB_TASK_H
+
+// 不创建任务：运动任务不运行，测试只覆盖命令解析和应答
+
+#include "FreeRTOS.h"
+
+typedef void (*TaskFunction_t)(void*);
+
+inline BaseType_t xTaskCreatePinnedToCore(TaskFunction_t, const char*, uint32_t, void*, UBaseType_t,
+                                          TaskHandle_t* handle, BaseType_t) {
+  if(handle != nullptr) {
+    *handle = nullptr;
+  }
+  return pdPASS;
+}
+inline TickType_t xTaskGetTickCount() { return 0; }
+inline void vTaskDelayUntil(TickType_t*, TickType_t) {}
+inline void vTaskDelay(TickType_t) {}
+inline TaskHandle_t xTaskGetCurrentTaskHandle() { return nullptr; }
+inline uint32_t ulTaskNotifyTake(BaseType_t, TickType_t) { return 0; }
+inline BaseType_t xTaskNotifyGive(TaskHandle_t) { return pdPASS; }
+
+#endif // NATIVE_STUB_TASK_H
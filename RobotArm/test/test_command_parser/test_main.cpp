@@ -0,0 +1,253 @@
+// 命令解析和应答格式化的native测试：pio test -e native
+// 覆盖parseCommand/executeParsedCommand和snprintf应答路径，并检查吞吐量和堆分配
+
+#include <unity.h>
+#include <new>
+#include <chrono>
+#include "command_break/command_break.h"
+#include "bluetooth/bluetooth.h"
+#include "movement/movement.h"
+#include "program/program.h"
+#include "trajectory/trajectory.h"
+
+// ---------- bluetooth.cpp 的替身：记录蓝牙应答 ----------
+
+static char lastReply[256];
+static int replyCount = 0;
+
+bool bluetoothConnected = true;
+
+void sendBluetooth(const char* message) {
+  strncpy(lastReply, message, sizeof(lastReply) - 1);
+  lastReply[sizeof(lastReply) - 1] = '\0';
+  replyCount++;
+}
+
+// 文本命令不发送二进制帧
+void sendBluetoothFrame(const uint8_t*, size_t) {}
+
+bool isBluetoothConnected() {
+  return bluetoothConnected;
+}
+
+// ---------- 堆分配计数：解析和应答路径不应分配堆内存 ----------
+
+static long allocationCount = 0;
+
+void* operator new(size_t size) {
+  allocationCount++;
+  void* p = malloc(size == 0 ? 1 : size);
+  if(p == nullptr) {
+    throw std::bad_alloc();
+  }
+  return p;
+}
+
+void operator delete(void* p) noexcept {
+  free(p);
+}
+
+void operator delete(void* p, size_t) noexcept {
+  free(p);
+}
+
+// ---------- 辅助函数 ----------
+
+// 按蓝牙命令执行一行，返回应答；每条命令必须正好回复一行
+static const char* runCommand(const char* line) {
+  char buffer[128];
+  size_t length = strlen(line);
+  memcpy(buffer, line, length + 1);
+  int before = replyCount;
+  executeCommandBuffer(buffer, length, true);
+  TEST_ASSERT_EQUAL_INT_MESSAGE(1, replyCount - before, line);
+  return lastReply;
+}
+
+static double nanosSince(std::chrono::steady_clock::time_point start) {
+  return std::chrono::duration<double, std::nano>(std::chrono::steady_clock::now() - start).count();
+}
+
+void setUp() {
+  runCommand("halt");
+  runCommand("profile step");
+}
+
+void tearDown() {}
+
+// ---------- 解析 ----------
+
+void test_parse_set_joint() {
+  char line[] = "set 2 120";
+  ParsedCommand cmd;
+  TEST_ASSERT_TRUE(parseCommand(line, cmd));
+  TEST_ASSERT_TRUE(cmd.isValid);
+  TEST_ASSERT_EQUAL_INT(CMD_SET_JOINT, cmd.type);
+  TEST_ASSERT_EQUAL_INT(2, cmd.jointId);
+  TEST_ASSERT_EQUAL_INT(120, cmd.angles[0]);
+}
+
+void test_parse_setall_sync_duration() {
+  char line[] = "  setall 90 30 150 10 sync 800\r";
+  ParsedCommand cmd;
+  TEST_ASSERT_TRUE(parseCommand(line, cmd));
+  TEST_ASSERT_TRUE(cmd.isValid);
+  TEST_ASSERT_EQUAL_INT(CMD_SET_ALL_SYNC, cmd.type);
+  TEST_ASSERT_EQUAL_INT(4, cmd.angleCount);
+  TEST_ASSERT_EQUAL_INT(10, cmd.angles[3]);
+  TEST_ASSERT_EQUAL_INT(800, cmd.value);
+}
+
+void test_parse_empty_line_is_skipped() {
+  char line[] = " \t\r";
+  ParsedCommand cmd;
+  TEST_ASSERT_FALSE(parseCommand(line, cmd));
+}
+
+void test_parse_rejects_malformed() {
+  const char* bad[] = {"set 4 90", "set 0", "set 0 abc", "setall 1 2 3", "traj 1 2 3 4", "bogus", "hello 1",
+                       "set 0 1 2 3 4 5 6 7 8"};
+  for(const char* text : bad) {
+    char line[64];
+    strcpy(line, text);
+    ParsedCommand cmd;
+    TEST_ASSERT_TRUE_MESSAGE(parseCommand(line, cmd), text);
+    TEST_ASSERT_FALSE_MESSAGE(cmd.isValid, text);
+    TEST_ASSERT_NOT_NULL(cmd.errorMessage);
+  }
+}
+
+// ---------- 应答 ----------
+
+void test_reply_hello() {
+  char expected[64];
+  snprintf(expected, sizeof(expected), "HELLO %d BIN TLM PRG TRJ SYN HLT", PROTOCOL_VERSION);
+  TEST_ASSERT_EQUAL_STRING(expected, runCommand("hello"));
+}
+
+void test_reply_ok_and_error() {
+  TEST_ASSERT_EQUAL_STRING("OK", runCommand("set 0 45"));
+  TEST_ASSERT_EQUAL_STRING("ERROR", runCommand("set 9 45"));
+  TEST_ASSERT_EQUAL_STRING("ERROR", runCommand("set 3 170"));
+  TEST_ASSERT_EQUAL_STRING("ERROR", runCommand("bogus"));
+  TEST_ASSERT_EQUAL_STRING("OK", runCommand("setall 90 30 150 10"));
+  TEST_ASSERT_EQUAL_STRING("RESET_OK", runCommand("reset"));
+}
+
+void test_reply_status_format() {
+  int positions[JOINT_COUNT];
+  getCurrentPositions(positions);
+  char expected[64];
+  snprintf(expected, sizeof(expected), "%d,%d,%d,%d", positions[0], positions[1], positions[2], positions[3]);
+  TEST_ASSERT_EQUAL_STRING(expected, runCommand("status"));
+}
+
+void test_reply_speed_and_profile() {
+  TEST_ASSERT_EQUAL_STRING("OK", runCommand("speed 0 40 2"));
+  TEST_ASSERT_EQUAL_STRING_LEN("SPEED 40/2 ", runCommand("speed"), 11);
+  TEST_ASSERT_EQUAL_STRING("OK", runCommand("speed 67 67 67 67"));
+  TEST_ASSERT_EQUAL_STRING_LEN("PROFILE step ", runCommand("profile"), 13);
+  TEST_ASSERT_EQUAL_STRING_LEN("PERF ", runCommand("perf"), 5);
+}
+
+void test_reply_trajectory_credits() {
+  char expected[16];
+  snprintf(expected, sizeof(expected), "OK %d", getTrajectoryFree() - 1);
+  TEST_ASSERT_EQUAL_STRING(expected, runCommand("traj 90 30 150 10 200"));
+  TEST_ASSERT_EQUAL_STRING("ERROR", runCommand("traj 90 30 150 90 200"));
+  const char* reply = runCommand("traj clear");
+  snprintf(expected, sizeof(expected), "OK %d", TRAJECTORY_CAPACITY);
+  TEST_ASSERT_EQUAL_STRING(expected, reply);
+  TEST_ASSERT_FALSE(isTrajectoryActive());
+}
+
+void test_one_reply_per_line_in_buffer() {
+  char buffer[] = "hello\nset 0 90\n\nstatus\nbogus";
+  int before = replyCount;
+  executeCommandBuffer(buffer, strlen(buffer), true);
+  TEST_ASSERT_EQUAL_INT(4, replyCount - before);
+  TEST_ASSERT_EQUAL_STRING("ERROR", lastReply);
+}
+
+// ---------- 吞吐量 ----------
+
+// 典型的App命令混合，含无效命令
+static const char* const commandMix[] = {
+  "set 0 90", "set 1 30", "setall 90 30 150 10", "setall 90 30 150 10 sync 500", "status", "speed",
+  "profile", "traj 90 30 150 10 100", "traj", "hello", "set 5 10", "torque", "prog", "perf",
+};
+static const int COMMAND_MIX_SIZE = sizeof(commandMix) / sizeof(commandMix[0]);
+
+// 界限很宽（ESP32上约为主机的几十倍），只用来发现退化到逐字节分配或回溯解析
+#define PARSE_BUDGET_NS 2000.0
+#define EXECUTE_BUDGET_NS 20000.0
+
+void test_parse_throughput() {
+  const int rounds = 20000;
+  char line[64];
+  ParsedCommand cmd;
+  int valid = 0;
+  long allocationsBefore = allocationCount;
+  auto start = std::chrono::steady_clock::now();
+  for(int r = 0; r < rounds; r++) {
+    for(int i = 0; i < COMMAND_MIX_SIZE; i++) {
+      strcpy(line, commandMix[i]);
+      parseCommand(line, cmd);
+      valid += cmd.isValid ? 1 : 0;
+    }
+  }
+  double perCommand = nanosSince(start) / (rounds * COMMAND_MIX_SIZE);
+
+  char message[64];
+  snprintf(message, sizeof(message), "parse: %.0f ns/cmd", perCommand);
+  TEST_MESSAGE(message);
+  TEST_ASSERT_EQUAL_INT(rounds * (COMMAND_MIX_SIZE - 1), valid);
+  TEST_ASSERT_EQUAL_INT(0, allocationCount - allocationsBefore);
+  TEST_ASSERT_TRUE_MESSAGE(perCommand < PARSE_BUDGET_NS, message);
+}
+
+void test_execute_and_reply_throughput() {
+  const int rounds = 5000;
+  char buffer[64];
+  int repliesBefore = replyCount;
+  long allocationsBefore = allocationCount;
+  auto start = std::chrono::steady_clock::now();
+  for(int r = 0; r < rounds; r++) {
+    for(int i = 0; i < COMMAND_MIX_SIZE; i++) {
+      size_t length = strlen(commandMix[i]);
+      memcpy(buffer, commandMix[i], length + 1);
+      executeCommandBuffer(buffer, length, true);
+    }
+    // 运动任务不运行，轨迹队列不会被消费
+    clearTrajectory(false);
+  }
+  double perCommand = nanosSince(start) / (rounds * COMMAND_MIX_SIZE);
+
+  char message[64];
+  snprintf(message, sizeof(message), "execute+reply: %.0f ns/cmd", perCommand);
+  TEST_MESSAGE(message);
+  TEST_ASSERT_EQUAL_INT(rounds * COMMAND_MIX_SIZE, replyCount - repliesBefore);
+  TEST_ASSERT_EQUAL_INT(0, allocationCount - allocationsBefore);
+  TEST_ASSERT_TRUE_MESSAGE(perCommand < EXECUTE_BUDGET_NS, message);
+}
+
+int main(int, char**) {
+  initRobotArm();
+  initProgram();
+  initTrajectory();
+
+  UNITY_BEGIN();
+  RUN_TEST(test_parse_set_joint);
+  RUN_TEST(test_parse_setall_sync_duration);
+  RUN_TEST(test_parse_empty_line_is_skipped);
+  RUN_TEST(test_parse_rejects_malformed);
+  RUN_TEST(test_reply_hello);
+  RUN_TEST(test_reply_ok_and_error);
+  RUN_TEST(test_reply_status_format);
+  RUN_TEST(test_reply_speed_and_profile);
+  RUN_TEST(test_reply_trajectory_credits);
+  RUN_TEST(test_one_reply_per_line_in_buffer);
+  RUN_TEST(test_parse_throughput);
+  RUN_TEST(test_execute_and_reply_throughput);
+  return UNITY_END();
+}